@@ -0,0 +1,271 @@
+package arrayscript.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import arrayscript.lang.Application;
+import arrayscript.lang.element.Element;
+import arrayscript.lang.element.Namespace;
+import arrayscript.lang.element.Variable;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.ConstFloatValue;
+import arrayscript.lang.var.value.ConstIntValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.ConstUIntValue;
+import arrayscript.lang.var.value.Value;
+
+/**
+ * Reads applications that were written by ApplicationWriter. Opening a reader only reads the header of the
+ * file, the namespaces will be decoded when they are requested. The namespaces inside a namespace are
+ * decoded when their elements are requested for the first time. Files are memory-mapped, so the parts of the
+ * file that are never requested will not even be read from disk. Instances of this class can be used by
+ * multiple threads at the same time.
+ * @author knokko
+ *
+ */
+public class ApplicationReader implements Closeable {
+	
+	/**
+	 * Opens the given file and reads its header. The namespaces in the file will not be read yet.
+	 * @param file The file to open, it should have been written by ApplicationWriter
+	 * @return An ApplicationReader for the given file
+	 * @throws IOException If the file can't be read or is not a valid (or supported) application file
+	 */
+	public static ApplicationReader open(File file) throws IOException {
+		RandomAccessFile randomAccess = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccess.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The application file " + file + " is too large");
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new ApplicationReader(randomAccess, buffer);
+		} catch (IOException ioex) {
+			randomAccess.close();
+			throw ioex;
+		}
+	}
+	
+	/**
+	 * Creates a reader for an application that is already in memory (for instance an application file that
+	 * was just written to a byte array).
+	 * @param data The buffer containing the application file
+	 * @return An ApplicationReader for the given data
+	 * @throws IOException If the data is not a valid (or supported) application file
+	 */
+	public static ApplicationReader open(ByteBuffer data) throws IOException {
+		return new ApplicationReader(null, data);
+	}
+	
+	private final Closeable source;
+	private final ByteBuffer buffer;
+	
+	private final LazyStringTable strings;
+	private final Map<String,Integer> sectionIndices;
+	private final String[] sectionNames;
+	private final int[] sectionOffsets;
+	private final int[] sectionLengths;
+	
+	private ApplicationReader(Closeable source, ByteBuffer buffer) throws IOException {
+		this.source = source;
+		this.buffer = buffer;
+		
+		BinaryInput input = new BinaryInput(buffer);
+		for (byte magic : ModelFormat.MAGIC) {
+			if (input.readByte() != magic) {
+				throw new IOException("This is not an ArrayScript application file");
+			}
+		}
+		int version = input.readVarInt();
+		if (version > ModelFormat.VERSION) {
+			throw new IOException("Application file version " + version + " is not supported (the latest supported version is " + ModelFormat.VERSION + ")");
+		}
+		
+		strings = new LazyStringTable(buffer, input);
+		
+		// Every section entry has a name, an offset and a length
+		int sectionCount = input.readCount(3);
+		sectionNames = new String[sectionCount];
+		sectionOffsets = new int[sectionCount];
+		sectionLengths = new int[sectionCount];
+		sectionIndices = new HashMap<String,Integer>(sectionCount);
+		for (int index = 0; index < sectionCount; index++) {
+			sectionNames[index] = strings.get(input.readVarInt());
+			sectionOffsets[index] = input.readVarInt();
+			sectionLengths[index] = input.readVarInt();
+			sectionIndices.put(sectionNames[index], index);
+		}
+		
+		// The offsets are relative to the end of the section table
+		int sectionsStart = input.getPosition();
+		for (int index = 0; index < sectionCount; index++) {
+			if (sectionOffsets[index] > buffer.limit() - sectionsStart 
+					|| sectionLengths[index] > buffer.limit() - sectionsStart - sectionOffsets[index]) {
+				throw new IOException("Section " + sectionNames[index] + " exceeds the end of the file");
+			}
+			sectionOffsets[index] += sectionsStart;
+		}
+		if (sectionCount == 0) {
+			throw new IOException("The application file doesn't have a global namespace");
+		}
+	}
+	
+	/**
+	 * Reads the entire application. Only the global namespace is decoded right away: the other namespaces
+	 * are decoded when their elements are requested.
+	 * @return The application
+	 * @throws IOException If the global namespace is corrupted
+	 */
+	public Application readApplication() throws IOException {
+		return new Application(readSection(0));
+	}
+	
+	/**
+	 * Reads the namespace with the given qualified name (for instance "math.vector"). The namespaces in it are
+	 * decoded when their elements are requested and the other namespaces in the file will not be decoded.
+	 * @param qualifiedName The names of the namespace and all its parents (except the global namespace),
+	 * separated by dots. The empty string refers to the global namespace.
+	 * @return The namespace with the given name, or null if the file doesn't have such a namespace
+	 * @throws IOException If the namespace is corrupted
+	 */
+	public Namespace readNamespace(String qualifiedName) throws IOException {
+		Integer index = sectionIndices.get(qualifiedName);
+		if (index == null) {
+			return null;
+		}
+		return readSection(index);
+	}
+	
+	/**
+	 * @return The qualified names of all namespaces in the file, the first one is the global namespace
+	 */
+	public String[] getNamespaceNames() {
+		return Arrays.copyOf(sectionNames, sectionNames.length);
+	}
+	
+	private Namespace readSection(int sectionIndex) throws IOException {
+		return new Namespace(getSimpleName(sectionIndex), readElements(sectionIndex));
+	}
+	
+	private String getSimpleName(int sectionIndex) {
+		String qualifiedName = sectionNames[sectionIndex];
+		return qualifiedName.isEmpty() ? null : qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+	}
+	
+	private Element[] readElements(int sectionIndex) throws IOException {
+		int start = sectionOffsets[sectionIndex];
+		BinaryInput input = new BinaryInput(buffer, start, start + sectionLengths[sectionIndex]);
+		String qualifiedName = sectionNames[sectionIndex];
+		
+		// Every element has a tag and at least 1 more byte
+		Element[] elements = new Element[input.readCount(2)];
+		for (int index = 0; index < elements.length; index++) {
+			int tag = input.readByte();
+			if (tag == ModelFormat.ELEMENT_NAMESPACE) {
+				int childSection = input.readVarInt();
+				if (childSection <= sectionIndex || childSection >= sectionNames.length) {
+					throw new IOException("Invalid child section " + childSection + " in section " + sectionIndex);
+				}
+				elements[index] = new LazyNamespace(childSection);
+			} else if (tag == ModelFormat.ELEMENT_VARIABLE) {
+				String variableName = strings.get(input.readVarInt());
+				Type type = readType(input);
+				elements[index] = new Variable(variableName, type, readValue(input));
+			} else {
+				throw new IOException("Unknown element tag " + tag + " in namespace " + qualifiedName);
+			}
+		}
+		return elements;
+	}
+	
+	private Type readType(BinaryInput input) throws IOException {
+		int tag = input.readByte();
+		if (tag == ModelFormat.TYPE_PRIMITIVE) {
+			String typeName = strings.get(input.readVarInt());
+			Type type = PrimitiveTypes.getByName(typeName);
+			if (type == null) {
+				throw new IOException("Unknown primitive type " + typeName);
+			}
+			return type;
+		} else {
+			throw new IOException("Unknown type tag " + tag);
+		}
+	}
+	
+	private Value readValue(BinaryInput input) throws IOException {
+		int tag = input.readByte();
+		if (tag == ModelFormat.VALUE_NONE) {
+			return null;
+		} else if (tag == ModelFormat.VALUE_BOOLEAN) {
+			return input.readBoolean() ? ConstBooleanValue.TRUE : ConstBooleanValue.FALSE;
+		} else if (tag == ModelFormat.VALUE_INT) {
+			return new ConstIntValue((int) input.readLong());
+		} else if (tag == ModelFormat.VALUE_UINT) {
+			long value = input.readLong();
+			if (value < 0 || value > 0xFFFFFFFFL) {
+				throw new IOException("Invalid uint32 value " + value);
+			}
+			return new ConstUIntValue(value);
+		} else if (tag == ModelFormat.VALUE_FLOAT) {
+			return new ConstFloatValue((float) input.readDouble());
+		} else if (tag == ModelFormat.VALUE_DOUBLE) {
+			return new ConstDoubleValue(input.readDouble());
+		} else if (tag == ModelFormat.VALUE_STRING) {
+			return new ConstStringValue(strings.get(input.readVarInt()));
+		} else {
+			throw new IOException("Unknown value tag " + tag);
+		}
+	}
+	
+	/**
+	 * A namespace whose section is decoded when its elements are requested for the first time
+	 */
+	private class LazyNamespace extends Namespace {
+		
+		private final int section;
+		
+		private volatile Element[] elements;
+		
+		LazyNamespace(int section) {
+			super(getSimpleName(section), new Element[0]);
+			this.section = section;
+		}
+		
+		/**
+		 * @throws UncheckedIOException If the section of this namespace is corrupted
+		 */
+		@Override
+		public Element[] getElements() throws UncheckedIOException {
+			Element[] result = elements;
+			if (result == null) {
+				
+				// Racing threads might both decode the section, but they will get equivalent elements
+				try {
+					result = readElements(section);
+				} catch (IOException ioex) {
+					throw new UncheckedIOException("Namespace " + sectionNames[section] + " is corrupted", ioex);
+				}
+				elements = result;
+			}
+			return Arrays.copyOf(result, result.length);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (source != null) {
+			source.close();
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package arrayscript.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import arrayscript.lang.Application;
+import arrayscript.lang.element.Element;
+import arrayscript.lang.element.Namespace;
+import arrayscript.lang.element.Variable;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.ConstFloatValue;
+import arrayscript.lang.var.value.ConstIntValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.ConstUIntValue;
+import arrayscript.lang.var.value.Value;
+import arrayscript.util.Checks;
+
+/**
+ * Writes applications in the compact binary format described in ModelFormat. Tools that need an application
+ * can read such a file with ApplicationReader rather than parsing all source files again.
+ * @author knokko
+ *
+ */
+public class ApplicationWriter {
+	
+	/**
+	 * Writes the given application to the given file. If the file already exists, it will be overwritten.
+	 * @param application The application to write
+	 * @param file The file to write the application to
+	 * @throws IOException If the file can't be written
+	 * @throws IllegalArgumentException If the application contains elements, types or values that can't be
+	 * stored in the binary format
+	 */
+	public static void write(Application application, File file) throws IOException, IllegalArgumentException {
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(application, output);
+		} finally {
+			output.close();
+		}
+	}
+	
+	/**
+	 * Writes the given application to the given output stream. This method will not close the output stream.
+	 * @param application The application to write
+	 * @param output The stream to write the application to
+	 * @throws IOException If the output stream throws an IOException
+	 * @throws IllegalArgumentException If the application contains elements, types or values that can't be
+	 * stored in the binary format
+	 */
+	public static void write(Application application, OutputStream output) throws IOException, IllegalArgumentException {
+		Checks.notNull(application, "application");
+		new ApplicationWriter().writeApplication(application, output);
+	}
+	
+	private final StringTable strings;
+	private final List<Namespace> sections;
+	private final List<String> sectionNames;
+	
+	private ApplicationWriter() {
+		strings = new StringTable();
+		sections = new ArrayList<Namespace>();
+		sectionNames = new ArrayList<String>();
+	}
+	
+	private void writeApplication(Application application, OutputStream output) throws IOException {
+		
+		// Every namespace gets its own section, the global namespace will be section 0
+		addSection(application.getGlobalNamespace(), "");
+		
+		// Encode the sections first because that will fill the string table
+		// Note that encoding a section can add new sections, so don't use a for-each loop
+		List<BinaryOutput> encodedSections = new ArrayList<BinaryOutput>();
+		for (int index = 0; index < sections.size(); index++) {
+			encodedSections.add(encodeNamespace(index));
+		}
+		
+		BinaryOutput header = new BinaryOutput();
+		header.writeBytes(ModelFormat.MAGIC, 0, ModelFormat.MAGIC.length);
+		header.writeVarInt(ModelFormat.VERSION);
+		
+		// The section table also needs strings, so register them before writing the string table
+		int[] nameIds = new int[sections.size()];
+		for (int index = 0; index < nameIds.length; index++) {
+			nameIds[index] = strings.getId(sectionNames.get(index));
+		}
+		strings.writeTo(header);
+		
+		header.writeVarInt(encodedSections.size());
+		int offset = 0;
+		for (int index = 0; index < nameIds.length; index++) {
+			int length = encodedSections.get(index).size();
+			header.writeVarInt(nameIds[index]);
+			header.writeVarInt(offset);
+			header.writeVarInt(length);
+			offset += length;
+		}
+		
+		header.writeTo(output);
+		for (BinaryOutput section : encodedSections) {
+			section.writeTo(output);
+		}
+	}
+	
+	private int addSection(Namespace namespace, String qualifiedName) {
+		sections.add(namespace);
+		sectionNames.add(qualifiedName);
+		return sections.size() - 1;
+	}
+	
+	private BinaryOutput encodeNamespace(int sectionIndex) {
+		BinaryOutput output = new BinaryOutput();
+		String qualifiedName = sectionNames.get(sectionIndex);
+		
+		Element[] elements = sections.get(sectionIndex).getElements();
+		output.writeVarInt(elements.length);
+		for (Element element : elements) {
+			if (element instanceof Namespace) {
+				String childName = qualifiedName.isEmpty() ? element.getName() : qualifiedName + "." + element.getName();
+				output.writeByte(ModelFormat.ELEMENT_NAMESPACE);
+				output.writeVarInt(addSection((Namespace) element, childName));
+			} else if (element instanceof Variable) {
+				Variable variable = (Variable) element;
+				output.writeByte(ModelFormat.ELEMENT_VARIABLE);
+				output.writeVarInt(strings.getId(variable.getName()));
+				encodeType(output, variable.getType());
+				encodeValue(output, variable.getDefaultValue());
+			} else {
+				throw new IllegalArgumentException("Can't write element " + element.getName() + " of " + element.getClass());
+			}
+		}
+		return output;
+	}
+	
+	private void encodeType(BinaryOutput output, Type type) {
+		if (type.isPrimitive()) {
+			output.writeByte(ModelFormat.TYPE_PRIMITIVE);
+			output.writeVarInt(strings.getId(type.getName()));
+		} else {
+			throw new IllegalArgumentException("Can't write type " + type.getName());
+		}
+	}
+	
+	private void encodeValue(BinaryOutput output, Value value) {
+		if (value == null) {
+			output.writeByte(ModelFormat.VALUE_NONE);
+		} else if (value instanceof ConstBooleanValue) {
+			output.writeByte(ModelFormat.VALUE_BOOLEAN);
+			output.writeBoolean(((ConstBooleanValue) value).getValue());
+		} else if (value instanceof ConstIntValue) {
+			output.writeByte(ModelFormat.VALUE_INT);
+			output.writeLong(((ConstIntValue) value).getValue());
+		} else if (value instanceof ConstUIntValue) {
+			output.writeByte(ModelFormat.VALUE_UINT);
+			output.writeLong(((ConstUIntValue) value).getValue());
+		} else if (value instanceof ConstFloatValue) {
+			output.writeByte(ModelFormat.VALUE_FLOAT);
+			output.writeDouble(((ConstFloatValue) value).getValue());
+		} else if (value instanceof ConstDoubleValue) {
+			output.writeByte(ModelFormat.VALUE_DOUBLE);
+			output.writeDouble(((ConstDoubleValue) value).getValue());
+		} else if (value instanceof ConstStringValue) {
+			output.writeByte(ModelFormat.VALUE_STRING);
+			output.writeVarInt(strings.getId(((ConstStringValue) value).getValue()));
+		} else {
+			throw new IllegalArgumentException("Can't write value " + value);
+		}
+	}
+}
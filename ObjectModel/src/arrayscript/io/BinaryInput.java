@@ -0,0 +1,149 @@
+package arrayscript.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The counterpart of BinaryOutput. Instances of this class read from a ByteBuffer (typically a memory-mapped
+ * file) using absolute positions only, so multiple BinaryInputs can safely read from the same buffer at the
+ * same time.
+ * @author knokko
+ *
+ */
+public class BinaryInput {
+	
+	private final ByteBuffer buffer;
+	private final int limit;
+	
+	private int position;
+	
+	/**
+	 * Creates a binary input that will read the bytes of the buffer from the given start position until (but
+	 * not including) the given limit.
+	 * @param buffer The buffer to read from
+	 * @param start The position of the first byte to read
+	 * @param limit The position right after the last byte that may be read
+	 */
+	public BinaryInput(ByteBuffer buffer, int start, int limit) {
+		if (start < 0 || limit > buffer.limit() || start > limit) {
+			throw new IllegalArgumentException("Invalid range [" + start + ", " + limit + ") for buffer of size " + buffer.limit());
+		}
+		this.buffer = buffer;
+		this.position = start;
+		this.limit = limit;
+	}
+	
+	public BinaryInput(ByteBuffer buffer) {
+		this(buffer, 0, buffer.limit());
+	}
+	
+	/**
+	 * Checks that the given number of bytes can be read. The amount is compared with the number of remaining
+	 * bytes, so a corrupt (or hostile) length can't overflow the position.
+	 */
+	private void check(int amount) throws IOException {
+		if (amount < 0) {
+			throw new IOException("Invalid length " + amount + " at position " + position);
+		}
+		if (amount > limit - position) {
+			throw new IOException("Unexpected end of data at position " + position);
+		}
+	}
+	
+	public int getPosition() {
+		return position;
+	}
+	
+	public void setPosition(int position) {
+		this.position = position;
+	}
+	
+	public int readByte() throws IOException {
+		check(1);
+		return buffer.get(position++) & 0xFF;
+	}
+	
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+	
+	public int readVarInt() throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int next = readByte();
+			result |= (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				if (result < 0) {
+					throw new IOException("Variable length integer is out of range");
+				}
+				return result;
+			}
+		}
+		throw new IOException("Variable length integer is too long");
+	}
+	
+	/**
+	 * Reads the number of items of a list, which was written as variable length integer. The count is
+	 * compared with the number of remaining bytes before it is returned, so a corrupt (or hostile) count
+	 * can't make the caller allocate a huge array.
+	 * @param minItemSize The minimum number of bytes that every item of the list occupies
+	 * @return The number of items
+	 * @throws IOException If the remaining bytes can't contain that many items
+	 */
+	public int readCount(int minItemSize) throws IOException {
+		int count = readVarInt();
+		if (count < 0 || count > (limit - position) / minItemSize) {
+			throw new IOException("Invalid count " + count + " at position " + position + " (" + (limit - position) + " bytes left)");
+		}
+		return count;
+	}
+	
+	public long readLong() throws IOException {
+		check(8);
+		long result = 0;
+		for (int counter = 0; counter < 8; counter++) {
+			result = (result << 8) | (buffer.get(position++) & 0xFF);
+		}
+		return result;
+	}
+	
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+	
+	/**
+	 * Skips the given number of bytes
+	 * @param amount The number of bytes to skip
+	 * @throws IOException If there are less than amount bytes left
+	 */
+	public void skip(int amount) throws IOException {
+		check(amount);
+		position += amount;
+	}
+	
+	/**
+	 * Reads a string that was written by BinaryOutput.writeString
+	 * @return The string that was read
+	 * @throws IOException If the end of the data is reached before the string was read completely
+	 */
+	public String readString() throws IOException {
+		int length = readVarInt();
+		return readUTF8(length);
+	}
+	
+	/**
+	 * Decodes the given number of bytes as UTF-8 string
+	 * @param length The number of bytes to decode
+	 * @return The decoded string
+	 * @throws IOException If there are less than length bytes left
+	 */
+	public String readUTF8(int length) throws IOException {
+		check(length);
+		byte[] bytes = new byte[length];
+		for (int index = 0; index < length; index++) {
+			bytes[index] = buffer.get(position++);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,106 @@
+package arrayscript.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that is used to encode the binary formats of ArrayScript. Unsigned integers are
+ * written as variable length integers (7 bits per byte, the highest bit indicates whether another byte will
+ * follow), so small ids only take a single byte.
+ * @author knokko
+ *
+ */
+public class BinaryOutput {
+	
+	private byte[] data;
+	private int size;
+	
+	public BinaryOutput(int initialCapacity) {
+		data = new byte[Math.max(initialCapacity, 16)];
+	}
+	
+	public BinaryOutput() {
+		this(256);
+	}
+	
+	private void ensureCapacity(int extra) {
+		if (size + extra > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+		}
+	}
+	
+	public void writeByte(int value) {
+		ensureCapacity(1);
+		data[size++] = (byte) value;
+	}
+	
+	public void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+	
+	/**
+	 * Writes the given non-negative integer as variable length integer.
+	 * @param value The integer to write, must not be negative
+	 * @throws IllegalArgumentException If the value is negative
+	 */
+	public void writeVarInt(int value) throws IllegalArgumentException {
+		if (value < 0) {
+			throw new IllegalArgumentException("Variable length integers can't be negative, but got " + value);
+		}
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			data[size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[size++] = (byte) value;
+	}
+	
+	public void writeLong(long value) {
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			data[size++] = (byte) (value >>> shift);
+		}
+	}
+	
+	public void writeDouble(double value) {
+		writeLong(Double.doubleToRawLongBits(value));
+	}
+	
+	public void writeBytes(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, data, size, length);
+		size += length;
+	}
+	
+	public void writeBytes(BinaryOutput other) {
+		writeBytes(other.data, 0, other.size);
+	}
+	
+	/**
+	 * Writes the given string as UTF-8, prefixed by its length in bytes. The string tables of the binary
+	 * formats use this.
+	 * @param string The string to write
+	 */
+	public void writeString(String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+		writeBytes(bytes, 0, bytes.length);
+	}
+	
+	/**
+	 * @return The number of bytes that have been written to this output so far
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public void writeTo(OutputStream output) throws IOException {
+		output.write(data, 0, size);
+	}
+	
+	public byte[] toByteArray() {
+		return Arrays.copyOf(data, size);
+	}
+}
@@ -0,0 +1,65 @@
+package arrayscript.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The reading counterpart of StringTable. Constructing an instance only determines where each string is
+ * located, the strings themselves will be decoded the first time they are needed. This keeps opening large
+ * files cheap when only a small part of them will be used.
+ * @author knokko
+ *
+ */
+public class LazyStringTable {
+	
+	private final ByteBuffer buffer;
+	private final int[] offsets;
+	private final int[] lengths;
+	private final String[] strings;
+	
+	/**
+	 * Reads the locations of the strings in the table at the current position of the input. After this
+	 * constructor returns, the input will be positioned right after the string table.
+	 * @param buffer The buffer the input is reading from
+	 * @param input The input that is positioned at the start of a string table
+	 * @throws IOException If the string table is incomplete or its size is invalid
+	 */
+	public LazyStringTable(ByteBuffer buffer, BinaryInput input) throws IOException {
+		this.buffer = buffer;
+		
+		// Every string needs at least 1 byte for its length
+		int size = input.readCount(1);
+		offsets = new int[size];
+		lengths = new int[size];
+		strings = new String[size];
+		for (int index = 0; index < size; index++) {
+			lengths[index] = input.readVarInt();
+			offsets[index] = input.getPosition();
+			input.skip(lengths[index]);
+		}
+	}
+	
+	/**
+	 * Gets the string with the given id, decoding it if that didn't happen before.
+	 * @param id The id of the string
+	 * @return The string with the given id
+	 * @throws IOException If there is no string with the given id
+	 */
+	public String get(int id) throws IOException {
+		if (id < 0 || id >= strings.length) {
+			throw new IOException("Invalid string id " + id + " (table size is " + strings.length + ")");
+		}
+		String result = strings[id];
+		if (result == null) {
+			
+			// Racing threads might both decode the string, but that is harmless because strings are immutable
+			result = new BinaryInput(buffer, offsets[id], offsets[id] + lengths[id]).readUTF8(lengths[id]);
+			strings[id] = result;
+		}
+		return result;
+	}
+	
+	public int size() {
+		return strings.length;
+	}
+}
@@ -0,0 +1,38 @@
+package arrayscript.io;
+
+/**
+ * Constants of the binary application model format that is written by ApplicationWriter and read by
+ * ApplicationReader. The layout of a file is:
+ * <ul>
+ * <li>The 4 magic bytes 'ARSM' followed by the format version (a variable length integer)</li>
+ * <li>The string table</li>
+ * <li>The section table: the number of sections followed by (qualified name id, offset, length) for every
+ * section. The offsets are relative to the start of the first section.</li>
+ * <li>The sections, one for every namespace. Section 0 is the global namespace. Nested namespaces are stored
+ * in their own section, so that readers only need to decode the namespaces they actually use.</li>
+ * </ul>
+ * @author knokko
+ *
+ */
+class ModelFormat {
+	
+	static final byte[] MAGIC = {'A', 'R', 'S', 'M'};
+	
+	/**
+	 * Increase this whenever the format changes. Readers refuse to read files with a newer version.
+	 */
+	static final int VERSION = 2;
+	
+	static final int ELEMENT_NAMESPACE = 1;
+	static final int ELEMENT_VARIABLE = 2;
+	
+	static final int TYPE_PRIMITIVE = 1;
+	
+	static final int VALUE_NONE = 0;
+	static final int VALUE_BOOLEAN = 1;
+	static final int VALUE_INT = 2;
+	static final int VALUE_UINT = 3;
+	static final int VALUE_FLOAT = 4;
+	static final int VALUE_DOUBLE = 5;
+	static final int VALUE_STRING = 6;
+}
@@ -0,0 +1,53 @@
+package arrayscript.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns a small integer id to every distinct string that is written to a binary file. Every string will
+ * only be stored once in the file, and all other places that need the string will refer to it by its id.
+ * @author knokko
+ *
+ */
+public class StringTable {
+	
+	private final Map<String,Integer> ids;
+	private final List<String> strings;
+	
+	public StringTable() {
+		ids = new HashMap<String,Integer>(200);
+		strings = new ArrayList<String>(200);
+	}
+	
+	/**
+	 * Gets the id of the given string, and adds the string to this table if it was not yet in it.
+	 * @param string The string to get the id of
+	 * @return The id of the given string
+	 */
+	public int getId(String string) {
+		Integer id = ids.get(string);
+		if (id == null) {
+			id = strings.size();
+			ids.put(string, id);
+			strings.add(string);
+		}
+		return id;
+	}
+	
+	public int size() {
+		return strings.size();
+	}
+	
+	/**
+	 * Writes the number of strings followed by all strings (in the order of their ids) to the given output.
+	 * @param output The output to write the table to
+	 */
+	public void writeTo(BinaryOutput output) {
+		output.writeVarInt(strings.size());
+		for (String string : strings) {
+			output.writeString(string);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package arrayscript.js;
+
+import java.math.BigDecimal;
+
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.NumberValue;
+import arrayscript.lang.var.value.Value;
+
+/**
+ * Converts constant values to javascript literals. Numbers are formatted the way javascript formats them
+ * (Number.prototype.toString), so folding 'x' + 0.5 at compile time gives the same string as javascript
+ * would give at runtime.
+ * @author knokko
+ *
+ */
+public class JSLiterals {
+	
+	/**
+	 * @param value The constant value
+	 * @return The javascript literal of the given value
+	 * @throws IllegalArgumentException If the value is not a constant boolean, number or string
+	 */
+	public static String toLiteral(Value value) throws IllegalArgumentException {
+		if (value instanceof ConstBooleanValue) {
+			return ((ConstBooleanValue) value).getValue() ? "true" : "false";
+		} else if (value instanceof NumberValue) {
+			double number = ((NumberValue) value).getDoubleValue();
+			
+			// Negative numbers need brackets because -x.y would be parsed as -(x.y)
+			if (number < 0 || (number == 0 && 1 / number < 0)) {
+				return "(-" + numberToString(-number) + ")";
+			}
+			return numberToString(number);
+		} else if (value instanceof ConstStringValue) {
+			return quote(((ConstStringValue) value).getValue());
+		} else {
+			throw new IllegalArgumentException("Can't convert " + value + " to a javascript literal");
+		}
+	}
+	
+	/**
+	 * Formats the given number the way javascript would convert it to a string.
+	 * @param number The number to format
+	 * @return The javascript string representation of the number
+	 */
+	public static String numberToString(double number) {
+		if (Double.isNaN(number)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(number)) {
+			return number > 0 ? "Infinity" : "-Infinity";
+		}
+		if (number == 0) {
+			return "0";
+		}
+		if (number < 0) {
+			return "-" + numberToString(-number);
+		}
+		
+		// Double.toString gives the shortest digits that identify the number, but uses another format
+		BigDecimal decimal = new BigDecimal(Double.toString(number)).stripTrailingZeros();
+		String digits = decimal.unscaledValue().toString();
+		int k = digits.length();
+		int n = decimal.precision() - decimal.scale();
+		
+		StringBuilder result = new StringBuilder(k + 8);
+		if (k <= n && n <= 21) {
+			result.append(digits);
+			for (int counter = k; counter < n; counter++) {
+				result.append('0');
+			}
+		} else if (0 < n && n <= 21) {
+			result.append(digits, 0, n).append('.').append(digits, n, k);
+		} else if (-6 < n && n <= 0) {
+			result.append("0.");
+			for (int counter = n; counter < 0; counter++) {
+				result.append('0');
+			}
+			result.append(digits);
+		} else {
+			result.append(digits.charAt(0));
+			if (k > 1) {
+				result.append('.').append(digits, 1, k);
+			}
+			result.append('e').append(n - 1 >= 0 ? '+' : '-').append(Math.abs(n - 1));
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * Creates a javascript string literal with the given content. The content will be escaped such that it
+	 * can also be used inside an html script tag.
+	 * @param content The content of the string
+	 * @return The string literal, including the quotes
+	 */
+	public static String quote(String content) {
+		StringBuilder result = new StringBuilder(content.length() + 2);
+		result.append('"');
+		for (int index = 0; index < content.length(); index++) {
+			char c = content.charAt(index);
+			switch (c) {
+			case '"': result.append("\\\""); break;
+			case '\\': result.append("\\\\"); break;
+			case '\n': result.append("\\n"); break;
+			case '\r': result.append("\\r"); break;
+			case '\t': result.append("\\t"); break;
+			case '<': result.append("\\x3C"); break;
+			default:
+				if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+					result.append(String.format("\\u%04X", (int) c));
+				} else {
+					result.append(c);
+				}
+			}
+		}
+		return result.append('"').toString();
+	}
+}
@@ -1,5 +1,8 @@
 package arrayscript.js;
 
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+
 /**
  * The basic types of plain javascript. A large array will be created to store variables and fields for
  * each javascript type.
@@ -13,4 +16,23 @@ public enum JSType {
 	STRING,
 	ARRAY,
 	OBJECT;
-}
\ No newline at end of file
+	
+	/**
+	 * Determines the javascript type of the values of the given ArrayScript type. All numeric types become
+	 * NUMBER. Values of any other type that is not boolean or string (instances, enum constants, functions
+	 * and values of type any) are stored as OBJECT.
+	 * @param type The ArrayScript type
+	 * @return The javascript type of the values of the given type
+	 */
+	public static JSType of(Type type) {
+		if (type == PrimitiveTypes.BOOLEAN) {
+			return BOOLEAN;
+		} else if (type == PrimitiveTypes.STRING) {
+			return STRING;
+		} else if (PrimitiveTypes.isNumeric(type)) {
+			return NUMBER;
+		} else {
+			return OBJECT;
+		}
+	}
+}
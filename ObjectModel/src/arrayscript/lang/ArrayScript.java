@@ -4,4 +4,7 @@ public class ArrayScript {
 	
 	public static final String SOURCE_FILE_EXTENSION = "ars";
 	public static final String SOURCE_FILE_NAME_END = "." + SOURCE_FILE_EXTENSION;
+	
+	public static final String LIBRARY_FILE_EXTENSION = "arsi";
+	public static final String LIBRARY_FILE_NAME_END = "." + LIBRARY_FILE_EXTENSION;
 }
\ No newline at end of file
@@ -58,6 +58,7 @@ public enum Keyword {
 	 */
 	CONST(Modifier.CONST, null, null),
 	DEFINE(Modifier.DEFINE, null, null),
+	IMPLICIT(Modifier.IMPLICIT, null, null),
 	OPEN(Modifier.OPEN, null, null),
 	PRIVATE(Modifier.PRIVATE, null, null),
 	PROTECTED(Modifier.PROTECTED, null, null),
@@ -70,6 +71,14 @@ public enum Keyword {
 	ELSE(null, null, null),
 	WHILE(null, null, null),
 	FOR(null, null, null),
+	RETURN(null, null, null),
+	
+	/*
+	 * Values
+	 */
+	TRUE(null, null, null),
+	FALSE(null, null, null),
+	THIS(null, null, null),
 	
 	/*
 	 * Javascript-only
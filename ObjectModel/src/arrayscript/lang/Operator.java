@@ -15,6 +15,12 @@ public enum Operator {
 	EQUALS("=="),
 	NOT_EQUALS("!="),
 	
+	// Comparison operators
+	LESS_EQUAL("<="),
+	GREATER_EQUAL(">="),
+	LESS("<"),
+	GREATER(">"),
+	
 	// Mathematical change operators
 	INCREASE("+="),
 	DECREASE("-="),
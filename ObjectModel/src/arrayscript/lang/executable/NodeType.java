@@ -0,0 +1,102 @@
+package arrayscript.lang.executable;
+
+/**
+ * The types of the nodes of a syntax tree. The comment of every node type describes what the data of
+ * the node means and which children the node has (in order).
+ * @author knokko
+ *
+ */
+public enum NodeType {
+	
+	/*
+	 * Statements
+	 */
+	
+	/** A code block. Data is unused, the children are the statements of the block */
+	BLOCK(false),
+	/** An empty statement (a lonely ';' or a missing part of a for loop). No data and no children */
+	EMPTY(false),
+	/** An expression that is used as statement. Data is unused, the only child is the expression */
+	EXPRESSION(false),
+	/**
+	 * A local variable declaration. The data is the string index of the variable name. The first child is
+	 * the TYPE of the variable and the optional second child is the initial value
+	 */
+	DECLARATION(false),
+	/** An if statement. No data, the children are the condition, the then statement and optionally else */
+	IF(false),
+	/** A while loop. No data, the children are the condition and the body */
+	WHILE(false),
+	/**
+	 * A for loop. No data, the children are the initializer statement, the condition (EMPTY if omitted),
+	 * the update (EMPTY if omitted) and the body
+	 */
+	FOR(false),
+	/** A return statement. No data, the optional child is the returned value */
+	RETURN(false),
+	
+	/*
+	 * Expressions
+	 */
+	
+	/** A number literal. The data is the number index */
+	NUMBER(true),
+	/** A string literal. The data is the string index of the content */
+	STRING(true),
+	/** A boolean literal. The data is 1 for true and 0 for false */
+	BOOLEAN(true),
+	/** A name that still has to be resolved. The data is the string index of the name */
+	NAME(true),
+	/** The 'this' keyword. No data and no children */
+	THIS(true),
+	/** A prefix operator (!, -). The data is the ordinal of the Operator, the only child is the operand */
+	UNARY(true),
+	/** A binary operator. The data is the ordinal of the Operator, the children are the operands */
+	BINARY(true),
+	/**
+	 * An assignment (=, +=, -=...). The data is the ordinal of the Operator, the children are the target
+	 * and the value
+	 */
+	ASSIGN(true),
+	/** A prefix ++ or --. The data is the ordinal of the Operator, the only child is the target */
+	PREFIX(true),
+	/** A postfix ++ or --. The data is the ordinal of the Operator, the only child is the target */
+	POSTFIX(true),
+	/** Property access (a.b). The data is the string index of the property name, the child is the target */
+	PROPERTY(true),
+	/** Array access (a[b]). No data, the children are the array and the index */
+	INDEX(true),
+	/**
+	 * A call. No data, the first child is the function that is called, the other children are arguments.
+	 * After checking, the symbol of a call of a method, getter or setter is the called member. Classes can't
+	 * extend each other, so that member is the only target the call can have.
+	 */
+	CALL(true),
+	/**
+	 * An object creation (new a.B(c)). The data is the string index of the (dotted) class name, the children
+	 * are the arguments of the constructor
+	 */
+	NEW(true),
+	/** An array literal. No data, the children are the elements */
+	ARRAY(true),
+	
+	/*
+	 * Others
+	 */
+	
+	/** The type of a declaration. The data is the string index of the (dotted) type name. No children */
+	TYPE(false);
+	
+	private final boolean expression;
+	
+	NodeType(boolean expression){
+		this.expression = expression;
+	}
+	
+	/**
+	 * @return true if nodes of this type are expressions (have a value), false if not
+	 */
+	public boolean isExpression() {
+		return expression;
+	}
+}
@@ -0,0 +1,407 @@
+package arrayscript.lang.executable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import arrayscript.lang.Operator;
+import arrayscript.lang.var.type.Type;
+
+/**
+ * A syntax tree of a code block or expression. To keep syntax trees compact and cheap to create, the nodes
+ * are not objects. Instead, every node is an index into the arrays of the tree and all properties of the
+ * nodes are stored in those arrays. The children of a node are stored as a linked list: every node knows
+ * its first child and its next sibling. The meaning of the data of a node depends on its NodeType.
+ * 
+ * Syntax trees are created by the parser with the add methods. They are not thread-safe while they are
+ * being created, but they can be read by multiple threads once they are finished.
+ * @author knokko
+ *
+ */
+public class SyntaxTree implements Executable {
+	
+	/**
+	 * The value of getFirstChild and getNextSibling if there is no such node
+	 */
+	public static final int NONE = -1;
+	
+	private static final NodeType[] NODE_TYPES = NodeType.values();
+	private static final Operator[] OPERATORS = Operator.values();
+	
+	private byte[] types;
+	private int[] data;
+	private int[] tokens;
+	private int[] firstChildren;
+	private int[] lastChildren;
+	private int[] nextSiblings;
+	private int size;
+	private int root;
+	
+	private Type[] valueTypes;
+	private Object[] symbols;
+	
+	private String[] strings;
+	private int stringCount;
+	private Map<String,Integer> stringIndices;
+	
+	private double[] numbers;
+	private int numberCount;
+	
+	/**
+	 * Creates an empty syntax tree with room for the given number of nodes. The tree will grow if more nodes
+	 * are added, but choosing a good capacity avoids copying. The number of source elements is a good
+	 * capacity because most source elements create at most 1 node.
+	 * @param capacity The expected number of nodes
+	 */
+	public SyntaxTree(int capacity) {
+		capacity = Math.max(capacity, 4);
+		types = new byte[capacity];
+		data = new int[capacity];
+		tokens = new int[capacity];
+		firstChildren = new int[capacity];
+		lastChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		strings = new String[8];
+		stringIndices = new HashMap<String,Integer>();
+		numbers = new double[4];
+	}
+	
+	/**
+	 * Adds a new node without children to this tree.
+	 * @param type The type of the new node
+	 * @param data The data of the new node, its meaning depends on the type
+	 * @param token The index of the first source element of the node, for error messages
+	 * @return The new node
+	 */
+	public int addNode(NodeType type, int data, int token) {
+		if (size == types.length) {
+			int newCapacity = Math.max(size * 2, 4);
+			types = Arrays.copyOf(types, newCapacity);
+			this.data = Arrays.copyOf(this.data, newCapacity);
+			tokens = Arrays.copyOf(tokens, newCapacity);
+			firstChildren = Arrays.copyOf(firstChildren, newCapacity);
+			lastChildren = Arrays.copyOf(lastChildren, newCapacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, newCapacity);
+			if (valueTypes != null) {
+				valueTypes = Arrays.copyOf(valueTypes, newCapacity);
+				symbols = Arrays.copyOf(symbols, newCapacity);
+			}
+		}
+		types[size] = (byte) type.ordinal();
+		this.data[size] = data;
+		tokens[size] = token;
+		firstChildren[size] = NONE;
+		lastChildren[size] = NONE;
+		nextSiblings[size] = NONE;
+		return size++;
+	}
+	
+	/**
+	 * Adds the given child as last child to the given parent. The child must not be reachable from another
+	 * parent. Its old sibling link (if any) is discarded.
+	 * @param parent The parent node
+	 * @param child The node to add as child
+	 */
+	public void addChild(int parent, int child) {
+		if (firstChildren[parent] == NONE) {
+			firstChildren[parent] = child;
+		} else {
+			nextSiblings[lastChildren[parent]] = child;
+		}
+		lastChildren[parent] = child;
+		nextSiblings[child] = NONE;
+	}
+	
+	/**
+	 * Adds the given string to the string pool of this tree, if it is not in the pool yet.
+	 * @param value The string to add
+	 * @return The string index of the given string
+	 */
+	public int addString(String value) {
+		Integer existing = stringIndices.get(value);
+		if (existing != null) {
+			return existing;
+		}
+		if (stringCount == strings.length) {
+			strings = Arrays.copyOf(strings, Math.max(stringCount * 2, 4));
+		}
+		strings[stringCount] = value;
+		stringIndices.put(value, stringCount);
+		return stringCount++;
+	}
+	
+	/**
+	 * Adds the given number to the number pool of this tree.
+	 * @param value The number to add
+	 * @return The number index of the given number
+	 */
+	public int addNumber(double value) {
+		if (numberCount == numbers.length) {
+			numbers = Arrays.copyOf(numbers, Math.max(numberCount * 2, 4));
+		}
+		numbers[numberCount] = value;
+		return numberCount++;
+	}
+	
+	/**
+	 * Changes the type and data of the given node, without changing its children.
+	 * @param node The node to change
+	 * @param type The new type of the node
+	 * @param data The new data of the node
+	 */
+	public void setNode(int node, NodeType type, int data) {
+		types[node] = (byte) type.ordinal();
+		this.data[node] = data;
+	}
+	
+	/**
+	 * Removes all children of the given node. The children will stay in the tree, but will no longer be
+	 * reachable from the given node.
+	 * @param node The node whose children should be removed
+	 */
+	public void removeChildren(int node) {
+		firstChildren[node] = NONE;
+		lastChildren[node] = NONE;
+	}
+	
+	/**
+	 * Replaces the given node by another node. The given node will get the type, data, token, children and
+	 * annotations of the replacement, so the parent of the given node will see the replacement. The
+	 * replacement node itself will no longer be reachable. This is used by the passes that rewrite trees.
+	 * @param node The node to replace
+	 * @param replacement The (unreachable) node to replace it with
+	 */
+	public void replace(int node, int replacement) {
+		types[node] = types[replacement];
+		data[node] = data[replacement];
+		tokens[node] = tokens[replacement];
+		firstChildren[node] = firstChildren[replacement];
+		lastChildren[node] = lastChildren[replacement];
+		if (valueTypes != null) {
+			valueTypes[node] = valueTypes[replacement];
+			symbols[node] = symbols[replacement];
+		}
+	}
+	
+	/**
+	 * Inserts a node as sibling right after another node.
+	 * @param parent The parent of the existing node
+	 * @param node The existing node
+	 * @param newNode The node to insert, which must not have a parent yet
+	 */
+	public void insertAfter(int parent, int node, int newNode) {
+		nextSiblings[newNode] = nextSiblings[node];
+		nextSiblings[node] = newNode;
+		if (lastChildren[parent] == node) {
+			lastChildren[parent] = newNode;
+		}
+	}
+	
+	/**
+	 * Sets the type of the value of the given expression node. This is done by the type checker.
+	 * @param node The expression node
+	 * @param type The type of the value of the expression
+	 */
+	public void setValueType(int node, Type type) {
+		ensureAnnotations();
+		valueTypes[node] = type;
+	}
+	
+	/**
+	 * Sets the symbol of the given node. The symbol is the thing that the node refers to after name
+	 * resolution, for instance the element that a NAME node refers to or the function that a CALL node
+	 * calls. Its class depends on the compiler stage that resolved it.
+	 * @param node The node
+	 * @param symbol The symbol the node refers to
+	 */
+	public void setSymbol(int node, Object symbol) {
+		ensureAnnotations();
+		symbols[node] = symbol;
+	}
+	
+	private void ensureAnnotations() {
+		if (valueTypes == null) {
+			valueTypes = new Type[types.length];
+			symbols = new Object[types.length];
+		}
+	}
+	
+	/**
+	 * @return The type of the value of the given expression node, or null if it hasn't been determined
+	 */
+	public Type getValueType(int node) {
+		return valueTypes != null ? valueTypes[node] : null;
+	}
+	
+	/**
+	 * @return The symbol the given node refers to, or null if it doesn't refer to anything (yet)
+	 */
+	public Object getSymbol(int node) {
+		return symbols != null ? symbols[node] : null;
+	}
+	
+	/**
+	 * Shrinks the arrays of this tree to the number of nodes and constants that are actually used. This
+	 * should be called when the parser has finished the tree.
+	 */
+	public void trim() {
+		types = Arrays.copyOf(types, size);
+		data = Arrays.copyOf(data, size);
+		tokens = Arrays.copyOf(tokens, size);
+		firstChildren = Arrays.copyOf(firstChildren, size);
+		lastChildren = Arrays.copyOf(lastChildren, size);
+		nextSiblings = Arrays.copyOf(nextSiblings, size);
+		if (valueTypes != null) {
+			valueTypes = Arrays.copyOf(valueTypes, size);
+			symbols = Arrays.copyOf(symbols, size);
+		}
+		strings = Arrays.copyOf(strings, stringCount);
+		numbers = Arrays.copyOf(numbers, numberCount);
+	}
+	
+	/**
+	 * Sets the root node of this tree. If this method is never called, the first node that was added will
+	 * be the root.
+	 * @param root The new root node
+	 */
+	public void setRoot(int root) {
+		this.root = root;
+	}
+	
+	/**
+	 * @return The root node of this tree
+	 */
+	public int getRoot() {
+		return root;
+	}
+	
+	/**
+	 * @return The number of nodes in this tree, including nodes that are no longer reachable
+	 */
+	public int getNodeCount() {
+		return size;
+	}
+	
+	public NodeType getType(int node) {
+		return NODE_TYPES[types[node]];
+	}
+	
+	public int getData(int node) {
+		return data[node];
+	}
+	
+	/**
+	 * @return The index of the first source element of the given node
+	 */
+	public int getToken(int node) {
+		return tokens[node];
+	}
+	
+	/**
+	 * @return The first child of the given node, or NONE if it doesn't have children
+	 */
+	public int getFirstChild(int node) {
+		return firstChildren[node];
+	}
+	
+	/**
+	 * @return The next sibling of the given node, or NONE if it is the last child of its parent
+	 */
+	public int getNextSibling(int node) {
+		return nextSiblings[node];
+	}
+	
+	public int getChildCount(int node) {
+		int count = 0;
+		for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * @return The child of the given node at the given index, or NONE if the node doesn't have that many
+	 * children
+	 */
+	public int getChild(int node, int index) {
+		int child = firstChildren[node];
+		for (int counter = 0; counter < index && child != NONE; counter++) {
+			child = nextSiblings[child];
+		}
+		return child;
+	}
+	
+	/**
+	 * @return The operator of the given UNARY, BINARY, ASSIGN, PREFIX or POSTFIX node
+	 */
+	public Operator getOperator(int node) {
+		return OPERATORS[data[node]];
+	}
+	
+	/**
+	 * @return The string that the data of the given node refers to (for NAME, STRING, PROPERTY, NEW,
+	 * DECLARATION and TYPE nodes)
+	 */
+	public String getString(int node) {
+		return strings[data[node]];
+	}
+	
+	/**
+	 * @return The number that the data of the given NUMBER node refers to
+	 */
+	public double getNumber(int node) {
+		return numbers[data[node]];
+	}
+	
+	public int getStringCount() {
+		return stringCount;
+	}
+	
+	public String getStringAt(int index) {
+		return strings[index];
+	}
+	
+	public int getNumberCount() {
+		return numberCount;
+	}
+	
+	public double getNumberAt(int index) {
+		return numbers[index];
+	}
+	
+	@Override
+	public String toString() {
+		if (size == 0) {
+			return "(empty)";
+		}
+		StringBuilder builder = new StringBuilder(size * 8);
+		append(builder, getRoot());
+		return builder.toString();
+	}
+	
+	/**
+	 * Appends the given node and its children to the builder as a lisp-like expression. This is meant for
+	 * debugging.
+	 */
+	private void append(StringBuilder builder, int node) {
+		builder.append('(');
+		NodeType type = getType(node);
+		builder.append(type);
+		if (type == NodeType.NUMBER) {
+			builder.append(' ').append(getNumber(node));
+		} else if (type == NodeType.BOOLEAN) {
+			builder.append(' ').append(data[node] != 0);
+		} else if (type == NodeType.STRING) {
+			builder.append(" '").append(getString(node)).append('\'');
+		} else if (type == NodeType.NAME || type == NodeType.PROPERTY || type == NodeType.NEW || type == NodeType.DECLARATION || type == NodeType.TYPE) {
+			builder.append(' ').append(getString(node));
+		} else if (type == NodeType.UNARY || type == NodeType.BINARY || type == NodeType.ASSIGN || type == NodeType.PREFIX || type == NodeType.POSTFIX) {
+			builder.append(' ').append(getOperator(node).getTokens());
+		}
+		for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+			builder.append(' ');
+			append(builder, child);
+		}
+		builder.append(')');
+	}
+}
@@ -0,0 +1,54 @@
+package arrayscript.lang.var.type;
+
+import arrayscript.lang.var.value.Value;
+import arrayscript.util.Checks;
+
+/**
+ * The type of variables whose values are instances of an ArrayScript class. Class types are nominal: two
+ * class types are equal if and only if they have the same qualified class name.
+ * @author knokko
+ *
+ */
+public class ClassType implements Type {
+	
+	private final String qualifiedName;
+	
+	/**
+	 * @param qualifiedName The name of the class, including the names of the namespaces it is in, separated
+	 * by dots
+	 */
+	public ClassType(String qualifiedName) {
+		Checks.notNull(qualifiedName);
+		this.qualifiedName = qualifiedName;
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ClassType && ((ClassType) other).qualifiedName.equals(qualifiedName);
+	}
+	
+	@Override
+	public int hashCode() {
+		return qualifiedName.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return qualifiedName;
+	}
+
+	@Override
+	public boolean canHaveValue(Value value) {
+		return false;
+	}
+
+	@Override
+	public boolean isPrimitive() {
+		return false;
+	}
+
+	@Override
+	public String getName() {
+		return qualifiedName;
+	}
+}
@@ -0,0 +1,54 @@
+package arrayscript.lang.var.type;
+
+import arrayscript.lang.var.value.Value;
+import arrayscript.util.Checks;
+
+/**
+ * The type of variables whose values are constants of an ArrayScript enum. Enum types are nominal: two enum
+ * types are equal if and only if they have the same qualified enum name.
+ * @author knokko
+ *
+ */
+public class EnumType implements Type {
+	
+	private final String qualifiedName;
+	
+	/**
+	 * @param qualifiedName The name of the enum, including the names of the namespaces it is in, separated
+	 * by dots
+	 */
+	public EnumType(String qualifiedName) {
+		Checks.notNull(qualifiedName);
+		this.qualifiedName = qualifiedName;
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof EnumType && ((EnumType) other).qualifiedName.equals(qualifiedName);
+	}
+	
+	@Override
+	public int hashCode() {
+		return qualifiedName.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return qualifiedName;
+	}
+
+	@Override
+	public boolean canHaveValue(Value value) {
+		return false;
+	}
+
+	@Override
+	public boolean isPrimitive() {
+		return false;
+	}
+
+	@Override
+	public String getName() {
+		return qualifiedName;
+	}
+}
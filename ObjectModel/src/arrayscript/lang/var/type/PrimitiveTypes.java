@@ -40,4 +40,15 @@ public class PrimitiveTypes {
 	public static Type getByName(String name) {
 		return NAME_MAP.get(name);
 	}
+	
+	/**
+	 * Checks whether the given type is a numeric type: number or one of the sized integer or floating point
+	 * types. Values of numeric types can be assigned to each other.
+	 * @param type The type to check
+	 * @return true if the given type is numeric, false if not
+	 */
+	public static boolean isNumeric(Type type) {
+		return type == NUMBER || type == INT8 || type == INT16 || type == INT32 || type == UINT8 
+				|| type == UINT16 || type == UINT32 || type == FLOAT32 || type == FLOAT64;
+	}
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package arrayscript.lang.var.type;
 
+import arrayscript.lang.var.value.ConstIntValue;
 import arrayscript.lang.var.value.Value;
 
 public class TypeInt32 implements Type {
@@ -8,8 +9,7 @@ public class TypeInt32 implements Type {
 
 	@Override
 	public boolean canHaveValue(Value value) {
-		// TODO Auto-generated method stub
-		return false;
+		return value instanceof ConstIntValue;
 	}
 
 	@Override
@@ -0,0 +1,39 @@
+package arrayscript.lang.var.value;
+
+/**
+ * A constant value of type number or float64.
+ * @author knokko
+ *
+ */
+public class ConstDoubleValue implements NumberValue {
+	
+	private final double value;
+	
+	public ConstDoubleValue(double value) {
+		this.value = value;
+	}
+	
+	@Override
+	public String toString() {
+		return Double.toString(value);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ConstDoubleValue && Double.compare(((ConstDoubleValue) other).value, value) == 0;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Double.hashCode(value);
+	}
+	
+	public double getValue() {
+		return value;
+	}
+	
+	@Override
+	public double getDoubleValue() {
+		return value;
+	}
+}
@@ -0,0 +1,39 @@
+package arrayscript.lang.var.value;
+
+/**
+ * A constant value of type float32.
+ * @author knokko
+ *
+ */
+public class ConstFloatValue implements NumberValue {
+	
+	private final float value;
+	
+	public ConstFloatValue(float value) {
+		this.value = value;
+	}
+	
+	@Override
+	public String toString() {
+		return Float.toString(value);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ConstFloatValue && Float.compare(((ConstFloatValue) other).value, value) == 0;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Float.hashCode(value);
+	}
+	
+	public float getValue() {
+		return value;
+	}
+	
+	@Override
+	public double getDoubleValue() {
+		return value;
+	}
+}
@@ -0,0 +1,40 @@
+package arrayscript.lang.var.value;
+
+/**
+ * A constant value of one of the signed integer types or of uint8 or uint16. All those values fit in a
+ * java int. Values of type uint32 are represented by ConstUIntValue instead.
+ * @author knokko
+ *
+ */
+public class ConstIntValue implements NumberValue {
+	
+	private final int value;
+	
+	public ConstIntValue(int value) {
+		this.value = value;
+	}
+	
+	@Override
+	public String toString() {
+		return Integer.toString(value);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ConstIntValue && ((ConstIntValue) other).value == value;
+	}
+	
+	@Override
+	public int hashCode() {
+		return value;
+	}
+	
+	public int getValue() {
+		return value;
+	}
+	
+	@Override
+	public double getDoubleValue() {
+		return value;
+	}
+}
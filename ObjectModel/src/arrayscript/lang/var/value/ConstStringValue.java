@@ -0,0 +1,32 @@
+package arrayscript.lang.var.value;
+
+import arrayscript.util.Checks;
+
+public class ConstStringValue implements StringValue {
+	
+	private final String value;
+	
+	public ConstStringValue(String value) {
+		Checks.notNull(value);
+		this.value = value;
+	}
+	
+	@Override
+	public String toString() {
+		return value;
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ConstStringValue && ((ConstStringValue) other).value.equals(value);
+	}
+	
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+	
+	public String getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,47 @@
+package arrayscript.lang.var.value;
+
+/**
+ * A constant value of type uint32. Java doesn't have unsigned ints, so the value is stored in a long that
+ * is always between 0 and 2^32 - 1.
+ * @author knokko
+ *
+ */
+public class ConstUIntValue implements NumberValue {
+	
+	private final long value;
+	
+	/**
+	 * @param value The value, which must be between 0 and 2^32 - 1
+	 * @throws IllegalArgumentException If the value is out of range
+	 */
+	public ConstUIntValue(long value) throws IllegalArgumentException {
+		if (value < 0 || value > 0xFFFFFFFFL) {
+			throw new IllegalArgumentException("The value " + value + " is not a valid uint32");
+		}
+		this.value = value;
+	}
+	
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ConstUIntValue && ((ConstUIntValue) other).value == value;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int) value;
+	}
+	
+	public long getValue() {
+		return value;
+	}
+	
+	@Override
+	public double getDoubleValue() {
+		return value;
+	}
+}
@@ -0,0 +1,14 @@
+package arrayscript.lang.var.value;
+
+/**
+ * A value of one of the numeric types (number, the sized integer types or the floating point types).
+ * @author knokko
+ *
+ */
+public interface NumberValue extends Value {
+	
+	/**
+	 * @return The value as javascript would see it (all javascript numbers are doubles)
+	 */
+	double getDoubleValue();
+}
@@ -0,0 +1,5 @@
+package arrayscript.lang.var.value;
+
+public interface StringValue extends Value {
+
+}
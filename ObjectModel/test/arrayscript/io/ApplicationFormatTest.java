@@ -0,0 +1,163 @@
+package arrayscript.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import arrayscript.lang.Application;
+import arrayscript.lang.element.Element;
+import arrayscript.lang.element.Namespace;
+import arrayscript.lang.element.Variable;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.ConstFloatValue;
+import arrayscript.lang.var.value.ConstIntValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.ConstUIntValue;
+
+/**
+ * Writes an application with ApplicationWriter, reads it back with ApplicationReader and compares the
+ * result with the original application. Then it checks that corrupted files (truncated files and files
+ * with huge counts) are rejected with an IOException instead of an allocation of the claimed size. Run the
+ * main method, it throws an AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class ApplicationFormatTest {
+	
+	public static void main(String[] args) throws IOException {
+		Application application = createApplication();
+		byte[] data = write(application);
+		
+		ApplicationReader reader = ApplicationReader.open(ByteBuffer.wrap(data));
+		try {
+			compare(application.getGlobalNamespace(), reader.readApplication().getGlobalNamespace(), "");
+			String[] expectedNames = {"", "math", "text", "math.vector"};
+			if (!Arrays.equals(reader.getNamespaceNames(), expectedNames)) {
+				throw new AssertionError("The namespace names are " + Arrays.toString(reader.getNamespaceNames()));
+			}
+			Namespace vector = reader.readNamespace("math.vector");
+			compare((Namespace) ((Namespace) application.getGlobalNamespace().getElements()[2]).getElements()[1], vector, "math.vector");
+			if (reader.readNamespace("math.matrix") != null) {
+				throw new AssertionError("The namespace math.matrix doesn't exist");
+			}
+		} finally {
+			reader.close();
+		}
+		
+		// Every truncated file must be rejected
+		int rejected = 0;
+		for (int length = 0; length < data.length; length++) {
+			try {
+				ApplicationReader truncated = ApplicationReader.open(ByteBuffer.wrap(data, 0, length).slice());
+				readAll(truncated.readApplication().getGlobalNamespace());
+			} catch (IOException ioex) {
+				rejected++;
+			} catch (UncheckedIOException ioex) {
+				rejected++;
+			}
+		}
+		if (rejected != data.length) {
+			throw new AssertionError("Only " + rejected + " of the " + data.length + " truncated files were rejected");
+		}
+		
+		// A string table that claims to have 2^31 - 1 strings
+		expectRejected(new byte[] {'A', 'R', 'S', 'M', 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7, 0}, "string count");
+		
+		// An empty string table followed by a section table that claims to have 2^21 sections
+		expectRejected(new byte[] {'A', 'R', 'S', 'M', 2, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1, 0, 0, 0}, "section count");
+		
+		// A global namespace that claims to have 2^21 elements
+		byte[] hugeNamespace = {'A', 'R', 'S', 'M', 2, 1, 0, 1, 0, 0, 3, (byte) 0x80, (byte) 0x80, 1};
+		ApplicationReader huge = ApplicationReader.open(ByteBuffer.wrap(hugeNamespace));
+		try {
+			huge.readApplication();
+			throw new AssertionError("The huge element count was not rejected");
+		} catch (IOException ioex) {
+			// This is expected
+		}
+		System.out.println("Checked the round trip and " + (rejected + 3) + " corrupted files");
+	}
+	
+	private static Application createApplication() {
+		Namespace vector = new Namespace("vector", new Element[] {
+				new Variable("dimensions", PrimitiveTypes.UINT8, new ConstIntValue(3)),
+				new Variable("epsilon", PrimitiveTypes.FLOAT32, new ConstFloatValue(0.001f))
+		});
+		Namespace math = new Namespace("math", new Element[] {
+				new Variable("pi", PrimitiveTypes.FLOAT64, new ConstDoubleValue(Math.PI)),
+				vector,
+				new Variable("maxUnsigned", PrimitiveTypes.UINT32, new ConstUIntValue(0xFFFFFFFFL))
+		});
+		Namespace text = new Namespace("text", new Element[] {
+				new Variable("greeting", PrimitiveTypes.STRING, new ConstStringValue("hello \u00e9\u4e16")),
+				new Variable("empty", PrimitiveTypes.STRING, new ConstStringValue(""))
+		});
+		return new Application(new Namespace(null, new Element[] {
+				new Variable("enabled", PrimitiveTypes.BOOLEAN, ConstBooleanValue.TRUE),
+				new Variable("minimum", PrimitiveTypes.INT32, new ConstIntValue(Integer.MIN_VALUE)),
+				math,
+				new Variable("uninitialized", PrimitiveTypes.INT16, null),
+				text
+		}));
+	}
+	
+	private static byte[] write(Application application) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ApplicationWriter.write(application, output);
+		return output.toByteArray();
+	}
+	
+	private static void compare(Namespace expected, Namespace actual, String name) {
+		Element[] expectedElements = expected.getElements();
+		Element[] actualElements = actual.getElements();
+		if (expectedElements.length != actualElements.length) {
+			throw new AssertionError("Namespace '" + name + "' has " + actualElements.length + " elements instead of " + expectedElements.length);
+		}
+		for (int index = 0; index < expectedElements.length; index++) {
+			Element expectedElement = expectedElements[index];
+			Element actualElement = actualElements[index];
+			String elementName = name.isEmpty() ? expectedElement.getName() : name + "." + expectedElement.getName();
+			if (!expectedElement.getName().equals(actualElement.getName())) {
+				throw new AssertionError("Expected " + elementName + ", but got " + actualElement.getName());
+			}
+			if (expectedElement instanceof Namespace) {
+				if (!(actualElement instanceof Namespace)) {
+					throw new AssertionError(elementName + " is no longer a namespace");
+				}
+				compare((Namespace) expectedElement, (Namespace) actualElement, elementName);
+			} else {
+				Variable expectedVariable = (Variable) expectedElement;
+				Variable actualVariable = (Variable) actualElement;
+				if (expectedVariable.getType() != actualVariable.getType()) {
+					throw new AssertionError(elementName + " has type " + actualVariable.getType().getName());
+				}
+				if (expectedVariable.hasDefaultValue() != actualVariable.hasDefaultValue() || (expectedVariable.hasDefaultValue()
+						&& !expectedVariable.getDefaultValue().equals(actualVariable.getDefaultValue()))) {
+					throw new AssertionError(elementName + " has value " + actualVariable.getDefaultValue() + " instead of "
+							+ expectedVariable.getDefaultValue());
+				}
+			}
+		}
+	}
+	
+	private static void readAll(Namespace namespace) {
+		for (Element element : namespace.getElements()) {
+			if (element instanceof Namespace) {
+				readAll((Namespace) element);
+			}
+		}
+	}
+	
+	private static void expectRejected(byte[] data, String description) {
+		try {
+			ApplicationReader.open(ByteBuffer.wrap(data));
+			throw new AssertionError("The file with an invalid " + description + " was not rejected");
+		} catch (IOException ioex) {
+			// This is expected
+		}
+	}
+}
@@ -217,9 +217,9 @@ abstract class AbstractNamespaceParser {
 		
 		// Breaking when we encounter the end is easier than a proper loop termination condition
 		while (true) {
-
+			
 			SourceElement first = reader.next();
-
+			
 			// End of file is reached before the closing curly bracket
 			if (first == null) {
 				
@@ -227,14 +227,14 @@ abstract class AbstractNamespaceParser {
 				endOfFileBeforeClosed();
 				return;
 			}
-
+			
 			if (first.isOperator()) {
-
+				
 				// The namespace is being closed
 				if (first.getOperator() == Operator.CLOSE_BLOCK) {
 					break;
 				}
-
+				
 				// No other operators are allowed at this position
 				else {
 					throw new ParsingException("Unexpected operator " + first.getOperator());
@@ -278,39 +278,40 @@ abstract class AbstractNamespaceParser {
 						throw new ParsingException("Expected '.' or ';', but found " + after);
 					}
 				}
+				addImport(importParts.toArray(new String[importParts.size()]));
 			} else if (first.isWord() || first.isKeyword()) {
 				
 				// first is also a part of the modifiers, so use HistorySourceFileReader to pass it along
 				ModResult foundModifiers = SmallParser.parseModifiers(new HistorySourceFileReader(reader, first));
 				Set<Modifier> modifiers = foundModifiers.getModifiers();
-
+				
 				// Now that we have had all modifiers, the next source element(s) must be the type
 				
 				// parseModifiers consumes an extra source element, so use HistorySourceFileReader to pass
 				// it along to the parseSomeType method
 				SmallParser.SomeType nextType = SmallParser.parseSomeType(new HistorySourceFileReader(reader, foundModifiers.getNext()));
-
+				
 				// Distinguish between element types (class, namespace...) and variable types
 				// (string,number...)
 				if (nextType.isElementType()) {
 					ElementType type = nextType.getElementType();
-
+					
 					if (type.needsName()) {
-
+						
 						// Observe that the name and opening curly bracket are read here
 						SourceElement nameElement = nextType.getNext();
-
+						
 						if (nameElement == null) {
 							throw new ParsingException(
 									"Name of " + type + " was expected, but end of file was reached");
 						}
-
+						
 						if (!nameElement.isWord()) {
 							throw new ParsingException("Name of " + type + " was expected, but found " + nameElement);
 						}
-
+						
 						String name = nameElement.getWord();
-
+						
 						// I hate switch
 						if (type == ElementTypes.CLASS) {
 							defineClass(reader, modifiers, name);
@@ -332,7 +333,7 @@ abstract class AbstractNamespaceParser {
 							throw new Error("It looks like I forgot element type " + type.getName());
 						}
 					} else {
-
+						
 						// Currently, constructor is the only element type that doesn't require a name
 						if (type == ElementTypes.CONSTRUCTOR) {
 							
@@ -351,14 +352,14 @@ abstract class AbstractNamespaceParser {
 						}
 					}
 				} else {
-
+					
 					// Read the name of the variable/function
 					SourceElement nameElement = nextType.getNext();
-
+					
 					// The name should be given and nothing else
 					if (nameElement.isWord()) {
 						String name = nameElement.getWord();
-
+						
 						// If a function is being declared, there will be brackets
 						// If not, there must be an '='
 						SourceElement maybeBracket = reader.next();
@@ -379,7 +380,7 @@ abstract class AbstractNamespaceParser {
 					}
 				}
 			} else {
-
+				
 				// Strings are not allowed at this position
 				throw new ParsingException("Unexpected string ('" + first.getStringContent() + "')");
 			}
@@ -2,9 +2,23 @@ package arrayscript.parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import arrayscript.lang.Application;
 import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.executable.AccessorInliner;
+import arrayscript.parser.executable.BodyPhase;
+import arrayscript.parser.executable.CheckResult;
+import arrayscript.parser.executable.ClassUnboxer;
+import arrayscript.parser.executable.ConstantFolder;
+import arrayscript.parser.executable.DefineInliner;
+import arrayscript.parser.executable.EnumInliner;
+import arrayscript.parser.executable.TreeShaker;
+import arrayscript.parser.library.LibraryReader;
+import arrayscript.parser.library.LibraryWriter;
+import arrayscript.parser.resolve.Program;
+import arrayscript.parser.resolve.SignatureResolver;
 import arrayscript.parser.source.reading.SourceFileReader;
 import arrayscript.parser.source.reading.SourceFilesReader;
 import arrayscript.parser.source.reading.SourceFolderReader;
@@ -21,26 +35,143 @@ public class ArrayScriptParser {
 	 * @throws ParsingException If the parsing failed
 	 */
 	public static Application parse(File sourcesDirectory) throws ParsingException {
+		return parse(sourcesDirectory, new ParserOptions());
+	}
+	
+	/**
+	 * Attempts to parse the source files located in the given directory, using the given options. If it
+	 * succeeds, an ASApplication instance will be returned that contains all data about the application. If
+	 * it fails, a ParsingException will be thrown that should contain the reason the parsing failed.
+	 * @param sourcesDirectory The directory where all source files should be in
+	 * @param options The parser options, including the library path
+	 * @return An instance of ASApplication representing the parsed source files
+	 * @throws ParsingException If the parsing failed
+	 */
+	public static Application parse(File sourcesDirectory, ParserOptions options) throws ParsingException {
+		CheckResult bodies = compile(sourcesDirectory, options);
+		
+		// TODO remove after testing
+		bodies.getProgram().getApp().printTest1(System.out);
+		return null;
+		// TODO remove until here
+		//return application.build();
+	}
+	
+	/**
+	 * Parses the source files in the given directory, checks their bodies and applies all passes that
+	 * rewrite the bodies (constant folding, inlining of define elements, unboxing of define classes,
+	 * inlining of accessors and tree shaking). The result is the input of the transpiler.
+	 * @param sourcesDirectory The directory where all source files should be in
+	 * @param options The parser options, including the library path and the selected main
+	 * @return The checked and rewritten bodies of the application, without the unreachable elements
+	 * @throws ParsingException If the parsing failed or the bodies contain errors
+	 */
+	public static CheckResult compile(File sourcesDirectory, ParserOptions options) throws ParsingException {
+		AppBuilder application = parseSources(sourcesDirectory, options);
+		CheckResult bodies = checkBodies(application, options);
+		bodies.throwIfFailed();
+		ConstantFolder folder = new ConstantFolder(bodies);
+		folder.foldInitializers();
+		new DefineInliner(bodies, folder).inlineAll();
+		new ClassUnboxer(bodies).unboxAll();
+		new EnumInliner(bodies).inlineAll();
+		new AccessorInliner(bodies).inlineAll();
+		bodies = new TreeShaker(bodies, options.getMainName()).shake();
+		return bodies;
+	}
+	
+	/**
+	 * Resolves the signatures of the elements of the given application and then parses and checks their
+	 * bodies (only the bodies that are reachable from the selected main if the options select a main). Lazy
+	 * namespaces are only materialized when they are needed.
+	 * @param application The application whose source files have been parsed
+	 * @param options The parser options, including the number of body threads and the selected main
+	 * @return The result of the body phase, containing the checked bodies and the errors in them
+	 * @throws ParsingException If a signature can't be resolved or the selected main doesn't exist
+	 */
+	public static CheckResult checkBodies(AppBuilder application, ParserOptions options) throws ParsingException {
+		Program program = SignatureResolver.resolve(application);
+		CheckResult result = BodyPhase.check(program, options);
+		
+		// The body checkers materialize (and thus resolve) lazy namespaces in an unpredictable order
+		SignatureResolver.sortDeclarations(program);
+		return result;
+	}
+	
+	/**
+	 * Loads all libraries of the given options and parses the declarations in the source files in the given
+	 * directory into a new AppBuilder.
+	 * @param sourcesDirectory The directory where all source files should be in
+	 * @param options The parser options, including the library path
+	 * @return The AppBuilder containing the elements of the libraries and source files
+	 * @throws ParsingException If the parsing failed or a library couldn't be loaded
+	 */
+	public static AppBuilder parseSources(File sourcesDirectory, ParserOptions options) throws ParsingException {
+		AppBuilder application = new AppBuilder();
+		for (File library : options.getLibraries()) {
+			try {
+				LibraryReader.load(library, application);
+			} catch (IOException ioex) {
+				throw new ParsingException("Couldn't load library " + library, ioex);
+			}
+		}
+		
 		SourceFilesReader sourceFiles = new SourceFolderReader(sourcesDirectory);
+		
+		// Only create threads when large source files should be split
+		ExecutorService splitExecutor = null;
+		if (options.getIntraFileThreads() > 1) {
+			splitExecutor = Executors.newFixedThreadPool(options.getIntraFileThreads());
+		}
 		try {
-			AppBuilder application = new AppBuilder();
+			if (options.isPipelined()) {
+				PipelinedParser.parse(sourceFiles, application, options, splitExecutor);
+				return application;
+			}
+			
 			SourceFileReader reader = sourceFiles.next();
 			while (reader != null) {
-				processSourceFile(reader, application);
+				if (splitExecutor != null) {
+					SplitFileParser.parse(reader, application, options, splitExecutor);
+				} else {
+					processSourceFile(reader, application, options);
+				}
 				reader = sourceFiles.next();
 			}
-			
-			// TODO remove after testing
-			application.printTest1(System.out);
-			return null;
-			// TODO remove until here
-			//return application.build();
+			return application;
 		} catch (IOException ioex) {
 			throw new ParsingException("An IO error occured", ioex);
+		} finally {
+			if (splitExecutor != null) {
+				splitExecutor.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Parses the source files in the given directory and compiles them into a library file that can be
+	 * added to the library path of other projects (with ParserOptions.addLibrary). Elements that were
+	 * loaded from the libraries of the given options will not be included in the new library.
+	 * @param sourcesDirectory The directory containing the source files of the library
+	 * @param output The file to write the library to, should end with ArrayScript.LIBRARY_FILE_NAME_END
+	 * @param includeBodies True to include the bodies and initial values of all elements, false to include
+	 * them only for define elements (which need them because their references will be replaced)
+	 * @param options The parser options, including the library path
+	 * @throws ParsingException If the parsing failed or the library couldn't be written
+	 */
+	public static void compileLibrary(File sourcesDirectory, File output, boolean includeBodies, ParserOptions options) throws ParsingException {
+		AppBuilder library = parseSources(sourcesDirectory, options);
+		
+		// The library file needs the complete content of all namespaces
+		library.materializeAll();
+		try {
+			LibraryWriter.write(library, output, includeBodies);
+		} catch (IOException ioex) {
+			throw new ParsingException("Couldn't write library " + output, ioex);
 		}
 	}
 	
-	private static void processSourceFile(SourceFileReader reader, AppBuilder app) throws ParsingException, IOException {
-		NamespaceParser.parseNamespace(reader, app, app.getGlobalNamespace());
+	private static void processSourceFile(SourceFileReader reader, AppBuilder app, ParserOptions options) throws ParsingException, IOException {
+		NamespaceParser.parseNamespace(reader, app, app.getGlobalNamespace(), options);
 	}
 }
\ No newline at end of file
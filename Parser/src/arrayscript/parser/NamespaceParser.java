@@ -1,17 +1,22 @@
 package arrayscript.parser;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import arrayscript.lang.Keyword;
 import arrayscript.lang.Modifier;
 import arrayscript.lang.Operator;
 import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.LazyNamespaceBody;
 import arrayscript.parser.builder.NamespaceBuilder;
 import arrayscript.parser.builder.param.ParamsBuilder;
 import arrayscript.parser.builder.var.type.TypeBuilder;
 import arrayscript.parser.builder.var.value.ValueBuilder;
 import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.source.SourceOperator;
+import arrayscript.parser.source.reading.ListSourceFileReader;
 import arrayscript.parser.source.reading.SourceFileReader;
 import arrayscript.parser.util.ParsingException;
 
@@ -35,16 +40,36 @@ public class NamespaceParser extends AbstractNamespaceParser {
 	 */
 	public static void parseNamespace(SourceFileReader reader, AppBuilder app, NamespaceBuilder namespace)
 			throws ParsingException, IOException {
-		NamespaceParser parser = new NamespaceParser(namespace, app);
+		parseNamespace(reader, app, namespace, new ParserOptions());
+	}
+	
+	/**
+	 * Does the same as parseNamespace(reader, app, namespace), but uses the given parser options. If lazy
+	 * namespace parsing is enabled in the options, the child namespaces that are encountered will not be
+	 * parsed right away, but added as lazy body to their namespace builder.
+	 * 
+	 * @param reader    The reader that should be used to read the content
+	 * @param app       The instance of the AppBuilder that is being used
+	 * @param namespace The namespace builder where all parsed content will be added
+	 *                  to
+	 * @param options   The options of the parser
+	 * @throws ParsingException If the provided source is not valid ArrayScript
+	 * @throws IOException      if the provided reader throws an IOException
+	 */
+	public static void parseNamespace(SourceFileReader reader, AppBuilder app, NamespaceBuilder namespace,
+			ParserOptions options) throws ParsingException, IOException {
+		NamespaceParser parser = new NamespaceParser(namespace, app, options);
 		parser.parse(reader, app);
 	}
 	
 	private final NamespaceBuilder namespace;
 	private final AppBuilder app;
+	private final ParserOptions options;
 	
-	private NamespaceParser(NamespaceBuilder namespace, AppBuilder app) {
+	private NamespaceParser(NamespaceBuilder namespace, AppBuilder app, ParserOptions options) {
 		this.namespace = namespace;
 		this.app = app;
+		this.options = options;
 	}
 
 	@Override
@@ -73,7 +98,26 @@ public class NamespaceParser extends AbstractNamespaceParser {
 	@Override
 	protected void defineEnum(SourceFileReader reader, Set<Modifier> modifiers, String name)
 			throws IOException, ParsingException {
-		throw new ParsingException("Enums will be added in a later version");
+		assumeOperator(reader.next(), Operator.OPEN_BLOCK);
+		
+		// The constants are separated by commas and the last one is followed by '}'
+		List<String> constants = new ArrayList<String>();
+		while (true) {
+			SourceElement constant = reader.next();
+			if (constant == null) {
+				throw new ParsingException("End of file was reached before enum " + name + " was closed");
+			}
+			if (!constant.isWord()) {
+				throw new ParsingException("Expected the name of a constant of enum " + name + ", but found " + constant);
+			}
+			constants.add(constant.getWord());
+			SourceElement next = reader.next();
+			if (next != null && next.isOperator() && next.getOperator() == Operator.CLOSE_BLOCK) {
+				break;
+			}
+			assumeOperator(next, Operator.NEXT);
+		}
+		namespace.createEnum(name, modifiers, constants);
 	}
 
 	@Override
@@ -122,7 +166,31 @@ public class NamespaceParser extends AbstractNamespaceParser {
 	protected void defineNamespace(SourceFileReader reader, Set<Modifier> modifiers, String name)
 			throws IOException, ParsingException {
 		assumeOperator(reader.next(), Operator.OPEN_BLOCK);
-		parseNamespace(reader, app, namespace.createNamespace(name, modifiers));
+		NamespaceBuilder child = namespace.createNamespace(name, modifiers);
+		if (options.isLazyNamespaces()) {
+			
+			// Only read the source elements for now, but keep the closing '}' for the parser
+			List<SourceElement> body = SmallParser.readBlock(reader);
+			body.add(SourceOperator.getInstance(Operator.CLOSE_BLOCK));
+			
+			// Inits and mains must be registered to the application right away, so parse those eagerly
+			if (containsEntryPoint(body)) {
+				parseNamespace(new ListSourceFileReader(body), app, child, options);
+			} else {
+				child.addLazyBody(new LazyBody(body, app, options));
+			}
+		} else {
+			parseNamespace(reader, app, child, options);
+		}
+	}
+	
+	private static boolean containsEntryPoint(List<SourceElement> body) {
+		for (SourceElement element : body) {
+			if (element.isKeyword() && (element.getKeyword() == Keyword.INIT || element.getKeyword() == Keyword.MAIN)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
@@ -154,4 +222,26 @@ public class NamespaceParser extends AbstractNamespaceParser {
 	protected void addImport(String[] imported) throws ParsingException {
 		namespace.addImport(imported);
 	}
-}
\ No newline at end of file
+	
+	private static class LazyBody implements LazyNamespaceBody {
+		
+		private final List<SourceElement> body;
+		private final AppBuilder app;
+		private final ParserOptions options;
+		
+		private LazyBody(List<SourceElement> body, AppBuilder app, ParserOptions options) {
+			this.body = body;
+			this.app = app;
+			this.options = options;
+		}
+
+		@Override
+		public void parseInto(NamespaceBuilder namespace) throws ParsingException {
+			try {
+				parseNamespace(new ListSourceFileReader(body), app, namespace, options);
+			} catch (IOException ioex) {
+				throw new Error("List source file readers shouldn't throw IOExceptions", ioex);
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package arrayscript.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import arrayscript.lang.ArrayScript;
+import arrayscript.util.Checks;
+
+/**
+ * The options that can be given to the ArrayScriptParser. A new instance will have the default options, which
+ * can be changed with the setters and add methods.
+ * @author knokko
+ *
+ */
+public class ParserOptions {
+	
+	private final List<File> libraries;
+	
+	private boolean lazyNamespaces;
+	private int intraFileThreads;
+	
+	private boolean pipelined;
+	private int lexerThreads;
+	private int parserThreads;
+	private int pipelineQueueSize;
+	
+	private int bodyThreads;
+	private String mainName;
+	
+	public ParserOptions() {
+		libraries = new ArrayList<File>(2);
+		intraFileThreads = 1;
+		lexerThreads = 1;
+		parserThreads = 1;
+		pipelineQueueSize = 16;
+		bodyThreads = Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Adds a precompiled library (as created by ArrayScriptParser.compileLibrary) to the library path. The
+	 * elements of the library will be available to the source files, but the source files of the library
+	 * will not need to be parsed. If the given file is a directory, all library files directly in that
+	 * directory will be added (in alphabetical order).
+	 * @param library The library file, or a directory containing library files
+	 * @throws IllegalArgumentException If the given file doesn't exist
+	 */
+	public void addLibrary(File library) throws IllegalArgumentException {
+		Checks.notNull(library, "library");
+		if (library.isDirectory()) {
+			File[] children = library.listFiles();
+			Arrays.sort(children);
+			for (File child : children) {
+				if (child.isFile() && child.getName().endsWith(ArrayScript.LIBRARY_FILE_NAME_END)) {
+					libraries.add(child);
+				}
+			}
+		} else if (library.isFile()) {
+			libraries.add(library);
+		} else {
+			throw new IllegalArgumentException("The library " + library + " doesn't exist");
+		}
+	}
+	
+	/**
+	 * @return An unmodifiable view of the library files that should be loaded before the source files are
+	 * parsed, in the order they should be loaded
+	 */
+	public List<File> getLibraries(){
+		return Collections.unmodifiableList(libraries);
+	}
+	
+	/**
+	 * Enables or disables lazy namespace parsing. When enabled, the parser will only store the source
+	 * elements of (non-global) namespaces during the first pass. The content of such a namespace will be
+	 * parsed the first time an element of the namespace is looked up. Namespaces that contain inits or
+	 * mains will still be parsed right away because those need to be registered to the application. This
+	 * is disabled by default.
+	 * @param lazyNamespaces true to enable lazy namespace parsing, false to disable it
+	 */
+	public void setLazyNamespaces(boolean lazyNamespaces) {
+		this.lazyNamespaces = lazyNamespaces;
+	}
+	
+	/**
+	 * @return true if lazy namespace parsing is enabled, false if not
+	 */
+	public boolean isLazyNamespaces() {
+		return lazyNamespaces;
+	}
+	
+	/**
+	 * Sets the number of threads that can be used to parse a single source file. If this is larger than 1,
+	 * large source files will be split at the boundaries of their top-level declarations and the parts will
+	 * be parsed concurrently. The results will be merged in source order, so the result is the same as when
+	 * the file would have been parsed by a single thread. The default value is 1, which disables splitting.
+	 * @param threads The number of threads to use per source file, at least 1
+	 * @throws IllegalArgumentException If threads is smaller than 1
+	 */
+	public void setIntraFileThreads(int threads) throws IllegalArgumentException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least 1 thread is needed, but got " + threads);
+		}
+		this.intraFileThreads = threads;
+	}
+	
+	/**
+	 * @return The number of threads that can be used to parse a single source file
+	 */
+	public int getIntraFileThreads() {
+		return intraFileThreads;
+	}
+	
+	/**
+	 * Enables or disables the parsing pipeline. When enabled, the source files will be read and split into
+	 * source elements by the lexer threads, which will pass them to the parser threads through a bounded
+	 * queue. This allows reading files and parsing them at the same time. The results of the parser threads
+	 * will be merged in the order the source files were found, so the result doesn't depend on the
+	 * scheduling of the threads. This is disabled by default.
+	 * @param pipelined true to enable the pipeline, false to disable it
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+	
+	/**
+	 * @return true if the parsing pipeline is enabled, false if not
+	 */
+	public boolean isPipelined() {
+		return pipelined;
+	}
+	
+	/**
+	 * Sets the number of threads that will read and lex source files when the pipeline is enabled. The
+	 * default value is 1.
+	 * @param threads The number of lexer threads, at least 1
+	 * @throws IllegalArgumentException If threads is smaller than 1
+	 */
+	public void setLexerThreads(int threads) throws IllegalArgumentException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least 1 thread is needed, but got " + threads);
+		}
+		this.lexerThreads = threads;
+	}
+	
+	/**
+	 * @return The number of threads that will read and lex source files when the pipeline is enabled
+	 */
+	public int getLexerThreads() {
+		return lexerThreads;
+	}
+	
+	/**
+	 * Sets the number of threads that will parse the lexed source files when the pipeline is enabled. The
+	 * default value is 1.
+	 * @param threads The number of parser threads, at least 1
+	 * @throws IllegalArgumentException If threads is smaller than 1
+	 */
+	public void setParserThreads(int threads) throws IllegalArgumentException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least 1 thread is needed, but got " + threads);
+		}
+		this.parserThreads = threads;
+	}
+	
+	/**
+	 * @return The number of threads that will parse the lexed source files when the pipeline is enabled
+	 */
+	public int getParserThreads() {
+		return parserThreads;
+	}
+	
+	/**
+	 * Sets the maximum number of lexed source files that can wait for a parser thread. When the queue is
+	 * full, the lexer threads will wait until a parser thread takes a file from it. This limits the amount
+	 * of memory that is used when the lexer threads are faster than the parser threads. The default value
+	 * is 16.
+	 * @param size The capacity of the queue between the lexer threads and parser threads, at least 1
+	 * @throws IllegalArgumentException If size is smaller than 1
+	 */
+	public void setPipelineQueueSize(int size) throws IllegalArgumentException {
+		if (size < 1) {
+			throw new IllegalArgumentException("The queue size must be at least 1, but got " + size);
+		}
+		this.pipelineQueueSize = size;
+	}
+	
+	/**
+	 * @return The capacity of the queue between the lexer threads and the parser threads
+	 */
+	public int getPipelineQueueSize() {
+		return pipelineQueueSize;
+	}
+	
+	/**
+	 * Sets the number of threads that will parse and check the bodies of functions, methods, constructors,
+	 * getters, setters, inits and mains and the initial values of variables. The bodies are checked on a
+	 * work-stealing pool, but the errors are always reported in the same order. The default value is the
+	 * number of available processors.
+	 * @param threads The number of body threads, at least 1
+	 * @throws IllegalArgumentException If threads is smaller than 1
+	 */
+	public void setBodyThreads(int threads) throws IllegalArgumentException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least 1 thread is needed, but got " + threads);
+		}
+		this.bodyThreads = threads;
+	}
+	
+	/**
+	 * @return The number of threads that will parse and check bodies
+	 */
+	public int getBodyThreads() {
+		return bodyThreads;
+	}
+	
+	/**
+	 * Selects the main that will be built. If a main is selected, only the bodies that are reachable from
+	 * that main and the inits will be parsed and checked. If no main is selected, all bodies will be parsed
+	 * and checked. No main is selected by default.
+	 * @param mainName The name of the main to build, or null to build everything
+	 */
+	public void setMainName(String mainName) {
+		this.mainName = mainName;
+	}
+	
+	/**
+	 * @return The name of the selected main, or null if no main is selected
+	 */
+	public String getMainName() {
+		return mainName;
+	}
+}
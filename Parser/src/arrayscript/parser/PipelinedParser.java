@@ -0,0 +1,284 @@
+package arrayscript.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.source.reading.SourceFileReader;
+import arrayscript.parser.source.reading.SourceFilesReader;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Parses source files in a pipeline with 2 stages. The lexer threads read the source files and convert them
+ * to lists of source elements, which will be put in a bounded queue. The parser threads take those lists
+ * from the queue and parse them into temporary app builders. When all files have been parsed, the temporary
+ * app builders will be merged into the real app builder in the order the source files were found.
+ * @author knokko
+ *
+ */
+class PipelinedParser {
+	
+	/**
+	 * Marks the end of the queue, every parser thread will stop when it takes this from the queue
+	 */
+	private static final LexedFile END = new LexedFile(-1, null);
+	
+	/**
+	 * The number of milliseconds a lexer waits for space in the queue before it checks whether the parsers
+	 * are still running
+	 */
+	private static final long OFFER_TIMEOUT = 100;
+	
+	/**
+	 * Reads all source files of the given source files reader and parses them into the given app builder,
+	 * using the lexer threads, parser threads and queue size of the given options.
+	 * @param sourceFiles The reader for the source files
+	 * @param app The app builder to add the content of the source files to
+	 * @param options The parser options
+	 * @param splitExecutor The executor to split large files with, or null if files shouldn't be split
+	 * @throws IOException If an IO error occurs while reading the source files
+	 * @throws ParsingException If a source file is not valid ArrayScript
+	 */
+	static void parse(SourceFilesReader sourceFiles, AppBuilder app, ParserOptions options, ExecutorService splitExecutor) throws IOException, ParsingException {
+		PipelinedParser pipeline = new PipelinedParser(sourceFiles, options, splitExecutor);
+		pipeline.run();
+		pipeline.mergeInto(app);
+	}
+	
+	private final SourceFilesReader sourceFiles;
+	private final ParserOptions options;
+	private final ExecutorService splitExecutor;
+	
+	private final BlockingQueue<LexedFile> queue;
+	private final AtomicInteger activeLexers;
+	private final AtomicInteger activeParsers;
+	
+	/**
+	 * Becomes true when all parser threads have stopped (or the pipeline was interrupted), after which the
+	 * lexers stop as well instead of waiting forever for space in the queue
+	 */
+	private volatile boolean aborted;
+	
+	/**
+	 * The results of the files, in the order the files were found. The elements are the AppBuilder or the
+	 * Throwable that was thrown while reading or parsing the file.
+	 */
+	private final List<Object> results;
+	
+	private IOException filesError;
+	
+	private PipelinedParser(SourceFilesReader sourceFiles, ParserOptions options, ExecutorService splitExecutor) {
+		this.sourceFiles = sourceFiles;
+		this.options = options;
+		this.splitExecutor = splitExecutor;
+		this.queue = new ArrayBlockingQueue<LexedFile>(options.getPipelineQueueSize());
+		this.activeLexers = new AtomicInteger(options.getLexerThreads());
+		this.activeParsers = new AtomicInteger(options.getParserThreads());
+		this.results = new ArrayList<Object>();
+	}
+	
+	private void run() throws ParsingException {
+		ExecutorService lexers = Executors.newFixedThreadPool(options.getLexerThreads());
+		ExecutorService parsers = Executors.newFixedThreadPool(options.getParserThreads());
+		for (int counter = 0; counter < options.getLexerThreads(); counter++) {
+			lexers.execute(new Lexer());
+		}
+		for (int counter = 0; counter < options.getParserThreads(); counter++) {
+			parsers.execute(new Parser());
+		}
+		lexers.shutdown();
+		parsers.shutdown();
+		try {
+			lexers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ex) {
+			aborted = true;
+			lexers.shutdownNow();
+			parsers.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new ParsingException("Interrupted while waiting for the parser pipeline", ex);
+		}
+	}
+	
+	private void mergeInto(AppBuilder app) throws IOException, ParsingException {
+		
+		// Report the first problem in file order, so that the result doesn't depend on the scheduling
+		for (Object result : results) {
+			if (result instanceof AppBuilder) {
+				app.merge((AppBuilder) result);
+			} else if (result instanceof IOException) {
+				throw (IOException) result;
+			} else if (result instanceof ParsingException) {
+				throw (ParsingException) result;
+			} else if (result instanceof RuntimeException) {
+				throw (RuntimeException) result;
+			} else if (result instanceof Error) {
+				throw (Error) result;
+			} else {
+				throw new ParsingException("The pipeline didn't finish parsing all source files", (Throwable) result);
+			}
+		}
+		if (filesError != null) {
+			throw filesError;
+		}
+	}
+	
+	/**
+	 * Finds the next source file and reserves a place for its result.
+	 * @return The next source file, or null if there are no source files left (or finding them failed)
+	 */
+	private synchronized IndexedReader nextFile() {
+		if (filesError != null) {
+			return null;
+		}
+		try {
+			SourceFileReader reader = sourceFiles.next();
+			if (reader == null) {
+				return null;
+			}
+			
+			// The result will be set when the file has been parsed
+			results.add(null);
+			return new IndexedReader(results.size() - 1, reader);
+		} catch (IOException ioex) {
+			filesError = ioex;
+			return null;
+		}
+	}
+	
+	private synchronized void setResult(int index, Object result) {
+		results.set(index, result);
+	}
+	
+	/**
+	 * Puts the given file in the queue, unless the pipeline is aborted before there is space in the queue.
+	 * @return true if the file was put in the queue, false if the pipeline was aborted
+	 */
+	private boolean put(LexedFile file) throws InterruptedException {
+		while (!aborted) {
+			if (queue.offer(file, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static class IndexedReader {
+		
+		private final int index;
+		private final SourceFileReader reader;
+		
+		private IndexedReader(int index, SourceFileReader reader) {
+			this.index = index;
+			this.reader = reader;
+		}
+	}
+	
+	private static class LexedFile {
+		
+		private final int index;
+		private final List<SourceElement> elements;
+		
+		private LexedFile(int index, List<SourceElement> elements) {
+			this.index = index;
+			this.elements = elements;
+		}
+	}
+	
+	private class Lexer implements Runnable {
+		
+		@Override
+		public void run() {
+			try {
+				IndexedReader next = nextFile();
+				while (next != null) {
+					try {
+						if (!put(new LexedFile(next.index, SplitFileParser.readAll(next.reader)))) {
+							return;
+						}
+					} catch (InterruptedException ex) {
+						throw ex;
+					} catch (Throwable ex) {
+						
+						// Errors must be recorded as well, because the file would remain unparsed otherwise
+						setResult(next.index, ex);
+					}
+					next = nextFile();
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			} finally {
+				
+				// The last lexer to finish tells all parsers to stop
+				if (activeLexers.decrementAndGet() == 0) {
+					for (int counter = 0; counter < options.getParserThreads(); counter++) {
+						try {
+							if (!put(END)) {
+								return;
+							}
+						} catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private class Parser implements Runnable {
+		
+		@Override
+		public void run() {
+			try {
+				parseFiles();
+			} finally {
+				
+				// The lexers shouldn't wait for space in the queue when nobody takes from it anymore
+				if (activeParsers.decrementAndGet() == 0) {
+					aborted = true;
+				}
+			}
+		}
+		
+		private void parseFiles() {
+			
+			// Looping until we find the end is easier than a loop condition
+			while (true) {
+				LexedFile file;
+				try {
+					file = queue.take();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (file == END) {
+					return;
+				}
+				
+				AppBuilder part = new AppBuilder();
+				try {
+					if (splitExecutor != null) {
+						SplitFileParser.parse(file.elements, part, options, splitExecutor);
+					} else {
+						SplitFileParser.parsePart(file.elements, 0, file.elements.size(), part, options);
+					}
+					setResult(file.index, part);
+				} catch (Throwable ex) {
+					
+					// Errors (like a StackOverflowError for deeply nested code) must be recorded as well,
+					// because this thread would die and the lexers would wait forever otherwise
+					setResult(file.index, ex);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,290 @@
+package arrayscript.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import arrayscript.lang.Operator;
+import arrayscript.lang.element.ElementTypes;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.source.SourceOperator;
+import arrayscript.parser.source.reading.ListSourceFileReader;
+import arrayscript.parser.source.reading.SourceFileReader;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Parses (large) source files by splitting them at the boundaries of the members of their namespaces
+ * (including the global namespace) and parsing the parts concurrently. Every part is parsed into its own temporary AppBuilder and the temporary
+ * app builders are merged into the real one in source order afterwards, so the result is the same as when
+ * the file would have been parsed by a single NamespaceParser.
+ * @author knokko
+ *
+ */
+class SplitFileParser {
+	
+	/**
+	 * Files with less source elements than this are not worth splitting
+	 */
+	static final int MIN_SPLIT_SIZE = 5000;
+	
+	/**
+	 * The number of parts per thread, more parts give better load balancing when some declarations are much
+	 * larger than others
+	 */
+	private static final int PARTS_PER_THREAD = 4;
+	
+	/**
+	 * Reads all source elements of the given reader and parses them into the global namespace of the given
+	 * app builder. If there are enough source elements, they will be split into parts that will be parsed
+	 * by the given executor.
+	 * @param reader The reader of the source file to parse
+	 * @param app The app builder to add the content of the source file to
+	 * @param options The parser options, the number of intra file threads determines the number of parts
+	 * @param executor The executor that should parse the parts
+	 * @throws IOException If the reader throws an IOException
+	 * @throws ParsingException If the source file is not valid ArrayScript
+	 */
+	static void parse(SourceFileReader reader, AppBuilder app, ParserOptions options, ExecutorService executor) throws IOException, ParsingException {
+		
+		// The elements need to be scanned before they can be split
+		parse(readAll(reader), app, options, executor);
+	}
+	
+	/**
+	 * Reads all remaining source elements of the given reader into a list.
+	 * @param reader The reader to read the source elements from
+	 * @return A list containing all remaining source elements of the reader, in order
+	 * @throws IOException If the reader throws an IOException
+	 * @throws ParsingException If the reader throws a ParsingException
+	 */
+	static List<SourceElement> readAll(SourceFileReader reader) throws IOException, ParsingException {
+		List<SourceElement> elements = new ArrayList<SourceElement>(MIN_SPLIT_SIZE);
+		SourceElement next = reader.next();
+		while (next != null) {
+			elements.add(next);
+			next = reader.next();
+		}
+		return elements;
+	}
+	
+	/**
+	 * Does the same as parse(reader, app, options, executor), but uses source elements that have been read
+	 * already.
+	 * @param elements All source elements of the source file to parse
+	 * @param app The app builder to add the content of the source file to
+	 * @param options The parser options, the number of intra file threads determines the number of parts
+	 * @param executor The executor that should parse the parts
+	 * @throws ParsingException If the source file is not valid ArrayScript
+	 */
+	static void parse(List<SourceElement> elements, AppBuilder app, ParserOptions options, ExecutorService executor) throws ParsingException {
+		List<Part> parts = split(elements, options.getIntraFileThreads() * PARTS_PER_THREAD);
+		
+		// Don't bother the executor if there is only 1 part
+		if (parts.size() == 1) {
+			parsePart(elements, 0, elements.size(), app, options);
+			return;
+		}
+		
+		List<Future<AppBuilder>> futures = new ArrayList<Future<AppBuilder>>(parts.size());
+		for (Part part : parts) {
+			futures.add(executor.submit(new PartParser(part, options)));
+		}
+		
+		// Merge the parts in source order, so that the result doesn't depend on the scheduling
+		for (Future<AppBuilder> future : futures) {
+			app.merge(getPart(future));
+		}
+	}
+	
+	/**
+	 * Parses the source elements from startIndex (inclusive) to endIndex (exclusive) into the global
+	 * namespace of the given app builder.
+	 */
+	static void parsePart(List<SourceElement> elements, int startIndex, int endIndex, AppBuilder app, ParserOptions options) throws ParsingException {
+		try {
+			NamespaceParser.parseNamespace(new ListSourceFileReader(elements, startIndex, endIndex), app, app.getGlobalNamespace(), options);
+		} catch (IOException ioex) {
+			throw new Error("List source file readers shouldn't throw IOExceptions", ioex);
+		}
+	}
+	
+	private static AppBuilder getPart(Future<AppBuilder> part) throws ParsingException {
+		try {
+			return part.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ParsingException("Interrupted while parsing a part of a source file", ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof ParsingException) {
+				throw (ParsingException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new ParsingException("Failed to parse a part of a source file", cause);
+			}
+		}
+	}
+	
+	/**
+	 * Splits the given source elements into at most the given number of parts of roughly equal size.
+	 * Elements can only be split right after a ';' or '}' that ends a declaration at the top level or
+	 * directly inside a (nested) namespace block, because that is where a member of a namespace ends. A '}'
+	 * that is followed by an operator is not used because it may be a part of an initial value.
+	 * 
+	 * When the elements are split inside namespace blocks, the parts are made valid on their own: the
+	 * part before the split gets a '}' for every namespace that is still open and the part after the split
+	 * starts with the headers (modifiers, 'namespace', name and '{') of those namespaces. The merge of the
+	 * app builders of the parts merges the namespaces with the same name again.
+	 * @param elements The source elements of the file
+	 * @param maxParts The maximum number of parts
+	 * @return The parts, in source order
+	 */
+	static List<Part> split(List<SourceElement> elements, int maxParts) {
+		int size = elements.size();
+		List<Part> parts = new ArrayList<Part>(Math.max(maxParts, 1));
+		if (size < MIN_SPLIT_SIZE || maxParts < 2) {
+			parts.add(new Part(elements, 0, size));
+			return parts;
+		}
+		
+		int targetPartSize = size / maxParts;
+		int partStart = 0;
+		
+		// The headers of the namespaces that were open when the current part started
+		List<SourceElement> partHeaders = new ArrayList<SourceElement>(0);
+		
+		// The start index of the header of every open block, or -1 for blocks that are not namespaces
+		List<Integer> openBlocks = new ArrayList<Integer>();
+		
+		// The number of open blocks that are not namespaces, splitting is only possible if this is 0
+		int otherDepth = 0;
+		
+		for (int index = 0; index < size; index++) {
+			SourceElement element = elements.get(index);
+			if (!element.isOperator()) {
+				continue;
+			}
+			
+			Operator operator = element.getOperator();
+			boolean isEnd = false;
+			if (operator == Operator.OPEN_BLOCK) {
+				int headerStart = findNamespaceHeader(elements, index);
+				openBlocks.add(headerStart);
+				if (headerStart == -1) {
+					otherDepth++;
+				}
+			} else if (operator == Operator.CLOSE_BLOCK) {
+				
+				// The global namespace is never closed, so this source file is invalid
+				// Just don't split it and let the parser report the problem
+				if (openBlocks.isEmpty()) {
+					parts.clear();
+					parts.add(new Part(elements, 0, size));
+					return parts;
+				}
+				if (openBlocks.remove(openBlocks.size() - 1) == -1) {
+					otherDepth--;
+				}
+				isEnd = otherDepth == 0 && (index + 1 == size || !elements.get(index + 1).isOperator());
+			} else if (operator == Operator.SEMICOLON) {
+				isEnd = otherDepth == 0;
+			}
+			
+			if (isEnd && index + 1 - partStart >= targetPartSize && index + 1 < size) {
+				parts.add(createPart(elements, partStart, index + 1, partHeaders, openBlocks.size()));
+				partStart = index + 1;
+				partHeaders = new ArrayList<SourceElement>();
+				for (int openIndex = 0; openIndex < openBlocks.size(); openIndex++) {
+					int headerStart = openBlocks.get(openIndex);
+					int headerEnd = headerStart;
+					while (!elements.get(headerEnd).isOperator()) {
+						headerEnd++;
+					}
+					partHeaders.addAll(elements.subList(headerStart, headerEnd + 1));
+				}
+			}
+		}
+		parts.add(createPart(elements, partStart, size, partHeaders, 0));
+		return parts;
+	}
+	
+	/**
+	 * Checks whether the '{' at the given index opens a namespace block.
+	 * @return The index of the first modifier (or the 'namespace' keyword if there are no modifiers) of the
+	 * namespace, or -1 if the '{' doesn't open a namespace
+	 */
+	private static int findNamespaceHeader(List<SourceElement> elements, int openIndex) {
+		if (openIndex < 2 || !elements.get(openIndex - 1).isWord()) {
+			return -1;
+		}
+		SourceElement type = elements.get(openIndex - 2);
+		if (!type.isKeyword() || !type.getKeyword().isElementType() || type.getKeyword().getElementType() != ElementTypes.NAMESPACE) {
+			return -1;
+		}
+		int headerStart = openIndex - 2;
+		while (headerStart > 0 && elements.get(headerStart - 1).isKeyword() && elements.get(headerStart - 1).getKeyword().isModifier()) {
+			headerStart--;
+		}
+		return headerStart;
+	}
+	
+	/**
+	 * Creates the part from startIndex to endIndex, re-opening the namespaces with the given headers before
+	 * the part and closing the given number of namespaces after the part. The original list is used if no
+	 * namespaces need to be re-opened or closed.
+	 */
+	private static Part createPart(List<SourceElement> elements, int startIndex, int endIndex, List<SourceElement> headers, int closeCount) {
+		if (headers.isEmpty() && closeCount == 0) {
+			return new Part(elements, startIndex, endIndex);
+		}
+		List<SourceElement> partElements = new ArrayList<SourceElement>(headers.size() + endIndex - startIndex + closeCount);
+		partElements.addAll(headers);
+		partElements.addAll(elements.subList(startIndex, endIndex));
+		for (int counter = 0; counter < closeCount; counter++) {
+			partElements.add(SourceOperator.getInstance(Operator.CLOSE_BLOCK));
+		}
+		return new Part(partElements, 0, partElements.size());
+	}
+	
+	/**
+	 * A range of a list of source elements that can be parsed on its own
+	 */
+	static class Part {
+		
+		private final List<SourceElement> elements;
+		private final int startIndex;
+		private final int endIndex;
+		
+		private Part(List<SourceElement> elements, int startIndex, int endIndex) {
+			this.elements = elements;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+		}
+	}
+	
+	private static class PartParser implements Callable<AppBuilder> {
+		
+		private final Part part;
+		private final ParserOptions options;
+		
+		private PartParser(Part part, ParserOptions options) {
+			this.part = part;
+			this.options = options;
+		}
+		
+		@Override
+		public AppBuilder call() throws ParsingException {
+			AppBuilder app = new AppBuilder();
+			parsePart(part.elements, part.startIndex, part.endIndex, app, options);
+			return app;
+		}
+	}
+}
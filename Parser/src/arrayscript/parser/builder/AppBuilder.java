@@ -4,6 +4,8 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 import arrayscript.lang.Application;
 import arrayscript.parser.util.ParsingException;
@@ -15,6 +17,9 @@ public class AppBuilder {
 	private final Collection<InitBuilder> inits;
 	private final Collection<MainBuilder> mains;
 	
+	private final Set<ElementBuilder> externalElements;
+	private final Set<ElementBuilder> incompleteElements;
+	
 	public AppBuilder() {
 		try {
 			globalNamespace = new NamespaceBuilder(null, Collections.emptySet(), null);
@@ -23,6 +28,8 @@ public class AppBuilder {
 		}
 		inits = new ArrayList<InitBuilder>(200);
 		mains = new ArrayList<MainBuilder>(1);
+		externalElements = Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>());
+		incompleteElements = Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>());
 	}
 	
 	public Application build() {
@@ -33,6 +40,42 @@ public class AppBuilder {
 		return globalNamespace;
 	}
 	
+	/**
+	 * Moves the content of the given (temporary) application builder into this application builder. The
+	 * global namespace of the given builder will be merged into the global namespace of this builder and its
+	 * inits and mains will be registered to this builder, in the order they were registered to the given
+	 * builder. The given application builder should not be used after this method has been called.
+	 * @param part The application builder that contains a part of this application
+	 * @throws ParsingException If an element, init or main of the given builder conflicts with one of this
+	 * builder
+	 */
+	public void merge(AppBuilder part) throws ParsingException {
+		globalNamespace.mergeFrom(part.globalNamespace);
+		for (InitBuilder init : part.inits) {
+			registerInit(init);
+		}
+		for (MainBuilder main : part.mains) {
+			registerMain(main);
+		}
+	}
+	
+	/**
+	 * Parses the lazy bodies of all namespaces of this application. This should be called before the
+	 * complete application is needed.
+	 * @throws ParsingException If one of the lazy bodies is not valid ArrayScript
+	 */
+	public void materializeAll() throws ParsingException {
+		globalNamespace.materializeAll();
+	}
+	
+	/**
+	 * Sets the listener that will be notified when a lazy namespace of this application is materialized.
+	 * @param listener The listener, or null to stop notifying
+	 */
+	public void setMaterializeListener(MaterializeListener listener) {
+		globalNamespace.setMaterializeListener(listener);
+	}
+	
 	/**
 	 * Registers an init to this application. All inits must be registered here to make sure they will be
 	 * executed exactly once before the application starts. Multiple inits with the same name are not allowed.
@@ -70,6 +113,83 @@ public class AppBuilder {
 		mains.add(main);
 	}
 	
+	/**
+	 * Unregisters the given main. This is used by the TreeShaker to remove the mains that were not selected.
+	 * The main should be removed from its namespace as well.
+	 * @param main The main to unregister
+	 * @throws IllegalArgumentException If the main is not registered to this application
+	 */
+	public void unregisterMain(MainBuilder main) throws IllegalArgumentException {
+		if (!mains.remove(main)) {
+			throw new IllegalArgumentException("The main " + main.getName() + " is not registered");
+		}
+	}
+	
+	/**
+	 * @return An unmodifiable view of all registered inits, in the order they were registered
+	 */
+	public Collection<InitBuilder> getInits(){
+		return Collections.unmodifiableCollection(inits);
+	}
+	
+	/**
+	 * @return An unmodifiable view of all registered mains, in the order they were registered
+	 */
+	public Collection<MainBuilder> getMains(){
+		return Collections.unmodifiableCollection(mains);
+	}
+	
+	/**
+	 * @param name The name of the main
+	 * @return The registered main with the given name, or null if there is no such main
+	 */
+	public MainBuilder getMain(String name) {
+		for (MainBuilder main : mains) {
+			if (main.getName().equals(name)) {
+				return main;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Marks the given element as external. External elements are elements that were loaded from a
+	 * precompiled library rather than parsed from the source files of this application. They can be used by
+	 * the application, but they are not a part of it: the library is responsible for them.
+	 * @param element The element that was loaded from a library
+	 */
+	public void markExternal(ElementBuilder element) {
+		externalElements.add(element);
+	}
+	
+	/**
+	 * Checks whether the given element was loaded from a precompiled library.
+	 * @param element The element to check
+	 * @return true if the element was marked external, false if it is a part of this application
+	 */
+	public boolean isExternal(ElementBuilder element) {
+		return externalElements.contains(element);
+	}
+	
+	/**
+	 * Marks the given element as incomplete. Incomplete elements were loaded from a library that doesn't
+	 * contain their body or initial value. The application can use their signature, but they can't be
+	 * transpiled.
+	 * @param element The element whose body or initial value is missing
+	 */
+	public void markIncomplete(ElementBuilder element) {
+		incompleteElements.add(element);
+	}
+	
+	/**
+	 * Checks whether the body or initial value of the given element is missing.
+	 * @param element The element to check
+	 * @return true if the element was marked incomplete, false otherwise
+	 */
+	public boolean isIncomplete(ElementBuilder element) {
+		return incompleteElements.contains(element);
+	}
+	
 	public void printTest1(PrintStream out) {
 		out.println("AppBuilder");
 		out.println("Mains:");
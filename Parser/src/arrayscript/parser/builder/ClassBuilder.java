@@ -3,12 +3,14 @@ package arrayscript.parser.builder;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import arrayscript.lang.Modifier;
 import arrayscript.lang.element.Element;
 import arrayscript.lang.element.ElementTypes;
+import arrayscript.lang.var.type.ClassType;
 import arrayscript.parser.builder.param.ParamsBuilder;
 import arrayscript.parser.builder.var.type.TypeBuilder;
 import arrayscript.parser.builder.var.value.ValueBuilder;
@@ -19,7 +21,7 @@ import arrayscript.parser.util.ParsingException;
 public class ClassBuilder implements ElementBuilder {
 	
 	private final String name;
-	private final NamespaceBuilder namespace;
+	private NamespaceBuilder namespace;
 	private final Set<Modifier> modifiers;
 	
 	private final Collection<ImportBuilder> imports;
@@ -32,6 +34,8 @@ public class ClassBuilder implements ElementBuilder {
 	private final Collection<SetterBuilder> setters;
 	private final Collection<ConstructorBuilder> constructors;
 	
+	private ClassType type;
+	
 	public ClassBuilder(String name, NamespaceBuilder namespace, Set<Modifier> modifiers) throws ParsingException {
 		this.name = name;
 		this.namespace = namespace;
@@ -67,6 +71,14 @@ public class ClassBuilder implements ElementBuilder {
 	public String getName() {
 		return name;
 	}
+	
+	/**
+	 * Moves this element to the given namespace. This is used when the content of a temporary namespace
+	 * is merged into the real namespace, see NamespaceBuilder.mergeFrom.
+	 */
+	void setNamespace(NamespaceBuilder namespace) {
+		this.namespace = namespace;
+	}
 
 	@Override
 	public Element build() {
@@ -78,6 +90,124 @@ public class ClassBuilder implements ElementBuilder {
 		return modifiers;
 	}
 	
+	/**
+	 * @return The namespace this class was defined in
+	 */
+	public NamespaceBuilder getNamespace() {
+		return namespace;
+	}
+	
+	/**
+	 * @return The qualified name of the namespace of this class, followed by a dot and the name of this class
+	 * (unless this class is defined in the global namespace)
+	 */
+	public String getQualifiedName() {
+		if (namespace.isGlobal()) {
+			return name;
+		} else {
+			return namespace.getQualifiedName() + "." + name;
+		}
+	}
+	
+	/**
+	 * @return The type of instances of this class
+	 */
+	public synchronized ClassType getType() {
+		if (type == null) {
+			type = new ClassType(getQualifiedName());
+		}
+		return type;
+	}
+	
+	/**
+	 * @return The property with the given name, or null if this class doesn't have such a property
+	 */
+	public PropertyBuilder getProperty(String name) {
+		for (PropertyBuilder property : properties) {
+			if (property.getName().equals(name)) {
+				return property;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return An unmodifiable view of the properties of this class, in the order they were added
+	 */
+	public Collection<PropertyBuilder> getProperties(){
+		return Collections.unmodifiableCollection(properties);
+	}
+	
+	/**
+	 * @return The class variable with the given name, or null if this class doesn't have such a variable
+	 */
+	public VariableBuilder getVariable(String name) {
+		for (VariableBuilder variable : variables) {
+			if (variable.getName().equals(name)) {
+				return variable;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The getter for the property with the given name, or null if there is no such getter
+	 */
+	public GetterBuilder getGetter(String propertyName) {
+		for (GetterBuilder getter : getters) {
+			if (getter.getPropertyName().equals(propertyName)) {
+				return getter;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The setter for the property with the given name, or null if there is no such setter
+	 */
+	public SetterBuilder getSetter(String propertyName) {
+		for (SetterBuilder setter : setters) {
+			if (setter.getPropertyName().equals(propertyName)) {
+				return setter;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return A (possibly empty) list of all methods with the given name, in the order they were added
+	 */
+	public List<MethodBuilder> getMethods(String name){
+		List<MethodBuilder> result = new ArrayList<MethodBuilder>(1);
+		for (MethodBuilder method : methods) {
+			if (method.getName().equals(name)) {
+				result.add(method);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return A (possibly empty) list of all (static) functions with the given name, in the order they were
+	 * added
+	 */
+	public List<FunctionBuilder> getFunctions(String name){
+		List<FunctionBuilder> result = new ArrayList<FunctionBuilder>(1);
+		for (FunctionBuilder function : functions) {
+			if (function.getName().equals(name)) {
+				result.add(function);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return An unmodifiable view of the constructors of this class, in the order they were added
+	 */
+	public Collection<ConstructorBuilder> getConstructors(){
+		return Collections.unmodifiableCollection(constructors);
+	}
+	
 	/**
 	 * Attempts to add a function to this class. If the function is added successfully, this method will
 	 * return silently. If not, a ParsingException will be thrown.
@@ -177,6 +307,11 @@ public class ClassBuilder implements ElementBuilder {
 			}
 		}
 		
+		// Instances of define classes are replaced by their only property
+		if (this.modifiers.contains(Modifier.DEFINE) && !properties.isEmpty()) {
+			throw new ParsingException("The define class " + this.name + " can have at most 1 property");
+		}
+		
 		PropertyBuilder prop;
 		if (defaultValue != null) {
 			prop = new PropertyBuilder(name, type, modifiers, defaultValue);
@@ -258,6 +393,11 @@ public class ClassBuilder implements ElementBuilder {
 	
 	private void addSetter(SetterBuilder setter) throws ParsingException {
 		
+		// The instances of define classes are values, so they can't be modified
+		if (modifiers.contains(Modifier.DEFINE)) {
+			throw new ParsingException("The define class " + name + " can't have setters");
+		}
+		
 		// At most 1 setter per property
 		for (SetterBuilder current : setters) {
 			if (current.getName().equals(setter.getName())) {
@@ -319,6 +459,40 @@ public class ClassBuilder implements ElementBuilder {
 		imports.add(newImport);
 	}
 	
+	/**
+	 * Removes the given element from this class. This is used by the passes that replace all references to
+	 * an element, after which the element itself is no longer needed, and by the TreeShaker, which removes
+	 * the elements that are not reachable. Properties can't be removed because they determine the layout of
+	 * the instances of this class.
+	 * @param element The class variable, function, method, getter, setter or constructor to remove
+	 * @throws IllegalArgumentException If the element is a property or not an element of this class
+	 */
+	public void removeElement(ElementBuilder element) throws IllegalArgumentException {
+		if (element instanceof PropertyBuilder || !elements.remove(element)) {
+			throw new IllegalArgumentException(element + " is not a removable element of " + this);
+		}
+		variables.remove(element);
+		functions.remove(element);
+		methods.remove(element);
+		getters.remove(element);
+		setters.remove(element);
+		constructors.remove(element);
+	}
+	
+	/**
+	 * @return An unmodifiable view of all elements of this class, in the order they were added
+	 */
+	public Collection<ElementBuilder> getElements(){
+		return Collections.unmodifiableCollection(elements);
+	}
+	
+	/**
+	 * @return An unmodifiable view of all imports of this class
+	 */
+	public Collection<ImportBuilder> getImports(){
+		return Collections.unmodifiableCollection(imports);
+	}
+	
 	public void printTest1(PrintStream out, int indentLevel) {
 		out.println();
 		/*
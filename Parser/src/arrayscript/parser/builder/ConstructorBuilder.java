@@ -15,6 +15,7 @@ public class ConstructorBuilder implements ElementBuilder {
 	private final Set<Modifier> modifiers;
 	private final ParamsBuilder params;
 	private final List<SourceElement> head;
+	private final ExecutableBuilder headExecutable;
 	private final ExecutableBuilder body;
 	
 	public ConstructorBuilder(Set<Modifier> modifiers, ParamsBuilder parameters, List<SourceElement> head, ExecutableBuilder body) {
@@ -25,6 +26,7 @@ public class ConstructorBuilder implements ElementBuilder {
 		this.modifiers = modifiers;
 		this.params = parameters;
 		this.head = head;
+		this.headExecutable = new ExecutableBuilder(head);
 		this.body = body;
 	}
 
@@ -51,6 +53,13 @@ public class ConstructorBuilder implements ElementBuilder {
 		return head;
 	}
 	
+	/**
+	 * @return The head of this constructor as executable, so that it can be parsed like the body
+	 */
+	public ExecutableBuilder getHeadExecutable() {
+		return headExecutable;
+	}
+	
 	public ExecutableBuilder getBody() {
 		return body;
 	}
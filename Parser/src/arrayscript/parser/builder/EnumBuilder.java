@@ -0,0 +1,136 @@
+package arrayscript.parser.builder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import arrayscript.lang.Modifier;
+import arrayscript.lang.element.Element;
+import arrayscript.lang.element.ElementTypes;
+import arrayscript.lang.var.type.EnumType;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * The builder of an enum. An enum has a fixed list of constants, and every constant knows its position in
+ * that list (its ordinal).
+ * @author knokko
+ *
+ */
+public class EnumBuilder implements ElementBuilder {
+	
+	private final String name;
+	private NamespaceBuilder namespace;
+	private final Set<Modifier> modifiers;
+	
+	private final List<EnumConstantBuilder> constants;
+	
+	private EnumType type;
+	
+	/**
+	 * @param name The name of the enum
+	 * @param namespace The namespace the enum is defined in
+	 * @param modifiers The modifiers of the enum
+	 * @param constantNames The names of the constants of the enum, in the order they were declared
+	 * @throws ParsingException If the enum can't have one of the modifiers, or if two constants have the
+	 * same name
+	 */
+	public EnumBuilder(String name, NamespaceBuilder namespace, Set<Modifier> modifiers, List<String> constantNames) throws ParsingException {
+		for (Modifier modifier : modifiers) {
+			if (!ElementTypes.ENUM.canHave(modifier)) {
+				throw new ParsingException("Enums can't have the " + modifier + " modifier");
+			}
+		}
+		this.name = name;
+		this.namespace = namespace;
+		this.modifiers = modifiers;
+		this.constants = new ArrayList<EnumConstantBuilder>(constantNames.size());
+		for (String constantName : constantNames) {
+			if (getConstant(constantName) != null) {
+				throw new ParsingException("Two constants of enum " + name + " have the same name " + constantName);
+			}
+			constants.add(new EnumConstantBuilder(this, constantName, constants.size()));
+		}
+	}
+	
+	@Override
+	public String toString() {
+		if (namespace.isGlobal()) {
+			return "enum " + name;
+		} else {
+			return "enum " + namespace + "." + name;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Moves this element to the given namespace. This is used when the content of a temporary namespace
+	 * is merged into the real namespace, see NamespaceBuilder.mergeFrom.
+	 */
+	void setNamespace(NamespaceBuilder namespace) {
+		this.namespace = namespace;
+	}
+	
+	/**
+	 * @return The namespace this enum was defined in
+	 */
+	public NamespaceBuilder getNamespace() {
+		return namespace;
+	}
+	
+	public Set<Modifier> getModifiers(){
+		return modifiers;
+	}
+	
+	/**
+	 * @return The qualified name of the namespace of this enum, followed by a dot and the name of this enum
+	 * (unless this enum is defined in the global namespace)
+	 */
+	public String getQualifiedName() {
+		if (namespace.isGlobal()) {
+			return name;
+		} else {
+			return namespace.getQualifiedName() + "." + name;
+		}
+	}
+	
+	/**
+	 * @return The type of the constants of this enum
+	 */
+	public synchronized EnumType getType() {
+		if (type == null) {
+			type = new EnumType(getQualifiedName());
+		}
+		return type;
+	}
+	
+	/**
+	 * @return The constants of this enum, ordered by their ordinal
+	 */
+	public List<EnumConstantBuilder> getConstants(){
+		return Collections.unmodifiableList(constants);
+	}
+	
+	/**
+	 * @return The constant of this enum with the given name, or null if this enum doesn't have such a
+	 * constant
+	 */
+	public EnumConstantBuilder getConstant(String name) {
+		for (EnumConstantBuilder constant : constants) {
+			if (constant.getName().equals(name)) {
+				return constant;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Element build() {
+		// TODO Auto-generated method stub
+		return null;
+	}
+}
@@ -0,0 +1,51 @@
+package arrayscript.parser.builder;
+
+import arrayscript.lang.element.Element;
+
+/**
+ * A constant of an enum. Enum constants are created by their EnumBuilder.
+ * @author knokko
+ *
+ */
+public class EnumConstantBuilder implements ElementBuilder {
+	
+	private final EnumBuilder owner;
+	private final String name;
+	private final int ordinal;
+	
+	EnumConstantBuilder(EnumBuilder owner, String name, int ordinal) {
+		this.owner = owner;
+		this.name = name;
+		this.ordinal = ordinal;
+	}
+	
+	@Override
+	public String toString() {
+		return owner.getQualifiedName() + "." + name;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return The enum this constant belongs to
+	 */
+	public EnumBuilder getOwner() {
+		return owner;
+	}
+	
+	/**
+	 * @return The position of this constant in the list of constants of its enum, starting at 0
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+
+	@Override
+	public Element build() {
+		// TODO Auto-generated method stub
+		return null;
+	}
+}
@@ -47,6 +47,10 @@ public class FunctionBuilder implements ElementBuilder {
 		return modifiers;
 	}
 	
+	public boolean hasReturnType() {
+		return returnType != null;
+	}
+	
 	public TypeBuilder getReturnType() {
 		if (returnType == null) {
 			throw new UnsupportedOperationException("This function doesn't have a return type");
@@ -63,6 +63,13 @@ public class GetterBuilder implements ElementBuilder {
 		return body != null;
 	}
 	
+	public ExecutableBuilder getBody() {
+		if (body == null) {
+			throw new UnsupportedOperationException("Getter " + propertyName + " doesn't have a custom body");
+		}
+		return body;
+	}
+	
 	public boolean isImplicit() {
 		return modifiers.contains(Modifier.IMPLICIT);
 	}
@@ -29,6 +29,26 @@ public class ImportBuilder {
 		return target;
 	}
 	
+	/**
+	 * @return true if the target of this import has been resolved already
+	 */
+	public boolean isResolved() {
+		return target != null;
+	}
+	
+	/**
+	 * Sets the target of this import. This should be done once, before the bodies are checked.
+	 * @param target The element this import refers to
+	 * @throws IllegalStateException If the target has been resolved already
+	 */
+	public void resolve(ElementBuilder target) throws IllegalStateException {
+		Checks.notNull(target);
+		if (this.target != null) {
+			throw new IllegalStateException("Target has already been resolved");
+		}
+		this.target = target;
+	}
+	
 	/**
 	 * Gets the name of this import. The name of the import is the last part of the import, which is how
 	 * imports are referred to in the source code.
@@ -37,4 +57,11 @@ public class ImportBuilder {
 	public String getName() {
 		return parts[parts.length - 1];
 	}
+	
+	/**
+	 * @return All parts of this import, the last part is the name of the import
+	 */
+	public String[] getParts() {
+		return parts;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package arrayscript.parser.builder;
+
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * A part of the content of a namespace that has been read, but not yet parsed. Lazy namespace bodies are
+ * added to namespace builders when lazy namespace parsing is enabled and will be parsed the first time the
+ * content of the namespace is needed.
+ * @author knokko
+ *
+ */
+public interface LazyNamespaceBody {
+	
+	/**
+	 * Parses this body and adds its content to the given namespace. This will be called at most once.
+	 * @param namespace The namespace builder this body belongs to
+	 * @throws ParsingException If this body is not valid ArrayScript
+	 */
+	void parseInto(NamespaceBuilder namespace) throws ParsingException;
+}
@@ -9,7 +9,7 @@ import arrayscript.parser.util.ParsingException;
 
 public class MainBuilder implements ElementBuilder {
 	
-	private final NamespaceBuilder namespace;
+	private NamespaceBuilder namespace;
 	private final String name;
 	
 	private final ExecutableBuilder body;
@@ -30,6 +30,25 @@ public class MainBuilder implements ElementBuilder {
 	public String getName() {
 		return name;
 	}
+	
+	/**
+	 * Moves this element to the given namespace. This is used when the content of a temporary namespace
+	 * is merged into the real namespace, see NamespaceBuilder.mergeFrom.
+	 */
+	void setNamespace(NamespaceBuilder namespace) {
+		this.namespace = namespace;
+	}
+
+	/**
+	 * @return The namespace this element was defined in
+	 */
+	public NamespaceBuilder getNamespace() {
+		return namespace;
+	}
+	
+	public ExecutableBuilder getBody() {
+		return body;
+	}
 
 	@Override
 	public Element build() {
@@ -0,0 +1,22 @@
+package arrayscript.parser.builder;
+
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Is notified when a lazy namespace has been materialized. The SignatureResolver uses this to resolve the
+ * signatures of namespaces that are only materialized after the signatures of the rest of the application
+ * have been resolved.
+ * @author knokko
+ *
+ */
+public interface MaterializeListener {
+	
+	/**
+	 * Is called after the lazy bodies of the given namespace have been parsed, but before other threads can
+	 * use the namespace without waiting. This method is called without holding the lock of the namespace,
+	 * so it can materialize other namespaces. It can be called more than once for the same namespace.
+	 * @param namespace The namespace that has been materialized
+	 * @throws ParsingException If the content of the namespace is invalid
+	 */
+	void materialized(NamespaceBuilder namespace) throws ParsingException;
+}
@@ -3,6 +3,7 @@ package arrayscript.parser.builder;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -29,11 +30,20 @@ public class NamespaceBuilder implements ElementBuilder {
 	
 	private final Collection<NamespaceBuilder> namespaces;
 	private final Collection<ClassBuilder> classes;
+	private final Collection<EnumBuilder> enums;
 	private final Collection<VariableBuilder> variables;
 	private final Collection<FunctionBuilder> functions;
 	private final Collection<InitBuilder> inits;
 	private final Collection<MainBuilder> mains;
 	
+	private final List<LazyNamespaceBody> lazyBodies;
+	private volatile boolean materialized;
+	
+	/**
+	 * The listener that is notified when namespaces are materialized, only used by the global namespace
+	 */
+	private volatile MaterializeListener materializeListener;
+	
 	/**
 	 * Constructs a new empty namespace with the given name and parent. If both name and parent are null,
 	 * this namespace will consider itself the global namespace.
@@ -57,10 +67,13 @@ public class NamespaceBuilder implements ElementBuilder {
 		this.elements = new ArrayList<ElementBuilder>(30);
 		this.namespaces = new ArrayList<NamespaceBuilder>();
 		this.classes = new ArrayList<ClassBuilder>();
+		this.enums = new ArrayList<EnumBuilder>(0);
 		this.variables = new ArrayList<VariableBuilder>();
 		this.functions = new ArrayList<FunctionBuilder>();
 		this.inits = new ArrayList<InitBuilder>(1);
 		this.mains = new ArrayList<MainBuilder>(0);
+		this.lazyBodies = new ArrayList<LazyNamespaceBody>(0);
+		this.materialized = true;
 	}
 	
 	@Override
@@ -87,6 +100,31 @@ public class NamespaceBuilder implements ElementBuilder {
 		return name;
 	}
 	
+	public Set<Modifier> getModifiers(){
+		return modifiers;
+	}
+	
+	/**
+	 * @return The names of the parent namespaces and this namespace, separated by dots. The qualified name
+	 * of the global namespace is the empty string.
+	 */
+	public String getQualifiedName() {
+		if (parent == null) {
+			return "";
+		} else if (parent.isGlobal()) {
+			return name;
+		} else {
+			return parent.getQualifiedName() + "." + name;
+		}
+	}
+	
+	/**
+	 * @return The namespace this namespace was declared in, or null if this is the global namespace
+	 */
+	public NamespaceBuilder getParent() {
+		return parent;
+	}
+	
 	/**
 	 * If this namespace does not contain an element with the given name, a new namespace will be added to
 	 * this namespace and returned. If there already exists a namespace with the given name, it will be
@@ -99,13 +137,13 @@ public class NamespaceBuilder implements ElementBuilder {
 	public NamespaceBuilder createNamespace(String name, Set<Modifier> modifiers) throws ParsingException {
 		
 		// If there is already a namespace with the given name, let it be expanded
-		NamespaceBuilder namespace = getNamespace(name);
+		NamespaceBuilder namespace = findNamespace(name);
 		if (namespace != null) {
 			return namespace;
 		}
 		
 		// If there is another type of element with the same name, forbid the operation
-		if (hasElement(name)) {
+		if (containsElement(name)) {
 			throw new ParsingException("Duplicated element '" + name + "' in namespace " + this);
 		}
 		
@@ -128,7 +166,7 @@ public class NamespaceBuilder implements ElementBuilder {
 	public ClassBuilder createClass(String name, Set<Modifier> modifiers) throws ParsingException {
 		
 		// Expanding classes is not allowed, so no other element with the same name may exist
-		if (hasElement(name)) {
+		if (containsElement(name)) {
 			throw new ParsingException("Multiple elements with name '" + name + "' in namespace " + this);
 		}
 		
@@ -138,6 +176,27 @@ public class NamespaceBuilder implements ElementBuilder {
 		return classBuilder;
 	}
 	
+	/**
+	 * Adds an enum with the given name, modifiers and constants to this namespace. If this namespace already
+	 * has an element with the given name, a ParsingException will be thrown.
+	 * @param name The name of the enum that should be created
+	 * @param modifiers The modifiers of the enum that should be created
+	 * @param constantNames The names of the constants of the enum, in the order they were declared
+	 * @return The enum builder of the new enum
+	 * @throws ParsingException If this namespace already has an element with the given name, or if the
+	 * enum itself is invalid
+	 */
+	public EnumBuilder createEnum(String name, Set<Modifier> modifiers, List<String> constantNames) throws ParsingException {
+		if (containsElement(name)) {
+			throw new ParsingException("Multiple elements with name '" + name + "' in namespace " + this);
+		}
+		
+		EnumBuilder enumBuilder = new EnumBuilder(name, this, modifiers, constantNames);
+		elements.add(enumBuilder);
+		enums.add(enumBuilder);
+		return enumBuilder;
+	}
+	
 	/**
 	 * Adds a variable with the given name, type and initial value to this namespace. The variable builder
 	 * for the new variable will be returned if the variable was added successfully. If this namespace has
@@ -154,7 +213,7 @@ public class NamespaceBuilder implements ElementBuilder {
 	public VariableBuilder createVariable(String name, TypeBuilder type, Set<Modifier> modifiers, ValueBuilder value) throws ParsingException {
 		
 		// I don't want multiple elements with the same name
-		if (hasElement(name)) {
+		if (containsElement(name)) {
 			throw new ParsingException("Multiple elements with name '" + name + "' in namespace " + this);
 		}
 		
@@ -270,18 +329,181 @@ public class NamespaceBuilder implements ElementBuilder {
 		return modifiers.contains(Modifier.OPEN);
 	}
 	
-	public boolean hasElement(String name) {
-		for (ElementBuilder element : elements) {
+	/**
+	 * Moves all imports and elements of the given namespace into this namespace, in the order they were
+	 * added to the given namespace. Child namespaces will be merged into the child namespaces of this
+	 * namespace with the same name (or new ones if there are none). The same checks will be done as when the
+	 * elements would have been added to this namespace directly, so a ParsingException will be thrown if
+	 * an element conflicts with an element of this namespace. The given namespace should not be used after
+	 * this method has been called. Note that the inits and mains of the given namespace will NOT be
+	 * registered to the app builder, use AppBuilder.merge for that.
+	 * @param source The (temporary) namespace to move the content from
+	 * @throws ParsingException If an element of the given namespace conflicts with an element of this one
+	 */
+	public void mergeFrom(NamespaceBuilder source) throws ParsingException {
+		for (ImportBuilder sourceImport : source.imports) {
+			addImport(sourceImport.getParts());
+		}
+		
+		for (ElementBuilder element : source.elements) {
+			if (element instanceof NamespaceBuilder) {
+				NamespaceBuilder sourceChild = (NamespaceBuilder) element;
+				NamespaceBuilder child = createNamespace(sourceChild.name, sourceChild.modifiers);
+				child.mergeFrom(sourceChild);
+				for (LazyNamespaceBody body : sourceChild.lazyBodies) {
+					child.addLazyBody(body);
+				}
+			} else if (element instanceof ClassBuilder) {
+				if (containsElement(element.getName())) {
+					throw new ParsingException("Multiple elements with name '" + element.getName() + "' in namespace " + this);
+				}
+				((ClassBuilder) element).setNamespace(this);
+				elements.add(element);
+				classes.add((ClassBuilder) element);
+			} else if (element instanceof EnumBuilder) {
+				if (containsElement(element.getName())) {
+					throw new ParsingException("Multiple elements with name '" + element.getName() + "' in namespace " + this);
+				}
+				((EnumBuilder) element).setNamespace(this);
+				elements.add(element);
+				enums.add((EnumBuilder) element);
+			} else if (element instanceof VariableBuilder) {
+				if (containsElement(element.getName())) {
+					throw new ParsingException("Multiple elements with name '" + element.getName() + "' in namespace " + this);
+				}
+				elements.add(element);
+				variables.add((VariableBuilder) element);
+			} else if (element instanceof FunctionBuilder) {
+				for (ElementBuilder current : elements) {
+					if (!(current instanceof FunctionBuilder) && current.getName().equals(element.getName())) {
+						throw new ParsingException("Multiple elements with name '" + element.getName() + "' in namespace " + this);
+					}
+				}
+				elements.add(element);
+				functions.add((FunctionBuilder) element);
+			} else if (element instanceof InitBuilder) {
+				((InitBuilder) element).setNamespace(this);
+				elements.add(element);
+				inits.add((InitBuilder) element);
+			} else if (element instanceof MainBuilder) {
+				((MainBuilder) element).setNamespace(this);
+				elements.add(element);
+				mains.add((MainBuilder) element);
+			} else {
+				throw new Error("It looks like I forgot element type " + element.getClass());
+			}
+		}
+	}
+	
+	/**
+	 * Removes the given element from this namespace. This is used by the passes that replace all references
+	 * to an element, after which the element itself is no longer needed, and by the TreeShaker, which
+	 * removes the elements that are not reachable. Inits can't be removed because they will always be
+	 * executed.
+	 * @param element The namespace, class, enum, variable, function or main to remove
+	 * @throws IllegalArgumentException If the element is an init or not an element of this namespace
+	 */
+	public synchronized void removeElement(ElementBuilder element) throws IllegalArgumentException {
+		if (element instanceof InitBuilder || !elements.remove(element)) {
+			throw new IllegalArgumentException(element + " is not a removable element of " + this);
+		}
+		namespaces.remove(element);
+		classes.remove(element);
+		enums.remove(element);
+		variables.remove(element);
+		functions.remove(element);
+		mains.remove(element);
+	}
+	
+	/**
+	 * Adds a lazy body to this namespace. The body will be parsed the first time this namespace is
+	 * materialized, which happens when an element of this namespace is looked up by name or when
+	 * materialize() is called explicitly.
+	 * @param body The unparsed part of the content of this namespace
+	 */
+	public synchronized void addLazyBody(LazyNamespaceBody body) {
+		lazyBodies.add(body);
+		materialized = false;
+	}
+	
+	/**
+	 * @return true if this namespace has no lazy bodies that still need to be parsed
+	 */
+	public boolean isMaterialized() {
+		return materialized;
+	}
+	
+	/**
+	 * Parses all lazy bodies of this namespace that haven't been parsed yet. Child namespaces will not be
+	 * materialized by this method. If multiple threads call this method at the same time, the bodies will
+	 * be parsed only once and all threads will return after the parsing has finished. If the application
+	 * has a materialize listener, it will be notified before this method returns.
+	 * @throws ParsingException If one of the lazy bodies is not valid ArrayScript
+	 */
+	public void materialize() throws ParsingException {
+		
+		// The fast path, no need to lock
+		if (materialized) {
+			return;
+		}
+		
+		synchronized (this) {
 			
-			// Inits are special elements because they can not be referred to
-			if (!(element instanceof InitBuilder) && element.getName().equals(name)) {
-				return true;
+			// Looping until there are no lazy bodies left is easier than iterating because parsing could
+			// (in theory) add new lazy bodies
+			while (!lazyBodies.isEmpty()) {
+				lazyBodies.remove(0).parseInto(this);
 			}
 		}
-		return false;
+		
+		// The listener may need to materialize other namespaces, so don't hold the lock while notifying it
+		// Other threads can only take the fast path after the listener is done
+		MaterializeListener listener = getGlobalNamespace().materializeListener;
+		if (listener != null) {
+			listener.materialized(this);
+		}
+		materialized = true;
+	}
+	
+	/**
+	 * Sets the listener that will be notified when namespaces of the application of this global namespace
+	 * are materialized.
+	 * @param listener The listener, or null to stop notifying
+	 * @throws UnsupportedOperationException If this is not the global namespace
+	 */
+	void setMaterializeListener(MaterializeListener listener) throws UnsupportedOperationException {
+		if (!isGlobal()) {
+			throw new UnsupportedOperationException("Only the global namespace can have a materialize listener");
+		}
+		materializeListener = listener;
 	}
 	
-	public ElementBuilder getElement(String name) {
+	private NamespaceBuilder getGlobalNamespace() {
+		NamespaceBuilder current = this;
+		while (current.parent != null) {
+			current = current.parent;
+		}
+		return current;
+	}
+	
+	/**
+	 * Materializes this namespace and all its descendant namespaces.
+	 * @throws ParsingException If one of the lazy bodies is not valid ArrayScript
+	 */
+	public void materializeAll() throws ParsingException {
+		materialize();
+		for (NamespaceBuilder namespace : namespaces) {
+			namespace.materializeAll();
+		}
+	}
+	
+	public boolean hasElement(String name) throws ParsingException {
+		materialize();
+		return containsElement(name);
+	}
+	
+	public ElementBuilder getElement(String name) throws ParsingException {
+		materialize();
 		for (ElementBuilder element : elements) {
 			if (element.getName().equals(name)) {
 				return element;
@@ -290,7 +512,47 @@ public class NamespaceBuilder implements ElementBuilder {
 		return null;
 	}
 	
-	public NamespaceBuilder getNamespace(String name) {
+	public NamespaceBuilder getNamespace(String name) throws ParsingException {
+		materialize();
+		return findNamespace(name);
+	}
+	
+	/**
+	 * Finds all functions with the given name in this namespace. There can be multiple functions with the
+	 * same name as long as their parameters are different.
+	 * @param name The name of the functions
+	 * @return A (possibly empty) list containing all functions with the given name, in the order they were
+	 * added
+	 * @throws ParsingException If this namespace needs to be materialized, but one of its lazy bodies is
+	 * not valid ArrayScript
+	 */
+	public List<FunctionBuilder> getFunctions(String name) throws ParsingException {
+		materialize();
+		List<FunctionBuilder> result = new ArrayList<FunctionBuilder>(1);
+		for (FunctionBuilder function : functions) {
+			if (function.getName().equals(name)) {
+				result.add(function);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * The lookup of hasElement without materializing this namespace. This is used while adding elements,
+	 * which also happens during materialization.
+	 */
+	private boolean containsElement(String name) {
+		for (ElementBuilder element : elements) {
+			
+			// Inits are special elements because they can not be referred to
+			if (!(element instanceof InitBuilder) && element.getName().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private NamespaceBuilder findNamespace(String name) {
 		for (NamespaceBuilder namespace : namespaces) {
 			if (namespace.getName().equals(name)) {
 				return namespace;
@@ -299,10 +561,28 @@ public class NamespaceBuilder implements ElementBuilder {
 		return null;
 	}
 	
+	/**
+	 * @return An unmodifiable view of all elements of this namespace, in the order they were added. The
+	 * content of lazy bodies is only included after this namespace has been materialized.
+	 */
+	public Collection<ElementBuilder> getElements(){
+		return Collections.unmodifiableCollection(elements);
+	}
+	
+	/**
+	 * @return An unmodifiable view of all imports of this namespace
+	 */
+	public Collection<ImportBuilder> getImports(){
+		return Collections.unmodifiableCollection(imports);
+	}
+	
 	public void printTest1(PrintStream out, int indentLevel) {
 		out.println();
 		for (NamespaceBuilder namespace : namespaces) {
 			printTest1(out, indentLevel, "namespace " + collectionToString(namespace.modifiers) + " " + namespace.name + " {");
+			if (!namespace.isMaterialized()) {
+				printTest1(out, indentLevel + 1, "(" + namespace.lazyBodies.size() + " unparsed bodies)");
+			}
 			namespace.printTest1(out, indentLevel + 1);
 			printTest1(out, indentLevel, "}");
 			out.println();
@@ -313,6 +593,10 @@ public class NamespaceBuilder implements ElementBuilder {
 			printTest1(out, indentLevel, "}");
 			out.println();
 		}
+		for (EnumBuilder enumBuilder : enums) {
+			printTest1(out, indentLevel, collectionToString(enumBuilder.getModifiers()) + " enum " + enumBuilder.getName() + " " + enumBuilder.getConstants() + ";");
+			out.println();
+		}
 		for (VariableBuilder variable : variables) {
 			printTest1(out, indentLevel, collectionToString(variable.getModifiers()) + " " + variable.getType().getReadableTypeName() + " " + variable.getName() + " = ... ;");
 			out.println();
@@ -65,6 +65,13 @@ public class SetterBuilder implements ElementBuilder {
 		return body != null;
 	}
 	
+	public String getParamName() {
+		if (paramName == null) {
+			throw new UnsupportedOperationException("Setter " + name + " doesn't have a custom body");
+		}
+		return paramName;
+	}
+	
 	public ExecutableBuilder getBody() {
 		if (body == null) {
 			throw new UnsupportedOperationException("Setter " + name + " doesn't have a body");
@@ -70,7 +70,7 @@ public class TypeBuilder {
 	}
 	
 	public void confirmType(Type type) {
-		if (type != null) {
+		if (this.type != null) {
 			throw new IllegalStateException("The type is already " + this.type);
 		}
 		this.type = type;
@@ -2,13 +2,17 @@ package arrayscript.parser.builder.var.value;
 
 import java.util.List;
 
+import arrayscript.lang.executable.SyntaxTree;
 import arrayscript.lang.var.value.Value;
+import arrayscript.parser.executable.SyntaxParser;
 import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.util.ParsingException;
 
 public class ValueBuilder {
 	
 	private final List<SourceElement> unparsedValue;
 	
+	private SyntaxTree syntax;
 	private Value value;
 	
 	public ValueBuilder(List<SourceElement> unparsedValue) {
@@ -24,6 +28,34 @@ public class ValueBuilder {
 		return unparsedValue;
 	}
 	
+	/**
+	 * Parses the source elements of this value into the syntax tree of an expression, if that hasn't
+	 * happened already. This method can safely be called by multiple threads.
+	 * @return The syntax tree of this value
+	 * @throws UnsupportedOperationException If this value builder was created with a finished value
+	 * @throws ParsingException If the source elements are not a valid ArrayScript expression
+	 */
+	public synchronized SyntaxTree parseSyntax() throws UnsupportedOperationException, ParsingException {
+		if (syntax == null) {
+			if (unparsedValue == null) {
+				throw new UnsupportedOperationException("This value builder doesn't have source elements");
+			}
+			syntax = SyntaxParser.parseExpression(unparsedValue, 0, unparsedValue.size());
+		}
+		return syntax;
+	}
+	
+	/**
+	 * @return The syntax tree of this value
+	 * @throws IllegalStateException If the syntax tree has not been parsed yet
+	 */
+	public synchronized SyntaxTree getSyntax() throws IllegalStateException {
+		if (syntax == null) {
+			throw new IllegalStateException("The syntax of this value is not yet parsed");
+		}
+		return syntax;
+	}
+	
 	public boolean isParsed() {
 		return value != null;
 	}
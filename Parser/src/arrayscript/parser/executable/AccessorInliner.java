@@ -0,0 +1,296 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+
+/**
+ * Replaces the uses of getters and setters by direct property accesses, both the explicit calls (like
+ * a.getX() and a.setX(5)) and the implicit uses (like a.x and a.x = 5).
+ *
+ * Uses of default getters and setters always become direct property reads and writes. Uses of custom
+ * getters and setters are replaced by their body if the body is small enough: a getter must consist of a
+ * single return statement and a setter of a single expression statement, with at most MAX_SIZE nodes. The
+ * receiver (and the value for setters) must be pure because they can be copied multiple times. Custom
+ * setters can only be inlined if the assignment or call is an expression statement, because their value is
+ * not the assigned value.
+ *
+ * This pass must run after the body phase and before the TreeShaker, so that the getters and setters that
+ * are no longer used will be removed.
+ * @author knokko
+ *
+ */
+public class AccessorInliner {
+	
+	/**
+	 * The maximum number of nodes of the returned expression of a custom getter or the expression statement
+	 * of a custom setter that will be inlined
+	 */
+	public static final int MAX_SIZE = 12;
+	
+	private final CheckResult result;
+	
+	private final Map<ElementBuilder,PropertyBuilder> properties;
+	private final Map<ElementBuilder,BodyUnit> inlineBodies;
+	
+	/**
+	 * @param result The result of the body phase
+	 */
+	public AccessorInliner(CheckResult result) {
+		this.result = result;
+		this.properties = new IdentityHashMap<ElementBuilder,PropertyBuilder>();
+		this.inlineBodies = new IdentityHashMap<ElementBuilder,BodyUnit>();
+		for (ClassBuilder classBuilder : result.getProgram().getClasses().values()) {
+			for (ElementBuilder element : classBuilder.getElements()) {
+				if (element instanceof GetterBuilder) {
+					properties.put(element, classBuilder.getProperty(((GetterBuilder) element).getPropertyName()));
+				} else if (element instanceof SetterBuilder) {
+					properties.put(element, classBuilder.getProperty(((SetterBuilder) element).getPropertyName()));
+				}
+			}
+		}
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked() && (unit.getKind() == BodyUnit.Kind.GETTER || unit.getKind() == BodyUnit.Kind.SETTER)
+					&& getInlineExpression(unit) != SyntaxTree.NONE) {
+				inlineBodies.put(unit.getOwner(), unit);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the expression of the given getter or setter body that can replace its uses.
+	 * @return The returned expression of a small getter, the expression statement of a small setter, or
+	 * NONE if the body can't be inlined
+	 */
+	private static int getInlineExpression(BodyUnit unit) {
+		SyntaxTree tree = unit.getSyntax();
+		int root = tree.getRoot();
+		int statement = tree.getFirstChild(root);
+		if (statement == SyntaxTree.NONE || tree.getNextSibling(statement) != SyntaxTree.NONE) {
+			return SyntaxTree.NONE;
+		}
+		NodeType expected = unit.getKind() == BodyUnit.Kind.GETTER ? NodeType.RETURN : NodeType.EXPRESSION;
+		int expression = tree.getFirstChild(statement);
+		if (tree.getType(statement) != expected || expression == SyntaxTree.NONE) {
+			return SyntaxTree.NONE;
+		}
+		int[] size = {0};
+		return canCopy(tree, expression, size) ? expression : SyntaxTree.NONE;
+	}
+	
+	/**
+	 * Checks whether the given subtree is small enough and doesn't contain calls without explicit receiver,
+	 * which can't be copied to another class.
+	 */
+	private static boolean canCopy(SyntaxTree tree, int node, int[] size) {
+		if (++size[0] > MAX_SIZE) {
+			return false;
+		}
+		Object symbol = tree.getSymbol(node);
+		boolean isMember = symbol instanceof MethodBuilder || symbol instanceof GetterBuilder || symbol instanceof SetterBuilder;
+		if (tree.getType(node) == NodeType.NAME && isMember) {
+			return false;
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			if (!canCopy(tree, child, size)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Replaces the uses of getters and setters in all checked bodies.
+	 */
+	public void inlineAll() {
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked()) {
+				Rewriter rewriter = new Rewriter(unit);
+				rewriter.rewrite(rewriter.tree.getRoot(), SyntaxTree.NONE);
+				rewriter.updateReferences();
+			}
+		}
+	}
+	
+	private class Rewriter {
+		
+		private final BodyUnit unit;
+		private final SyntaxTree tree;
+		private final Set<ElementBuilder> inlined;
+		private final Set<ElementBuilder> added;
+		
+		Rewriter(BodyUnit unit){
+			this.unit = unit;
+			this.tree = unit.getSyntax();
+			this.inlined = Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>());
+			this.added = Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>());
+		}
+		
+		void rewrite(int node, int parent) {
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				
+				// The callee of a call has the same symbol as the call, but it is not a use of its own
+				if (child == tree.getFirstChild(node) && tree.getType(node) == NodeType.CALL) {
+					for (int target = tree.getFirstChild(child); target != SyntaxTree.NONE; target = tree.getNextSibling(target)) {
+						rewrite(target, child);
+					}
+				} else {
+					rewrite(child, node);
+				}
+			}
+			NodeType type = tree.getType(node);
+			Object symbol = tree.getSymbol(node);
+			boolean isStatement = parent != SyntaxTree.NONE && tree.getType(parent) == NodeType.EXPRESSION;
+			if (type == NodeType.PROPERTY && symbol instanceof GetterBuilder) {
+				getter(node, (GetterBuilder) symbol, tree.getFirstChild(node));
+			} else if (type == NodeType.PROPERTY && symbol instanceof SetterBuilder && ((SetterBuilder) symbol).isDefault()) {
+				
+				// The target of an assignment, which can simply use the property itself
+				useProperty(node, (SetterBuilder) symbol);
+			} else if (type == NodeType.ASSIGN && isStatement && tree.getOperator(node) == Operator.ASSIGNMENT) {
+				int target = tree.getFirstChild(node);
+				Object targetSymbol = tree.getSymbol(target);
+				if (tree.getType(target) == NodeType.PROPERTY && targetSymbol instanceof SetterBuilder) {
+					customSetter(node, (SetterBuilder) targetSymbol, tree.getFirstChild(target), tree.getNextSibling(target));
+				}
+			} else if (type == NodeType.CALL && symbol instanceof GetterBuilder) {
+				getter(node, (GetterBuilder) symbol, receiver(node));
+			} else if (type == NodeType.CALL && symbol instanceof SetterBuilder) {
+				int value = tree.getNextSibling(tree.getFirstChild(node));
+				SetterBuilder setter = (SetterBuilder) symbol;
+				if (setter.isDefault()) {
+					int assignment = tree.addNode(NodeType.ASSIGN, Operator.ASSIGNMENT.ordinal(), tree.getToken(node));
+					tree.addChild(assignment, access(node, setter, receiver(node)));
+					tree.addChild(assignment, value);
+					tree.setValueType(assignment, properties.get(setter).getType().getType());
+					tree.replace(node, assignment);
+					inlined.add(setter);
+				} else if (isStatement) {
+					customSetter(node, setter, receiver(node), value);
+				}
+			}
+		}
+		
+		/**
+		 * @return The node that evaluates to the receiver of the given CALL node
+		 */
+		private int receiver(int node) {
+			int first = tree.getFirstChild(node);
+			if (tree.getType(first) == NodeType.PROPERTY) {
+				return tree.getFirstChild(first);
+			}
+			int receiver = tree.addNode(NodeType.THIS, 0, tree.getToken(first));
+			tree.setValueType(receiver, unit.getClassBuilder().getType());
+			return receiver;
+		}
+		
+		/**
+		 * Creates a PROPERTY node that accesses the property of the given accessor on the given receiver
+		 */
+		private int access(int node, ElementBuilder accessor, int receiver) {
+			PropertyBuilder property = properties.get(accessor);
+			int access = tree.addNode(NodeType.PROPERTY, tree.addString(property.getName()), tree.getToken(node));
+			tree.addChild(access, receiver);
+			tree.setSymbol(access, property);
+			tree.setValueType(access, property.getType().getType());
+			added.add(property);
+			return access;
+		}
+		
+		private void useProperty(int node, ElementBuilder accessor) {
+			PropertyBuilder property = properties.get(accessor);
+			tree.setSymbol(node, property);
+			added.add(property);
+			inlined.add(accessor);
+		}
+		
+		private void getter(int node, GetterBuilder getter, int receiver) {
+			if (!getter.hasCustomBody()) {
+				if (tree.getType(node) == NodeType.PROPERTY) {
+					useProperty(node, getter);
+				} else {
+					tree.replace(node, access(node, getter, receiver));
+					inlined.add(getter);
+				}
+				return;
+			}
+			BodyUnit body = inlineBodies.get(getter);
+			if (body != null && DefineInliner.isPure(tree, receiver)) {
+				copyBody(node, body, receiver, SyntaxTree.NONE);
+				inlined.add(getter);
+			}
+		}
+		
+		private void customSetter(int node, SetterBuilder setter, int receiver, int value) {
+			BodyUnit body = inlineBodies.get(setter);
+			if (body != null && DefineInliner.isPure(tree, receiver) && DefineInliner.isPure(tree, value)) {
+				copyBody(node, body, receiver, value);
+				inlined.add(setter);
+			}
+		}
+		
+		/**
+		 * Replaces the given node by a copy of the inline expression of the given getter or setter body
+		 */
+		private void copyBody(int node, BodyUnit body, int receiver, int value) {
+			SyntaxTree bodyTree = body.getSyntax();
+			TreeCopier copier = new TreeCopier(bodyTree, tree, tree.getToken(node), null);
+			copier.setReceiver(receiver);
+			if (value != SyntaxTree.NONE) {
+				
+				// The only local variable of a small setter body is its parameter
+				for (int bodyNode = 0; bodyNode < bodyTree.getNodeCount(); bodyNode++) {
+					Object symbol = bodyTree.getSymbol(bodyNode);
+					if (symbol instanceof LocalVariable) {
+						copier.substitute((LocalVariable) symbol, value);
+					}
+				}
+			}
+			tree.replace(node, copier.copy(getInlineExpression(body)));
+			added.addAll(body.getReferences());
+		}
+		
+		/**
+		 * Removes the getters and setters that are no longer used by the body from its references and adds
+		 * the elements that are used by the inlined code.
+		 */
+		void updateReferences() {
+			if (inlined.isEmpty()) {
+				return;
+			}
+			Set<Object> remaining = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+			collectSymbols(tree.getRoot(), remaining);
+			Set<ElementBuilder> references = new LinkedHashSet<ElementBuilder>(unit.getReferences());
+			references.addAll(added);
+			for (ElementBuilder accessor : inlined) {
+				if (!remaining.contains(accessor)) {
+					references.remove(accessor);
+				}
+			}
+			unit.setReferences(new ArrayList<ElementBuilder>(references));
+		}
+		
+		private void collectSymbols(int node, Set<Object> symbols) {
+			Object symbol = tree.getSymbol(node);
+			if (symbol != null) {
+				symbols.add(symbol);
+			}
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				collectSymbols(child, symbols);
+			}
+		}
+	}
+}
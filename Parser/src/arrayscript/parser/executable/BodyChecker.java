@@ -0,0 +1,827 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import arrayscript.lang.Modifier;
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.resolve.NameResolver;
+import arrayscript.parser.resolve.Program;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Parses and checks a single BodyUnit. The checker resolves all names in the syntax tree of the body and
+ * stores the results as annotations in the tree: the symbol of a node is the element (or LocalVariable)
+ * it refers to and the value type of an expression node is the type of its value.
+ *
+ * The type checking is lenient: ANY is compatible with everything, all numeric types are compatible with
+ * each other and array access and array literals have type ANY because there are no array types yet.
+ *
+ * The checker doesn't stop at the first error, but collects all errors of the body. Every checker instance
+ * is used for only 1 body and only modifies the syntax tree of that body, so different bodies can be
+ * checked by different threads at the same time (as long as the signatures have been resolved already).
+ * @author knokko
+ *
+ */
+class BodyChecker {
+	
+	private final Program program;
+	private final BodyUnit unit;
+	private final NamespaceBuilder namespace;
+	private final ClassBuilder classBuilder;
+	
+	private final List<String> errors;
+	private final Set<ElementBuilder> references;
+	private final List<LocalVariable> locals;
+	private int localCount;
+	
+	private SyntaxTree tree;
+	
+	/**
+	 * Parses and checks the given body unit. If the body is valid, its references will be stored in the body
+	 * unit.
+	 * @param program The program the body belongs to
+	 * @param unit The body to check
+	 * @return A (possibly empty) list of all errors in the body
+	 */
+	static List<String> check(Program program, BodyUnit unit) {
+		BodyChecker checker = new BodyChecker(program, unit);
+		try {
+			checker.tree = unit.parseSyntax();
+		} catch (ParsingException ex) {
+			checker.error(ex.getMessage());
+			return checker.errors;
+		}
+		try {
+			checker.checkBody();
+		} catch (ParsingException ex) {
+			
+			// This can only happen when a lazy namespace turns out to be invalid
+			checker.error(ex.getMessage());
+		}
+		if (checker.errors.isEmpty()) {
+			unit.setReferences(new ArrayList<ElementBuilder>(checker.references));
+		}
+		return checker.errors;
+	}
+	
+	private BodyChecker(Program program, BodyUnit unit) {
+		this.program = program;
+		this.unit = unit;
+		this.namespace = unit.getNamespace();
+		this.classBuilder = unit.getClassBuilder();
+		this.errors = new ArrayList<String>(0);
+		this.references = new LinkedHashSet<ElementBuilder>();
+		this.locals = new ArrayList<LocalVariable>();
+	}
+	
+	private void error(String message) {
+		errors.add("In " + unit + ": " + message);
+	}
+	
+	private void checkBody() throws ParsingException {
+		for (int index = 0; index < unit.getParamCount(); index++) {
+			locals.add(new LocalVariable(unit.getParamName(index), unit.getParamType(index), SyntaxTree.NONE, localCount++));
+		}
+		int root = tree.getRoot();
+		if (unit.isExpression()) {
+			Type type = value(root);
+			if (!isAssignable(unit.getReturnType(), type)) {
+				error("Can't assign a value of type " + type.getName() + " to " + unit.getReturnType().getName());
+			}
+		} else {
+			statement(root);
+		}
+	}
+	
+	private void statement(int node) throws ParsingException {
+		NodeType type = tree.getType(node);
+		if (type == NodeType.BLOCK) {
+			int scope = locals.size();
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				statement(child);
+			}
+			closeScope(scope);
+		} else if (type == NodeType.EXPRESSION) {
+			check(tree.getFirstChild(node));
+		} else if (type == NodeType.DECLARATION) {
+			declaration(node);
+		} else if (type == NodeType.IF) {
+			int condition = tree.getFirstChild(node);
+			expect(condition, PrimitiveTypes.BOOLEAN, "The condition of an if statement");
+			int then = tree.getNextSibling(condition);
+			statement(then);
+			int otherwise = tree.getNextSibling(then);
+			if (otherwise != SyntaxTree.NONE) {
+				statement(otherwise);
+			}
+		} else if (type == NodeType.WHILE) {
+			int condition = tree.getFirstChild(node);
+			expect(condition, PrimitiveTypes.BOOLEAN, "The condition of a while loop");
+			statement(tree.getNextSibling(condition));
+		} else if (type == NodeType.FOR) {
+			
+			// The variables declared in the initializer are only visible in the loop
+			int scope = locals.size();
+			int initializer = tree.getFirstChild(node);
+			statement(initializer);
+			int condition = tree.getNextSibling(initializer);
+			if (tree.getType(condition) != NodeType.EMPTY) {
+				expect(condition, PrimitiveTypes.BOOLEAN, "The condition of a for loop");
+			}
+			int update = tree.getNextSibling(condition);
+			statement(update);
+			statement(tree.getNextSibling(update));
+			closeScope(scope);
+		} else if (type == NodeType.RETURN) {
+			int returned = tree.getFirstChild(node);
+			Type returnType = unit.getReturnType();
+			if (returned != SyntaxTree.NONE) {
+				Type valueType = value(returned);
+				if (returnType == null) {
+					error("Can't return a value from a body that doesn't return a value");
+				} else if (!isAssignable(returnType, valueType)) {
+					error("Can't return a value of type " + valueType.getName() + " when " + returnType.getName() + " is expected");
+				}
+			} else if (returnType != null) {
+				error("Must return a value of type " + returnType.getName());
+			}
+		} else if (type != NodeType.EMPTY) {
+			throw new Error("Unexpected statement type " + type);
+		}
+	}
+	
+	private void closeScope(int scope) {
+		while (locals.size() > scope) {
+			locals.remove(locals.size() - 1);
+		}
+	}
+	
+	private void declaration(int node) throws ParsingException {
+		String name = tree.getString(node);
+		int typeNode = tree.getFirstChild(node);
+		String typeName = tree.getString(typeNode);
+		Type type = NameResolver.lookupType(typeName.split("\\."), namespace, classBuilder);
+		if (type == null) {
+			error("Unknown type " + typeName + " of local variable " + name);
+			type = PrimitiveTypes.ANY;
+		} else {
+			addClassReference(type);
+		}
+		tree.setValueType(typeNode, type);
+		
+		// The initial value is checked before the variable is declared, so it can't refer to itself
+		int initial = tree.getNextSibling(typeNode);
+		if (initial != SyntaxTree.NONE) {
+			Type valueType = value(initial);
+			if (!isAssignable(type, valueType)) {
+				error("Can't assign a value of type " + valueType.getName() + " to local variable " + name + " of type " + type.getName());
+			}
+		}
+		if (findLocal(name) != null) {
+			error("Duplicate local variable " + name);
+		}
+		LocalVariable local = new LocalVariable(name, type, node, localCount++);
+		locals.add(local);
+		tree.setSymbol(node, local);
+	}
+	
+	private LocalVariable findLocal(String name) {
+		for (int index = locals.size() - 1; index >= 0; index--) {
+			if (locals.get(index).getName().equals(name)) {
+				return locals.get(index);
+			}
+		}
+		return null;
+	}
+	
+	private void addClassReference(Type type) {
+		ClassBuilder referenced = program.getClass(type);
+		if (referenced != null) {
+			references.add(referenced);
+		}
+	}
+	
+	private void expect(int node, Type expected, String description) throws ParsingException {
+		Type type = value(node);
+		if (!isAssignable(expected, type)) {
+			error(description + " must be of type " + expected.getName() + ", but is of type " + type.getName());
+		}
+	}
+	
+	/**
+	 * Checks the given expression node and makes sure it has a value
+	 * @return The type of the expression (ANY if the expression is invalid)
+	 */
+	private Type value(int node) throws ParsingException {
+		Type type = check(node);
+		if (type == null) {
+			Object symbol = tree.getSymbol(node);
+			if (symbol instanceof NamespaceBuilder || symbol instanceof ClassBuilder) {
+				error(symbol + " is not a value");
+			} else {
+				error("The call doesn't return a value");
+			}
+			return PrimitiveTypes.ANY;
+		}
+		return type;
+	}
+	
+	/**
+	 * Checks the given expression node and stores its type and symbol in the tree.
+	 * @return The type of the expression, or null if the expression refers to a namespace or class or is a
+	 * call of a function that doesn't return a value
+	 */
+	private Type check(int node) throws ParsingException {
+		Type type = checkExpression(node);
+		if (type != null) {
+			tree.setValueType(node, type);
+		}
+		return type;
+	}
+	
+	private Type checkExpression(int node) throws ParsingException {
+		NodeType nodeType = tree.getType(node);
+		switch (nodeType) {
+		case NUMBER: return PrimitiveTypes.NUMBER;
+		case STRING: return PrimitiveTypes.STRING;
+		case BOOLEAN: return PrimitiveTypes.BOOLEAN;
+		case THIS:
+			if (unit.isStatic()) {
+				error("'this' can only be used in a non-static context");
+				return PrimitiveTypes.ANY;
+			}
+			return classBuilder.getType();
+		case NAME: return name(node);
+		case PROPERTY: return property(node, false);
+		case UNARY: return unary(node);
+		case BINARY: return binary(node);
+		case ASSIGN: return assign(node);
+		case PREFIX:
+		case POSTFIX: {
+			Type type = target(tree.getFirstChild(node));
+			if (!PrimitiveTypes.isNumeric(type) && type != PrimitiveTypes.ANY) {
+				error("The operator " + tree.getOperator(node).getTokens() + " can't be used on type " + type.getName());
+				return PrimitiveTypes.ANY;
+			}
+			return type;
+		}
+		case INDEX: {
+			int array = tree.getFirstChild(node);
+			value(array);
+			expect(tree.getNextSibling(array), PrimitiveTypes.NUMBER, "An array index");
+			return PrimitiveTypes.ANY;
+		}
+		case ARRAY:
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				value(child);
+			}
+			return PrimitiveTypes.ANY;
+		case CALL: return call(node);
+		case NEW: return creation(node);
+		default: throw new Error("Unexpected expression type " + nodeType);
+		}
+	}
+	
+	private Type name(int node) throws ParsingException {
+		String name = tree.getString(node);
+		LocalVariable local = findLocal(name);
+		if (local != null) {
+			tree.setSymbol(node, local);
+			return local.getType();
+		}
+		if (classBuilder != null) {
+			if (!unit.isStatic()) {
+				PropertyBuilder property = classBuilder.getProperty(name);
+				if (property != null) {
+					return reference(node, property, property.getType().getType());
+				}
+			}
+			VariableBuilder variable = classBuilder.getVariable(name);
+			if (variable != null) {
+				return reference(node, variable, variable.getType().getType());
+			}
+			List<FunctionBuilder> functions = classBuilder.getFunctions(name);
+			if (!functions.isEmpty()) {
+				return reference(node, functions.get(0), PrimitiveTypes.FUNCTION);
+			}
+		}
+		ElementBuilder element = NameResolver.lookup(name, namespace, classBuilder);
+		if (element == null) {
+			error("Unknown name " + name);
+			return PrimitiveTypes.ANY;
+		}
+		return element(node, element);
+	}
+	
+	/**
+	 * Stores the given element as symbol of the given NAME or PROPERTY node and returns its type.
+	 */
+	private Type element(int node, ElementBuilder element) {
+		if (element instanceof VariableBuilder) {
+			return reference(node, element, ((VariableBuilder) element).getType().getType());
+		} else if (element instanceof FunctionBuilder) {
+			return reference(node, element, PrimitiveTypes.FUNCTION);
+		} else if (element instanceof NamespaceBuilder || element instanceof ClassBuilder || element instanceof EnumBuilder) {
+			tree.setSymbol(node, element);
+			return null;
+		} else {
+			error(element + " can't be used in an expression");
+			return PrimitiveTypes.ANY;
+		}
+	}
+	
+	private Type reference(int node, ElementBuilder element, Type type) {
+		tree.setSymbol(node, element);
+		references.add(element);
+		return type;
+	}
+	
+	/**
+	 * Checks a PROPERTY node.
+	 * @param node The PROPERTY node
+	 * @param assignment true if a value is about to be assigned to the property, false if it is read
+	 * @return The type of the property, or null if it refers to a namespace or class
+	 */
+	private Type property(int node, boolean assignment) throws ParsingException {
+		String name = tree.getString(node);
+		int target = tree.getFirstChild(node);
+		Type targetType = check(target);
+		if (targetType == null) {
+			Object symbol = tree.getSymbol(target);
+			if (symbol instanceof NamespaceBuilder) {
+				ElementBuilder element = ((NamespaceBuilder) symbol).getElement(name);
+				if (element == null) {
+					error(symbol + " doesn't have an element " + name);
+					return PrimitiveTypes.ANY;
+				}
+				return element(node, element);
+			} else if (symbol instanceof ClassBuilder) {
+				ClassBuilder owner = (ClassBuilder) symbol;
+				VariableBuilder variable = owner.getVariable(name);
+				if (variable != null) {
+					return reference(node, variable, variable.getType().getType());
+				}
+				List<FunctionBuilder> functions = owner.getFunctions(name);
+				if (!functions.isEmpty()) {
+					return reference(node, functions.get(0), PrimitiveTypes.FUNCTION);
+				}
+				error(owner + " doesn't have a class variable or function " + name);
+				return PrimitiveTypes.ANY;
+			} else if (symbol instanceof EnumBuilder) {
+				EnumBuilder owner = (EnumBuilder) symbol;
+				EnumConstantBuilder constant = owner.getConstant(name);
+				if (constant == null) {
+					error(owner + " doesn't have a constant " + name);
+					return PrimitiveTypes.ANY;
+				}
+				references.add(owner);
+				return reference(node, constant, owner.getType());
+			} else {
+				error("Can't access property " + name + " of a call that doesn't return a value");
+				return PrimitiveTypes.ANY;
+			}
+		}
+		ClassBuilder owner = program.getClass(targetType);
+		if (owner == null) {
+			
+			// Without type information, anything is allowed
+			return PrimitiveTypes.ANY;
+		}
+		PropertyBuilder property = owner.getProperty(name);
+		if (property != null) {
+			Type propertyType = property.getType().getType();
+			
+			// Within the class itself, properties are always accessed directly
+			if (owner != classBuilder) {
+				if (assignment) {
+					SetterBuilder setter = owner.getSetter(name);
+					if (setter != null && setter.getModifiers().contains(Modifier.IMPLICIT)) {
+						return reference(node, setter, propertyType);
+					}
+				} else {
+					GetterBuilder getter = owner.getGetter(name);
+					if (getter != null && getter.isImplicit()) {
+						return reference(node, getter, propertyType);
+					}
+				}
+			}
+			return reference(node, property, propertyType);
+		}
+		error(owner + " doesn't have a property " + name);
+		return PrimitiveTypes.ANY;
+	}
+	
+	/**
+	 * Checks an expression that a value is about to be assigned to
+	 * @return The type of the target
+	 */
+	private Type target(int node) throws ParsingException {
+		NodeType nodeType = tree.getType(node);
+		Type type;
+		if (nodeType == NodeType.PROPERTY) {
+			type = property(node, true);
+			if (type != null) {
+				tree.setValueType(node, type);
+			}
+		} else if (nodeType == NodeType.NAME || nodeType == NodeType.INDEX) {
+			type = check(node);
+		} else {
+			error("Can't assign a value to a " + nodeType + " expression");
+			check(node);
+			return PrimitiveTypes.ANY;
+		}
+		if (type == null) {
+			error("Can't assign a value to " + tree.getSymbol(node));
+			return PrimitiveTypes.ANY;
+		}
+		Object symbol = tree.getSymbol(node);
+		if (symbol instanceof VariableBuilder) {
+			Set<Modifier> modifiers = ((VariableBuilder) symbol).getModifiers();
+			if (modifiers.contains(Modifier.CONST) || modifiers.contains(Modifier.DEFINE)) {
+				error("Can't assign a value to the constant " + ((VariableBuilder) symbol).getName());
+			}
+		} else if (symbol instanceof FunctionBuilder) {
+			error("Can't assign a value to the function " + ((FunctionBuilder) symbol).getName());
+		}
+		return type;
+	}
+	
+	private Type unary(int node) throws ParsingException {
+		Operator operator = tree.getOperator(node);
+		int operand = tree.getFirstChild(node);
+		if (operator == Operator.NOT) {
+			expect(operand, PrimitiveTypes.BOOLEAN, "The operand of !");
+			return PrimitiveTypes.BOOLEAN;
+		}
+		Type type = value(operand);
+		if (!PrimitiveTypes.isNumeric(type) && type != PrimitiveTypes.ANY) {
+			error("The operator " + operator.getTokens() + " can't be used on type " + type.getName());
+			return PrimitiveTypes.ANY;
+		}
+		return type;
+	}
+	
+	private Type binary(int node) throws ParsingException {
+		Operator operator = tree.getOperator(node);
+		int left = tree.getFirstChild(node);
+		int right = tree.getNextSibling(left);
+		if (operator == Operator.AND || operator == Operator.OR) {
+			expect(left, PrimitiveTypes.BOOLEAN, "The left operand of " + operator.getTokens());
+			expect(right, PrimitiveTypes.BOOLEAN, "The right operand of " + operator.getTokens());
+			return PrimitiveTypes.BOOLEAN;
+		}
+		Type leftType = value(left);
+		Type rightType = value(right);
+		if (operator == Operator.EQUALS || operator == Operator.NOT_EQUALS) {
+			if (!isAssignable(leftType, rightType) && !isAssignable(rightType, leftType)) {
+				error("Can't compare " + leftType.getName() + " with " + rightType.getName());
+			}
+			return PrimitiveTypes.BOOLEAN;
+		}
+		if (operator == Operator.LESS || operator == Operator.GREATER || operator == Operator.LESS_EQUAL || operator == Operator.GREATER_EQUAL) {
+			if (!(isNumber(leftType) && isNumber(rightType)) && !(isString(leftType) && isString(rightType))) {
+				error("The operator " + operator.getTokens() + " can't be used on " + leftType.getName() + " and " + rightType.getName());
+			}
+			return PrimitiveTypes.BOOLEAN;
+		}
+		return arithmetic(operator, leftType, rightType);
+	}
+	
+	private Type arithmetic(Operator operator, Type leftType, Type rightType) {
+		if (operator == Operator.SUM && (leftType == PrimitiveTypes.STRING || rightType == PrimitiveTypes.STRING)) {
+			return PrimitiveTypes.STRING;
+		}
+		if (!isNumber(leftType) || !isNumber(rightType)) {
+			error("The operator " + operator.getTokens() + " can't be used on " + leftType.getName() + " and " + rightType.getName());
+			return PrimitiveTypes.ANY;
+		}
+		if (leftType == PrimitiveTypes.ANY || rightType == PrimitiveTypes.ANY) {
+			return PrimitiveTypes.ANY;
+		}
+		if (leftType == rightType) {
+			return leftType;
+		}
+		return PrimitiveTypes.NUMBER;
+	}
+	
+	private Type assign(int node) throws ParsingException {
+		Operator operator = tree.getOperator(node);
+		int target = tree.getFirstChild(node);
+		int assigned = tree.getNextSibling(target);
+		Type targetType = target(target);
+		Type valueType = value(assigned);
+		if (operator == Operator.ASSIGNMENT) {
+			if (!isAssignable(targetType, valueType)) {
+				error("Can't assign a value of type " + valueType.getName() + " to " + targetType.getName());
+			}
+		} else {
+			Operator binary = binaryOperator(operator);
+			Type result = arithmetic(binary, targetType, valueType);
+			if (!isAssignable(targetType, result)) {
+				error("Can't use " + operator.getTokens() + " on " + targetType.getName() + " and " + valueType.getName());
+			}
+		}
+		return targetType;
+	}
+	
+	private static Operator binaryOperator(Operator assignment) {
+		switch (assignment) {
+		case INCREASE: return Operator.SUM;
+		case DECREASE: return Operator.SUBSTRACTION;
+		case MULTIPLY: return Operator.PRODUCT;
+		case DIVIDE: return Operator.DIVISION;
+		case MOD: return Operator.REMAINDER;
+		default: throw new Error("Unexpected assignment operator " + assignment);
+		}
+	}
+	
+	private Type call(int node) throws ParsingException {
+		int callee = tree.getFirstChild(node);
+		List<Type> argumentTypes = new ArrayList<Type>();
+		for (int argument = tree.getNextSibling(callee); argument != SyntaxTree.NONE; argument = tree.getNextSibling(argument)) {
+			argumentTypes.add(value(argument));
+		}
+		
+		List<ElementBuilder> candidates = new ArrayList<ElementBuilder>(2);
+		ClassBuilder owner = classBuilder;
+		String description;
+		NodeType calleeType = tree.getType(callee);
+		if (calleeType == NodeType.NAME) {
+			String name = tree.getString(callee);
+			description = name;
+			LocalVariable local = findLocal(name);
+			if (local != null) {
+				
+				// Calling a local function value can't be checked
+				tree.setSymbol(callee, local);
+				tree.setValueType(callee, local.getType());
+				return PrimitiveTypes.ANY;
+			}
+			if (classBuilder != null) {
+				if (!unit.isStatic()) {
+					candidates.addAll(classBuilder.getMethods(name));
+					addAccessors(classBuilder, name, argumentTypes.size(), candidates);
+				}
+				candidates.addAll(classBuilder.getFunctions(name));
+			}
+			for (NamespaceBuilder current = namespace; current != null && candidates.isEmpty(); current = current.getParent()) {
+				candidates.addAll(current.getFunctions(name));
+			}
+			if (candidates.isEmpty()) {
+				ElementBuilder imported = NameResolver.lookup(name, namespace, classBuilder);
+				if (imported instanceof FunctionBuilder) {
+					candidates.add(imported);
+				}
+			}
+		} else if (calleeType == NodeType.PROPERTY) {
+			String name = tree.getString(callee);
+			description = name;
+			int target = tree.getFirstChild(callee);
+			Type targetType = check(target);
+			if (targetType == null) {
+				Object symbol = tree.getSymbol(target);
+				if (symbol instanceof NamespaceBuilder) {
+					candidates.addAll(((NamespaceBuilder) symbol).getFunctions(name));
+				} else if (symbol instanceof ClassBuilder) {
+					candidates.addAll(((ClassBuilder) symbol).getFunctions(name));
+				} else if (symbol instanceof EnumBuilder) {
+					return enumCall(node, callee, (EnumBuilder) symbol, name, argumentTypes, "values");
+				}
+			} else {
+				EnumBuilder enumBuilder = program.getEnum(targetType);
+				if (enumBuilder != null) {
+					return enumCall(node, callee, enumBuilder, name, argumentTypes, "ordinal");
+				}
+				owner = program.getClass(targetType);
+				if (owner == null) {
+					
+					// Calls on values without type information can't be checked
+					return PrimitiveTypes.ANY;
+				}
+				candidates.addAll(owner.getMethods(name));
+				addAccessors(owner, name, argumentTypes.size(), candidates);
+				description = owner.getName() + "." + name;
+			}
+		} else {
+			
+			// Calling the result of an arbitrary expression can't be checked
+			value(callee);
+			return PrimitiveTypes.ANY;
+		}
+		
+		if (candidates.isEmpty()) {
+			error("Unknown function " + description);
+			return PrimitiveTypes.ANY;
+		}
+		for (ElementBuilder candidate : candidates) {
+			if (accepts(candidate, owner, argumentTypes)) {
+				tree.setSymbol(callee, candidate);
+				return reference(node, candidate, returnType(candidate, owner));
+			}
+		}
+		error("No overload of " + description + " accepts the arguments " + typesToString(argumentTypes));
+		return PrimitiveTypes.ANY;
+	}
+	
+	/**
+	 * Checks a call to one of the built-in functions of enums: values() on the enum itself, which returns
+	 * an array with all constants, and ordinal() on a constant, which returns its position.
+	 * @param node The CALL node
+	 * @param callee The PROPERTY node that is called
+	 * @param enumBuilder The enum
+	 * @param name The name of the function that is called
+	 * @param argumentTypes The types of the arguments
+	 * @param expected The name of the only function that can be called in this context
+	 * @return The return type of the call
+	 */
+	private Type enumCall(int node, int callee, EnumBuilder enumBuilder, String name, List<Type> argumentTypes, String expected) {
+		if (!name.equals(expected) || !argumentTypes.isEmpty()) {
+			error(enumBuilder + " doesn't have a function " + name + " that accepts the arguments " + typesToString(argumentTypes));
+			return PrimitiveTypes.ANY;
+		}
+		tree.setSymbol(callee, enumBuilder);
+		reference(node, enumBuilder, null);
+		return expected.equals("ordinal") ? PrimitiveTypes.INT32 : PrimitiveTypes.ANY;
+	}
+	
+	/**
+	 * Adds the getter or setter whose method name is the given name (if any) to the candidates
+	 */
+	private static void addAccessors(ClassBuilder owner, String name, int argumentCount, List<ElementBuilder> candidates) {
+		for (PropertyBuilder property : owner.getProperties()) {
+			if (argumentCount == 0) {
+				GetterBuilder getter = owner.getGetter(property.getName());
+				if (getter != null && getter.getMethodName().equals(name)) {
+					candidates.add(getter);
+				}
+			} else if (argumentCount == 1) {
+				SetterBuilder setter = owner.getSetter(property.getName());
+				if (setter != null && setter.getMethodName().equals(name)) {
+					candidates.add(setter);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether the given function, method, getter, setter or constructor accepts the given arguments
+	 * @param owner The class of the candidate if it is a getter or setter
+	 */
+	private boolean accepts(ElementBuilder candidate, ClassBuilder owner, List<Type> argumentTypes) {
+		if (candidate instanceof GetterBuilder) {
+			return argumentTypes.isEmpty();
+		}
+		if (candidate instanceof SetterBuilder) {
+			PropertyBuilder property = owner.getProperty(((SetterBuilder) candidate).getPropertyName());
+			return argumentTypes.size() == 1 && isAssignable(property.getType().getType(), argumentTypes.get(0));
+		}
+		ParamBuilder[] params;
+		if (candidate instanceof FunctionBuilder) {
+			params = ((FunctionBuilder) candidate).getParameters().getParams();
+		} else if (candidate instanceof MethodBuilder) {
+			params = ((MethodBuilder) candidate).getParameters().getParams();
+		} else if (candidate instanceof ConstructorBuilder) {
+			params = ((ConstructorBuilder) candidate).getParameteters().getParams();
+		} else {
+			return false;
+		}
+		if (params.length != argumentTypes.size()) {
+			return false;
+		}
+		for (int index = 0; index < params.length; index++) {
+			if (!isAssignable(params[index].getType().getType(), argumentTypes.get(index))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param owner The class of the callee if it is a getter
+	 * @return The return type of the given callee, or null if it doesn't return a value
+	 */
+	private static Type returnType(ElementBuilder callee, ClassBuilder owner) {
+		if (callee instanceof FunctionBuilder) {
+			FunctionBuilder function = (FunctionBuilder) callee;
+			return function.hasReturnType() ? function.getReturnType().getType() : null;
+		} else if (callee instanceof MethodBuilder) {
+			MethodBuilder method = (MethodBuilder) callee;
+			return method.hasReturnType() ? method.getReturnType().getType() : null;
+		} else if (callee instanceof GetterBuilder) {
+			return owner.getProperty(((GetterBuilder) callee).getPropertyName()).getType().getType();
+		} else {
+			
+			// Setters don't return a value
+			return null;
+		}
+	}
+	
+	private Type creation(int node) throws ParsingException {
+		String className = tree.getString(node);
+		List<Type> argumentTypes = new ArrayList<Type>();
+		for (int argument = tree.getFirstChild(node); argument != SyntaxTree.NONE; argument = tree.getNextSibling(argument)) {
+			argumentTypes.add(value(argument));
+		}
+		ClassBuilder created = NameResolver.lookupClass(className.split("\\."), namespace, classBuilder);
+		if (created == null) {
+			error("Unknown class " + className);
+			return PrimitiveTypes.ANY;
+		}
+		references.add(created);
+		Collection<ConstructorBuilder> constructors = created.getConstructors();
+		if (constructors.isEmpty()) {
+			
+			// Classes without constructors get a default constructor without parameters
+			if (!argumentTypes.isEmpty()) {
+				error(created + " only has a constructor without parameters");
+			}
+			tree.setSymbol(node, created);
+			return created.getType();
+		}
+		for (ConstructorBuilder constructor : constructors) {
+			if (accepts(constructor, created, argumentTypes)) {
+				reference(node, constructor, null);
+				return created.getType();
+			}
+		}
+		error("No constructor of " + created.getName() + " accepts the arguments " + typesToString(argumentTypes));
+		tree.setSymbol(node, created);
+		return created.getType();
+	}
+	
+	private static String typesToString(List<Type> types) {
+		StringBuilder builder = new StringBuilder("(");
+		for (int index = 0; index < types.size(); index++) {
+			if (index > 0) {
+				builder.append(", ");
+			}
+			builder.append(types.get(index).getName());
+		}
+		return builder.append(")").toString();
+	}
+	
+	private static boolean isNumber(Type type) {
+		return PrimitiveTypes.isNumeric(type) || type == PrimitiveTypes.ANY;
+	}
+	
+	private static boolean isString(Type type) {
+		return type == PrimitiveTypes.STRING || type == PrimitiveTypes.ANY;
+	}
+	
+	/**
+	 * Checks whether a value of type value can be assigned to a variable of type target. Values of class
+	 * types can also be assigned if the target class has an implicit constructor that accepts the value.
+	 */
+	private boolean isAssignable(Type target, Type value) {
+		if (isCompatible(target, value)) {
+			return true;
+		}
+		ClassBuilder targetClass = program.getClass(target);
+		if (targetClass != null) {
+			for (ConstructorBuilder constructor : targetClass.getConstructors()) {
+				ParamBuilder[] params = constructor.getParameteters().getParams();
+				if (constructor.getModifiers().contains(Modifier.IMPLICIT) && params.length == 1
+						&& isCompatible(params[0].getType().getType(), value)) {
+					references.add(constructor);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks whether the given types are compatible without implicit conversion. This is the case if they
+	 * are equal, both numeric or if one of them is ANY.
+	 */
+	static boolean isCompatible(Type target, Type value) {
+		if (target == PrimitiveTypes.ANY || value == PrimitiveTypes.ANY) {
+			return true;
+		}
+		if (PrimitiveTypes.isNumeric(target) && PrimitiveTypes.isNumeric(value)) {
+			return true;
+		}
+		return target.equals(value);
+	}
+}
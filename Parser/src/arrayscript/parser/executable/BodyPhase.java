@@ -0,0 +1,423 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.ParserOptions;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.InitBuilder;
+import arrayscript.parser.builder.MainBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.param.ParamsBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.resolve.Program;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * The phase that parses and checks the bodies of a program. Every body is an independent BodyUnit, so the
+ * bodies are checked in parallel on a work-stealing ForkJoinPool. The errors of every body are collected
+ * separately and merged in the order of the body units at the end, so the result doesn't depend on the
+ * scheduling of the threads.
+ *
+ * The bodies can either all be checked (checkAll), or only the bodies that are reachable from a selected
+ * main and the inits (checkReachable). Only checkReachable keeps lazy namespaces lazy.
+ * @author knokko
+ *
+ */
+public class BodyPhase {
+	
+	/**
+	 * Parses and checks the bodies of the given program. If the options select a main, only the bodies that
+	 * are reachable from that main (and the inits) will be checked. Otherwise, all namespaces will be
+	 * materialized and all bodies will be checked.
+	 * @param program The program whose bodies should be checked
+	 * @param options The options that determine the main and the number of threads
+	 * @return The result, containing the checked bodies and the errors in them
+	 * @throws ParsingException If the selected main doesn't exist or a lazy namespace is invalid
+	 */
+	public static CheckResult check(Program program, ParserOptions options) throws ParsingException {
+		if (options.getMainName() == null) {
+			program.getApp().materializeAll();
+			return checkAll(program, options.getBodyThreads());
+		} else {
+			return checkReachable(program, options.getMainName(), options.getBodyThreads());
+		}
+	}
+	
+	/**
+	 * Parses and checks all bodies of the materialized namespaces of the given program.
+	 * @param program The program whose bodies should be checked
+	 * @param threads The number of threads to use
+	 * @return The result, containing all bodies and the errors in them
+	 */
+	public static CheckResult checkAll(Program program, int threads) {
+		List<BodyUnit> units = collectUnits(program);
+		AtomicReferenceArray<List<String>> errors = new AtomicReferenceArray<List<String>>(units.size());
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new CheckRange(program, units, errors, 0, units.size()));
+		} finally {
+			pool.shutdown();
+		}
+		return createResult(program, units, errors);
+	}
+	
+	/**
+	 * Parses and checks only the bodies that are reachable from the main with the given name and the inits
+	 * of the given program. The bodies of the main and inits are checked first and every body that refers
+	 * to an element will cause the bodies of that element to be checked as well. Lazy namespaces are only
+	 * materialized when a body refers to one of their elements, so their bodies are collected in rounds:
+	 * the bodies of the namespaces that were materialized during a round are checked in the next round.
+	 * @param program The program whose bodies should be checked
+	 * @param mainName The name of the selected main
+	 * @param threads The number of threads to use
+	 * @return The result, containing the reachable bodies and the errors in them
+	 * @throws ParsingException If there is no main with the given name
+	 */
+	public static CheckResult checkReachable(Program program, String mainName, int threads) throws ParsingException {
+		MainBuilder main = program.getApp().getMain(mainName);
+		if (main == null) {
+			throw new ParsingException("There is no main with name " + mainName);
+		}
+		List<BodyUnit> units = new ArrayList<BodyUnit>();
+		Set<ElementBuilder> collected = Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>());
+		Map<ElementBuilder,List<BodyUnit>> owners = new IdentityHashMap<ElementBuilder,List<BodyUnit>>();
+		
+		List<ElementBuilder> targets = new ArrayList<ElementBuilder>(program.getApp().getInits());
+		targets.add(main);
+		
+		Set<BodyUnit> scheduled = Collections.newSetFromMap(new ConcurrentHashMap<BodyUnit,Boolean>());
+		Set<ElementBuilder> missing = Collections.newSetFromMap(new ConcurrentHashMap<ElementBuilder,Boolean>());
+		AtomicReferenceArray<List<String>> errors = new AtomicReferenceArray<List<String>>(0);
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			
+			// Checking bodies can materialize lazy namespaces, whose bodies are not known until the next round
+			while (true) {
+				int oldSize = units.size();
+				collectUnits(program.getApp().getGlobalNamespace(), units, collected);
+				for (BodyUnit unit : units.subList(oldSize, units.size())) {
+					addOwner(owners, unit.getOwner(), unit);
+					if (unit.getKind() == BodyUnit.Kind.PROPERTY) {
+						addOwner(owners, unit.getClassBuilder(), unit);
+					}
+				}
+				errors = grow(errors, units.size());
+				
+				final List<CheckReachable> tasks = new ArrayList<CheckReachable>();
+				for (ElementBuilder target : targets) {
+					List<BodyUnit> targetUnits = owners.get(target);
+					if (targetUnits != null) {
+						for (BodyUnit unit : targetUnits) {
+							if (scheduled.add(unit)) {
+								tasks.add(new CheckReachable(program, unit, owners, scheduled, missing, errors));
+							}
+						}
+					}
+				}
+				if (tasks.isEmpty()) {
+					break;
+				}
+				
+				pool.invoke(new RecursiveAction() {
+					
+					private static final long serialVersionUID = 1L;
+					
+					@Override
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+				targets = new ArrayList<ElementBuilder>(missing);
+				missing.clear();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return createResult(program, units, errors);
+	}
+	
+	private static AtomicReferenceArray<List<String>> grow(AtomicReferenceArray<List<String>> errors, int size) {
+		if (errors.length() == size) {
+			return errors;
+		}
+		AtomicReferenceArray<List<String>> grown = new AtomicReferenceArray<List<String>>(size);
+		for (int index = 0; index < errors.length(); index++) {
+			grown.set(index, errors.get(index));
+		}
+		return grown;
+	}
+	
+	private static CheckResult createResult(Program program, List<BodyUnit> units, AtomicReferenceArray<List<String>> errors) {
+		List<BodyUnit> checked = new ArrayList<BodyUnit>(units.size());
+		List<String> allErrors = new ArrayList<String>();
+		for (int index = 0; index < units.size(); index++) {
+			List<String> unitErrors = errors.get(index);
+			
+			// Units that were not reachable don't have an error list
+			if (unitErrors != null) {
+				checked.add(units.get(index));
+				allErrors.addAll(unitErrors);
+			}
+		}
+		return new CheckResult(program, checked, allErrors);
+	}
+	
+	/**
+	 * Maps every element to the body units that need to be checked when the element is used. Most elements
+	 * have only 1 body unit, but constructors also have a head and the default values of the properties of
+	 * a class need to be checked when the class is used.
+	 */
+	static Map<ElementBuilder,List<BodyUnit>> mapOwners(List<BodyUnit> units){
+		Map<ElementBuilder,List<BodyUnit>> owners = new IdentityHashMap<ElementBuilder,List<BodyUnit>>();
+		for (BodyUnit unit : units) {
+			addOwner(owners, unit.getOwner(), unit);
+			if (unit.getKind() == BodyUnit.Kind.PROPERTY) {
+				addOwner(owners, unit.getClassBuilder(), unit);
+			}
+		}
+		return owners;
+	}
+	
+	private static void addOwner(Map<ElementBuilder,List<BodyUnit>> owners, ElementBuilder owner, BodyUnit unit) {
+		List<BodyUnit> list = owners.get(owner);
+		if (list == null) {
+			list = new ArrayList<BodyUnit>(1);
+			owners.put(owner, list);
+		}
+		list.add(unit);
+	}
+	
+	/**
+	 * Collects all bodies of the given program, in the order the elements were declared. Bodies whose source
+	 * is not available (bodies of library elements) are skipped.
+	 * @param program The program to collect the bodies of
+	 * @return A list containing all body units of the program, ordered by their index
+	 */
+	public static List<BodyUnit> collectUnits(Program program){
+		List<BodyUnit> units = new ArrayList<BodyUnit>();
+		collectUnits(program.getApp().getGlobalNamespace(), units, Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>()));
+		return units;
+	}
+	
+	/**
+	 * Collects the bodies of the elements of the given namespace (and its descendants) that are not in the
+	 * given set of collected elements yet, and adds those elements to the set.
+	 */
+	private static void collectUnits(NamespaceBuilder namespace, List<BodyUnit> units, Set<ElementBuilder> collected) {
+		String prefix = namespace.isGlobal() ? "" : namespace.getQualifiedName() + ".";
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof NamespaceBuilder) {
+				collectUnits((NamespaceBuilder) element, units, collected);
+				continue;
+			}
+			if (!collected.add(element)) {
+				continue;
+			}
+			if (element instanceof ClassBuilder) {
+				collectUnits((ClassBuilder) element, units);
+			} else if (element instanceof VariableBuilder) {
+				VariableBuilder variable = (VariableBuilder) element;
+				addValue(units, BodyUnit.Kind.VARIABLE, variable, namespace, null, true, variable.getType().getType(),
+						variable.getInitialValue(), "initial value of " + prefix + variable.getName());
+			} else if (element instanceof FunctionBuilder) {
+				FunctionBuilder function = (FunctionBuilder) element;
+				addExecutable(units, BodyUnit.Kind.FUNCTION, function, namespace, null, true, function.getParameters(),
+						function.hasReturnType() ? function.getReturnType().getType() : null, function.getBody(),
+						"function " + prefix + function.getName() + "(" + function.getParameters() + ")");
+			} else if (element instanceof InitBuilder) {
+				InitBuilder init = (InitBuilder) element;
+				addExecutable(units, BodyUnit.Kind.INIT, init, namespace, null, true, new ParamsBuilder(), null,
+						init.getBody(), "init " + prefix + init.getName());
+			} else if (element instanceof MainBuilder) {
+				MainBuilder main = (MainBuilder) element;
+				addExecutable(units, BodyUnit.Kind.MAIN, main, namespace, null, true, new ParamsBuilder(), null,
+						main.getBody(), "main " + prefix + main.getName());
+			}
+		}
+	}
+	
+	private static void collectUnits(ClassBuilder classBuilder, List<BodyUnit> units) {
+		NamespaceBuilder namespace = classBuilder.getNamespace();
+		String prefix = classBuilder.getQualifiedName() + ".";
+		for (ElementBuilder element : classBuilder.getElements()) {
+			if (element instanceof VariableBuilder) {
+				VariableBuilder variable = (VariableBuilder) element;
+				addValue(units, BodyUnit.Kind.VARIABLE, variable, namespace, classBuilder, true, variable.getType().getType(),
+						variable.getInitialValue(), "initial value of " + prefix + variable.getName());
+			} else if (element instanceof PropertyBuilder) {
+				PropertyBuilder property = (PropertyBuilder) element;
+				if (property.hasDefaultValue()) {
+					addValue(units, BodyUnit.Kind.PROPERTY, property, namespace, classBuilder, false, property.getType().getType(),
+							property.getDefaultValue(), "default value of " + prefix + property.getName());
+				}
+			} else if (element instanceof FunctionBuilder) {
+				FunctionBuilder function = (FunctionBuilder) element;
+				addExecutable(units, BodyUnit.Kind.FUNCTION, function, namespace, classBuilder, true, function.getParameters(),
+						function.hasReturnType() ? function.getReturnType().getType() : null, function.getBody(),
+						"function " + prefix + function.getName() + "(" + function.getParameters() + ")");
+			} else if (element instanceof MethodBuilder) {
+				MethodBuilder method = (MethodBuilder) element;
+				addExecutable(units, BodyUnit.Kind.METHOD, method, namespace, classBuilder, false, method.getParameters(),
+						method.hasReturnType() ? method.getReturnType().getType() : null, method.getBody(),
+						"method " + prefix + method.getName() + "(" + method.getParameters() + ")");
+			} else if (element instanceof GetterBuilder) {
+				GetterBuilder getter = (GetterBuilder) element;
+				if (getter.hasCustomBody()) {
+					Type type = classBuilder.getProperty(getter.getPropertyName()).getType().getType();
+					addExecutable(units, BodyUnit.Kind.GETTER, getter, namespace, classBuilder, false, new ParamsBuilder(),
+							type, getter.getBody(), "getter " + prefix + getter.getPropertyName());
+				}
+			} else if (element instanceof SetterBuilder) {
+				SetterBuilder setter = (SetterBuilder) element;
+				if (setter.isCustom()) {
+					PropertyBuilder property = classBuilder.getProperty(setter.getPropertyName());
+					ParamsBuilder params = new ParamsBuilder(new ParamBuilder(property.getType(), setter.getParamName()));
+					addExecutable(units, BodyUnit.Kind.SETTER, setter, namespace, classBuilder, false, params, null,
+							setter.getBody(), "setter " + prefix + setter.getPropertyName());
+				}
+			} else if (element instanceof ConstructorBuilder) {
+				ConstructorBuilder constructor = (ConstructorBuilder) element;
+				String description = "constructor " + classBuilder.getQualifiedName() + "(" + constructor.getParameteters() + ")";
+				addExecutable(units, BodyUnit.Kind.CONSTRUCTOR_HEAD, constructor, namespace, classBuilder, false,
+						constructor.getParameteters(), null, constructor.getHeadExecutable(), "head of " + description);
+				addExecutable(units, BodyUnit.Kind.CONSTRUCTOR, constructor, namespace, classBuilder, false,
+						constructor.getParameteters(), null, constructor.getBody(), description);
+			}
+		}
+	}
+	
+	private static void addExecutable(List<BodyUnit> units, BodyUnit.Kind kind, ElementBuilder owner, NamespaceBuilder namespace,
+			ClassBuilder classBuilder, boolean isStatic, ParamsBuilder params, Type returnType, ExecutableBuilder executable,
+			String description) {
+		if (!executable.hasSource()) {
+			return;
+		}
+		ParamBuilder[] paramArray = params.getParams();
+		String[] paramNames = new String[paramArray.length];
+		Type[] paramTypes = new Type[paramArray.length];
+		for (int index = 0; index < paramArray.length; index++) {
+			paramNames[index] = paramArray[index].getName();
+			paramTypes[index] = paramArray[index].getType().getType();
+		}
+		units.add(new BodyUnit(kind, owner, namespace, classBuilder, isStatic, paramNames, paramTypes, returnType,
+				executable, null, units.size(), description));
+	}
+	
+	private static void addValue(List<BodyUnit> units, BodyUnit.Kind kind, ElementBuilder owner, NamespaceBuilder namespace,
+			ClassBuilder classBuilder, boolean isStatic, Type type, ValueBuilder value, String description) {
+		
+		// Values that were loaded from a library don't have source elements
+		if (value == null || value.getUnparsedValue() == null) {
+			return;
+		}
+		units.add(new BodyUnit(kind, owner, namespace, classBuilder, isStatic, new String[0], new Type[0], type,
+				null, value, units.size(), description));
+	}
+	
+	/**
+	 * Checks a range of the body units by splitting it in halves until only 1 unit is left. The idle threads
+	 * of the pool will steal the halves that are not being checked yet.
+	 */
+	private static class CheckRange extends RecursiveAction {
+		
+		private static final long serialVersionUID = 6337816853417216475L;
+		
+		private final Program program;
+		private final List<BodyUnit> units;
+		private final AtomicReferenceArray<List<String>> errors;
+		private final int start;
+		private final int end;
+		
+		CheckRange(Program program, List<BodyUnit> units, AtomicReferenceArray<List<String>> errors, int start, int end){
+			this.program = program;
+			this.units = units;
+			this.errors = errors;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				errors.set(start, BodyChecker.check(program, units.get(start)));
+			} else if (end - start > 1) {
+				int middle = (start + end) / 2;
+				invokeAll(new CheckRange(program, units, errors, start, middle),
+						new CheckRange(program, units, errors, middle, end));
+			}
+		}
+	}
+	
+	/**
+	 * Checks a single body unit and then the units of all elements it refers to that have not been scheduled
+	 * yet.
+	 */
+	private static class CheckReachable extends RecursiveAction {
+		
+		private static final long serialVersionUID = -2181622386417399085L;
+		
+		private final Program program;
+		private final BodyUnit unit;
+		private final Map<ElementBuilder,List<BodyUnit>> owners;
+		private final Set<BodyUnit> scheduled;
+		private final Set<ElementBuilder> missing;
+		private final AtomicReferenceArray<List<String>> errors;
+		
+		CheckReachable(Program program, BodyUnit unit, Map<ElementBuilder,List<BodyUnit>> owners,
+				Set<BodyUnit> scheduled, Set<ElementBuilder> missing, AtomicReferenceArray<List<String>> errors){
+			this.program = program;
+			this.unit = unit;
+			this.owners = owners;
+			this.scheduled = scheduled;
+			this.missing = missing;
+			this.errors = errors;
+		}
+		
+		@Override
+		protected void compute() {
+			List<String> unitErrors = BodyChecker.check(program, unit);
+			errors.set(unit.getIndex(), unitErrors);
+			
+			// The references of invalid bodies are unknown
+			if (!unitErrors.isEmpty()) {
+				return;
+			}
+			List<CheckReachable> next = new ArrayList<CheckReachable>();
+			for (ElementBuilder reference : unit.getReferences()) {
+				List<BodyUnit> referencedUnits = owners.get(reference);
+				if (referencedUnits != null) {
+					for (BodyUnit referenced : referencedUnits) {
+						if (scheduled.add(referenced)) {
+							next.add(new CheckReachable(program, referenced, owners, scheduled, missing, errors));
+						}
+					}
+				} else {
+					
+					// The element may be in a namespace that was materialized during this round
+					missing.add(reference);
+				}
+			}
+			invokeAll(next);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package arrayscript.parser.executable;
+
+import java.util.Collections;
+import java.util.List;
+
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * A body that needs to be parsed and checked: the body of a function, method, getter, setter, constructor,
+ * init or main, the head of a constructor, or the initial value of a variable or property. Every body unit
+ * can be checked independently of the other body units, which makes them the work units of the BodyPhase.
+ * 
+ * Body units are created by BodyPhase.collectUnits.
+ * @author knokko
+ *
+ */
+public class BodyUnit {
+	
+	private final Kind kind;
+	private final ElementBuilder owner;
+	private final NamespaceBuilder namespace;
+	private final ClassBuilder classBuilder;
+	private final boolean isStatic;
+	
+	private final String[] paramNames;
+	private final Type[] paramTypes;
+	private final Type returnType;
+	
+	private final ExecutableBuilder executable;
+	private final ValueBuilder value;
+	
+	private final int index;
+	private final String description;
+	
+	private volatile List<ElementBuilder> references;
+	
+	BodyUnit(Kind kind, ElementBuilder owner, NamespaceBuilder namespace, ClassBuilder classBuilder, boolean isStatic, 
+			String[] paramNames, Type[] paramTypes, Type returnType, ExecutableBuilder executable, 
+			ValueBuilder value, int index, String description) {
+		this.kind = kind;
+		this.owner = owner;
+		this.namespace = namespace;
+		this.classBuilder = classBuilder;
+		this.isStatic = isStatic;
+		this.paramNames = paramNames;
+		this.paramTypes = paramTypes;
+		this.returnType = returnType;
+		this.executable = executable;
+		this.value = value;
+		this.index = index;
+		this.description = description;
+	}
+	
+	@Override
+	public String toString() {
+		return description;
+	}
+	
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/**
+	 * @return The element this body belongs to
+	 */
+	public ElementBuilder getOwner() {
+		return owner;
+	}
+	
+	/**
+	 * @return The namespace the body is declared in (the namespace of the class if the body is declared in a
+	 * class)
+	 */
+	public NamespaceBuilder getNamespace() {
+		return namespace;
+	}
+	
+	/**
+	 * @return The class the body is declared in, or null if the body is not declared in a class
+	 */
+	public ClassBuilder getClassBuilder() {
+		return classBuilder;
+	}
+	
+	/**
+	 * @return true if 'this' and the properties and methods of the class can NOT be used in this body
+	 */
+	public boolean isStatic() {
+		return isStatic;
+	}
+	
+	public int getParamCount() {
+		return paramNames.length;
+	}
+	
+	public String getParamName(int index) {
+		return paramNames[index];
+	}
+	
+	public Type getParamType(int index) {
+		return paramTypes[index];
+	}
+	
+	/**
+	 * @return The type of the values that must be returned by this body (or the type of the initial value),
+	 * or null if this body doesn't return a value
+	 */
+	public Type getReturnType() {
+		return returnType;
+	}
+	
+	/**
+	 * @return true if this body is an expression (the initial value of a variable or property), false if it
+	 * is a code block
+	 */
+	public boolean isExpression() {
+		return value != null;
+	}
+	
+	/**
+	 * @return The executable of this body, or null if this body is an expression
+	 */
+	public ExecutableBuilder getExecutable() {
+		return executable;
+	}
+	
+	/**
+	 * @return The value of this body, or null if this body is a code block
+	 */
+	public ValueBuilder getValue() {
+		return value;
+	}
+	
+	/**
+	 * @return The position of this body unit in the list of all body units. The errors of the body phase are
+	 * ordered by this index.
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Parses the syntax tree of this body, if that didn't happen already.
+	 * @return The syntax tree of this body
+	 * @throws ParsingException If the source of this body is not valid ArrayScript
+	 */
+	SyntaxTree parseSyntax() throws ParsingException {
+		if (value != null) {
+			return value.parseSyntax();
+		} else {
+			return executable.parseSyntax();
+		}
+	}
+	
+	/**
+	 * @return The syntax tree of this body
+	 * @throws IllegalStateException If this body has not been parsed yet
+	 */
+	public SyntaxTree getSyntax() throws IllegalStateException {
+		if (value != null) {
+			return value.getSyntax();
+		} else {
+			return executable.getSyntax();
+		}
+	}
+	
+	void setReferences(List<ElementBuilder> references) {
+		this.references = Collections.unmodifiableList(references);
+	}
+	
+	/**
+	 * @return true if this body has been checked successfully
+	 */
+	public boolean isChecked() {
+		return references != null;
+	}
+	
+	/**
+	 * @return The elements that are referred to by this body: the variables, properties, functions, methods,
+	 * getters, setters, constructors and classes that are used by this body, in the order they were first
+	 * encountered
+	 * @throws IllegalStateException If this body has not been checked successfully
+	 */
+	public List<ElementBuilder> getReferences() throws IllegalStateException {
+		List<ElementBuilder> result = references;
+		if (result == null) {
+			throw new IllegalStateException("The body " + description + " has not been checked successfully");
+		}
+		return result;
+	}
+	
+	public static enum Kind {
+		
+		INIT,
+		MAIN,
+		FUNCTION,
+		METHOD,
+		GETTER,
+		SETTER,
+		CONSTRUCTOR_HEAD,
+		CONSTRUCTOR,
+		VARIABLE,
+		PROPERTY
+	}
+}
@@ -0,0 +1,466 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.InitBuilder;
+import arrayscript.parser.builder.MainBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+
+/**
+ * The call graph of a checked program: which elements can be called by which elements, and which elements
+ * can be called by every call site. Call sites are the CALL nodes, the NEW nodes and the PROPERTY nodes
+ * that use an implicit getter or setter. The targets of a default constructor are represented by its class.
+ *
+ * The graph is built with rapid type analysis, starting at the inits and mains of the application. The
+ * candidate targets of a call site are given by the class hierarchy. Classes can't extend other classes,
+ * so that is only the statically resolved target. Methods, getters and setters are only considered
+ * callable if their class is instantiated by reachable code, so call sites on classes that are never
+ * instantiated have no targets. Calls to a constructor also call the default values of the properties
+ * of its class.
+ *
+ * Every element in the graph gets an id from 0 to getElementCount() - 1, in the order the elements were
+ * discovered. The edges are stored in compressed sparse row form: the callees of element i are
+ * callees[calleeStarts[i]] until callees[calleeStarts[i + 1]], and the same holds for the callers and for
+ * the targets of the call sites. Instances of this class are immutable.
+ * @author knokko
+ *
+ */
+public class CallGraph {
+	
+	private final ElementBuilder[] elements;
+	private final Map<ElementBuilder,Integer> ids;
+	
+	private final int[] calleeStarts;
+	private final int[] callees;
+	private final int[] callerStarts;
+	private final int[] callers;
+	
+	private final Map<BodyUnit,int[]> unitSites;
+	private final int[] siteNodes;
+	private final int[] targetStarts;
+	private final int[] targets;
+	
+	private final Set<ClassBuilder> instantiated;
+	
+	private CallGraph(ElementBuilder[] elements, Map<ElementBuilder,Integer> ids, int[] calleeStarts, int[] callees,
+			int[] callerStarts, int[] callers, Map<BodyUnit,int[]> unitSites, int[] siteNodes, int[] targetStarts,
+			int[] targets, Set<ClassBuilder> instantiated) {
+		this.elements = elements;
+		this.ids = ids;
+		this.calleeStarts = calleeStarts;
+		this.callees = callees;
+		this.callerStarts = callerStarts;
+		this.callers = callers;
+		this.unitSites = unitSites;
+		this.siteNodes = siteNodes;
+		this.targetStarts = targetStarts;
+		this.targets = targets;
+		this.instantiated = instantiated;
+	}
+	
+	/**
+	 * Builds the call graph of the checked bodies of the given result.
+	 * @param result The result of the body phase, without errors
+	 * @return The call graph
+	 */
+	public static CallGraph build(CheckResult result) {
+		return new Analysis(result).run();
+	}
+	
+	/**
+	 * @return The number of elements in this graph
+	 */
+	public int getElementCount() {
+		return elements.length;
+	}
+	
+	/**
+	 * @return The element with the given id
+	 */
+	public ElementBuilder getElement(int id) {
+		return elements[id];
+	}
+	
+	/**
+	 * @return The id of the given element, or -1 if the element is not reachable
+	 */
+	public int getId(ElementBuilder element) {
+		Integer id = ids.get(element);
+		return id != null ? id : -1;
+	}
+	
+	/**
+	 * @return The number of distinct elements that can be called by the element with the given id
+	 */
+	public int getCalleeCount(int id) {
+		return calleeStarts[id + 1] - calleeStarts[id];
+	}
+	
+	/**
+	 * @return The id of the callee with the given index of the element with the given id
+	 */
+	public int getCallee(int id, int index) {
+		return callees[calleeStarts[id] + index];
+	}
+	
+	/**
+	 * @return The number of distinct elements that can call the element with the given id
+	 */
+	public int getCallerCount(int id) {
+		return callerStarts[id + 1] - callerStarts[id];
+	}
+	
+	/**
+	 * @return The id of the caller with the given index of the element with the given id
+	 */
+	public int getCaller(int id, int index) {
+		return callers[callerStarts[id] + index];
+	}
+	
+	/**
+	 * @return true if the given class is instantiated by reachable code
+	 */
+	public boolean isInstantiated(ClassBuilder classBuilder) {
+		return instantiated.contains(classBuilder);
+	}
+	
+	/**
+	 * Finds the index of the call site at the given node of the given body.
+	 * @return The index of the call site, or -1 if the node is not a call site of a reachable body
+	 */
+	private int findSite(BodyUnit unit, int node) {
+		int[] range = unitSites.get(unit);
+		if (range == null) {
+			return -1;
+		}
+		int index = Arrays.binarySearch(siteNodes, range[0], range[1], node);
+		return index >= 0 ? index : -1;
+	}
+	
+	/**
+	 * @param unit The body that contains the call site
+	 * @param node The CALL, NEW or PROPERTY node of the call site
+	 * @return The number of elements that can be called by the given call site, or 0 if the node is not a
+	 * call site of a reachable body
+	 */
+	public int getTargetCount(BodyUnit unit, int node) {
+		int site = findSite(unit, node);
+		return site != -1 ? targetStarts[site + 1] - targetStarts[site] : 0;
+	}
+	
+	/**
+	 * @param unit The body that contains the call site
+	 * @param node The CALL, NEW or PROPERTY node of the call site
+	 * @param index The index of the target, smaller than getTargetCount(unit, node)
+	 * @return The id of the target with the given index of the given call site
+	 */
+	public int getTarget(BodyUnit unit, int node, int index) {
+		return targets[targetStarts[findSite(unit, node)] + index];
+	}
+	
+	/**
+	 * @param unit The body that contains the call site
+	 * @param node The CALL, NEW or PROPERTY node of the call site
+	 * @return The only element that can be called by the given call site, or null if the call site can
+	 * call multiple elements or none at all
+	 */
+	public ElementBuilder getMonomorphicTarget(BodyUnit unit, int node) {
+		int site = findSite(unit, node);
+		if (site == -1 || targetStarts[site + 1] - targetStarts[site] != 1) {
+			return null;
+		}
+		return elements[targets[targetStarts[site]]];
+	}
+	
+	/**
+	 * @return true if the given call site can call exactly 1 element
+	 */
+	public boolean isMonomorphic(BodyUnit unit, int node) {
+		return getMonomorphicTarget(unit, node) != null;
+	}
+	
+	/**
+	 * The rapid type analysis that builds a call graph
+	 */
+	private static class Analysis {
+		
+		private final AppBuilder app;
+		private final Map<ElementBuilder,List<BodyUnit>> owners;
+		private final Map<ElementBuilder,ClassBuilder> memberClasses;
+		
+		private final List<ElementBuilder> elements;
+		private final Map<ElementBuilder,Integer> ids;
+		private final List<Set<ElementBuilder>> calleeSets;
+		private final Deque<ElementBuilder> toVisit;
+		
+		private final Set<ClassBuilder> instantiated;
+		private final Map<ClassBuilder,List<ElementBuilder>> waitingCallers;
+		private final Map<ClassBuilder,List<ElementBuilder>> waitingTargets;
+		
+		private final List<BodyUnit> siteUnits;
+		private final Map<BodyUnit,Integer> unitIndices;
+		private final List<int[]> unitNodes;
+		private final List<ElementBuilder[]> unitTargets;
+		
+		Analysis(CheckResult result) {
+			this.app = result.getProgram().getApp();
+			this.owners = BodyPhase.mapOwners(result.getCheckedUnits());
+			this.memberClasses = new IdentityHashMap<ElementBuilder,ClassBuilder>();
+			for (ClassBuilder classBuilder : result.getProgram().getClasses().values()) {
+				for (ElementBuilder member : classBuilder.getElements()) {
+					memberClasses.put(member, classBuilder);
+				}
+			}
+			this.elements = new ArrayList<ElementBuilder>();
+			this.ids = new IdentityHashMap<ElementBuilder,Integer>();
+			this.calleeSets = new ArrayList<Set<ElementBuilder>>();
+			this.toVisit = new ArrayDeque<ElementBuilder>();
+			this.instantiated = Collections.newSetFromMap(new IdentityHashMap<ClassBuilder,Boolean>());
+			this.waitingCallers = new IdentityHashMap<ClassBuilder,List<ElementBuilder>>();
+			this.waitingTargets = new IdentityHashMap<ClassBuilder,List<ElementBuilder>>();
+			this.siteUnits = new ArrayList<BodyUnit>();
+			this.unitIndices = new IdentityHashMap<BodyUnit,Integer>();
+			this.unitNodes = new ArrayList<int[]>();
+			this.unitTargets = new ArrayList<ElementBuilder[]>();
+		}
+		
+		CallGraph run() {
+			for (InitBuilder init : app.getInits()) {
+				discover(init);
+			}
+			for (MainBuilder main : app.getMains()) {
+				discover(main);
+			}
+			while (!toVisit.isEmpty()) {
+				visit(toVisit.poll());
+			}
+			return finish();
+		}
+		
+		private int discover(ElementBuilder element) {
+			Integer id = ids.get(element);
+			if (id == null) {
+				id = elements.size();
+				elements.add(element);
+				ids.put(element, id);
+				calleeSets.add(Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>()));
+				toVisit.add(element);
+			}
+			return id;
+		}
+		
+		/**
+		 * @return true if the given target can be called, given the classes that are instantiated so far
+		 */
+		private boolean isLive(ElementBuilder target) {
+			boolean isInstanceMember = target instanceof MethodBuilder || target instanceof GetterBuilder
+					|| target instanceof SetterBuilder;
+			return !isInstanceMember || instantiated.contains(memberClasses.get(target));
+		}
+		
+		private void call(ElementBuilder caller, ElementBuilder target) {
+			if (isLive(target)) {
+				discover(target);
+				calleeSets.get(ids.get(caller)).add(target);
+			} else {
+				
+				// This call will become possible once the class of the target is instantiated
+				ClassBuilder targetClass = memberClasses.get(target);
+				addWaiting(waitingCallers, targetClass, caller);
+				addWaiting(waitingTargets, targetClass, target);
+			}
+		}
+		
+		private static void addWaiting(Map<ClassBuilder,List<ElementBuilder>> waiting, ClassBuilder key, ElementBuilder element) {
+			List<ElementBuilder> list = waiting.get(key);
+			if (list == null) {
+				list = new ArrayList<ElementBuilder>(2);
+				waiting.put(key, list);
+			}
+			list.add(element);
+		}
+		
+		private void instantiate(ClassBuilder classBuilder) {
+			if (instantiated.add(classBuilder)) {
+				List<ElementBuilder> callers = waitingCallers.remove(classBuilder);
+				List<ElementBuilder> targets = waitingTargets.remove(classBuilder);
+				if (callers != null) {
+					for (int index = 0; index < callers.size(); index++) {
+						call(callers.get(index), targets.get(index));
+					}
+				}
+			}
+		}
+		
+		private void visit(ElementBuilder element) {
+			List<BodyUnit> units = new ArrayList<BodyUnit>();
+			List<BodyUnit> ownUnits = owners.get(element);
+			if (ownUnits != null) {
+				units.addAll(ownUnits);
+			}
+			
+			// Constructors also evaluate the default values of the properties (which are owned by the class)
+			if (element instanceof ConstructorBuilder) {
+				List<BodyUnit> classUnits = owners.get(memberClasses.get(element));
+				if (classUnits != null) {
+					units.addAll(classUnits);
+				}
+			}
+			for (BodyUnit unit : units) {
+				visit(element, unit);
+			}
+		}
+		
+		private void visit(ElementBuilder element, BodyUnit unit) {
+			
+			// The property units are shared by all constructors of the class, so they are only scanned once
+			Integer unitIndex = unitIndices.get(unit);
+			if (unitIndex == null) {
+				List<Integer> nodes = new ArrayList<Integer>();
+				List<ElementBuilder> targets = new ArrayList<ElementBuilder>();
+				SyntaxTree tree = unit.getSyntax();
+				collectSites(tree, tree.getRoot(), nodes, targets);
+				int[] nodeArray = new int[nodes.size()];
+				for (int index = 0; index < nodeArray.length; index++) {
+					nodeArray[index] = nodes.get(index);
+				}
+				unitIndex = siteUnits.size();
+				unitIndices.put(unit, unitIndex);
+				siteUnits.add(unit);
+				unitNodes.add(nodeArray);
+				unitTargets.add(targets.toArray(new ElementBuilder[targets.size()]));
+			}
+			ElementBuilder[] targets = unitTargets.get(unitIndex);
+			for (ElementBuilder target : targets) {
+				call(element, target);
+			}
+			
+			// Implicit constructor calls don't have a call site, but they are references
+			for (ElementBuilder reference : unit.getReferences()) {
+				if (reference instanceof ConstructorBuilder) {
+					instantiate(memberClasses.get(reference));
+					call(element, reference);
+				}
+			}
+		}
+		
+		private void collectSites(SyntaxTree tree, int node, List<Integer> nodes, List<ElementBuilder> targets) {
+			NodeType type = tree.getType(node);
+			Object symbol = tree.getSymbol(node);
+			int skippedChild = SyntaxTree.NONE;
+			if (type == NodeType.CALL && isCallable(symbol)) {
+				nodes.add(node);
+				targets.add((ElementBuilder) symbol);
+				
+				// The callee has the same symbol, but it is not a separate call site
+				skippedChild = tree.getFirstChild(node);
+			} else if (type == NodeType.PROPERTY && (symbol instanceof GetterBuilder || symbol instanceof SetterBuilder)) {
+				nodes.add(node);
+				targets.add((ElementBuilder) symbol);
+			} else if (type == NodeType.NEW && (symbol instanceof ConstructorBuilder || symbol instanceof ClassBuilder)) {
+				nodes.add(node);
+				targets.add((ElementBuilder) symbol);
+				instantiate(symbol instanceof ClassBuilder ? (ClassBuilder) symbol : memberClasses.get(symbol));
+			}
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (child == skippedChild) {
+					for (int grandChild = tree.getFirstChild(child); grandChild != SyntaxTree.NONE; grandChild = tree.getNextSibling(grandChild)) {
+						collectSites(tree, grandChild, nodes, targets);
+					}
+				} else {
+					collectSites(tree, child, nodes, targets);
+				}
+			}
+		}
+		
+		private static boolean isCallable(Object symbol) {
+			return symbol instanceof FunctionBuilder || symbol instanceof MethodBuilder || symbol instanceof GetterBuilder
+					|| symbol instanceof SetterBuilder;
+		}
+		
+		private CallGraph finish() {
+			int elementCount = elements.size();
+			int[] calleeStarts = new int[elementCount + 1];
+			int[] callerStarts = new int[elementCount + 1];
+			for (int id = 0; id < elementCount; id++) {
+				calleeStarts[id + 1] = calleeStarts[id] + calleeSets.get(id).size();
+				for (ElementBuilder callee : calleeSets.get(id)) {
+					callerStarts[ids.get(callee) + 1]++;
+				}
+			}
+			for (int id = 0; id < elementCount; id++) {
+				callerStarts[id + 1] += callerStarts[id];
+			}
+			int[] callees = new int[calleeStarts[elementCount]];
+			int[] callers = new int[callerStarts[elementCount]];
+			int[] callerFill = Arrays.copyOf(callerStarts, elementCount);
+			for (int id = 0; id < elementCount; id++) {
+				int[] sorted = new int[calleeSets.get(id).size()];
+				int index = 0;
+				for (ElementBuilder callee : calleeSets.get(id)) {
+					sorted[index++] = ids.get(callee);
+				}
+				Arrays.sort(sorted);
+				System.arraycopy(sorted, 0, callees, calleeStarts[id], sorted.length);
+				
+				// The callers are sorted as well because the ids are visited in ascending order
+				for (int callee : sorted) {
+					callers[callerFill[callee]++] = id;
+				}
+			}
+			
+			int siteCount = 0;
+			for (int[] nodes : unitNodes) {
+				siteCount += nodes.length;
+			}
+			Map<BodyUnit,int[]> unitSites = new IdentityHashMap<BodyUnit,int[]>();
+			int[] siteNodes = new int[siteCount];
+			int[] targetStarts = new int[siteCount + 1];
+			int[] targets = new int[siteCount];
+			int site = 0;
+			int targetCount = 0;
+			for (int unitIndex = 0; unitIndex < siteUnits.size(); unitIndex++) {
+				int[] nodes = unitNodes.get(unitIndex);
+				ElementBuilder[] unitTargetArray = unitTargets.get(unitIndex);
+				
+				// The nodes are sorted so that the sites can be found with a binary search
+				long[] order = new long[nodes.length];
+				for (int index = 0; index < order.length; index++) {
+					order[index] = (long) nodes[index] << 32 | index;
+				}
+				Arrays.sort(order);
+				unitSites.put(siteUnits.get(unitIndex), new int[] {site, site + nodes.length});
+				for (long entry : order) {
+					int index = (int) entry;
+					siteNodes[site] = nodes[index];
+					ElementBuilder target = unitTargetArray[index];
+					if (isLive(target)) {
+						targets[targetCount++] = ids.get(target);
+					}
+					targetStarts[++site] = targetCount;
+				}
+			}
+			
+			return new CallGraph(elements.toArray(new ElementBuilder[elementCount]), ids, calleeStarts, callees,
+					callerStarts, callers, unitSites, siteNodes, targetStarts, Arrays.copyOf(targets, targetCount),
+					instantiated);
+		}
+	}
+}
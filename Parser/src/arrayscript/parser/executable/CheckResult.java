@@ -0,0 +1,82 @@
+package arrayscript.parser.executable;
+
+import java.util.Collections;
+import java.util.List;
+
+import arrayscript.parser.resolve.Program;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * The result of the BodyPhase: the bodies that were checked and the errors that were found in them. The
+ * errors are ordered by the index of the body they were found in, so the order doesn't depend on the order
+ * in which the threads happened to check the bodies.
+ * @author knokko
+ *
+ */
+public class CheckResult {
+	
+	private final Program program;
+	private final List<BodyUnit> checkedUnits;
+	private final List<String> errors;
+	
+	CheckResult(Program program, List<BodyUnit> checkedUnits, List<String> errors) {
+		this.program = program;
+		this.checkedUnits = Collections.unmodifiableList(checkedUnits);
+		this.errors = Collections.unmodifiableList(errors);
+	}
+	
+	/**
+	 * @return The program whose bodies were checked
+	 */
+	public Program getProgram() {
+		return program;
+	}
+	
+	/**
+	 * @return The bodies that were checked, ordered by their index
+	 */
+	public List<BodyUnit> getCheckedUnits(){
+		return checkedUnits;
+	}
+	
+	/**
+	 * @return The errors that were found, ordered by the index of the body they were found in
+	 */
+	public List<String> getErrors(){
+		return errors;
+	}
+	
+	public boolean hasErrors() {
+		return !errors.isEmpty();
+	}
+	
+	/**
+	 * Throws a ParsingException if any errors were found. The message of the exception will be the first
+	 * error, the other errors will be added as suppressed exceptions.
+	 * @throws ParsingException If any errors were found
+	 */
+	public void throwIfFailed() throws ParsingException {
+		throwErrors(errors);
+	}
+	
+	/**
+	 * Throws a ParsingException if the given list of errors is not empty. The message of the exception will
+	 * be the first error, the other errors will be added as suppressed exceptions.
+	 * @param errors The errors
+	 * @throws ParsingException If the list of errors is not empty
+	 */
+	static void throwErrors(List<String> errors) throws ParsingException {
+		if (errors.isEmpty()) {
+			return;
+		}
+		String message = errors.get(0);
+		if (errors.size() > 1) {
+			message += " (and " + (errors.size() - 1) + " more errors)";
+		}
+		ParsingException exception = new ParsingException(message);
+		for (int index = 1; index < errors.size(); index++) {
+			exception.addSuppressed(new ParsingException(errors.get(index)));
+		}
+		throw exception;
+	}
+}
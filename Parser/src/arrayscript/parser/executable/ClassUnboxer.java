@@ -0,0 +1,475 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.Modifier;
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.Value;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.executable.TreeCopier.FreshLocals;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Implements the define modifier for classes: the instances of a define class are replaced by the value of
+ * its only property, or by 0 if the class doesn't have properties. The bodies are rewritten as follows:
+ *
+ * Reading the property of an instance and calling its default getter become no-ops: they are replaced by the
+ * instance itself. Within the methods and getters of the class, the property is replaced by 'this', so
+ * methods become functions that take the underlying value as 'this'.
+ *
+ * The head of every constructor is moved into its body. The body gets a local variable that holds the
+ * value of the property (initialized with the default value of the property) and returns that variable, so
+ * constructors become functions that compute the underlying value. Constructors that only assign their
+ * single parameter to the property are identities, so their calls are replaced by the argument. Creating an
+ * instance of a class without properties and with an empty constructor is replaced by 0.
+ *
+ * The property of a define class can only be assigned by its constructors, because the instances are
+ * values that can't be modified. The value types of the nodes are not changed, so type checking stays
+ * nominal.
+ *
+ * This pass must run after the body phase and the DefineInliner.
+ * @author knokko
+ *
+ */
+public class ClassUnboxer {
+	
+	private final CheckResult result;
+	private final Map<ClassBuilder,PropertyBuilder> defineClasses;
+	private final Map<PropertyBuilder,ClassBuilder> propertyOwners;
+	private final Map<PropertyBuilder,BodyUnit> defaultValues;
+	private final Map<ConstructorBuilder,BodyUnit> heads;
+	private final Map<ConstructorBuilder,BodyUnit> bodies;
+	private final Set<ConstructorBuilder> identities;
+	private final Set<ConstructorBuilder> emptyConstructors;
+	private final Map<BodyUnit,LocalVariable> values;
+	private final List<String> errors;
+	
+	/**
+	 * @param result The result of the body phase
+	 */
+	public ClassUnboxer(CheckResult result) {
+		this.result = result;
+		defineClasses = new IdentityHashMap<ClassBuilder,PropertyBuilder>();
+		propertyOwners = new IdentityHashMap<PropertyBuilder,ClassBuilder>();
+		for (ClassBuilder classBuilder : result.getProgram().getClasses().values()) {
+			if (classBuilder.getModifiers().contains(Modifier.DEFINE)) {
+				PropertyBuilder property = null;
+				for (PropertyBuilder candidate : classBuilder.getProperties()) {
+					property = candidate;
+				}
+				defineClasses.put(classBuilder, property);
+				if (property != null) {
+					propertyOwners.put(property, classBuilder);
+				}
+			}
+		}
+		defaultValues = new IdentityHashMap<PropertyBuilder,BodyUnit>();
+		heads = new IdentityHashMap<ConstructorBuilder,BodyUnit>();
+		bodies = new IdentityHashMap<ConstructorBuilder,BodyUnit>();
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked() && isDefine(unit.getClassBuilder())) {
+				if (unit.getKind() == BodyUnit.Kind.PROPERTY) {
+					defaultValues.put((PropertyBuilder) unit.getOwner(), unit);
+				} else if (unit.getKind() == BodyUnit.Kind.CONSTRUCTOR_HEAD) {
+					heads.put((ConstructorBuilder) unit.getOwner(), unit);
+				} else if (unit.getKind() == BodyUnit.Kind.CONSTRUCTOR) {
+					bodies.put((ConstructorBuilder) unit.getOwner(), unit);
+				}
+			}
+		}
+		identities = Collections.newSetFromMap(new IdentityHashMap<ConstructorBuilder,Boolean>());
+		emptyConstructors = Collections.newSetFromMap(new IdentityHashMap<ConstructorBuilder,Boolean>());
+		values = new IdentityHashMap<BodyUnit,LocalVariable>();
+		errors = new ArrayList<String>();
+	}
+	
+	/**
+	 * @param classBuilder A class, may be null
+	 * @return true if the given class is a define class, whose instances are replaced by their property
+	 */
+	public boolean isDefine(ClassBuilder classBuilder) {
+		return defineClasses.containsKey(classBuilder);
+	}
+	
+	/**
+	 * Rewrites all checked bodies such that the instances of define classes are replaced by their property.
+	 * @throws ParsingException If the property of a define class is assigned outside its constructors
+	 */
+	public void unboxAll() throws ParsingException {
+		if (defineClasses.isEmpty()) {
+			return;
+		}
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked()) {
+				SyntaxTree tree = unit.getSyntax();
+				checkAssignments(unit, tree, tree.getRoot());
+			}
+		}
+		CheckResult.throwErrors(errors);
+		
+		// The shape of the constructors must be determined before they are rewritten
+		for (Map.Entry<ConstructorBuilder,BodyUnit> entry : bodies.entrySet()) {
+			ConstructorBuilder constructor = entry.getKey();
+			if (isIdentity(constructor, entry.getValue())) {
+				identities.add(constructor);
+			}
+			if (isEmpty(heads.get(constructor)) && isEmpty(entry.getValue())) {
+				emptyConstructors.add(constructor);
+			}
+		}
+		for (BodyUnit unit : bodies.values()) {
+			lowerConstructor(unit);
+		}
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked()) {
+				SyntaxTree tree = unit.getSyntax();
+				new Rewriter(unit, tree).rewrite(tree.getRoot(), false);
+			}
+		}
+	}
+	
+	private void checkAssignments(BodyUnit unit, SyntaxTree tree, int node) {
+		NodeType type = tree.getType(node);
+		if (type == NodeType.ASSIGN || type == NodeType.PREFIX || type == NodeType.POSTFIX) {
+			int target = tree.getFirstChild(node);
+			Object symbol = tree.getSymbol(target);
+			ClassBuilder owner = getDefineClass(symbol);
+			if (owner != null) {
+				boolean isConstructor = unit.getKind() == BodyUnit.Kind.CONSTRUCTOR || unit.getKind() == BodyUnit.Kind.CONSTRUCTOR_HEAD;
+				boolean isThis = tree.getType(target) == NodeType.NAME || tree.getType(tree.getFirstChild(target)) == NodeType.THIS;
+				if (!isConstructor || unit.getClassBuilder() != owner || !isThis) {
+					errors.add("In " + unit + ": The property " + ((PropertyBuilder) symbol).getName() + " of the define class " + owner.getName() + " can only be assigned to this in its constructors");
+				}
+			}
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			checkAssignments(unit, tree, child);
+		}
+	}
+	
+	/**
+	 * @return The define class whose property is the given symbol, or null if the symbol is not the property
+	 * of a define class
+	 */
+	private ClassBuilder getDefineClass(Object symbol) {
+		return symbol instanceof PropertyBuilder ? propertyOwners.get(symbol) : null;
+	}
+	
+	/**
+	 * @return The define class whose default getter is the given symbol, or null if the symbol is not the
+	 * default getter of a define class
+	 */
+	private ClassBuilder getDefaultGetterClass(Object symbol) {
+		if (symbol instanceof GetterBuilder && !((GetterBuilder) symbol).hasCustomBody()) {
+			for (ClassBuilder classBuilder : defineClasses.keySet()) {
+				if (classBuilder.getGetter(((GetterBuilder) symbol).getPropertyName()) == symbol) {
+					return classBuilder;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return true if the given constructor only assigns its single parameter to the property, either in its
+	 * head (with an empty body) or in its body (with an empty head)
+	 */
+	private boolean isIdentity(ConstructorBuilder constructor, BodyUnit body) {
+		PropertyBuilder property = defineClasses.get(body.getClassBuilder());
+		if (property == null || body.getParamCount() != 1) {
+			return false;
+		}
+		
+		// A default value that is not constant would have side effects that must not be skipped
+		if (property.hasDefaultValue() && !property.getDefaultValue().isParsed()) {
+			return false;
+		}
+		BodyUnit head = heads.get(constructor);
+		if (isEmpty(head)) {
+			return isParameterAssignment(body, property);
+		}
+		return isEmpty(body) && isParameterAssignment(head, property);
+	}
+	
+	/**
+	 * @return true if the given head or body consists of a single statement that assigns a parameter to the
+	 * given property
+	 */
+	private static boolean isParameterAssignment(BodyUnit unit, PropertyBuilder property) {
+		SyntaxTree tree = unit.getSyntax();
+		int statement = tree.getFirstChild(tree.getRoot());
+		if (statement == SyntaxTree.NONE || tree.getNextSibling(statement) != SyntaxTree.NONE) {
+			return false;
+		}
+		int assignment = tree.getFirstChild(statement);
+		if (tree.getType(statement) != NodeType.EXPRESSION || tree.getType(assignment) != NodeType.ASSIGN) {
+			return false;
+		}
+		int target = tree.getFirstChild(assignment);
+		int value = tree.getNextSibling(target);
+		if (tree.getOperator(assignment) != Operator.ASSIGNMENT || tree.getSymbol(target) != property) {
+			return false;
+		}
+		Object symbol = tree.getSymbol(value);
+		return tree.getType(value) == NodeType.NAME && symbol instanceof LocalVariable && ((LocalVariable) symbol).isParameter();
+	}
+	
+	private static boolean isEmpty(BodyUnit unit) {
+		if (unit == null) {
+			return true;
+		}
+		SyntaxTree tree = unit.getSyntax();
+		return tree.getFirstChild(tree.getRoot()) == SyntaxTree.NONE;
+	}
+	
+	/**
+	 * Moves the head of the given constructor body into the body and adds the local variable that holds the
+	 * value of the property.
+	 */
+	private void lowerConstructor(BodyUnit unit) {
+		PropertyBuilder property = defineClasses.get(unit.getClassBuilder());
+		SyntaxTree tree = unit.getSyntax();
+		int root = tree.getRoot();
+		int token = tree.getToken(root);
+		FreshLocals locals = new FreshLocals(tree, unit.getParamCount());
+		int block = tree.addNode(NodeType.BLOCK, 0, token);
+		
+		LocalVariable value = null;
+		if (property != null) {
+			Type type = property.getType().getType();
+			int declaration = tree.addNode(NodeType.DECLARATION, 0, token);
+			value = locals.create(property.getName(), type, declaration);
+			tree.setNode(declaration, NodeType.DECLARATION, tree.addString(value.getName()));
+			tree.setSymbol(declaration, value);
+			int typeNode = tree.addNode(NodeType.TYPE, tree.addString(type.getName()), token);
+			tree.setValueType(typeNode, type);
+			tree.addChild(declaration, typeNode);
+			tree.addChild(declaration, initialValue(tree, property, token));
+			tree.addChild(block, declaration);
+			values.put(unit, value);
+		}
+		
+		BodyUnit head = heads.get(unit.getOwner());
+		if (head != null) {
+			SyntaxTree headTree = head.getSyntax();
+			TreeCopier copier = new TreeCopier(headTree, tree, token, locals);
+			LocalVariable[] headParams = parameters(head, headTree);
+			LocalVariable[] bodyParams = parameters(unit, tree);
+			for (int index = 0; index < headParams.length; index++) {
+				copier.rename(headParams[index], bodyParams[index]);
+			}
+			for (int child = headTree.getFirstChild(headTree.getRoot()); child != SyntaxTree.NONE; child = headTree.getNextSibling(child)) {
+				tree.addChild(block, copier.copy(child));
+			}
+			headTree.removeChildren(headTree.getRoot());
+			Set<ElementBuilder> references = new LinkedHashSet<ElementBuilder>(unit.getReferences());
+			references.addAll(head.getReferences());
+			unit.setReferences(new ArrayList<ElementBuilder>(references));
+		}
+		
+		for (int child = tree.getFirstChild(root); child != SyntaxTree.NONE;) {
+			int next = tree.getNextSibling(child);
+			tree.addChild(block, child);
+			child = next;
+		}
+		int returnNode = tree.addNode(NodeType.RETURN, 0, token);
+		tree.addChild(returnNode, value(tree, value, token));
+		tree.addChild(block, returnNode);
+		tree.replace(root, block);
+	}
+	
+	/**
+	 * @return The local variables of the parameters of the given body, in the order of the parameters
+	 */
+	private static LocalVariable[] parameters(BodyUnit unit, SyntaxTree tree) {
+		LocalVariable[] params = new LocalVariable[unit.getParamCount()];
+		for (int node = 0; node < tree.getNodeCount(); node++) {
+			Object symbol = tree.getSymbol(node);
+			if (symbol instanceof LocalVariable && ((LocalVariable) symbol).isParameter()) {
+				params[((LocalVariable) symbol).getIndex()] = (LocalVariable) symbol;
+			}
+		}
+		for (int index = 0; index < params.length; index++) {
+			if (params[index] == null) {
+				params[index] = new LocalVariable(unit.getParamName(index), unit.getParamType(index), SyntaxTree.NONE, index);
+			}
+		}
+		return params;
+	}
+	
+	/**
+	 * @return A new node that refers to the given local variable, or a 0 literal if it is null
+	 */
+	private static int value(SyntaxTree tree, LocalVariable value, int token) {
+		if (value == null) {
+			return TreeCopier.literal(tree, new ConstDoubleValue(0), PrimitiveTypes.NUMBER, token);
+		}
+		int node = tree.addNode(NodeType.NAME, tree.addString(value.getName()), token);
+		tree.setSymbol(node, value);
+		tree.setValueType(node, value.getType());
+		return node;
+	}
+	
+	/**
+	 * @return A new node with the initial value of an instance of the class of the given property, which is
+	 * the default value of the property, or the default value of its type
+	 */
+	private int initialValue(SyntaxTree tree, PropertyBuilder property, int token) {
+		if (property == null) {
+			return value(tree, null, token);
+		}
+		Type type = property.getType().getType();
+		if (property.hasDefaultValue()) {
+			ValueBuilder defaultValue = property.getDefaultValue();
+			if (defaultValue.isParsed()) {
+				return TreeCopier.literal(tree, defaultValue.getValue(), type, token);
+			}
+			BodyUnit unit = defaultValues.get(property);
+			if (unit != null) {
+				SyntaxTree from = unit.getSyntax();
+				return new TreeCopier(from, tree, token, null).copy(from.getRoot());
+			}
+		}
+		Value zero;
+		if (type == PrimitiveTypes.BOOLEAN) {
+			zero = ConstBooleanValue.FALSE;
+		} else if (type == PrimitiveTypes.STRING) {
+			zero = new ConstStringValue("");
+		} else {
+			zero = new ConstDoubleValue(0);
+		}
+		return TreeCopier.literal(tree, zero, type, token);
+	}
+	
+	/**
+	 * Rewrites the syntax tree of a single body unit
+	 */
+	private class Rewriter {
+		
+		private final BodyUnit unit;
+		private final SyntaxTree tree;
+		private final boolean isConstructor;
+		
+		private Rewriter(BodyUnit unit, SyntaxTree tree) {
+			this.unit = unit;
+			this.tree = tree;
+			this.isConstructor = unit.getKind() == BodyUnit.Kind.CONSTRUCTOR && isDefine(unit.getClassBuilder());
+		}
+		
+		/**
+		 * Replaces the given node by the given replacement, but keeps the value type of the node
+		 */
+		private void replace(int node, int replacement) {
+			Type type = tree.getValueType(node);
+			tree.replace(node, replacement);
+			tree.setValueType(node, type);
+		}
+		
+		/**
+		 * @return A new node with the instance that the body works on
+		 */
+		private int self(int token) {
+			if (isConstructor) {
+				return value(tree, values.get(unit), token);
+			}
+			int node = tree.addNode(NodeType.THIS, 0, token);
+			tree.setValueType(node, unit.getClassBuilder().getType());
+			return node;
+		}
+		
+		/**
+		 * Rewrites the given node and its children (the children first)
+		 * @param node The node to rewrite
+		 * @param isCallee true if the node is the callee of a CALL node
+		 */
+		private void rewrite(int node, boolean isCallee) {
+			NodeType type = tree.getType(node);
+			int first = tree.getFirstChild(node);
+			for (int child = first; child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				rewrite(child, type == NodeType.CALL && child == first);
+			}
+			Object symbol = tree.getSymbol(node);
+			switch (type) {
+			case THIS:
+				if (isConstructor) {
+					replace(node, self(tree.getToken(node)));
+				}
+				break;
+			case NAME:
+				if (getDefineClass(symbol) != null) {
+					replace(node, self(tree.getToken(node)));
+				}
+				break;
+			case PROPERTY:
+				if (!isCallee && (getDefineClass(symbol) != null || getDefaultGetterClass(symbol) != null)) {
+					replace(node, first);
+				}
+				break;
+			case CALL:
+				rewriteCall(node, first, symbol);
+				break;
+			case NEW:
+				rewriteCreation(node, symbol);
+				break;
+			case RETURN:
+				if (isConstructor && first == SyntaxTree.NONE) {
+					tree.addChild(node, self(tree.getToken(node)));
+				}
+				break;
+			default:
+			}
+		}
+		
+		private void rewriteCall(int call, int callee, Object symbol) {
+			boolean isImplicit = tree.getType(callee) == NodeType.NAME;
+			if (getDefaultGetterClass(symbol) != null) {
+				replace(call, isImplicit ? self(tree.getToken(call)) : tree.getFirstChild(callee));
+			} else if (isConstructor && isImplicit && (symbol instanceof MethodBuilder || symbol instanceof GetterBuilder)) {
+				
+				// The instance is a local variable in constructors, so it must be passed explicitly
+				tree.setNode(callee, NodeType.PROPERTY, tree.getData(callee));
+				tree.addChild(callee, self(tree.getToken(callee)));
+			}
+		}
+		
+		private void rewriteCreation(int node, Object symbol) {
+			if (symbol instanceof ClassBuilder && isDefine((ClassBuilder) symbol)) {
+				
+				// The default constructor
+				replace(node, initialValue(tree, defineClasses.get(symbol), tree.getToken(node)));
+			} else if (symbol instanceof ConstructorBuilder) {
+				ConstructorBuilder constructor = (ConstructorBuilder) symbol;
+				int argument = tree.getFirstChild(node);
+				if (identities.contains(constructor)) {
+					replace(node, argument);
+				} else if (emptyConstructors.contains(constructor) && defineClasses.get(bodies.get(constructor).getClassBuilder()) == null) {
+					for (; argument != SyntaxTree.NONE; argument = tree.getNextSibling(argument)) {
+						if (!DefineInliner.isPure(tree, argument)) {
+							return;
+						}
+					}
+					replace(node, value(tree, null, tree.getToken(node)));
+				}
+			}
+		}
+	}
+}
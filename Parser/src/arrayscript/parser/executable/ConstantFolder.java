@@ -0,0 +1,365 @@
+package arrayscript.parser.executable;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.js.JSLiterals;
+import arrayscript.lang.Modifier;
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.ConstFloatValue;
+import arrayscript.lang.var.value.ConstIntValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.ConstUIntValue;
+import arrayscript.lang.var.value.NumberValue;
+import arrayscript.lang.var.value.Value;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+
+/**
+ * Evaluates expressions over numbers, strings and booleans at compile time. The evaluation follows the
+ * javascript semantics, except that the result of every operation whose (checked) type is one of the sized
+ * numeric types is converted to that type: int8 wraps around at 8 bits, uint32 is unsigned, float32 is
+ * rounded to the nearest float...
+ *
+ * References to const and define variables are replaced by the folded initial value of the variable, as long
+ * as that initial value is constant as well.
+ *
+ * The folder needs the value types and symbols that the BodyChecker stores in the syntax trees, so it can
+ * only fold expressions of bodies that have been checked successfully.
+ * @author knokko
+ *
+ */
+public class ConstantFolder {
+	
+	private final Map<ValueBuilder,BodyUnit> initializers;
+	private final Map<ValueBuilder,Value> folded;
+	private final Set<ValueBuilder> folding;
+	
+	/**
+	 * @param result The result of the body phase, which determines which initial values can be folded
+	 */
+	public ConstantFolder(CheckResult result) {
+		initializers = new IdentityHashMap<ValueBuilder,BodyUnit>();
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isExpression() && unit.isChecked()) {
+				initializers.put(unit.getValue(), unit);
+			}
+		}
+		folded = new IdentityHashMap<ValueBuilder,Value>();
+		folding = new HashSet<ValueBuilder>();
+	}
+	
+	/**
+	 * Folds the initial values of all checked variables and properties. Every initial value that turns out
+	 * to be constant will be stored as parsed value of its ValueBuilder.
+	 * @return The number of initial values that were folded
+	 */
+	public int foldInitializers() {
+		int counter = 0;
+		for (ValueBuilder value : initializers.keySet()) {
+			Value result = foldInitializer(value);
+			if (result != null) {
+				if (!value.isParsed()) {
+					value.setParsedValue(result);
+				}
+				counter++;
+			}
+		}
+		return counter;
+	}
+	
+	/**
+	 * Folds the given initial value. The result will be converted to the type of the variable or property.
+	 * @param value The initial value of a variable or property
+	 * @return The folded value, or null if the initial value is not constant or has not been checked
+	 */
+	public Value foldInitializer(ValueBuilder value) {
+		if (value.isParsed()) {
+			return value.getValue();
+		}
+		if (folded.containsKey(value)) {
+			return folded.get(value);
+		}
+		BodyUnit unit = initializers.get(value);
+		
+		// Initial values that refer to themselves (indirectly) are not constant
+		if (unit == null || !folding.add(value)) {
+			return null;
+		}
+		SyntaxTree tree = unit.getSyntax();
+		Value result = foldConverted(tree, tree.getRoot(), unit.getReturnType());
+		folding.remove(value);
+		folded.put(value, result);
+		return result;
+	}
+	
+	/**
+	 * Attempts to fold the given expression of a checked syntax tree.
+	 * @param tree The syntax tree
+	 * @param node The expression node
+	 * @return The value of the expression, or null if it is not constant
+	 */
+	public Value fold(SyntaxTree tree, int node) {
+		NodeType nodeType = tree.getType(node);
+		switch (nodeType) {
+		case NUMBER: return new ConstDoubleValue(tree.getNumber(node));
+		case STRING: return new ConstStringValue(tree.getString(node));
+		case BOOLEAN: return tree.getData(node) != 0 ? ConstBooleanValue.TRUE : ConstBooleanValue.FALSE;
+		case NAME:
+		case PROPERTY: {
+			Object symbol = tree.getSymbol(node);
+			if (symbol instanceof VariableBuilder) {
+				return foldVariable((VariableBuilder) symbol);
+			}
+			return null;
+		}
+		case UNARY: return foldUnary(tree, node);
+		case BINARY: return foldBinary(tree, node);
+		default: return null;
+		}
+	}
+	
+	/**
+	 * Folds the given expression and converts the result to the given type. The transpiler converts a
+	 * product of integers to int32 or uint32 with Math.imul, even when the type of the product itself is
+	 * number, so such products are folded like Math.imul as well.
+	 */
+	private Value foldConverted(SyntaxTree tree, int node, Type type) {
+		if ((type == PrimitiveTypes.INT32 || type == PrimitiveTypes.UINT32) && tree.getType(node) == NodeType.BINARY
+				&& tree.getOperator(node) == Operator.PRODUCT) {
+			int leftNode = tree.getFirstChild(node);
+			Value left = fold(tree, leftNode);
+			Value right = left == null ? null : fold(tree, tree.getNextSibling(leftNode));
+			return right == null ? null : foldArithmetic(Operator.PRODUCT, left, right, type);
+		}
+		return convert(fold(tree, node), type);
+	}
+	
+	/**
+	 * @param variable The variable
+	 * @return The folded initial value of the given variable if it is a const or define variable with a
+	 * constant initial value, or null otherwise
+	 */
+	public Value foldVariable(VariableBuilder variable) {
+		Set<Modifier> modifiers = variable.getModifiers();
+		if (!modifiers.contains(Modifier.CONST) && !modifiers.contains(Modifier.DEFINE)) {
+			return null;
+		}
+		ValueBuilder initial = variable.getInitialValue();
+		if (initial == null) {
+			return null;
+		}
+		return foldInitializer(initial);
+	}
+	
+	private Value foldUnary(SyntaxTree tree, int node) {
+		Value operand = fold(tree, tree.getFirstChild(node));
+		if (operand == null) {
+			return null;
+		}
+		if (tree.getOperator(node) == Operator.NOT) {
+			if (operand instanceof ConstBooleanValue) {
+				return ((ConstBooleanValue) operand).getValue() ? ConstBooleanValue.FALSE : ConstBooleanValue.TRUE;
+			}
+			return null;
+		}
+		if (operand instanceof NumberValue) {
+			return convert(new ConstDoubleValue(-((NumberValue) operand).getDoubleValue()), tree.getValueType(node));
+		}
+		return null;
+	}
+	
+	private Value foldBinary(SyntaxTree tree, int node) {
+		int leftNode = tree.getFirstChild(node);
+		Value left = fold(tree, leftNode);
+		if (left == null) {
+			return null;
+		}
+		Value right = fold(tree, tree.getNextSibling(leftNode));
+		if (right == null) {
+			return null;
+		}
+		Operator operator = tree.getOperator(node);
+		switch (operator) {
+		case AND:
+		case OR:
+			if (left instanceof ConstBooleanValue && right instanceof ConstBooleanValue) {
+				boolean a = ((ConstBooleanValue) left).getValue();
+				boolean b = ((ConstBooleanValue) right).getValue();
+				return toBoolean(operator == Operator.AND ? a && b : a || b);
+			}
+			return null;
+		case EQUALS:
+		case NOT_EQUALS: {
+			Boolean equal = equal(left, right);
+			if (equal == null) {
+				return null;
+			}
+			return toBoolean(equal == (operator == Operator.EQUALS));
+		}
+		case LESS:
+		case GREATER:
+		case LESS_EQUAL:
+		case GREATER_EQUAL: {
+			int comparison;
+			if (left instanceof NumberValue && right instanceof NumberValue) {
+				double a = ((NumberValue) left).getDoubleValue();
+				double b = ((NumberValue) right).getDoubleValue();
+				
+				// All comparisons with NaN are false
+				if (Double.isNaN(a) || Double.isNaN(b)) {
+					return ConstBooleanValue.FALSE;
+				}
+				comparison = a < b ? -1 : a > b ? 1 : 0;
+			} else if (left instanceof ConstStringValue && right instanceof ConstStringValue) {
+				comparison = ((ConstStringValue) left).getValue().compareTo(((ConstStringValue) right).getValue());
+			} else {
+				return null;
+			}
+			switch (operator) {
+			case LESS: return toBoolean(comparison < 0);
+			case GREATER: return toBoolean(comparison > 0);
+			case LESS_EQUAL: return toBoolean(comparison <= 0);
+			default: return toBoolean(comparison >= 0);
+			}
+		}
+		case SUM:
+			if (left instanceof ConstStringValue || right instanceof ConstStringValue) {
+				return new ConstStringValue(toJSString(left) + toJSString(right));
+			}
+			return foldArithmetic(operator, left, right, tree.getValueType(node));
+		case SUBSTRACTION:
+		case PRODUCT:
+		case DIVISION:
+		case REMAINDER:
+			return foldArithmetic(operator, left, right, tree.getValueType(node));
+		default: return null;
+		}
+	}
+	
+	/**
+	 * Folds a numeric SUM, SUBSTRACTION, PRODUCT, DIVISION or REMAINDER and converts the result to the given
+	 * type. Products of integers with an integer type are computed like Math.imul (which the transpiler uses
+	 * for them), because the product in double precision loses the low bits of products larger than 2^53.
+	 * @return The folded value, or null if the operands are not numbers
+	 */
+	static Value foldArithmetic(Operator operator, Value left, Value right, Type type) {
+		if (!(left instanceof NumberValue) || !(right instanceof NumberValue)) {
+			return null;
+		}
+		double a = ((NumberValue) left).getDoubleValue();
+		double b = ((NumberValue) right).getDoubleValue();
+		double result;
+		switch (operator) {
+		case SUM: result = a + b; break;
+		case SUBSTRACTION: result = a - b; break;
+		case PRODUCT:
+			if (isIntegerType(type) && isInteger(a) && isInteger(b)) {
+				
+				// Wrapping modulo 2^32 before narrowing gives the same result for the smaller types
+				result = toInt32(a) * toInt32(b);
+			} else {
+				result = a * b;
+			}
+			break;
+		case DIVISION: result = a / b; break;
+		default: result = a % b;
+		}
+		return convert(new ConstDoubleValue(result), type);
+	}
+	
+	private static boolean isIntegerType(Type type) {
+		return type == PrimitiveTypes.INT8 || type == PrimitiveTypes.INT16 || type == PrimitiveTypes.INT32
+				|| type == PrimitiveTypes.UINT8 || type == PrimitiveTypes.UINT16 || type == PrimitiveTypes.UINT32;
+	}
+	
+	private static boolean isInteger(double number) {
+		return !Double.isInfinite(number) && number == Math.rint(number);
+	}
+	
+	private static Value toBoolean(boolean value) {
+		return value ? ConstBooleanValue.TRUE : ConstBooleanValue.FALSE;
+	}
+	
+	/**
+	 * @return Whether the values are equal, or null if they can't be compared at compile time
+	 */
+	private static Boolean equal(Value left, Value right) {
+		if (left instanceof NumberValue && right instanceof NumberValue) {
+			return ((NumberValue) left).getDoubleValue() == ((NumberValue) right).getDoubleValue();
+		}
+		if (left instanceof ConstStringValue && right instanceof ConstStringValue) {
+			return ((ConstStringValue) left).getValue().equals(((ConstStringValue) right).getValue());
+		}
+		if (left instanceof ConstBooleanValue && right instanceof ConstBooleanValue) {
+			return left == right;
+		}
+		return null;
+	}
+	
+	private static String toJSString(Value value) {
+		if (value instanceof ConstStringValue) {
+			return ((ConstStringValue) value).getValue();
+		} else if (value instanceof NumberValue) {
+			return JSLiterals.numberToString(((NumberValue) value).getDoubleValue());
+		} else {
+			return Boolean.toString(((ConstBooleanValue) value).getValue());
+		}
+	}
+	
+	/**
+	 * Converts a folded value to the given type. Numbers are converted to the value class of the numeric
+	 * type and wrapped to its range, other values are returned unchanged if they fit the type.
+	 * @param value The value to convert, may be null
+	 * @param type The type to convert to, null or ANY to keep the value as it is
+	 * @return The converted value, or null if the value is null or doesn't fit the type
+	 */
+	public static Value convert(Value value, Type type) {
+		if (value == null || type == null || type == PrimitiveTypes.ANY) {
+			return value;
+		}
+		if (value instanceof NumberValue && PrimitiveTypes.isNumeric(type)) {
+			double number = ((NumberValue) value).getDoubleValue();
+			if (type == PrimitiveTypes.INT8) {
+				return new ConstIntValue((byte) toInt32(number));
+			} else if (type == PrimitiveTypes.INT16) {
+				return new ConstIntValue((short) toInt32(number));
+			} else if (type == PrimitiveTypes.INT32) {
+				return new ConstIntValue(toInt32(number));
+			} else if (type == PrimitiveTypes.UINT8) {
+				return new ConstIntValue(toInt32(number) & 0xFF);
+			} else if (type == PrimitiveTypes.UINT16) {
+				return new ConstIntValue(toInt32(number) & 0xFFFF);
+			} else if (type == PrimitiveTypes.UINT32) {
+				return new ConstUIntValue(toInt32(number) & 0xFFFFFFFFL);
+			} else if (type == PrimitiveTypes.FLOAT32) {
+				return new ConstFloatValue((float) number);
+			} else {
+				return value instanceof ConstDoubleValue ? value : new ConstDoubleValue(number);
+			}
+		}
+		return type.canHaveValue(value) ? value : null;
+	}
+	
+	/**
+	 * Converts the given number to a 32-bit integer the way javascript does it (ToInt32): the number is
+	 * rounded towards zero and then wrapped around modulo 2^32. NaN and infinity become 0.
+	 * @param number The number to convert
+	 * @return The 32-bit integer
+	 */
+	public static int toInt32(double number) {
+		if (Double.isNaN(number) || Double.isInfinite(number)) {
+			return 0;
+		}
+		double truncated = number < 0 ? Math.ceil(number) : Math.floor(number);
+		return (int) (long) (truncated % 4294967296.0);
+	}
+}
@@ -0,0 +1,833 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.Modifier;
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.Value;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.executable.TreeCopier.FreshLocals;
+import arrayscript.parser.executable.TreeCopier.ReturnMode;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Implements the define modifier for variables and functions:
+ *
+ * All references to define variables are replaced by the (folded) initial value of the variable, so the
+ * initial value of every define variable must be constant.
+ *
+ * Calls to define functions are replaced by the body of the function. If the body is a single return
+ * statement and the arguments are simple enough, the call expression is replaced by the returned expression
+ * with the parameters substituted by the arguments. Otherwise, if the call is an expression statement, the
+ * initial value of a local variable declaration, the value of an assignment to a name or the value of a
+ * return statement, the statement is replaced by a block with the arguments stored in fresh local variables
+ * followed by the body of the function. Calls that are nested in a larger expression are first moved to
+ * fresh local variables that are declared right before the statement (together with the operands that are
+ * evaluated before them). Calls that can't be inlined (for instance recursive calls and calls in the
+ * condition of a loop) are reported as errors.
+ *
+ * The local variables of inlined bodies are renamed so they can't clash with the local variables of the
+ * caller. The define variables and the define functions whose calls were all inlined are removed from their
+ * namespace or class afterwards.
+ *
+ * This pass works on the syntax trees that were checked by the BodyChecker, so it must run after the body
+ * phase (and after the ConstantFolder has folded the initial values).
+ * @author knokko
+ *
+ */
+public class DefineInliner {
+	
+	private final CheckResult result;
+	private final ConstantFolder folder;
+	
+	private final Map<FunctionBuilder,BodyUnit> functionBodies;
+	private final Map<BodyUnit,Set<ElementBuilder>> references;
+	private final Set<BodyUnit> inProgress;
+	private final Set<VariableBuilder> reported;
+	private final List<String> errors;
+	
+	/**
+	 * @param result The result of the body phase
+	 * @param folder The folder that was used to fold the initial values of the checked bodies
+	 */
+	public DefineInliner(CheckResult result, ConstantFolder folder) {
+		this.result = result;
+		this.folder = folder;
+		functionBodies = new IdentityHashMap<FunctionBuilder,BodyUnit>();
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.getKind() == BodyUnit.Kind.FUNCTION && unit.isChecked()) {
+				functionBodies.put((FunctionBuilder) unit.getOwner(), unit);
+			}
+		}
+		references = new IdentityHashMap<BodyUnit,Set<ElementBuilder>>();
+		inProgress = new HashSet<BodyUnit>();
+		reported = new HashSet<VariableBuilder>();
+		errors = new ArrayList<String>();
+	}
+	
+	/**
+	 * Inlines all references to define variables and all calls to define functions in all checked bodies and
+	 * removes the definitions that are no longer needed.
+	 * @throws ParsingException If the initial value of a define variable is not constant, or if a call to a
+	 * define function can't be inlined
+	 */
+	public void inlineAll() throws ParsingException {
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked()) {
+				process(unit);
+			}
+		}
+		CheckResult.throwErrors(errors);
+		
+		Set<ElementBuilder> removed = removeDefinitions();
+		for (Map.Entry<BodyUnit,Set<ElementBuilder>> entry : references.entrySet()) {
+			Set<ElementBuilder> unitReferences = entry.getValue();
+			unitReferences.removeAll(removed);
+			entry.getKey().setReferences(new ArrayList<ElementBuilder>(unitReferences));
+		}
+	}
+	
+	/**
+	 * Inlines the define variables and functions of the given body, if that didn't happen already
+	 */
+	private void process(BodyUnit unit) {
+		if (references.containsKey(unit)) {
+			return;
+		}
+		inProgress.add(unit);
+		Set<ElementBuilder> unitReferences = new LinkedHashSet<ElementBuilder>(unit.getReferences());
+		Rewriter rewriter = new Rewriter(unit, unitReferences);
+		rewriter.rewrite(rewriter.tree.getRoot(), false);
+		rewriter.checkCalls(rewriter.tree.getRoot());
+		references.put(unit, unitReferences);
+		inProgress.remove(unit);
+	}
+	
+	/**
+	 * Removes the define variables and the define functions that are no longer referenced (except by bodies
+	 * that are removed themselves).
+	 * @return The removed elements
+	 */
+	private Set<ElementBuilder> removeDefinitions() {
+		Set<ElementBuilder> removed = new HashSet<ElementBuilder>();
+		for (BodyUnit unit : references.keySet()) {
+			if (isDefine(unit.getOwner())) {
+				removed.add(unit.getOwner());
+			}
+		}
+		
+		// Keep the define functions that are still used by bodies that will stay
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (BodyUnit unit : references.keySet()) {
+				if (!removed.contains(unit.getOwner())) {
+					Set<FunctionBuilder> used = new HashSet<FunctionBuilder>();
+					SyntaxTree tree = unit.getSyntax();
+					collectFunctions(tree, tree.getRoot(), used);
+					for (FunctionBuilder function : used) {
+						changed |= removed.remove(function);
+					}
+				}
+			}
+		}
+		
+		for (BodyUnit unit : references.keySet()) {
+			ElementBuilder owner = unit.getOwner();
+			if (removed.contains(owner)) {
+				if (unit.getClassBuilder() != null) {
+					unit.getClassBuilder().removeElement(owner);
+				} else {
+					unit.getNamespace().removeElement(owner);
+				}
+			}
+		}
+		return removed;
+	}
+	
+	private static void collectFunctions(SyntaxTree tree, int node, Set<FunctionBuilder> functions) {
+		Object symbol = tree.getSymbol(node);
+		if (symbol instanceof FunctionBuilder && isDefine((FunctionBuilder) symbol)) {
+			functions.add((FunctionBuilder) symbol);
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			collectFunctions(tree, child, functions);
+		}
+	}
+	
+	private static boolean isDefine(ElementBuilder element) {
+		if (element instanceof VariableBuilder) {
+			return ((VariableBuilder) element).getModifiers().contains(Modifier.DEFINE);
+		} else if (element instanceof FunctionBuilder) {
+			return ((FunctionBuilder) element).getModifiers().contains(Modifier.DEFINE);
+		} else {
+			return false;
+		}
+	}
+	
+	/**
+	 * @return true if the given argument node can be evaluated later than the call (or not at all) without
+	 * changing the behavior of the program
+	 */
+	static boolean isPure(SyntaxTree tree, int node) {
+		switch (tree.getType(node)) {
+		case NUMBER:
+		case STRING:
+		case BOOLEAN:
+		case THIS:
+			return true;
+		case NAME:
+		case PROPERTY: {
+			
+			// Local variables of the caller can't be modified by the callee
+			Object symbol = tree.getSymbol(node);
+			if (symbol instanceof LocalVariable) {
+				return true;
+			}
+			return symbol instanceof VariableBuilder && ((VariableBuilder) symbol).getModifiers().contains(Modifier.CONST);
+		}
+		case UNARY:
+		case BINARY:
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (!isPure(tree, child)) {
+					return false;
+				}
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * @return true if the given node can be copied many times without making the code slower
+	 */
+	private static boolean isTrivial(SyntaxTree tree, int node) {
+		NodeType type = tree.getType(node);
+		if (type == NodeType.NAME) {
+			return tree.getSymbol(node) instanceof LocalVariable;
+		}
+		return type == NodeType.NUMBER || type == NodeType.STRING || type == NodeType.BOOLEAN || type == NodeType.THIS;
+	}
+	
+	private static boolean isLiteral(SyntaxTree tree, int node) {
+		NodeType type = tree.getType(node);
+		return type == NodeType.NUMBER || type == NodeType.STRING || type == NodeType.BOOLEAN;
+	}
+	
+	/**
+	 * @return true if the given statement contains a return statement
+	 */
+	private static boolean containsReturn(SyntaxTree tree, int node) {
+		if (tree.getType(node) == NodeType.RETURN) {
+			return true;
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			if (containsReturn(tree, child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the return statements in the given statement are only executed as last statement of
+	 * the body, so they can be replaced by expression statements or assignments
+	 */
+	private static boolean hasOnlyTailReturns(SyntaxTree tree, int statement) {
+		NodeType type = tree.getType(statement);
+		if (type == NodeType.RETURN) {
+			return true;
+		} else if (type == NodeType.BLOCK) {
+			for (int child = tree.getFirstChild(statement); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				boolean isLast = tree.getNextSibling(child) == SyntaxTree.NONE;
+				if (isLast ? !hasOnlyTailReturns(tree, child) : containsReturn(tree, child)) {
+					return false;
+				}
+			}
+			return true;
+		} else if (type == NodeType.IF) {
+			int condition = tree.getFirstChild(statement);
+			for (int branch = tree.getNextSibling(condition); branch != SyntaxTree.NONE; branch = tree.getNextSibling(branch)) {
+				if (!hasOnlyTailReturns(tree, branch)) {
+					return false;
+				}
+			}
+			return true;
+		} else {
+			return !containsReturn(tree, statement);
+		}
+	}
+	
+	/**
+	 * Finds the parameters of the given body that are used and the parameters that are assigned
+	 */
+	private static void findParameters(SyntaxTree tree, int node, LocalVariable[] params, int[] uses, boolean[] assigned) {
+		NodeType type = tree.getType(node);
+		if (type == NodeType.NAME) {
+			Object symbol = tree.getSymbol(node);
+			if (symbol instanceof LocalVariable && ((LocalVariable) symbol).isParameter()) {
+				LocalVariable param = (LocalVariable) symbol;
+				params[param.getIndex()] = param;
+				uses[param.getIndex()]++;
+			}
+		} else if (type == NodeType.ASSIGN || type == NodeType.PREFIX || type == NodeType.POSTFIX) {
+			Object target = tree.getSymbol(tree.getFirstChild(node));
+			if (target instanceof LocalVariable && ((LocalVariable) target).isParameter()) {
+				assigned[((LocalVariable) target).getIndex()] = true;
+			}
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			findParameters(tree, child, params, uses, assigned);
+		}
+	}
+	
+	/**
+	 * Rewrites the syntax tree of a single body unit
+	 */
+	private class Rewriter {
+		
+		private final BodyUnit unit;
+		private final SyntaxTree tree;
+		private final Set<ElementBuilder> unitReferences;
+		
+		private FreshLocals locals;
+		
+		private Rewriter(BodyUnit unit, Set<ElementBuilder> unitReferences) {
+			this.unit = unit;
+			this.tree = unit.getSyntax();
+			this.unitReferences = unitReferences;
+		}
+		
+		private void error(String message) {
+			errors.add("In " + unit + ": " + message);
+		}
+		
+		private FreshLocals getLocals() {
+			if (locals == null) {
+				locals = new FreshLocals(tree, unit.getParamCount());
+			}
+			return locals;
+		}
+		
+		/**
+		 * Rewrites the given node and its children (the children first)
+		 * @param node The node to rewrite
+		 * @param isCallee true if the node is the callee of a CALL node
+		 */
+		private void rewrite(int node, boolean isCallee) {
+			NodeType type = tree.getType(node);
+			int first = tree.getFirstChild(node);
+			int index = 0;
+			for (int child = first; child != SyntaxTree.NONE; index++) {
+				
+				// The child can get new siblings while it is rewritten, but those don't need to be rewritten
+				int next = tree.getNextSibling(child);
+				rewrite(child, type == NodeType.CALL && child == first);
+				if (type == NodeType.BLOCK) {
+					inlineStatement(node, child);
+				} else if (isBody(type, index) && tree.getType(child) != NodeType.BLOCK && containsDefineCall(child)) {
+					
+					// Put the statement in a block, so that the calls can be inlined
+					int statement = tree.addNode(NodeType.EMPTY, 0, tree.getToken(child));
+					tree.replace(statement, child);
+					int block = tree.addNode(NodeType.BLOCK, 0, tree.getToken(child));
+					tree.addChild(block, statement);
+					tree.replace(child, block);
+					inlineStatement(child, statement);
+				}
+				child = next;
+			}
+			if ((type == NodeType.NAME || type == NodeType.PROPERTY) && !isCallee) {
+				Object symbol = tree.getSymbol(node);
+				if (symbol instanceof VariableBuilder && isDefine((VariableBuilder) symbol)) {
+					inlineVariable(node, (VariableBuilder) symbol);
+				}
+			} else if (type == NodeType.CALL) {
+				BodyUnit callee = getCallee(node);
+				if (callee != null) {
+					inlineExpression(node, callee);
+				}
+			}
+		}
+		
+		/**
+		 * Reports the calls to define functions that are left in the given node and its children
+		 */
+		private void checkCalls(int node) {
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				checkCalls(child);
+			}
+			if (tree.getType(node) != NodeType.CALL) {
+				return;
+			}
+			Object symbol = tree.getSymbol(node);
+			if (symbol instanceof FunctionBuilder && isDefine((FunctionBuilder) symbol)) {
+				BodyUnit callee = functionBodies.get(symbol);
+				String name = ((FunctionBuilder) symbol).getName();
+				if (callee != null && inProgress.contains(callee)) {
+					error("The define function " + name + " can't be inlined because it calls itself");
+				} else if (callee != null && !hasOnlyTailReturns(callee.getSyntax(), callee.getSyntax().getRoot())) {
+					error("The call to the define function " + name + " can only be inlined in a return statement, because " + name + " returns early");
+				} else if (callee != null) {
+					error("The call to the define function " + name + " can't be inlined in a loop header or in an operand that isn't always evaluated");
+				}
+			}
+		}
+		
+		/**
+		 * @return true if the child with the given index of a node with the given type is the body of an if
+		 * statement or loop
+		 */
+		private boolean isBody(NodeType type, int index) {
+			if (type == NodeType.IF) {
+				return index > 0;
+			} else if (type == NodeType.WHILE) {
+				return index == 1;
+			} else if (type == NodeType.FOR) {
+				return index == 3;
+			} else {
+				return false;
+			}
+		}
+		
+		/**
+		 * @return true if the given node is a call to a define function that can be inlined
+		 */
+		private boolean isDefineCall(int node) {
+			if (tree.getType(node) != NodeType.CALL) {
+				return false;
+			}
+			Object symbol = tree.getSymbol(node);
+			if (!(symbol instanceof FunctionBuilder) || !isDefine((FunctionBuilder) symbol)) {
+				return false;
+			}
+			BodyUnit callee = functionBodies.get(symbol);
+			return callee != null && !inProgress.contains(callee);
+		}
+		
+		private boolean containsDefineCall(int node) {
+			if (isDefineCall(node)) {
+				return true;
+			}
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (containsDefineCall(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private void inlineVariable(int node, VariableBuilder variable) {
+			Value value = folder.foldVariable(variable);
+			if (value == null) {
+				if (reported.add(variable)) {
+					error("The initial value of the define variable " + variable.getName() + " is not constant");
+				}
+				return;
+			}
+			tree.replace(node, TreeCopier.literal(tree, value, tree.getValueType(node), tree.getToken(node)));
+		}
+		
+		/**
+		 * @return The body unit of the define function that is called by the given CALL node, or null if it
+		 * doesn't call a define function that can be inlined
+		 */
+		private BodyUnit getCallee(int call) {
+			Object symbol = tree.getSymbol(call);
+			if (!(symbol instanceof FunctionBuilder) || !isDefine((FunctionBuilder) symbol)) {
+				return null;
+			}
+			BodyUnit callee = functionBodies.get(symbol);
+			if (callee == null || inProgress.contains(callee)) {
+				return null;
+			}
+			process(callee);
+			return callee;
+		}
+		
+		/**
+		 * Replaces the given call by the returned expression of the callee, if the body of the callee is a
+		 * single return statement and the arguments can be substituted
+		 */
+		private void inlineExpression(int call, BodyUnit callee) {
+			SyntaxTree body = callee.getSyntax();
+			int statement = body.getFirstChild(body.getRoot());
+			if (statement == SyntaxTree.NONE || body.getNextSibling(statement) != SyntaxTree.NONE) {
+				return;
+			}
+			if (body.getType(statement) != NodeType.RETURN || body.getFirstChild(statement) == SyntaxTree.NONE) {
+				return;
+			}
+			
+			int paramCount = callee.getParamCount();
+			LocalVariable[] params = new LocalVariable[paramCount];
+			int[] uses = new int[paramCount];
+			boolean[] assigned = new boolean[paramCount];
+			findParameters(body, statement, params, uses, assigned);
+			
+			TreeCopier copier = new TreeCopier(body, tree, tree.getToken(call), null);
+			int argument = tree.getNextSibling(tree.getFirstChild(call));
+			for (int index = 0; index < paramCount; index++) {
+				if (assigned[index] || !isPure(tree, argument) || (uses[index] > 1 && !isTrivial(tree, argument))) {
+					return;
+				}
+				if (params[index] != null) {
+					copier.substitute(params[index], argument);
+				}
+				argument = tree.getNextSibling(argument);
+			}
+			
+			Type type = tree.getValueType(call);
+			tree.replace(call, copier.copy(body.getFirstChild(statement)));
+			tree.setValueType(call, type);
+			unitReferences.addAll(references.get(callee));
+		}
+		
+		/**
+		 * Inlines the calls to define functions in the given statement of the given block
+		 */
+		private void inlineStatement(int block, int statement) {
+			inlineCall(block, hoistCalls(block, statement));
+		}
+		
+		/**
+		 * @return The call that is the given statement, the initial value of the given declaration, the value
+		 * of the given assignment to a name or the value of the given return statement, or NONE if the
+		 * statement doesn't have one of those forms
+		 */
+		private int findCall(int statement) {
+			NodeType type = tree.getType(statement);
+			int expression;
+			if (type == NodeType.EXPRESSION) {
+				expression = tree.getFirstChild(statement);
+				if (tree.getType(expression) == NodeType.ASSIGN && tree.getOperator(expression) == Operator.ASSIGNMENT) {
+					int target = tree.getFirstChild(expression);
+					if (tree.getType(target) != NodeType.NAME) {
+						return SyntaxTree.NONE;
+					}
+					expression = tree.getNextSibling(target);
+				}
+			} else if (type == NodeType.DECLARATION) {
+				expression = tree.getNextSibling(tree.getFirstChild(statement));
+			} else if (type == NodeType.RETURN) {
+				expression = tree.getFirstChild(statement);
+			} else {
+				return SyntaxTree.NONE;
+			}
+			if (expression == SyntaxTree.NONE || tree.getType(expression) != NodeType.CALL) {
+				return SyntaxTree.NONE;
+			}
+			return expression;
+		}
+		
+		/**
+		 * Replaces the given statement of the given block by the body of the define function it calls, if
+		 * it has one of the supported forms
+		 */
+		private void inlineCall(int block, int statement) {
+			int call = findCall(statement);
+			if (call == SyntaxTree.NONE) {
+				return;
+			}
+			NodeType type = tree.getType(statement);
+			int target = SyntaxTree.NONE;
+			ReturnMode mode;
+			if (type == NodeType.RETURN) {
+				mode = ReturnMode.KEEP;
+			} else if (type == NodeType.EXPRESSION && tree.getFirstChild(statement) == call) {
+				mode = ReturnMode.EXPRESSION;
+			} else {
+				if (type == NodeType.EXPRESSION) {
+					target = tree.getFirstChild(tree.getFirstChild(statement));
+				}
+				mode = ReturnMode.ASSIGN;
+			}
+			
+			BodyUnit callee = getCallee(call);
+			if (callee == null) {
+				return;
+			}
+			SyntaxTree body = callee.getSyntax();
+			if (mode != ReturnMode.KEEP && !hasOnlyTailReturns(body, body.getRoot())) {
+				return;
+			}
+			
+			int token = tree.getToken(call);
+			int replacement = tree.addNode(NodeType.BLOCK, 0, token);
+			TreeCopier copier = new TreeCopier(body, tree, token, getLocals());
+			storeArguments(call, callee, copier, replacement);
+			
+			if (type == NodeType.DECLARATION) {
+				
+				// Declare the variable without initial value and assign the returned value afterwards
+				LocalVariable local = (LocalVariable) tree.getSymbol(statement);
+				int typeNode = tree.getFirstChild(statement);
+				tree.removeChildren(statement);
+				tree.addChild(statement, typeNode);
+				target = tree.addNode(NodeType.NAME, tree.addString(local.getName()), token);
+				tree.setSymbol(target, local);
+				tree.setValueType(target, local.getType());
+			}
+			copier.setReturnMode(mode, target);
+			for (int child = body.getFirstChild(body.getRoot()); child != SyntaxTree.NONE; child = body.getNextSibling(child)) {
+				tree.addChild(replacement, copier.copy(child));
+			}
+			
+			if (type == NodeType.DECLARATION) {
+				tree.insertAfter(block, statement, replacement);
+			} else {
+				tree.replace(statement, replacement);
+			}
+			unitReferences.addAll(references.get(callee));
+		}
+		
+		/**
+		 * Moves the calls to define functions that are nested in the given statement of the given block to
+		 * fresh local variables that are declared right before the statement, and inlines them there. The
+		 * operands that are evaluated before those calls are moved to fresh local variables as well, unless
+		 * the callees can't change their values.
+		 * @return The node that holds the statement after this method returns, which is another node if
+		 * declarations were inserted before it
+		 */
+		private int hoistCalls(int block, int statement) {
+			NodeType type = tree.getType(statement);
+			int expression;
+			if (type == NodeType.EXPRESSION || type == NodeType.RETURN || type == NodeType.IF) {
+				expression = tree.getFirstChild(statement);
+			} else if (type == NodeType.DECLARATION) {
+				expression = tree.getNextSibling(tree.getFirstChild(statement));
+			} else {
+				return statement;
+			}
+			if (expression == SyntaxTree.NONE || !containsDefineCall(expression)) {
+				return statement;
+			}
+			
+			List<Integer> declarations = new ArrayList<Integer>();
+			boolean assignsLocals = assignsLocals(expression);
+			int call = type == NodeType.IF ? SyntaxTree.NONE : findCall(statement);
+			if (call != SyntaxTree.NONE && isDefineCall(call)) {
+				hoistChildren(call, false, assignsLocals, declarations);
+			} else {
+				hoistOperand(expression, false, assignsLocals, declarations);
+			}
+			if (declarations.isEmpty()) {
+				return statement;
+			}
+			
+			// Move the statement after the declarations, which take its place in the block
+			int moved = tree.addNode(NodeType.EMPTY, 0, tree.getToken(statement));
+			tree.replace(moved, statement);
+			tree.replace(statement, declarations.get(0));
+			declarations.set(0, statement);
+			for (int index = 1; index < declarations.size(); index++) {
+				tree.insertAfter(block, declarations.get(index - 1), declarations.get(index));
+			}
+			tree.insertAfter(block, declarations.get(declarations.size() - 1), moved);
+			for (int declaration : declarations) {
+				inlineCall(block, declaration);
+			}
+			return moved;
+		}
+		
+		/**
+		 * Hoists the calls to define functions in the given operand, and the operand itself if it is such a
+		 * call or if it is evaluated before such a call and can't be evaluated later
+		 * @param before true if the operand is evaluated before a call that will be hoisted
+		 */
+		private void hoistOperand(int node, boolean before, boolean assignsLocals, List<Integer> declarations) {
+			if (containsDefineCall(node)) {
+				
+				// The children after the last hoisted call are evaluated together with this operand
+				hoistChildren(node, false, assignsLocals, declarations);
+				if (isDefineCall(node)) {
+					declarations.add(declare(((FunctionBuilder) tree.getSymbol(node)).getName(), node));
+					return;
+				}
+			}
+			if (before && !canDelay(node, assignsLocals)) {
+				declarations.add(declare("value", node));
+			}
+		}
+		
+		/**
+		 * Hoists the calls to define functions in the children of the given node, and the children that are
+		 * evaluated before them
+		 * @param before true if the node is evaluated before a call that will be hoisted
+		 */
+		private void hoistChildren(int node, boolean before, boolean assignsLocals, List<Integer> declarations) {
+			NodeType type = tree.getType(node);
+			int first = tree.getFirstChild(node);
+			if (type == NodeType.BINARY && (tree.getOperator(node) == Operator.AND || tree.getOperator(node) == Operator.OR)) {
+				
+				// The right operand is not always evaluated, so only the left operand can be hoisted
+				hoistOperand(first, false, assignsLocals, declarations);
+				return;
+			}
+			if (type == NodeType.ASSIGN && tree.getOperator(node) != Operator.ASSIGNMENT) {
+				
+				// Compound assignments read their target before the value is evaluated
+				Object target = tree.getSymbol(first);
+				if (!(target instanceof LocalVariable) && containsDefineCall(tree.getNextSibling(first))) {
+					return;
+				}
+			}
+			
+			int last = SyntaxTree.NONE;
+			for (int child = first; child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (containsDefineCall(child)) {
+					last = child;
+				}
+			}
+			if (last == SyntaxTree.NONE && !before) {
+				return;
+			}
+			
+			// The callee of a call and the target of an assignment are references rather than values
+			boolean reference = type == NodeType.CALL || type == NodeType.ASSIGN || type == NodeType.PREFIX || type == NodeType.POSTFIX;
+			boolean childBefore = last != SyntaxTree.NONE || before;
+			for (int child = first; child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (child == last) {
+					childBefore = before;
+				}
+				if (reference && child == first) {
+					hoistChildren(child, childBefore, assignsLocals, declarations);
+				} else {
+					hoistOperand(child, childBefore, assignsLocals, declarations);
+				}
+			}
+		}
+		
+		/**
+		 * @return true if the given operand can be evaluated after a call to a define function that was
+		 * evaluated after it
+		 */
+		private boolean canDelay(int node, boolean assignsLocals) {
+			NodeType type = tree.getType(node);
+			if (!type.isExpression()) {
+				return true;
+			}
+			if (type == NodeType.NAME || type == NodeType.PROPERTY) {
+				Object symbol = tree.getSymbol(node);
+				if (symbol instanceof LocalVariable) {
+					return !assignsLocals;
+				}
+				if (!(symbol instanceof VariableBuilder)) {
+					
+					// References to namespaces, classes and functions
+					int child = tree.getFirstChild(node);
+					return child == SyntaxTree.NONE || canDelay(child, assignsLocals);
+				}
+			}
+			return isPure(tree, node) && !(assignsLocals && readsLocals(node));
+		}
+		
+		private boolean readsLocals(int node) {
+			if (tree.getSymbol(node) instanceof LocalVariable) {
+				return true;
+			}
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (readsLocals(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * @return true if the given expression assigns a local variable of the caller
+		 */
+		private boolean assignsLocals(int node) {
+			NodeType type = tree.getType(node);
+			if (type == NodeType.ASSIGN || type == NodeType.PREFIX || type == NodeType.POSTFIX) {
+				if (tree.getSymbol(tree.getFirstChild(node)) instanceof LocalVariable) {
+					return true;
+				}
+			}
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (assignsLocals(child)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * Creates the declaration of a fresh local variable whose initial value is the given expression, and
+		 * replaces the expression by a reference to that variable
+		 * @return The DECLARATION node, which doesn't have a parent yet
+		 */
+		private int declare(String baseName, int expression) {
+			Type type = tree.getValueType(expression);
+			int token = tree.getToken(expression);
+			int value = tree.addNode(NodeType.EMPTY, 0, token);
+			tree.replace(value, expression);
+			int declaration = declare(baseName, type, value, token);
+			LocalVariable temporary = (LocalVariable) tree.getSymbol(declaration);
+			int name = tree.addNode(NodeType.NAME, tree.addString(temporary.getName()), token);
+			tree.setSymbol(name, temporary);
+			tree.setValueType(name, type);
+			tree.replace(expression, name);
+			return declaration;
+		}
+		
+		/**
+		 * Creates the declaration of a fresh local variable with the given initial value
+		 * @return The DECLARATION node, which doesn't have a parent yet
+		 */
+		private int declare(String baseName, Type type, int value, int token) {
+			int declaration = tree.addNode(NodeType.DECLARATION, 0, token);
+			LocalVariable temporary = getLocals().create(baseName, type, declaration);
+			tree.setNode(declaration, NodeType.DECLARATION, tree.addString(temporary.getName()));
+			tree.setSymbol(declaration, temporary);
+			int typeNode = tree.addNode(NodeType.TYPE, tree.addString(type.getName()), token);
+			tree.setValueType(typeNode, type);
+			tree.addChild(declaration, typeNode);
+			tree.addChild(declaration, value);
+			return declaration;
+		}
+		
+		/**
+		 * Adds the declarations of the local variables that hold the arguments of the given call to the given
+		 * block, or substitutes the arguments if that is possible
+		 */
+		private void storeArguments(int call, BodyUnit callee, TreeCopier copier, int block) {
+			SyntaxTree body = callee.getSyntax();
+			int paramCount = callee.getParamCount();
+			LocalVariable[] params = new LocalVariable[paramCount];
+			int[] uses = new int[paramCount];
+			boolean[] assigned = new boolean[paramCount];
+			findParameters(body, body.getRoot(), params, uses, assigned);
+			
+			int argument = tree.getNextSibling(tree.getFirstChild(call));
+			for (int index = 0; index < paramCount; index++) {
+				int next = tree.getNextSibling(argument);
+				if (params[index] == null && isPure(tree, argument)) {
+					
+					// Unused arguments without side effects don't need to be evaluated
+				} else if (!assigned[index] && isLiteral(tree, argument)) {
+					copier.substitute(params[index], argument);
+				} else {
+					int declaration = declare(callee.getParamName(index), callee.getParamType(index), argument, tree.getToken(call));
+					tree.addChild(block, declaration);
+					if (params[index] != null) {
+						copier.rename(params[index], (LocalVariable) tree.getSymbol(declaration));
+					}
+				}
+				argument = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import arrayscript.lang.Modifier;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstIntValue;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+
+/**
+ * Implements the define modifier for enums: every constant of a define enum is replaced by its ordinal, so
+ * the constants become dense integers starting at 0. Comparing constants becomes comparing integers,
+ * ordinal() becomes a no-op and values() becomes a constant array with the integers of all constants. The
+ * define enums themselves are removed from their namespace afterwards.
+ *
+ * The value types of the nodes are not changed, so type checking stays nominal. Enums without the define
+ * modifier are left alone.
+ *
+ * This pass must run after the body phase.
+ * @author knokko
+ *
+ */
+public class EnumInliner {
+	
+	private final CheckResult result;
+	
+	/**
+	 * @param result The result of the body phase
+	 */
+	public EnumInliner(CheckResult result) {
+		this.result = result;
+	}
+	
+	/**
+	 * Replaces all constants of define enums in all checked bodies and removes the define enums.
+	 */
+	public void inlineAll() {
+		List<EnumBuilder> defineEnums = new ArrayList<EnumBuilder>();
+		for (EnumBuilder enumBuilder : result.getProgram().getEnums().values()) {
+			if (isDefine(enumBuilder)) {
+				defineEnums.add(enumBuilder);
+			}
+		}
+		if (defineEnums.isEmpty()) {
+			return;
+		}
+		
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.isChecked()) {
+				SyntaxTree tree = unit.getSyntax();
+				rewrite(tree, tree.getRoot());
+				
+				List<ElementBuilder> references = new ArrayList<ElementBuilder>(unit.getReferences().size());
+				for (ElementBuilder reference : unit.getReferences()) {
+					if (!isDefineElement(reference)) {
+						references.add(reference);
+					}
+				}
+				unit.setReferences(references);
+			}
+		}
+		for (EnumBuilder enumBuilder : defineEnums) {
+			enumBuilder.getNamespace().removeElement(enumBuilder);
+		}
+	}
+	
+	private static boolean isDefine(EnumBuilder enumBuilder) {
+		return enumBuilder.getModifiers().contains(Modifier.DEFINE);
+	}
+	
+	private static boolean isDefineElement(ElementBuilder element) {
+		if (element instanceof EnumConstantBuilder) {
+			return isDefine(((EnumConstantBuilder) element).getOwner());
+		}
+		return element instanceof EnumBuilder && isDefine((EnumBuilder) element);
+	}
+	
+	private static void rewrite(SyntaxTree tree, int node) {
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			rewrite(tree, child);
+		}
+		NodeType type = tree.getType(node);
+		Object symbol = tree.getSymbol(node);
+		if (type == NodeType.PROPERTY && symbol instanceof EnumConstantBuilder) {
+			EnumConstantBuilder constant = (EnumConstantBuilder) symbol;
+			if (isDefine(constant.getOwner())) {
+				replace(tree, node, ordinal(tree, constant, tree.getToken(node)));
+			}
+		} else if (type == NodeType.CALL && symbol instanceof EnumBuilder && isDefine((EnumBuilder) symbol)) {
+			int callee = tree.getFirstChild(node);
+			if (tree.getString(callee).equals("ordinal")) {
+				
+				// The constant is its own ordinal
+				replace(tree, node, tree.getFirstChild(callee));
+			} else {
+				int array = tree.addNode(NodeType.ARRAY, 0, tree.getToken(node));
+				for (EnumConstantBuilder constant : ((EnumBuilder) symbol).getConstants()) {
+					tree.addChild(array, ordinal(tree, constant, tree.getToken(node)));
+				}
+				replace(tree, node, array);
+			}
+		}
+	}
+	
+	private static int ordinal(SyntaxTree tree, EnumConstantBuilder constant, int token) {
+		return TreeCopier.literal(tree, new ConstIntValue(constant.getOrdinal()), constant.getOwner().getType(), token);
+	}
+	
+	/**
+	 * Replaces the given node by the given replacement, but keeps the value type of the node
+	 */
+	private static void replace(SyntaxTree tree, int node, int replacement) {
+		Type type = tree.getValueType(node);
+		tree.replace(node, replacement);
+		tree.setValueType(node, type);
+	}
+}
@@ -4,18 +4,78 @@ import java.util.List;
 
 import arrayscript.lang.element.Namespace;
 import arrayscript.lang.executable.Executable;
+import arrayscript.lang.executable.SyntaxTree;
 import arrayscript.parser.builder.AppBuilder;
 import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.util.ParsingException;
 
 public class ExecutableBuilder {
 	
 	private final List<SourceElement> unparsedExecutable;
+	private SyntaxTree syntax;
 	private Executable executable;
 	
+	/**
+	 * Creates an executable builder for the given unparsed code block. The code block is allowed to be null
+	 * for executables whose source is not available (for instance bodies of library elements that were
+	 * compiled without bodies).
+	 * @param unparsed The source elements of the code block, or null if the source is not available
+	 */
 	public ExecutableBuilder(List<SourceElement> unparsed) {
 		unparsedExecutable = unparsed;
 	}
 	
+	/**
+	 * @return true if the source code of this executable is available, false if not
+	 */
+	public boolean hasSource() {
+		return unparsedExecutable != null;
+	}
+	
+	/**
+	 * @return The (unparsed) source elements of this executable
+	 * @throws UnsupportedOperationException If the source of this executable is not available
+	 */
+	public List<SourceElement> getUnparsed() throws UnsupportedOperationException {
+		if (unparsedExecutable == null) {
+			throw new UnsupportedOperationException("The source of this executable is not available");
+		}
+		return unparsedExecutable;
+	}
+	
+	/**
+	 * Parses the source elements of this executable into a syntax tree, if that hasn't happened already.
+	 * This method can safely be called by multiple threads.
+	 * @return The syntax tree of this executable
+	 * @throws UnsupportedOperationException If the source of this executable is not available
+	 * @throws ParsingException If the source elements of this executable are not valid ArrayScript
+	 */
+	public synchronized SyntaxTree parseSyntax() throws UnsupportedOperationException, ParsingException {
+		if (syntax == null) {
+			List<SourceElement> unparsed = getUnparsed();
+			syntax = SyntaxParser.parseBlock(unparsed, 0, unparsed.size());
+		}
+		return syntax;
+	}
+	
+	/**
+	 * @return true if the syntax tree of this executable has been parsed already
+	 */
+	public synchronized boolean isSyntaxParsed() {
+		return syntax != null;
+	}
+	
+	/**
+	 * @return The syntax tree of this executable
+	 * @throws IllegalStateException If the syntax tree has not been parsed yet
+	 */
+	public synchronized SyntaxTree getSyntax() throws IllegalStateException {
+		if (syntax == null) {
+			throw new IllegalStateException("The syntax of this executable is not yet parsed");
+		}
+		return syntax;
+	}
+	
 	public boolean isConfirmed() {
 		return executable != null;
 	}
@@ -0,0 +1,59 @@
+package arrayscript.parser.executable;
+
+import arrayscript.lang.var.type.Type;
+
+/**
+ * A local variable or parameter of a body. The BodyChecker uses instances of this class as symbol of the
+ * DECLARATION nodes and the NAME nodes that refer to local variables or parameters.
+ * @author knokko
+ *
+ */
+public class LocalVariable {
+	
+	private final String name;
+	private final Type type;
+	private final int declaration;
+	private final int index;
+	
+	LocalVariable(String name, Type type, int declaration, int index) {
+		this.name = name;
+		this.type = type;
+		this.declaration = declaration;
+		this.index = index;
+	}
+	
+	@Override
+	public String toString() {
+		return type.getName() + " " + name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * @return The DECLARATION node of this local variable, or SyntaxTree.NONE if this is a parameter
+	 */
+	public int getDeclaration() {
+		return declaration;
+	}
+	
+	/**
+	 * @return true if this local variable is a parameter of its body, false if it is declared in the body
+	 */
+	public boolean isParameter() {
+		return declaration == -1;
+	}
+	
+	/**
+	 * @return The index of this local variable within its body. Parameters come first, the other local
+	 * variables are numbered in the order they are declared.
+	 */
+	public int getIndex() {
+		return index;
+	}
+}
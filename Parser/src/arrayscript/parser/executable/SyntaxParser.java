@@ -0,0 +1,521 @@
+package arrayscript.parser.executable;
+
+import java.util.List;
+
+import arrayscript.lang.Keyword;
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Parses code blocks and expressions into syntax trees. Expressions are parsed with a Pratt parser (top
+ * down operator precedence): every operator has a binding power and the parser keeps consuming operators
+ * as long as they bind stronger than the operator on the left of the current expression.
+ *
+ * The parser works directly on a range of the list of source elements, so no sublists need to be created.
+ * Every call creates its own SyntaxTree and parser instance, so different code blocks can safely be parsed
+ * by different threads at the same time.
+ * @author knokko
+ *
+ */
+public class SyntaxParser {
+	
+	/**
+	 * The binding power of the assignment operators, which are right-associative
+	 */
+	private static final int ASSIGNMENT_POWER = 1;
+	
+	/**
+	 * The binding power of prefix operators
+	 */
+	private static final int PREFIX_POWER = 8;
+	
+	/**
+	 * The binding power of postfix operators, calls, property access and array access
+	 */
+	private static final int POSTFIX_POWER = 9;
+	
+	/**
+	 * The binding power of every binary operator, indexed by the ordinal of the operator. Operators that
+	 * can't be used as binary operator have a binding power of 0.
+	 */
+	private static final int[] BINARY_POWER;
+	
+	static {
+		BINARY_POWER = new int[Operator.values().length];
+		BINARY_POWER[Operator.ASSIGNMENT.ordinal()] = ASSIGNMENT_POWER;
+		BINARY_POWER[Operator.INCREASE.ordinal()] = ASSIGNMENT_POWER;
+		BINARY_POWER[Operator.DECREASE.ordinal()] = ASSIGNMENT_POWER;
+		BINARY_POWER[Operator.MULTIPLY.ordinal()] = ASSIGNMENT_POWER;
+		BINARY_POWER[Operator.DIVIDE.ordinal()] = ASSIGNMENT_POWER;
+		BINARY_POWER[Operator.MOD.ordinal()] = ASSIGNMENT_POWER;
+		BINARY_POWER[Operator.OR.ordinal()] = 2;
+		BINARY_POWER[Operator.AND.ordinal()] = 3;
+		BINARY_POWER[Operator.EQUALS.ordinal()] = 4;
+		BINARY_POWER[Operator.NOT_EQUALS.ordinal()] = 4;
+		BINARY_POWER[Operator.LESS.ordinal()] = 5;
+		BINARY_POWER[Operator.GREATER.ordinal()] = 5;
+		BINARY_POWER[Operator.LESS_EQUAL.ordinal()] = 5;
+		BINARY_POWER[Operator.GREATER_EQUAL.ordinal()] = 5;
+		BINARY_POWER[Operator.SUM.ordinal()] = 6;
+		BINARY_POWER[Operator.SUBSTRACTION.ordinal()] = 6;
+		BINARY_POWER[Operator.PRODUCT.ordinal()] = 7;
+		BINARY_POWER[Operator.DIVISION.ordinal()] = 7;
+		BINARY_POWER[Operator.REMAINDER.ordinal()] = 7;
+		BINARY_POWER[Operator.INCREASE_1.ordinal()] = POSTFIX_POWER;
+		BINARY_POWER[Operator.DECREASE_1.ordinal()] = POSTFIX_POWER;
+		BINARY_POWER[Operator.PROPERTY.ordinal()] = POSTFIX_POWER;
+		BINARY_POWER[Operator.OPEN_BRACKET.ordinal()] = POSTFIX_POWER;
+		BINARY_POWER[Operator.ARRAY_OPEN.ordinal()] = POSTFIX_POWER;
+	}
+	
+	/**
+	 * Parses the statements of a code block. The given range should not contain the '{' and '}' around the
+	 * code block. The root of the returned tree will be a BLOCK node.
+	 * @param elements The list of source elements that contains the code block
+	 * @param startIndex The index of the first source element of the code block
+	 * @param endIndex The index after the last source element of the code block
+	 * @return The syntax tree of the code block
+	 * @throws ParsingException If the code block is not valid ArrayScript
+	 */
+	public static SyntaxTree parseBlock(List<SourceElement> elements, int startIndex, int endIndex) throws ParsingException {
+		SyntaxParser parser = new SyntaxParser(elements, startIndex, endIndex);
+		int root = parser.tree.addNode(NodeType.BLOCK, 0, startIndex);
+		while (parser.index < endIndex) {
+			parser.tree.addChild(root, parser.parseStatement());
+		}
+		parser.tree.trim();
+		return parser.tree;
+	}
+	
+	/**
+	 * Parses a single expression, for instance the initial value of a variable. The root of the returned
+	 * tree will be the root of the expression.
+	 * @param elements The list of source elements that contains the expression
+	 * @param startIndex The index of the first source element of the expression
+	 * @param endIndex The index after the last source element of the expression
+	 * @return The syntax tree of the expression
+	 * @throws ParsingException If the expression is not valid ArrayScript
+	 */
+	public static SyntaxTree parseExpression(List<SourceElement> elements, int startIndex, int endIndex) throws ParsingException {
+		SyntaxParser parser = new SyntaxParser(elements, startIndex, endIndex);
+		parser.tree.setRoot(parser.parseExpression(0));
+		if (parser.index < endIndex) {
+			throw new ParsingException("Expected end of expression, but found " + elements.get(parser.index));
+		}
+		parser.tree.trim();
+		return parser.tree;
+	}
+	
+	private final List<SourceElement> elements;
+	private final int endIndex;
+	private final SyntaxTree tree;
+	
+	private int index;
+	
+	private SyntaxParser(List<SourceElement> elements, int startIndex, int endIndex) {
+		this.elements = elements;
+		this.index = startIndex;
+		this.endIndex = endIndex;
+		
+		// Most source elements result in at most 1 node
+		this.tree = new SyntaxTree(endIndex - startIndex + 1);
+	}
+	
+	private SourceElement peek(int offset) {
+		if (index + offset < endIndex) {
+			return elements.get(index + offset);
+		} else {
+			return null;
+		}
+	}
+	
+	private SourceElement next() throws ParsingException {
+		if (index >= endIndex) {
+			throw new ParsingException("Unexpected end of code");
+		}
+		return elements.get(index++);
+	}
+	
+	private static boolean isOperator(SourceElement element, Operator operator) {
+		return element != null && element.isOperator() && element.getOperator() == operator;
+	}
+	
+	private static boolean isKeyword(SourceElement element, Keyword keyword) {
+		return element != null && element.isKeyword() && element.getKeyword() == keyword;
+	}
+	
+	private void expect(Operator operator) throws ParsingException {
+		SourceElement element = peek(0);
+		if (element == null) {
+			throw new ParsingException("Expected '" + operator.getTokens() + "', but the end of the code was reached");
+		}
+		if (!isOperator(element, operator)) {
+			throw new ParsingException("Expected '" + operator.getTokens() + "', but found " + element);
+		}
+		index++;
+	}
+	
+	private int parseStatement() throws ParsingException {
+		int start = index;
+		SourceElement first = next();
+		
+		if (first.isOperator()) {
+			if (first.getOperator() == Operator.OPEN_BLOCK) {
+				return parseBlockStatement(start);
+			}
+			if (first.getOperator() == Operator.SEMICOLON) {
+				return tree.addNode(NodeType.EMPTY, 0, start);
+			}
+		} else if (first.isKeyword()) {
+			Keyword keyword = first.getKeyword();
+			if (keyword == Keyword.SCOPE) {
+				expect(Operator.OPEN_BLOCK);
+				return parseBlockStatement(start);
+			} else if (keyword == Keyword.IF) {
+				int node = tree.addNode(NodeType.IF, 0, start);
+				tree.addChild(node, parseCondition());
+				tree.addChild(node, parseStatement());
+				if (isKeyword(peek(0), Keyword.ELSE)) {
+					index++;
+					tree.addChild(node, parseStatement());
+				}
+				return node;
+			} else if (keyword == Keyword.WHILE) {
+				int node = tree.addNode(NodeType.WHILE, 0, start);
+				tree.addChild(node, parseCondition());
+				tree.addChild(node, parseStatement());
+				return node;
+			} else if (keyword == Keyword.FOR) {
+				return parseFor(start);
+			} else if (keyword == Keyword.RETURN) {
+				int node = tree.addNode(NodeType.RETURN, 0, start);
+				if (!isOperator(peek(0), Operator.SEMICOLON)) {
+					tree.addChild(node, parseExpression(0));
+				}
+				expect(Operator.SEMICOLON);
+				return node;
+			}
+		}
+		
+		// It must be a declaration or an expression statement, so go back to the first element
+		index = start;
+		int node = parseSimpleStatement();
+		expect(Operator.SEMICOLON);
+		return node;
+	}
+	
+	/**
+	 * Parses the statements of a block statement. The '{' must have been read already and this method will
+	 * read the closing '}'.
+	 */
+	private int parseBlockStatement(int start) throws ParsingException {
+		int node = tree.addNode(NodeType.BLOCK, 0, start);
+		while (!isOperator(peek(0), Operator.CLOSE_BLOCK)) {
+			if (index >= endIndex) {
+				throw new ParsingException("Expected '}', but the end of the code was reached");
+			}
+			tree.addChild(node, parseStatement());
+		}
+		index++;
+		return node;
+	}
+	
+	/**
+	 * Parses a condition of an if statement or while loop, including the brackets around it
+	 */
+	private int parseCondition() throws ParsingException {
+		expect(Operator.OPEN_BRACKET);
+		int condition = parseExpression(0);
+		expect(Operator.CLOSE_BRACKET);
+		return condition;
+	}
+	
+	private int parseFor(int start) throws ParsingException {
+		int node = tree.addNode(NodeType.FOR, 0, start);
+		expect(Operator.OPEN_BRACKET);
+		
+		// The initializer can be a declaration
+		if (isOperator(peek(0), Operator.SEMICOLON)) {
+			tree.addChild(node, tree.addNode(NodeType.EMPTY, 0, index));
+		} else {
+			tree.addChild(node, parseSimpleStatement());
+		}
+		expect(Operator.SEMICOLON);
+		
+		if (isOperator(peek(0), Operator.SEMICOLON)) {
+			tree.addChild(node, tree.addNode(NodeType.EMPTY, 0, index));
+		} else {
+			tree.addChild(node, parseExpression(0));
+		}
+		expect(Operator.SEMICOLON);
+		
+		if (isOperator(peek(0), Operator.CLOSE_BRACKET)) {
+			tree.addChild(node, tree.addNode(NodeType.EMPTY, 0, index));
+		} else {
+			int update = tree.addNode(NodeType.EXPRESSION, 0, index);
+			tree.addChild(update, parseExpression(0));
+			tree.addChild(node, update);
+		}
+		expect(Operator.CLOSE_BRACKET);
+		
+		tree.addChild(node, parseStatement());
+		return node;
+	}
+	
+	/**
+	 * Parses a declaration or expression statement, without the ';' at the end
+	 */
+	private int parseSimpleStatement() throws ParsingException {
+		int start = index;
+		int typeLength = declarationTypeLength();
+		if (typeLength == 0) {
+			int node = tree.addNode(NodeType.EXPRESSION, 0, start);
+			tree.addChild(node, parseExpression(0));
+			return node;
+		}
+		
+		String typeName = readDottedName(typeLength);
+		int nameStart = index;
+		SourceElement name = next();
+		
+		int node = tree.addNode(NodeType.DECLARATION, tree.addString(name.getWord()), nameStart);
+		tree.addChild(node, tree.addNode(NodeType.TYPE, tree.addString(typeName), start));
+		if (isOperator(peek(0), Operator.ASSIGNMENT)) {
+			index++;
+			tree.addChild(node, parseExpression(ASSIGNMENT_POWER));
+		}
+		return node;
+	}
+	
+	/**
+	 * Checks whether the current statement is a declaration. If so, the number of source elements of the
+	 * type will be returned. If not, 0 will be returned. Declarations start with a primitive type keyword
+	 * or with a (dotted) class name that is followed by a variable name.
+	 */
+	private int declarationTypeLength() {
+		SourceElement first = peek(0);
+		if (first.isKeyword()) {
+			Keyword keyword = first.getKeyword();
+			if (keyword.isType()) {
+				SourceElement name = peek(1);
+				return name != null && name.isWord() ? 1 : 0;
+			}
+			return 0;
+		}
+		if (!first.isWord()) {
+			return 0;
+		}
+		
+		// A class name is a sequence of words separated by dots
+		int length = 1;
+		while (isOperator(peek(length), Operator.PROPERTY)) {
+			SourceElement part = peek(length + 1);
+			if (part == null || !part.isWord()) {
+				return 0;
+			}
+			length += 2;
+		}
+		
+		// Two words next to each other can only be a declaration
+		SourceElement name = peek(length);
+		return name != null && name.isWord() ? length : 0;
+	}
+	
+	/**
+	 * Reads a name that consists of the given number of source elements (words or type keywords, separated
+	 * by dots).
+	 */
+	private String readDottedName(int length) throws ParsingException {
+		if (length == 1) {
+			SourceElement element = next();
+			if (element.isKeyword()) {
+				return element.getKeyword().name().toLowerCase();
+			}
+			return element.getWord();
+		}
+		StringBuilder builder = new StringBuilder();
+		for (int counter = 0; counter < length; counter++) {
+			SourceElement element = next();
+			if (element.isOperator()) {
+				builder.append('.');
+			} else {
+				builder.append(element.getWord());
+			}
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Parses an expression. Operators that don't bind stronger than the given binding power are left for
+	 * the caller.
+	 * @param minPower The binding power of the operator on the left of the expression
+	 * @return The root node of the expression
+	 */
+	private int parseExpression(int minPower) throws ParsingException {
+		int left = parsePrefix();
+		
+		// Looping until we find an operator that doesn't bind strong enough is easier than a loop condition
+		while (true) {
+			SourceElement element = peek(0);
+			if (element == null || !element.isOperator()) {
+				break;
+			}
+			Operator operator = element.getOperator();
+			int power = BINARY_POWER[operator.ordinal()];
+			if (power <= minPower) {
+				
+				// Assignments are right-associative, so they are allowed to have the same binding power
+				if (!(power == ASSIGNMENT_POWER && minPower == ASSIGNMENT_POWER)) {
+					break;
+				}
+			}
+			
+			int start = index;
+			index++;
+			if (power == ASSIGNMENT_POWER) {
+				int node = tree.addNode(NodeType.ASSIGN, operator.ordinal(), start);
+				tree.addChild(node, left);
+				tree.addChild(node, parseExpression(ASSIGNMENT_POWER));
+				left = node;
+			} else if (operator == Operator.INCREASE_1 || operator == Operator.DECREASE_1) {
+				int node = tree.addNode(NodeType.POSTFIX, operator.ordinal(), start);
+				tree.addChild(node, left);
+				left = node;
+			} else if (operator == Operator.PROPERTY) {
+				SourceElement name = next();
+				if (!name.isWord()) {
+					throw new ParsingException("Expected a property name after '.', but found " + name);
+				}
+				int node = tree.addNode(NodeType.PROPERTY, tree.addString(name.getWord()), start);
+				tree.addChild(node, left);
+				left = node;
+			} else if (operator == Operator.OPEN_BRACKET) {
+				int node = tree.addNode(NodeType.CALL, 0, start);
+				tree.addChild(node, left);
+				parseArguments(node, Operator.CLOSE_BRACKET);
+				left = node;
+			} else if (operator == Operator.ARRAY_OPEN) {
+				int node = tree.addNode(NodeType.INDEX, 0, start);
+				tree.addChild(node, left);
+				tree.addChild(node, parseExpression(0));
+				expect(Operator.ARRAY_CLOSE);
+				left = node;
+			} else {
+				int node = tree.addNode(NodeType.BINARY, operator.ordinal(), start);
+				tree.addChild(node, left);
+				tree.addChild(node, parseExpression(power));
+				left = node;
+			}
+		}
+		return left;
+	}
+	
+	/**
+	 * Parses the comma-separated arguments of a call, constructor or array literal and adds them as
+	 * children to the given node. The opening bracket must have been read already and the closing bracket
+	 * will be read by this method.
+	 */
+	private void parseArguments(int node, Operator closing) throws ParsingException {
+		if (isOperator(peek(0), closing)) {
+			index++;
+			return;
+		}
+		
+		// Looping until we find the closing bracket is easier than a loop condition
+		while (true) {
+			tree.addChild(node, parseExpression(0));
+			SourceElement after = next();
+			if (isOperator(after, closing)) {
+				return;
+			}
+			if (!isOperator(after, Operator.NEXT)) {
+				throw new ParsingException("Expected ',' or '" + closing.getTokens() + "', but found " + after);
+			}
+		}
+	}
+	
+	/**
+	 * Parses the part of an expression that doesn't have a left operand: literals, names, brackets, new
+	 * expressions and prefix operators
+	 */
+	private int parsePrefix() throws ParsingException {
+		int start = index;
+		SourceElement element = next();
+		
+		if (element.isNumber()) {
+			return tree.addNode(NodeType.NUMBER, tree.addNumber(element.getNumber()), start);
+		}
+		if (element.isString()) {
+			return tree.addNode(NodeType.STRING, tree.addString(element.getStringContent()), start);
+		}
+		if (element.isWord()) {
+			return tree.addNode(NodeType.NAME, tree.addString(element.getWord()), start);
+		}
+		if (element.isKeyword()) {
+			Keyword keyword = element.getKeyword();
+			if (keyword == Keyword.TRUE) {
+				return tree.addNode(NodeType.BOOLEAN, 1, start);
+			} else if (keyword == Keyword.FALSE) {
+				return tree.addNode(NodeType.BOOLEAN, 0, start);
+			} else if (keyword == Keyword.THIS) {
+				return tree.addNode(NodeType.THIS, 0, start);
+			} else if (keyword == Keyword.WINDOW || keyword == Keyword.DOCUMENT) {
+				return tree.addNode(NodeType.NAME, tree.addString(keyword.name().toLowerCase()), start);
+			} else if (keyword == Keyword.NEW) {
+				return parseNew(start);
+			}
+			throw new ParsingException("Unexpected keyword " + keyword + " in expression");
+		}
+		
+		// The element must be an operator
+		Operator operator = element.getOperator();
+		if (operator == Operator.OPEN_BRACKET) {
+			int inner = parseExpression(0);
+			expect(Operator.CLOSE_BRACKET);
+			return inner;
+		} else if (operator == Operator.ARRAY_OPEN) {
+			int node = tree.addNode(NodeType.ARRAY, 0, start);
+			parseArguments(node, Operator.ARRAY_CLOSE);
+			return node;
+		} else if (operator == Operator.NOT || operator == Operator.SUBSTRACTION || operator == Operator.SUM) {
+			int node = tree.addNode(NodeType.UNARY, operator.ordinal(), start);
+			tree.addChild(node, parseExpression(PREFIX_POWER));
+			return node;
+		} else if (operator == Operator.INCREASE_1 || operator == Operator.DECREASE_1) {
+			int node = tree.addNode(NodeType.PREFIX, operator.ordinal(), start);
+			tree.addChild(node, parseExpression(PREFIX_POWER));
+			return node;
+		}
+		throw new ParsingException("Unexpected operator '" + operator.getTokens() + "' in expression");
+	}
+	
+	/**
+	 * Parses a new expression, the 'new' keyword must have been read already
+	 */
+	private int parseNew(int start) throws ParsingException {
+		
+		// The class name is a sequence of words separated by dots
+		int length = 1;
+		while (isOperator(peek(length), Operator.PROPERTY)) {
+			length += 2;
+		}
+		SourceElement first = peek(0);
+		if (first == null || !first.isWord()) {
+			throw new ParsingException("Expected a class name after 'new', but found " + first);
+		}
+		for (int offset = 2; offset < length; offset += 2) {
+			SourceElement part = peek(offset);
+			if (part == null || !part.isWord()) {
+				throw new ParsingException("Expected a class name after 'new', but found " + part);
+			}
+		}
+		
+		int node = tree.addNode(NodeType.NEW, tree.addString(readDottedName(length)), start);
+		expect(Operator.OPEN_BRACKET);
+		parseArguments(node, Operator.CLOSE_BRACKET);
+		return node;
+	}
+}
@@ -0,0 +1,282 @@
+package arrayscript.parser.executable;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstBooleanValue;
+import arrayscript.lang.var.value.ConstStringValue;
+import arrayscript.lang.var.value.NumberValue;
+import arrayscript.lang.var.value.Value;
+import arrayscript.parser.builder.PropertyBuilder;
+
+/**
+ * Copies (checked) subtrees from one syntax tree to another (or to the same tree), including their value
+ * types and symbols. This is used by the passes that inline code.
+ *
+ * The local variables that are declared in the copied subtrees get fresh names and indices in the target
+ * tree, so they can't clash with the local variables of the target tree (hygiene). References to the
+ * parameters of the copied body can be substituted by (copies of) other subtrees.
+ * @author knokko
+ *
+ */
+class TreeCopier {
+	
+	private final SyntaxTree from;
+	private final SyntaxTree to;
+	private final int token;
+	private final FreshLocals locals;
+	
+	private final Map<LocalVariable,LocalVariable> renamed;
+	private final Map<LocalVariable,Integer> substitutions;
+	
+	private ReturnMode returnMode;
+	private int returnTarget;
+	private int receiver;
+	
+	/**
+	 * @param from The tree to copy from
+	 * @param to The tree to copy to (can be the same as from)
+	 * @param token The token that all copied nodes will get, because the tokens of the source tree refer to
+	 * another list of source elements
+	 * @param locals The fresh local variables of the target tree, or null if the copied subtrees don't
+	 * declare local variables
+	 */
+	TreeCopier(SyntaxTree from, SyntaxTree to, int token, FreshLocals locals){
+		this.from = from;
+		this.to = to;
+		this.token = token;
+		this.locals = locals;
+		this.renamed = new IdentityHashMap<LocalVariable,LocalVariable>();
+		this.substitutions = new IdentityHashMap<LocalVariable,Integer>();
+		this.returnMode = ReturnMode.KEEP;
+		this.receiver = SyntaxTree.NONE;
+	}
+	
+	/**
+	 * Replaces all references to the given local variable by copies of the given node of the target tree
+	 */
+	void substitute(LocalVariable local, int node) {
+		substitutions.put(local, node);
+	}
+	
+	/**
+	 * Replaces all references to the given local variable by references to another local variable
+	 */
+	void rename(LocalVariable local, LocalVariable replacement) {
+		renamed.put(local, replacement);
+	}
+	
+	/**
+	 * Determines what happens with the return statements of the copied subtrees.
+	 * @param mode The return mode
+	 * @param target If the mode is ASSIGN, the NAME node in the target tree that the returned values should
+	 * be assigned to
+	 */
+	void setReturnMode(ReturnMode mode, int target) {
+		this.returnMode = mode;
+		this.returnTarget = target;
+	}
+	
+	/**
+	 * Replaces 'this' by copies of the given node and the properties that are used without 'this' by
+	 * property accesses on copies of the given node. This is needed to copy the bodies of methods, getters
+	 * and setters.
+	 * @param receiver The node in the target tree that evaluates to the instance
+	 */
+	void setReceiver(int receiver) {
+		this.receiver = receiver;
+	}
+	
+	/**
+	 * Copies the given node of the source tree and all its children to the target tree.
+	 * @param node The node in the source tree
+	 * @return The copy in the target tree (which doesn't have a parent yet)
+	 */
+	int copy(int node) {
+		NodeType type = from.getType(node);
+		Object symbol = from.getSymbol(node);
+		if (type == NodeType.NAME && symbol instanceof LocalVariable) {
+			LocalVariable local = (LocalVariable) symbol;
+			Integer substitution = substitutions.get(local);
+			if (substitution != null) {
+				return new TreeCopier(to, to, token, null).copy(substitution);
+			}
+			LocalVariable replacement = renamed.get(local);
+			if (replacement != null) {
+				int copy = to.addNode(NodeType.NAME, to.addString(replacement.getName()), token);
+				to.setSymbol(copy, replacement);
+				to.setValueType(copy, replacement.getType());
+				return copy;
+			}
+		}
+		if (receiver != SyntaxTree.NONE) {
+			if (type == NodeType.THIS) {
+				return new TreeCopier(to, to, token, null).copy(receiver);
+			}
+			if (type == NodeType.NAME && symbol instanceof PropertyBuilder) {
+				int access = to.addNode(NodeType.PROPERTY, to.addString(from.getString(node)), token);
+				to.addChild(access, new TreeCopier(to, to, token, null).copy(receiver));
+				to.setSymbol(access, symbol);
+				to.setValueType(access, from.getValueType(node));
+				return access;
+			}
+		}
+		if (type == NodeType.RETURN && returnMode != ReturnMode.KEEP) {
+			return copyReturn(node);
+		}
+		
+		int copy = to.addNode(type, copyData(node, type), token);
+		if (type == NodeType.DECLARATION && symbol instanceof LocalVariable) {
+			LocalVariable local = (LocalVariable) symbol;
+			LocalVariable replacement = locals.create(local.getName(), local.getType(), copy);
+			to.setNode(copy, type, to.addString(replacement.getName()));
+			renamed.put(local, replacement);
+			symbol = replacement;
+		} else if (symbol instanceof LocalVariable && renamed.containsKey(symbol)) {
+			symbol = renamed.get(symbol);
+		}
+		if (symbol != null) {
+			to.setSymbol(copy, symbol);
+		}
+		Type valueType = from.getValueType(node);
+		if (valueType != null) {
+			to.setValueType(copy, valueType);
+		}
+		for (int child = from.getFirstChild(node); child != SyntaxTree.NONE; child = from.getNextSibling(child)) {
+			to.addChild(copy, copy(child));
+		}
+		return copy;
+	}
+	
+	private int copyData(int node, NodeType type) {
+		switch (type) {
+		case NAME:
+		case STRING:
+		case PROPERTY:
+		case NEW:
+		case DECLARATION:
+		case TYPE:
+			return to.addString(from.getString(node));
+		case NUMBER:
+			return to.addNumber(from.getNumber(node));
+		default:
+			return from.getData(node);
+		}
+	}
+	
+	private int copyReturn(int node) {
+		int value = from.getFirstChild(node);
+		if (value == SyntaxTree.NONE) {
+			return to.addNode(NodeType.EMPTY, 0, token);
+		}
+		int statement = to.addNode(NodeType.EXPRESSION, 0, token);
+		if (returnMode == ReturnMode.EXPRESSION) {
+			to.addChild(statement, copy(value));
+		} else {
+			int assignment = to.addNode(NodeType.ASSIGN, Operator.ASSIGNMENT.ordinal(), token);
+			to.addChild(assignment, new TreeCopier(to, to, token, null).copy(returnTarget));
+			to.addChild(assignment, copy(value));
+			to.setValueType(assignment, to.getValueType(returnTarget));
+			to.addChild(statement, assignment);
+		}
+		return statement;
+	}
+	
+	/**
+	 * Adds a literal node with the given constant value to the given tree.
+	 * @param tree The tree to add the literal to
+	 * @param value The constant boolean, number or string
+	 * @param type The value type of the literal
+	 * @param token The token of the literal
+	 * @return The new literal node
+	 */
+	static int literal(SyntaxTree tree, Value value, Type type, int token) {
+		int node;
+		if (value instanceof ConstBooleanValue) {
+			node = tree.addNode(NodeType.BOOLEAN, ((ConstBooleanValue) value).getValue() ? 1 : 0, token);
+		} else if (value instanceof NumberValue) {
+			node = tree.addNode(NodeType.NUMBER, tree.addNumber(((NumberValue) value).getDoubleValue()), token);
+		} else if (value instanceof ConstStringValue) {
+			node = tree.addNode(NodeType.STRING, tree.addString(((ConstStringValue) value).getValue()), token);
+		} else {
+			throw new IllegalArgumentException("Can't create a literal for " + value);
+		}
+		tree.setValueType(node, type != null ? type : PrimitiveTypes.ANY);
+		return node;
+	}
+	
+	/**
+	 * What happens with the return statements of copied subtrees
+	 */
+	static enum ReturnMode {
+		
+		/**
+		 * The return statements are copied as they are
+		 */
+		KEEP,
+		
+		/**
+		 * The returned values become expression statements and the return statements without value become
+		 * empty statements. Only useful if the return statements are the last statements of the body.
+		 */
+		EXPRESSION,
+		
+		/**
+		 * The returned values are assigned to the return target. Only useful if the return statements are
+		 * the last statements of the body.
+		 */
+		ASSIGN
+	}
+	
+	/**
+	 * Creates local variables with names and indices that are not yet used in a syntax tree
+	 */
+	static class FreshLocals {
+		
+		private final Set<String> usedNames;
+		private int nextIndex;
+		
+		/**
+		 * @param tree The tree that the new local variables will be added to
+		 * @param paramCount The number of parameters of the body of the tree
+		 */
+		FreshLocals(SyntaxTree tree, int paramCount){
+			usedNames = new HashSet<String>();
+			for (int index = 0; index < tree.getStringCount(); index++) {
+				usedNames.add(tree.getStringAt(index));
+			}
+			nextIndex = paramCount;
+			for (int node = 0; node < tree.getNodeCount(); node++) {
+				Object symbol = tree.getSymbol(node);
+				if (symbol instanceof LocalVariable) {
+					nextIndex = Math.max(nextIndex, ((LocalVariable) symbol).getIndex() + 1);
+				}
+			}
+		}
+		
+		/**
+		 * Creates a new local variable whose name starts with the given name
+		 * @param baseName The name of the original variable
+		 * @param type The type of the new variable
+		 * @param declaration The DECLARATION node of the new variable
+		 * @return The new local variable
+		 */
+		LocalVariable create(String baseName, Type type, int declaration) {
+			
+			// Names that are already in the string pool could be used by the tree, so skip those
+			String name;
+			int counter = 0;
+			do {
+				name = baseName + "$" + counter++;
+			} while (!usedNames.add(name));
+			return new LocalVariable(name, type, declaration, nextIndex++);
+		}
+	}
+}
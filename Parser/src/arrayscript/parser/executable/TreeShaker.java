@@ -0,0 +1,205 @@
+package arrayscript.parser.executable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.InitBuilder;
+import arrayscript.parser.builder.MainBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.param.ParamsBuilder;
+import arrayscript.parser.resolve.Program;
+
+/**
+ * Removes the elements that can't be reached from the selected main and the inits of a program, so they
+ * won't be emitted. The analysis starts at the main and the inits and follows the references of the
+ * checked bodies: the variables, functions, methods, getters, setters, constructors, classes and enums they
+ * use. The classes and enums in the signatures of reachable elements are reachable as well, and so are the
+ * classes that contain a reachable member.
+ *
+ * Everything else is removed: namespaces without reachable elements, classes, enums, variables, functions,
+ * methods, getters, setters, constructors and the mains that were not selected. Inits are always kept and so
+ * are the properties of reachable classes. Elements that were loaded from a library are treated like the
+ * other elements, because the reachable ones are emitted together with the application.
+ *
+ * This pass must run after the passes that replace references (like the DefineInliner), because those
+ * passes make more elements unreachable.
+ * @author knokko
+ *
+ */
+public class TreeShaker {
+	
+	private final CheckResult result;
+	private final String mainName;
+	
+	private final Map<ElementBuilder,List<BodyUnit>> owners;
+	private final Map<ElementBuilder,ClassBuilder> memberClasses;
+	private final Set<ElementBuilder> reachable;
+	private final Deque<ElementBuilder> toVisit;
+	
+	/**
+	 * @param result The result of the body phase
+	 * @param mainName The name of the selected main, or null to keep all mains
+	 */
+	public TreeShaker(CheckResult result, String mainName) {
+		this.result = result;
+		this.mainName = mainName;
+		this.owners = BodyPhase.mapOwners(result.getCheckedUnits());
+		this.memberClasses = new IdentityHashMap<ElementBuilder,ClassBuilder>();
+		this.reachable = Collections.newSetFromMap(new IdentityHashMap<ElementBuilder,Boolean>());
+		this.toVisit = new ArrayDeque<ElementBuilder>();
+	}
+	
+	/**
+	 * Determines which elements are reachable and removes the other elements from the program.
+	 * @return The result of the body phase, without the bodies of the removed elements
+	 */
+	public CheckResult shake() {
+		Program program = result.getProgram();
+		AppBuilder app = program.getApp();
+		for (ClassBuilder classBuilder : program.getClasses().values()) {
+			for (ElementBuilder member : classBuilder.getElements()) {
+				memberClasses.put(member, classBuilder);
+			}
+		}
+		
+		for (InitBuilder init : app.getInits()) {
+			mark(init);
+		}
+		List<MainBuilder> unusedMains = new ArrayList<MainBuilder>();
+		for (MainBuilder main : app.getMains()) {
+			if (mainName == null || main.getName().equals(mainName)) {
+				mark(main);
+			} else {
+				unusedMains.add(main);
+			}
+		}
+		while (!toVisit.isEmpty()) {
+			visit(toVisit.poll());
+		}
+		
+		for (MainBuilder main : unusedMains) {
+			app.unregisterMain(main);
+		}
+		shake(app.getGlobalNamespace());
+		
+		List<BodyUnit> units = new ArrayList<BodyUnit>(result.getCheckedUnits().size());
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (reachable.contains(unit.getOwner())) {
+				units.add(unit);
+			}
+		}
+		return new CheckResult(program, units, result.getErrors());
+	}
+	
+	/**
+	 * @return true if the given element was found to be reachable
+	 */
+	public boolean isReachable(ElementBuilder element) {
+		return reachable.contains(element);
+	}
+	
+	private void mark(ElementBuilder element) {
+		if (element != null && reachable.add(element)) {
+			toVisit.add(element);
+		}
+	}
+	
+	private void markType(Type type) {
+		Program program = result.getProgram();
+		mark(program.getClass(type));
+		mark(program.getEnum(type));
+	}
+	
+	private void markParams(ParamsBuilder params) {
+		for (ParamBuilder param : params.getParams()) {
+			markType(param.getType().getType());
+		}
+	}
+	
+	private void visit(ElementBuilder element) {
+		List<BodyUnit> units = owners.get(element);
+		if (units != null) {
+			for (BodyUnit unit : units) {
+				for (ElementBuilder reference : unit.getReferences()) {
+					mark(reference);
+				}
+			}
+		}
+		mark(memberClasses.get(element));
+		
+		if (element instanceof ClassBuilder) {
+			
+			// The properties determine the layout of the instances, so they are kept with their class
+			for (PropertyBuilder property : ((ClassBuilder) element).getProperties()) {
+				mark(property);
+			}
+		} else if (element instanceof EnumConstantBuilder) {
+			mark(((EnumConstantBuilder) element).getOwner());
+		} else if (element instanceof PropertyBuilder) {
+			markType(((PropertyBuilder) element).getType().getType());
+		} else if (element instanceof VariableBuilder) {
+			markType(((VariableBuilder) element).getType().getType());
+		} else if (element instanceof FunctionBuilder) {
+			FunctionBuilder function = (FunctionBuilder) element;
+			if (function.hasReturnType()) {
+				markType(function.getReturnType().getType());
+			}
+			markParams(function.getParameters());
+		} else if (element instanceof MethodBuilder) {
+			MethodBuilder method = (MethodBuilder) element;
+			if (method.hasReturnType()) {
+				markType(method.getReturnType().getType());
+			}
+			markParams(method.getParameters());
+		} else if (element instanceof ConstructorBuilder) {
+			markParams(((ConstructorBuilder) element).getParameteters());
+		}
+	}
+	
+	/**
+	 * Removes the unreachable elements of the given namespace and its child namespaces.
+	 * @return true if the namespace still has elements
+	 */
+	private boolean shake(NamespaceBuilder namespace) {
+		for (ElementBuilder element : new ArrayList<ElementBuilder>(namespace.getElements())) {
+			if (element instanceof InitBuilder) {
+				continue;
+			}
+			if (element instanceof NamespaceBuilder) {
+				if (!shake((NamespaceBuilder) element)) {
+					namespace.removeElement(element);
+				}
+			} else if (!reachable.contains(element)) {
+				namespace.removeElement(element);
+			} else if (element instanceof ClassBuilder) {
+				shake((ClassBuilder) element);
+			}
+		}
+		return !namespace.getElements().isEmpty();
+	}
+	
+	private void shake(ClassBuilder classBuilder) {
+		for (ElementBuilder element : new ArrayList<ElementBuilder>(classBuilder.getElements())) {
+			if (!reachable.contains(element)) {
+				classBuilder.removeElement(element);
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package arrayscript.parser.library;
+
+/**
+ * Constants of the precompiled library format that is written by LibraryWriter and read by LibraryReader.
+ * A library file starts with the 4 magic bytes 'ARSL' and the format version, followed by the string table
+ * and the global namespace of the library. The namespace content is stored as a tree of tagged elements.
+ * Types are stored as the number of parts of their name followed by the parts (0 parts means void). Code
+ * blocks and initial values start with a flag that indicates whether their source elements were included.
+ * Properties store whether they have a default value before the default value itself (since version 3), so
+ * a default value that wasn't included can be distinguished from a missing default value.
+ * @author knokko
+ *
+ */
+class LibraryFormat {
+	
+	static final byte[] MAGIC = {'A', 'R', 'S', 'L'};
+	
+	/**
+	 * Increase this whenever the format changes. Libraries with a newer version will be refused.
+	 */
+	static final int VERSION = 3;
+	
+	static final int ELEMENT_NAMESPACE = 1;
+	static final int ELEMENT_CLASS = 2;
+	static final int ELEMENT_VARIABLE = 3;
+	static final int ELEMENT_FUNCTION = 4;
+	static final int ELEMENT_METHOD = 5;
+	static final int ELEMENT_PROPERTY = 6;
+	static final int ELEMENT_GETTER = 7;
+	static final int ELEMENT_SETTER = 8;
+	static final int ELEMENT_CONSTRUCTOR = 9;
+	static final int ELEMENT_ENUM = 10;
+	
+	static final int SOURCE_WORD = 1;
+	static final int SOURCE_KEYWORD = 2;
+	static final int SOURCE_STRING = 3;
+	static final int SOURCE_NUMBER = 4;
+	static final int SOURCE_OPERATOR = 5;
+}
@@ -0,0 +1,355 @@
+package arrayscript.parser.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import arrayscript.io.BinaryInput;
+import arrayscript.io.LazyStringTable;
+import arrayscript.lang.Keyword;
+import arrayscript.lang.Modifier;
+import arrayscript.lang.Operator;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.param.ParamsBuilder;
+import arrayscript.parser.builder.var.type.TypeBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.executable.ExecutableBuilder;
+import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.source.SourceKeyword;
+import arrayscript.parser.source.SourceNumber;
+import arrayscript.parser.source.SourceOperator;
+import arrayscript.parser.source.SourceString;
+import arrayscript.parser.source.SourceWord;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Loads precompiled library files (written by LibraryWriter) into an application builder. All classes,
+ * variables and functions that are loaded will be marked external in the application builder. Namespaces
+ * are not marked external because source files are allowed to add elements to library namespaces. Elements
+ * whose body or initial value was not included in the library will be marked incomplete.
+ * @author knokko
+ *
+ */
+public class LibraryReader {
+	
+	/**
+	 * Loads the library in the given file into the given application builder.
+	 * @param file The library file
+	 * @param app The application builder to add the elements of the library to
+	 * @throws IOException If the file can't be read or is not a valid library file
+	 * @throws ParsingException If an element of the library conflicts with an element that has already been
+	 * added to the application builder
+	 */
+	public static void load(File file, AppBuilder app) throws IOException, ParsingException {
+		try {
+			load(ByteBuffer.wrap(Files.readAllBytes(file.toPath())), app);
+		} catch (IOException ioex) {
+			throw new IOException("Failed to load library " + file, ioex);
+		}
+	}
+	
+	/**
+	 * Loads the library in the given buffer into the given application builder.
+	 * @param data The content of a library file
+	 * @param app The application builder to add the elements of the library to
+	 * @throws IOException If the data is not a valid library file
+	 * @throws ParsingException If an element of the library conflicts with an element that has already been
+	 * added to the application builder
+	 */
+	public static void load(ByteBuffer data, AppBuilder app) throws IOException, ParsingException {
+		BinaryInput input = new BinaryInput(data);
+		for (byte magic : LibraryFormat.MAGIC) {
+			if (input.readByte() != magic) {
+				throw new IOException("This is not an ArrayScript library file");
+			}
+		}
+		int version = input.readVarInt();
+		if (version > LibraryFormat.VERSION) {
+			throw new IOException("Library version " + version + " is not supported (the latest supported version is " + LibraryFormat.VERSION + ")");
+		}
+		
+		LibraryReader reader = new LibraryReader(app, version, input, new LazyStringTable(data, input));
+		reader.readNamespaceContent(app.getGlobalNamespace());
+	}
+	
+	private final AppBuilder app;
+	private final int version;
+	private final BinaryInput input;
+	private final LazyStringTable strings;
+	
+	private LibraryReader(AppBuilder app, int version, BinaryInput input, LazyStringTable strings) {
+		this.app = app;
+		this.version = version;
+		this.input = input;
+		this.strings = strings;
+	}
+	
+	private String readString() throws IOException {
+		return strings.get(input.readVarInt());
+	}
+	
+	private Set<Modifier> readModifiers() throws IOException {
+		int amount = input.readCount(1);
+		Set<Modifier> modifiers = new HashSet<Modifier>(amount);
+		for (int counter = 0; counter < amount; counter++) {
+			String name = readString();
+			try {
+				modifiers.add(Modifier.valueOf(name));
+			} catch (IllegalArgumentException ex) {
+				throw new IOException("Unknown modifier " + name);
+			}
+		}
+		return modifiers;
+	}
+	
+	private String[] readParts() throws IOException {
+		String[] parts = new String[input.readCount(1)];
+		for (int index = 0; index < parts.length; index++) {
+			parts[index] = readString();
+		}
+		return parts;
+	}
+	
+	private TypeBuilder readType() throws IOException {
+		String[] parts = readParts();
+		if (parts.length == 0) {
+			return null;
+		}
+		
+		// Primitive types are confirmed right away by the parser, so do the same here
+		if (parts.length == 1) {
+			Type primitive = PrimitiveTypes.getByName(parts[0]);
+			if (primitive != null) {
+				return new TypeBuilder(primitive);
+			}
+		}
+		return new TypeBuilder(parts);
+	}
+	
+	private TypeBuilder readVariableType() throws IOException {
+		TypeBuilder type = readType();
+		if (type == null) {
+			throw new IOException("void is not a valid variable type");
+		}
+		return type;
+	}
+	
+	private ParamsBuilder readParams() throws IOException {
+		
+		// Every parameter has a type and a name
+		ParamBuilder[] params = new ParamBuilder[input.readCount(2)];
+		for (int index = 0; index < params.length; index++) {
+			TypeBuilder type = readVariableType();
+			params[index] = new ParamBuilder(type, readString());
+		}
+		return new ParamsBuilder(params);
+	}
+	
+	private List<SourceElement> readSource() throws IOException {
+		if (!input.readBoolean()) {
+			return null;
+		}
+		int size = input.readCount(1);
+		List<SourceElement> source = new ArrayList<SourceElement>(size);
+		for (int counter = 0; counter < size; counter++) {
+			int tag = input.readByte();
+			if (tag == LibraryFormat.SOURCE_WORD) {
+				source.add(new SourceWord(readString()));
+			} else if (tag == LibraryFormat.SOURCE_KEYWORD) {
+				String name = readString();
+				try {
+					source.add(SourceKeyword.getInstance(Keyword.valueOf(name)));
+				} catch (IllegalArgumentException ex) {
+					throw new IOException("Unknown keyword " + name);
+				}
+			} else if (tag == LibraryFormat.SOURCE_STRING) {
+				source.add(new SourceString(readString()));
+			} else if (tag == LibraryFormat.SOURCE_NUMBER) {
+				source.add(new SourceNumber(input.readDouble()));
+			} else if (tag == LibraryFormat.SOURCE_OPERATOR) {
+				String name = readString();
+				try {
+					source.add(SourceOperator.getInstance(Operator.valueOf(name)));
+				} catch (IllegalArgumentException ex) {
+					throw new IOException("Unknown operator " + name);
+				}
+			} else {
+				throw new IOException("Unknown source element tag " + tag);
+			}
+		}
+		return source;
+	}
+	
+	/**
+	 * Marks the given executable element incomplete if its body was not included in the library
+	 */
+	private void checkBody(ElementBuilder element, ExecutableBuilder body) {
+		if (!body.hasSource()) {
+			app.markIncomplete(element);
+		}
+	}
+	
+	private void readImports(List<String[]> imports) throws IOException {
+		int amount = input.readVarInt();
+		for (int counter = 0; counter < amount; counter++) {
+			imports.add(readParts());
+		}
+	}
+	
+	private void readNamespaceContent(NamespaceBuilder namespace) throws IOException, ParsingException {
+		List<String[]> imports = new ArrayList<String[]>();
+		readImports(imports);
+		for (String[] parts : imports) {
+			namespace.addImport(parts);
+		}
+		
+		int amount = input.readVarInt();
+		for (int counter = 0; counter < amount; counter++) {
+			int tag = input.readByte();
+			if (tag == LibraryFormat.ELEMENT_NAMESPACE) {
+				String name = readString();
+				readNamespaceContent(namespace.createNamespace(name, readModifiers()));
+			} else if (tag == LibraryFormat.ELEMENT_CLASS) {
+				String name = readString();
+				ClassBuilder classBuilder = namespace.createClass(name, readModifiers());
+				app.markExternal(classBuilder);
+				readClassContent(classBuilder);
+			} else if (tag == LibraryFormat.ELEMENT_ENUM) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				int constantCount = input.readCount(1);
+				List<String> constants = new ArrayList<String>(constantCount);
+				for (int index = 0; index < constantCount; index++) {
+					constants.add(readString());
+				}
+				app.markExternal(namespace.createEnum(name, modifiers, constants));
+			} else if (tag == LibraryFormat.ELEMENT_VARIABLE) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				TypeBuilder type = readVariableType();
+				
+				// Variables need a value builder, but one without source elements will never be parsed
+				List<SourceElement> initialValue = readSource();
+				VariableBuilder variable = namespace.createVariable(name, type, modifiers, new ValueBuilder(initialValue));
+				app.markExternal(variable);
+				if (initialValue == null) {
+					app.markIncomplete(variable);
+				}
+			} else if (tag == LibraryFormat.ELEMENT_FUNCTION) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				TypeBuilder returnType = readType();
+				ParamsBuilder params = readParams();
+				FunctionBuilder function = namespace.createFunction(name, returnType, modifiers, params, readSource());
+				app.markExternal(function);
+				checkBody(function, function.getBody());
+			} else {
+				throw new IOException("Unexpected element tag " + tag + " in " + namespace);
+			}
+		}
+	}
+	
+	private void readClassContent(ClassBuilder classBuilder) throws IOException, ParsingException {
+		List<String[]> imports = new ArrayList<String[]>();
+		readImports(imports);
+		for (String[] parts : imports) {
+			classBuilder.addImport(parts);
+		}
+		
+		int amount = input.readVarInt();
+		for (int counter = 0; counter < amount; counter++) {
+			int tag = input.readByte();
+			if (tag == LibraryFormat.ELEMENT_VARIABLE) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				TypeBuilder type = readVariableType();
+				List<SourceElement> initialValue = readSource();
+				classBuilder.addVariable(name, modifiers, type, new ValueBuilder(initialValue));
+				if (initialValue == null) {
+					app.markIncomplete(classBuilder.getVariable(name));
+				}
+			} else if (tag == LibraryFormat.ELEMENT_FUNCTION) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				TypeBuilder returnType = readType();
+				ParamsBuilder params = readParams();
+				classBuilder.addFunction(name, modifiers, returnType, params, new ExecutableBuilder(readSource()));
+			} else if (tag == LibraryFormat.ELEMENT_METHOD) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				TypeBuilder returnType = readType();
+				ParamsBuilder params = readParams();
+				classBuilder.addMethod(name, modifiers, returnType, params, new ExecutableBuilder(readSource()));
+			} else if (tag == LibraryFormat.ELEMENT_PROPERTY) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				TypeBuilder type = readVariableType();
+				
+				// Older libraries don't tell whether the property has a default value
+				boolean hasDefaultValue = version >= 3 && input.readBoolean();
+				List<SourceElement> defaultValue = readSource();
+				classBuilder.addProperty(name, type, modifiers, defaultValue != null ? new ValueBuilder(defaultValue) : null);
+				if (hasDefaultValue && defaultValue == null) {
+					app.markIncomplete(classBuilder.getProperty(name));
+				}
+			} else if (tag == LibraryFormat.ELEMENT_GETTER) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				if (input.readBoolean()) {
+					classBuilder.addCustomGetter(name, modifiers, new ExecutableBuilder(readSource()));
+				} else {
+					classBuilder.addDefaultGetter(name, modifiers);
+				}
+			} else if (tag == LibraryFormat.ELEMENT_SETTER) {
+				String name = readString();
+				Set<Modifier> modifiers = readModifiers();
+				if (input.readBoolean()) {
+					String paramName = readString();
+					classBuilder.addCustomSetter(name, modifiers, paramName, new ExecutableBuilder(readSource()));
+				} else {
+					classBuilder.addDefaultSetter(name, modifiers);
+				}
+			} else if (tag == LibraryFormat.ELEMENT_CONSTRUCTOR) {
+				Set<Modifier> modifiers = readModifiers();
+				ParamsBuilder params = readParams();
+				List<SourceElement> head = readSource();
+				List<SourceElement> body = readSource();
+				classBuilder.addConstructor(modifiers, params, head != null ? head : Collections.<SourceElement>emptyList(), new ExecutableBuilder(body));
+			} else {
+				throw new IOException("Unexpected element tag " + tag + " in " + classBuilder);
+			}
+		}
+		
+		for (ElementBuilder element : classBuilder.getElements()) {
+			if (element instanceof FunctionBuilder) {
+				checkBody(element, ((FunctionBuilder) element).getBody());
+			} else if (element instanceof MethodBuilder) {
+				checkBody(element, ((MethodBuilder) element).getBody());
+			} else if (element instanceof ConstructorBuilder) {
+				checkBody(element, ((ConstructorBuilder) element).getBody());
+			} else if (element instanceof GetterBuilder && ((GetterBuilder) element).hasCustomBody()) {
+				checkBody(element, ((GetterBuilder) element).getBody());
+			} else if (element instanceof SetterBuilder && ((SetterBuilder) element).isCustom()) {
+				checkBody(element, ((SetterBuilder) element).getBody());
+			}
+		}
+	}
+}
@@ -0,0 +1,307 @@
+package arrayscript.parser.library;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import arrayscript.io.BinaryOutput;
+import arrayscript.io.StringTable;
+import arrayscript.lang.Modifier;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.ImportBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.param.ParamsBuilder;
+import arrayscript.parser.builder.var.type.TypeBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.executable.ExecutableBuilder;
+import arrayscript.parser.source.SourceElement;
+import arrayscript.util.Checks;
+
+/**
+ * Writes the interface of a parsed application to a precompiled library file. The interface consists of all
+ * namespaces, classes, variables and the signatures of all functions, methods, constructors, getters and
+ * setters. The initial values and bodies of elements with the define modifier (and all members of define
+ * classes) are always included because the applications that use the library will need them. All other
+ * bodies are only included when requested.
+ * 
+ * Inits and mains are not a part of the interface of a library. Elements that were loaded from other
+ * libraries will not be written either.
+ * @author knokko
+ *
+ */
+public class LibraryWriter {
+	
+	/**
+	 * Writes the interface of the given application to the given file.
+	 * @param app The application builder that contains the parsed library sources
+	 * @param file The file to write the library to, it will be overwritten if it exists already
+	 * @param includeBodies True if the bodies of all executables and all initial values should be included,
+	 * false if only those of define elements should be included
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(AppBuilder app, File file, boolean includeBodies) throws IOException {
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(app, output, includeBodies);
+		} finally {
+			output.close();
+		}
+	}
+	
+	/**
+	 * Writes the interface of the given application to the given output stream. This method won't close the
+	 * output stream.
+	 * @param app The application builder that contains the parsed library sources
+	 * @param output The stream to write the library to
+	 * @param includeBodies True if the bodies of all executables and all initial values should be included,
+	 * false if only those of define elements should be included
+	 * @throws IOException If the output stream throws an IOException
+	 */
+	public static void write(AppBuilder app, OutputStream output, boolean includeBodies) throws IOException {
+		Checks.notNull(app, "app");
+		LibraryWriter writer = new LibraryWriter(app, includeBodies);
+		BinaryOutput content = new BinaryOutput(4096);
+		writer.writeNamespaceContent(content, app.getGlobalNamespace());
+		
+		BinaryOutput header = new BinaryOutput();
+		header.writeBytes(LibraryFormat.MAGIC, 0, LibraryFormat.MAGIC.length);
+		header.writeVarInt(LibraryFormat.VERSION);
+		writer.strings.writeTo(header);
+		
+		header.writeTo(output);
+		content.writeTo(output);
+	}
+	
+	private final AppBuilder app;
+	private final boolean includeBodies;
+	private final StringTable strings;
+	
+	private LibraryWriter(AppBuilder app, boolean includeBodies) {
+		this.app = app;
+		this.includeBodies = includeBodies;
+		this.strings = new StringTable();
+	}
+	
+	private void writeString(BinaryOutput output, String string) {
+		output.writeVarInt(strings.getId(string));
+	}
+	
+	private void writeModifiers(BinaryOutput output, Set<Modifier> modifiers) {
+		output.writeVarInt(modifiers.size());
+		for (Modifier modifier : modifiers) {
+			writeString(output, modifier.name());
+		}
+	}
+	
+	private void writeImports(BinaryOutput output, Collection<ImportBuilder> imports) {
+		output.writeVarInt(imports.size());
+		for (ImportBuilder current : imports) {
+			String[] parts = current.getParts();
+			output.writeVarInt(parts.length);
+			for (String part : parts) {
+				writeString(output, part);
+			}
+		}
+	}
+	
+	private void writeType(BinaryOutput output, TypeBuilder type) {
+		if (type == null) {
+			output.writeVarInt(0);
+		} else {
+			String[] parts = type.getTypeName();
+			output.writeVarInt(parts.length);
+			for (String part : parts) {
+				writeString(output, part);
+			}
+		}
+	}
+	
+	private void writeParams(BinaryOutput output, ParamsBuilder params) {
+		ParamBuilder[] array = params.getParams();
+		output.writeVarInt(array.length);
+		for (ParamBuilder param : array) {
+			writeType(output, param.getType());
+			writeString(output, param.getName());
+		}
+	}
+	
+	private void writeSource(BinaryOutput output, List<SourceElement> source, boolean include) {
+		if (!include || source == null) {
+			output.writeBoolean(false);
+			return;
+		}
+		output.writeBoolean(true);
+		output.writeVarInt(source.size());
+		for (SourceElement element : source) {
+			if (element.isWord()) {
+				output.writeByte(LibraryFormat.SOURCE_WORD);
+				writeString(output, element.getWord());
+			} else if (element.isKeyword()) {
+				output.writeByte(LibraryFormat.SOURCE_KEYWORD);
+				writeString(output, element.getKeyword().name());
+			} else if (element.isString()) {
+				output.writeByte(LibraryFormat.SOURCE_STRING);
+				writeString(output, element.getStringContent());
+			} else if (element.isNumber()) {
+				output.writeByte(LibraryFormat.SOURCE_NUMBER);
+				output.writeDouble(element.getNumber());
+			} else if (element.isOperator()) {
+				output.writeByte(LibraryFormat.SOURCE_OPERATOR);
+				writeString(output, element.getOperator().name());
+			} else {
+				throw new Error("It looks like I forgot source element type " + element.getType());
+			}
+		}
+	}
+	
+	private void writeBody(BinaryOutput output, ExecutableBuilder body, boolean include) {
+		writeSource(output, body.hasSource() ? body.getUnparsed() : null, include);
+	}
+	
+	private void writeValue(BinaryOutput output, ValueBuilder value, boolean include) {
+		writeSource(output, value == null ? null : value.getUnparsedValue(), include);
+	}
+	
+	private boolean shouldInclude(Set<Modifier> modifiers) {
+		return includeBodies || modifiers.contains(Modifier.DEFINE);
+	}
+	
+	private void writeNamespaceContent(BinaryOutput output, NamespaceBuilder namespace) {
+		writeImports(output, namespace.getImports());
+		
+		int count = 0;
+		for (ElementBuilder element : namespace.getElements()) {
+			if (shouldWrite(element)) {
+				count++;
+			}
+		}
+		output.writeVarInt(count);
+		
+		for (ElementBuilder element : namespace.getElements()) {
+			if (!shouldWrite(element)) {
+				continue;
+			}
+			if (element instanceof NamespaceBuilder) {
+				NamespaceBuilder child = (NamespaceBuilder) element;
+				output.writeByte(LibraryFormat.ELEMENT_NAMESPACE);
+				writeString(output, child.getName());
+				writeModifiers(output, child.getModifiers());
+				writeNamespaceContent(output, child);
+			} else if (element instanceof ClassBuilder) {
+				ClassBuilder classBuilder = (ClassBuilder) element;
+				output.writeByte(LibraryFormat.ELEMENT_CLASS);
+				writeString(output, classBuilder.getName());
+				writeModifiers(output, classBuilder.getModifiers());
+				writeClassContent(output, classBuilder, includeBodies || classBuilder.getModifiers().contains(Modifier.DEFINE));
+			} else if (element instanceof EnumBuilder) {
+				EnumBuilder enumBuilder = (EnumBuilder) element;
+				output.writeByte(LibraryFormat.ELEMENT_ENUM);
+				writeString(output, enumBuilder.getName());
+				writeModifiers(output, enumBuilder.getModifiers());
+				output.writeVarInt(enumBuilder.getConstants().size());
+				for (EnumConstantBuilder constant : enumBuilder.getConstants()) {
+					writeString(output, constant.getName());
+				}
+			} else {
+				writeMember(output, element, includeBodies);
+			}
+		}
+	}
+	
+	private boolean shouldWrite(ElementBuilder element) {
+		if (app.isExternal(element)) {
+			return false;
+		}
+		return element instanceof NamespaceBuilder || element instanceof ClassBuilder || element instanceof EnumBuilder
+				|| element instanceof VariableBuilder || element instanceof FunctionBuilder;
+	}
+	
+	private void writeClassContent(BinaryOutput output, ClassBuilder classBuilder, boolean includeAll) {
+		writeImports(output, classBuilder.getImports());
+		output.writeVarInt(classBuilder.getElements().size());
+		for (ElementBuilder element : classBuilder.getElements()) {
+			writeMember(output, element, includeAll);
+		}
+	}
+	
+	private void writeMember(BinaryOutput output, ElementBuilder element, boolean includeAll) {
+		if (element instanceof VariableBuilder) {
+			VariableBuilder variable = (VariableBuilder) element;
+			output.writeByte(LibraryFormat.ELEMENT_VARIABLE);
+			writeString(output, variable.getName());
+			writeModifiers(output, variable.getModifiers());
+			writeType(output, variable.getType());
+			writeValue(output, variable.getInitialValue(), includeAll || shouldInclude(variable.getModifiers()));
+		} else if (element instanceof FunctionBuilder) {
+			FunctionBuilder function = (FunctionBuilder) element;
+			output.writeByte(LibraryFormat.ELEMENT_FUNCTION);
+			writeString(output, function.getName());
+			writeModifiers(output, function.getModifiers());
+			writeType(output, function.hasReturnType() ? function.getReturnType() : null);
+			writeParams(output, function.getParameters());
+			writeBody(output, function.getBody(), includeAll || shouldInclude(function.getModifiers()));
+		} else if (element instanceof MethodBuilder) {
+			MethodBuilder method = (MethodBuilder) element;
+			output.writeByte(LibraryFormat.ELEMENT_METHOD);
+			writeString(output, method.getName());
+			writeModifiers(output, method.getModifiers());
+			writeType(output, method.hasReturnType() ? method.getReturnType() : null);
+			writeParams(output, method.getParameters());
+			writeBody(output, method.getBody(), includeAll || shouldInclude(method.getModifiers()));
+		} else if (element instanceof PropertyBuilder) {
+			PropertyBuilder property = (PropertyBuilder) element;
+			output.writeByte(LibraryFormat.ELEMENT_PROPERTY);
+			writeString(output, property.getName());
+			writeModifiers(output, property.getModifiers());
+			writeType(output, property.getType());
+			output.writeBoolean(property.hasDefaultValue());
+			writeValue(output, property.hasDefaultValue() ? property.getDefaultValue() : null, includeAll || shouldInclude(property.getModifiers()));
+		} else if (element instanceof GetterBuilder) {
+			GetterBuilder getter = (GetterBuilder) element;
+			output.writeByte(LibraryFormat.ELEMENT_GETTER);
+			writeString(output, getter.getPropertyName());
+			writeModifiers(output, getter.getModifiers());
+			output.writeBoolean(getter.hasCustomBody());
+			if (getter.hasCustomBody()) {
+				writeBody(output, getter.getBody(), includeAll || shouldInclude(getter.getModifiers()));
+			}
+		} else if (element instanceof SetterBuilder) {
+			SetterBuilder setter = (SetterBuilder) element;
+			output.writeByte(LibraryFormat.ELEMENT_SETTER);
+			writeString(output, setter.getPropertyName());
+			writeModifiers(output, setter.getModifiers());
+			output.writeBoolean(setter.isCustom());
+			if (setter.isCustom()) {
+				writeString(output, setter.getParamName());
+				writeBody(output, setter.getBody(), includeAll || shouldInclude(setter.getModifiers()));
+			}
+		} else if (element instanceof ConstructorBuilder) {
+			ConstructorBuilder constructor = (ConstructorBuilder) element;
+			boolean include = includeAll || shouldInclude(constructor.getModifiers());
+			output.writeByte(LibraryFormat.ELEMENT_CONSTRUCTOR);
+			writeModifiers(output, constructor.getModifiers());
+			writeParams(output, constructor.getParameteters());
+			writeSource(output, constructor.getHead(), include);
+			writeBody(output, constructor.getBody(), include);
+		} else {
+			throw new Error("It looks like I forgot element " + element.getClass());
+		}
+	}
+}
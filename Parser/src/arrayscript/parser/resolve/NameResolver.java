@@ -0,0 +1,141 @@
+package arrayscript.parser.resolve;
+
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.ImportBuilder;
+import arrayscript.parser.builder.InitBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Contains the rules to find the element that a name refers to. A name is first searched in the imports of
+ * the class (if any), then in the namespace the name is used in, then in its imports, and then in the
+ * parent namespaces (and their imports) until the global namespace has been searched.
+ * 
+ * None of these methods modify anything (except for materializing lazy namespaces, which is thread-safe),
+ * so they can be used by multiple threads at the same time.
+ * @author knokko
+ *
+ */
+public class NameResolver {
+	
+	/**
+	 * Finds the element with the given name that is visible in the given namespace and class.
+	 * @param name The name to look for
+	 * @param namespace The namespace where the name is used
+	 * @param classBuilder The class where the name is used, or null if the name is not used in a class
+	 * @return The element that the name refers to, or null if no such element can be found
+	 * @throws ParsingException If a lazy namespace needs to be materialized, but is invalid
+	 */
+	public static ElementBuilder lookup(String name, NamespaceBuilder namespace, ClassBuilder classBuilder) throws ParsingException {
+		if (classBuilder != null) {
+			ElementBuilder imported = findImport(name, classBuilder.getImports());
+			if (imported != null) {
+				return imported;
+			}
+		}
+		
+		for (NamespaceBuilder current = namespace; current != null; current = current.getParent()) {
+			ElementBuilder element = current.getElement(name);
+			
+			// Inits can not be referred to
+			if (element != null && !(element instanceof InitBuilder)) {
+				return element;
+			}
+			ElementBuilder imported = findImport(name, current.getImports());
+			if (imported != null) {
+				return imported;
+			}
+		}
+		return null;
+	}
+	
+	private static ElementBuilder findImport(String name, Iterable<ImportBuilder> imports) {
+		for (ImportBuilder current : imports) {
+			if (current.isResolved() && current.getName().equals(name)) {
+				return current.getTarget();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds the element with the given qualified name, starting from the given namespace (normally the
+	 * global namespace).
+	 * @param start The namespace to start searching in
+	 * @param parts The parts of the qualified name
+	 * @return The element with the given qualified name, or null if there is no such element
+	 * @throws ParsingException If a lazy namespace needs to be materialized, but is invalid
+	 */
+	public static ElementBuilder resolvePath(NamespaceBuilder start, String[] parts) throws ParsingException {
+		ElementBuilder current = start;
+		for (String part : parts) {
+			if (!(current instanceof NamespaceBuilder)) {
+				return null;
+			}
+			current = ((NamespaceBuilder) current).getElement(part);
+			if (current == null) {
+				return null;
+			}
+		}
+		return current;
+	}
+	
+	/**
+	 * Finds the class with the given (possibly dotted) name that is visible in the given namespace and
+	 * class. The first part of the name is looked up like lookup does, the other parts must be elements of
+	 * the namespace that the previous part refers to.
+	 * @param parts The parts of the class name
+	 * @param namespace The namespace where the class name is used
+	 * @param classBuilder The class where the class name is used, or null if not used in a class
+	 * @return The class with the given name, or null if it can't be found
+	 * @throws ParsingException If a lazy namespace needs to be materialized, but is invalid
+	 */
+	public static ClassBuilder lookupClass(String[] parts, NamespaceBuilder namespace, ClassBuilder classBuilder) throws ParsingException {
+		ElementBuilder found = lookupPath(parts, namespace, classBuilder);
+		if (found instanceof ClassBuilder) {
+			return (ClassBuilder) found;
+		}
+		return null;
+	}
+	
+	private static ElementBuilder lookupPath(String[] parts, NamespaceBuilder namespace, ClassBuilder classBuilder) throws ParsingException {
+		ElementBuilder current = lookup(parts[0], namespace, classBuilder);
+		for (int index = 1; index < parts.length && current != null; index++) {
+			if (!(current instanceof NamespaceBuilder)) {
+				return null;
+			}
+			current = ((NamespaceBuilder) current).getElement(parts[index]);
+		}
+		return current;
+	}
+	
+	/**
+	 * Finds the type with the given (possibly dotted) name that is visible in the given namespace and class.
+	 * This is either a primitive type, the type of a class or the type of an enum.
+	 * @param parts The parts of the type name
+	 * @param namespace The namespace where the type name is used
+	 * @param classBuilder The class where the type name is used, or null if not used in a class
+	 * @return The type with the given name, or null if it can't be found
+	 * @throws ParsingException If a lazy namespace needs to be materialized, but is invalid
+	 */
+	public static Type lookupType(String[] parts, NamespaceBuilder namespace, ClassBuilder classBuilder) throws ParsingException {
+		if (parts.length == 1) {
+			Type primitive = PrimitiveTypes.getByName(parts[0]);
+			if (primitive != null) {
+				return primitive;
+			}
+		}
+		ElementBuilder found = lookupPath(parts, namespace, classBuilder);
+		if (found instanceof ClassBuilder) {
+			return ((ClassBuilder) found).getType();
+		} else if (found instanceof EnumBuilder) {
+			return ((EnumBuilder) found).getType();
+		} else {
+			return null;
+		}
+	}
+}
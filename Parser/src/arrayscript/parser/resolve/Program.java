@@ -0,0 +1,104 @@
+package arrayscript.parser.resolve;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import arrayscript.lang.var.type.ClassType;
+import arrayscript.lang.var.type.EnumType;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+
+/**
+ * An application whose signatures have been resolved by the SignatureResolver. All imports and all types
+ * of variables, properties, parameters and return types of the materialized namespaces of the application
+ * are resolved. The classes and enums of lazy namespaces are added when those namespaces are materialized,
+ * which can happen while the bodies are being checked, so the lookup methods are thread-safe.
+ * @author knokko
+ *
+ */
+public class Program {
+	
+	private final AppBuilder app;
+	private Map<String,ClassBuilder> classes;
+	private Map<String,EnumBuilder> enums;
+	
+	Program(AppBuilder app) {
+		this.app = app;
+		this.classes = new LinkedHashMap<String,ClassBuilder>();
+		this.enums = new LinkedHashMap<String,EnumBuilder>();
+	}
+	
+	synchronized void addClass(ClassBuilder classBuilder) {
+		classes.put(classBuilder.getQualifiedName(), classBuilder);
+	}
+	
+	synchronized void addEnum(EnumBuilder enumBuilder) {
+		enums.put(enumBuilder.getQualifiedName(), enumBuilder);
+	}
+	
+	/**
+	 * Puts the classes and enums of this program in the order of the given maps. Classes and enums that are
+	 * not in the given maps are put after the others, in their current order. Classes and enums that are
+	 * in the given maps, but not in this program, are ignored.
+	 */
+	synchronized void sort(Map<String,ClassBuilder> classOrder, Map<String,EnumBuilder> enumOrder) {
+		classes = inOrder(classes, classOrder);
+		enums = inOrder(enums, enumOrder);
+	}
+	
+	private static <T> Map<String,T> inOrder(Map<String,T> current, Map<String,T> order) {
+		Map<String,T> sorted = new LinkedHashMap<String,T>(current.size());
+		for (Map.Entry<String,T> entry : order.entrySet()) {
+			if (current.get(entry.getKey()) == entry.getValue()) {
+				sorted.put(entry.getKey(), entry.getValue());
+			}
+		}
+		sorted.putAll(current);
+		return sorted;
+	}
+	
+	public AppBuilder getApp() {
+		return app;
+	}
+	
+	/**
+	 * @param type The type of instances of a class
+	 * @return The class whose instances have the given type, or null if the type is not a class type
+	 */
+	public synchronized ClassBuilder getClass(Type type) {
+		if (type instanceof ClassType) {
+			return classes.get(type.getName());
+		}
+		return null;
+	}
+	
+	/**
+	 * @param type The type of the constants of an enum
+	 * @return The enum whose constants have the given type, or null if the type is not an enum type
+	 */
+	public synchronized EnumBuilder getEnum(Type type) {
+		if (type instanceof EnumType) {
+			return enums.get(type.getName());
+		}
+		return null;
+	}
+	
+	/**
+	 * @return An unmodifiable view of all enums of the resolved namespaces of the program, mapped by their
+	 * qualified names. This should only be used after the bodies have been checked.
+	 */
+	public synchronized Map<String,EnumBuilder> getEnums(){
+		return Collections.unmodifiableMap(enums);
+	}
+	
+	/**
+	 * @return An unmodifiable view of all classes of the resolved namespaces of the program, mapped by their
+	 * qualified names. This should only be used after the bodies have been checked.
+	 */
+	public synchronized Map<String,ClassBuilder> getClasses(){
+		return Collections.unmodifiableMap(classes);
+	}
+}
@@ -0,0 +1,242 @@
+package arrayscript.parser.resolve;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.ImportBuilder;
+import arrayscript.parser.builder.MaterializeListener;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.param.ParamsBuilder;
+import arrayscript.parser.builder.var.type.TypeBuilder;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Resolves the imports and the types of the signatures of the elements of an application: the types of
+ * variables and properties and the parameter and return types of functions, methods and constructors. This
+ * must happen before the bodies are checked, because the body checkers rely on it.
+ * 
+ * Lazy namespaces are not materialized for this: only the namespaces that are materialized already are
+ * resolved right away. The resolver is registered as materialize listener of the application, so the
+ * other namespaces are resolved when they are materialized (for instance because a body checker looks up
+ * one of their elements). All resolving happens while holding the lock of the resolver, so at most 1
+ * thread resolves at any time.
+ * @author knokko
+ *
+ */
+public class SignatureResolver implements MaterializeListener {
+	
+	/**
+	 * Resolves the signatures of the given application. Lazy namespaces will be resolved when they are
+	 * materialized.
+	 * @param app The application to resolve
+	 * @return The resolved program
+	 * @throws ParsingException If an import or type can't be resolved
+	 */
+	public static Program resolve(AppBuilder app) throws ParsingException {
+		SignatureResolver resolver = new SignatureResolver(new Program(app));
+		app.setMaterializeListener(resolver);
+		resolver.resolve(app.getGlobalNamespace());
+		return resolver.program;
+	}
+	
+	/**
+	 * Puts the classes and enums of the given program in the order they were declared. The namespaces are
+	 * resolved in the order they are materialized, which depends on the scheduling of the body checkers, so
+	 * this should be called after the bodies have been checked to make the result deterministic.
+	 * @param program The program whose bodies have been checked
+	 */
+	public static void sortDeclarations(Program program) {
+		Map<String,ClassBuilder> classes = new LinkedHashMap<String,ClassBuilder>();
+		Map<String,EnumBuilder> enums = new LinkedHashMap<String,EnumBuilder>();
+		collectDeclarations(program.getApp().getGlobalNamespace(), classes, enums);
+		program.sort(classes, enums);
+	}
+	
+	private static void collectDeclarations(NamespaceBuilder namespace, Map<String,ClassBuilder> classes, Map<String,EnumBuilder> enums) {
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof NamespaceBuilder) {
+				collectDeclarations((NamespaceBuilder) element, classes, enums);
+			} else if (element instanceof EnumBuilder) {
+				EnumBuilder enumBuilder = (EnumBuilder) element;
+				enums.put(enumBuilder.getQualifiedName(), enumBuilder);
+			} else if (element instanceof ClassBuilder) {
+				ClassBuilder classBuilder = (ClassBuilder) element;
+				classes.put(classBuilder.getQualifiedName(), classBuilder);
+			}
+		}
+	}
+	
+	private final Program program;
+	
+	/**
+	 * The namespaces that have been resolved (or are being resolved)
+	 */
+	private final Set<NamespaceBuilder> resolved;
+	
+	/**
+	 * The problems of the namespaces whose signatures couldn't be resolved, so that they can be reported
+	 * again when the namespace is used again
+	 */
+	private final Map<NamespaceBuilder,ParsingException> failures;
+	
+	private SignatureResolver(Program program) {
+		this.program = program;
+		this.resolved = Collections.newSetFromMap(new IdentityHashMap<NamespaceBuilder,Boolean>());
+		this.failures = new IdentityHashMap<NamespaceBuilder,ParsingException>();
+	}
+	
+	@Override
+	public void materialized(NamespaceBuilder namespace) throws ParsingException {
+		resolve(namespace);
+	}
+	
+	/**
+	 * Resolves the given namespace and its materialized descendants, unless they were resolved already.
+	 * The parent of the given namespace will be materialized (and thus resolved) first, because the types
+	 * can refer to the imports of the parent namespaces.
+	 */
+	private synchronized void resolve(NamespaceBuilder namespace) throws ParsingException {
+		if (!resolved.add(namespace)) {
+			ParsingException failure = failures.get(namespace);
+			if (failure != null) {
+				throw failure;
+			}
+			return;
+		}
+		try {
+			if (namespace.getParent() != null) {
+				namespace.getParent().materialize();
+			}
+			
+			// Imports must be resolved before the types because types can refer to imports
+			resolveImports(namespace);
+			resolveTypes(namespace);
+		} catch (ParsingException ex) {
+			failures.put(namespace, ex);
+			throw ex;
+		}
+		
+		// Namespaces that are not materialized yet will be resolved when they are materialized
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof NamespaceBuilder && ((NamespaceBuilder) element).isMaterialized()) {
+				resolve((NamespaceBuilder) element);
+			}
+		}
+	}
+	
+	private void resolveImports(NamespaceBuilder namespace) throws ParsingException {
+		NamespaceBuilder global = program.getApp().getGlobalNamespace();
+		resolveImports(global, namespace.getImports(), namespace.toString());
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof EnumBuilder) {
+				program.addEnum((EnumBuilder) element);
+			} else if (element instanceof ClassBuilder) {
+				ClassBuilder classBuilder = (ClassBuilder) element;
+				program.addClass(classBuilder);
+				resolveImports(global, classBuilder.getImports(), classBuilder.toString());
+			}
+		}
+	}
+	
+	private static void resolveImports(NamespaceBuilder global, Collection<ImportBuilder> imports, String location) throws ParsingException {
+		for (ImportBuilder current : imports) {
+			if (current.isResolved()) {
+				continue;
+			}
+			ElementBuilder target = NameResolver.resolvePath(global, current.getParts());
+			if (target == null) {
+				throw new ParsingException("Can't resolve import " + String.join(".", current.getParts()) + " in " + location);
+			}
+			current.resolve(target);
+		}
+	}
+	
+	private static void resolveTypes(NamespaceBuilder namespace) throws ParsingException {
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof ClassBuilder) {
+				resolveTypes(namespace, (ClassBuilder) element);
+			} else if (element instanceof VariableBuilder) {
+				resolve(((VariableBuilder) element).getType(), namespace, null, element.getName());
+			} else if (element instanceof FunctionBuilder) {
+				FunctionBuilder function = (FunctionBuilder) element;
+				if (function.hasReturnType()) {
+					resolve(function.getReturnType(), namespace, null, function.getName());
+				}
+				resolve(function.getParameters(), namespace, null, function.getName());
+			}
+		}
+	}
+	
+	private static void resolveTypes(NamespaceBuilder namespace, ClassBuilder classBuilder) throws ParsingException {
+		for (ElementBuilder element : classBuilder.getElements()) {
+			if (element instanceof VariableBuilder) {
+				resolve(((VariableBuilder) element).getType(), namespace, classBuilder, element.getName());
+			} else if (element instanceof PropertyBuilder) {
+				resolve(((PropertyBuilder) element).getType(), namespace, classBuilder, element.getName());
+			} else if (element instanceof FunctionBuilder) {
+				FunctionBuilder function = (FunctionBuilder) element;
+				if (function.hasReturnType()) {
+					resolve(function.getReturnType(), namespace, classBuilder, function.getName());
+				}
+				resolve(function.getParameters(), namespace, classBuilder, function.getName());
+			} else if (element instanceof MethodBuilder) {
+				MethodBuilder method = (MethodBuilder) element;
+				if (method.hasReturnType()) {
+					resolve(method.getReturnType(), namespace, classBuilder, method.getName());
+				}
+				resolve(method.getParameters(), namespace, classBuilder, method.getName());
+			} else if (element instanceof ConstructorBuilder) {
+				resolve(((ConstructorBuilder) element).getParameteters(), namespace, classBuilder, "constructor");
+			} else if (element instanceof GetterBuilder) {
+				
+				// The class builder doesn't check this because getters can be declared before their property
+				String propertyName = ((GetterBuilder) element).getPropertyName();
+				if (classBuilder.getProperty(propertyName) == null) {
+					throw new ParsingException("There is a getter for the unknown property " + propertyName + " in " + classBuilder);
+				}
+			} else if (element instanceof SetterBuilder) {
+				String propertyName = ((SetterBuilder) element).getPropertyName();
+				if (classBuilder.getProperty(propertyName) == null) {
+					throw new ParsingException("There is a setter for the unknown property " + propertyName + " in " + classBuilder);
+				}
+			}
+		}
+	}
+	
+	private static void resolve(ParamsBuilder params, NamespaceBuilder namespace, ClassBuilder classBuilder, String owner) throws ParsingException {
+		for (ParamBuilder param : params.getParams()) {
+			resolve(param.getType(), namespace, classBuilder, owner);
+		}
+	}
+	
+	private static void resolve(TypeBuilder type, NamespaceBuilder namespace, ClassBuilder classBuilder, String owner) throws ParsingException {
+		
+		// Primitive types are confirmed by the parser
+		if (type.isTypeConfirmed()) {
+			return;
+		}
+		Type resolved = NameResolver.lookupType(type.getTypeName(), namespace, classBuilder);
+		if (resolved == null) {
+			String location = classBuilder != null ? classBuilder.toString() : namespace.toString();
+			throw new ParsingException("Unknown type " + type.getReadableTypeName() + " used by " + owner + " in " + location);
+		}
+		type.confirmType(resolved);
+	}
+}
@@ -0,0 +1,60 @@
+package arrayscript.parser.source.reading;
+
+import java.util.List;
+
+import arrayscript.parser.source.SourceElement;
+
+/**
+ * A source file reader that reads its source elements from a range of a list of source elements that
+ * were read earlier. This is used to parse source elements that were stored for later, without copying
+ * them into sublists.
+ * @author knokko
+ *
+ */
+public class ListSourceFileReader implements SourceFileReader {
+	
+	private final List<SourceElement> elements;
+	private final int endIndex;
+	
+	private int index;
+	
+	/**
+	 * Constructs a ListSourceFileReader that will return all elements of the given list.
+	 * @param elements The list of source elements to read, should not be modified while reading
+	 */
+	public ListSourceFileReader(List<SourceElement> elements) {
+		this(elements, 0, elements.size());
+	}
+	
+	/**
+	 * Constructs a ListSourceFileReader that will return the elements of the given list from startIndex
+	 * (inclusive) until endIndex (exclusive).
+	 * @param elements The list of source elements to read, should not be modified while reading
+	 * @param startIndex The index of the first element to return
+	 * @param endIndex The index after the last element to return
+	 */
+	public ListSourceFileReader(List<SourceElement> elements, int startIndex, int endIndex) {
+		if (startIndex < 0 || endIndex > elements.size() || startIndex > endIndex) {
+			throw new IndexOutOfBoundsException("Invalid range " + startIndex + " to " + endIndex + " for size " + elements.size());
+		}
+		this.elements = elements;
+		this.index = startIndex;
+		this.endIndex = endIndex;
+	}
+
+	@Override
+	public SourceElement next() {
+		if (index < endIndex) {
+			return elements.get(index++);
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return The index in the list of the element that will be returned by the next call to next()
+	 */
+	public int getIndex() {
+		return index;
+	}
+}
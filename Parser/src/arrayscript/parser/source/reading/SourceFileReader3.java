@@ -69,7 +69,12 @@ class SourceFileReader3 {
 		if (currentWordIndex < currentWord.length()) {
 			for (Operator operator : OPERATORS) {
 				
-				int index = currentWord.indexOf(operator.getTokens(), currentWordIndex);
+				int index;
+				if (operator == Operator.PROPERTY) {
+					index = indexOfProperty(currentWord, currentWordIndex);
+				} else {
+					index = currentWord.indexOf(operator.getTokens(), currentWordIndex);
+				}
 				if (index != -1) {
 					
 					// There is no point to look further because no operator can be closer
@@ -144,4 +149,34 @@ class SourceFileReader3 {
 			}
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Finds the index of the first '.' in the given word (starting from the given index) that is not the
+	 * decimal point of a number.
+	 * @param word The word to search in
+	 * @param fromIndex The index to start searching from
+	 * @return The index of the first property operator, or -1 if there is none
+	 */
+	private static int indexOfProperty(String word, int fromIndex) {
+		int index = word.indexOf('.', fromIndex);
+		while (index != -1 && isDecimalPoint(word, index)) {
+			index = word.indexOf('.', index + 1);
+		}
+		return index;
+	}
+	
+	private static boolean isDecimalPoint(String word, int index) {
+		
+		// A decimal point must be followed by a digit
+		if (index + 1 >= word.length() || !Character.isDigit(word.charAt(index + 1))) {
+			return false;
+		}
+		
+		// Find the start of the part before the '.', a decimal point is preceded by a number
+		int start = index;
+		while (start > 0 && Character.isLetterOrDigit(word.charAt(start - 1))) {
+			start--;
+		}
+		return start < index && Character.isDigit(word.charAt(start));
+	}
+}
@@ -0,0 +1,106 @@
+package arrayscript.parser.executable;
+
+import java.math.BigInteger;
+
+import arrayscript.lang.Operator;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.NumberValue;
+import arrayscript.lang.var.value.Value;
+
+/**
+ * Compares the integer arithmetic of the ConstantFolder with the semantics of the transpiled code: the
+ * exact result of the operation, wrapped around to the integer type of the expression. Int32 and uint32
+ * products are transpiled to Math.imul, which wraps the exact product modulo 2^32 as well. The other
+ * operations are exact in double precision for operands of at most 32 bits. Run the main method, it throws
+ * an AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class ConstantFolderTest {
+	
+	private static final Type[] INTEGER_TYPES = {
+			PrimitiveTypes.INT8, PrimitiveTypes.INT16, PrimitiveTypes.INT32,
+			PrimitiveTypes.UINT8, PrimitiveTypes.UINT16, PrimitiveTypes.UINT32
+	};
+	
+	private static final Operator[] OPERATORS = {
+			Operator.SUM, Operator.SUBSTRACTION, Operator.PRODUCT, Operator.DIVISION, Operator.REMAINDER
+	};
+	
+	private static final double[] OPERANDS = {
+			0, 1, -1, 2, 7, -7, 100, 127, -128, 128, 255, 256, 1000, 32767, -32768, 65535, 65536, 99999,
+			123456789, 987654321, -987654321, 2147483647, -2147483648, 2147483648.0, 4294967295.0
+	};
+	
+	public static void main(String[] args) {
+		int checked = 0;
+		for (Type type : INTEGER_TYPES) {
+			for (double leftNumber : OPERANDS) {
+				for (double rightNumber : OPERANDS) {
+					
+					// The operands of an expression of an integer type always fit that type
+					long left = (long) number(ConstantFolder.convert(new ConstDoubleValue(leftNumber), type));
+					long right = (long) number(ConstantFolder.convert(new ConstDoubleValue(rightNumber), type));
+					for (Operator operator : OPERATORS) {
+						if (right == 0 && (operator == Operator.DIVISION || operator == Operator.REMAINDER)) {
+							continue;
+						}
+						double folded = number(ConstantFolder.foldArithmetic(operator, new ConstDoubleValue(left),
+								new ConstDoubleValue(right), type));
+						double expected = wrap(exact(operator, left, right), type);
+						if (folded != expected) {
+							throw new AssertionError(type.getName() + ": " + left + " " + operator.getTokens() + " " + right
+									+ " was folded to " + folded + ", but should be " + expected);
+						}
+						checked++;
+					}
+				}
+			}
+		}
+		
+		// The example of the bug report
+		double product = number(ConstantFolder.foldArithmetic(Operator.PRODUCT, new ConstDoubleValue(123456789),
+				new ConstDoubleValue(987654321), PrimitiveTypes.INT32));
+		if (product != -67153019) {
+			throw new AssertionError("123456789 * 987654321 was folded to " + product + ", but should be -67153019");
+		}
+		System.out.println("Checked " + checked + " folded operations");
+	}
+	
+	private static double number(Value value) {
+		return ((NumberValue) value).getDoubleValue();
+	}
+	
+	private static BigInteger exact(Operator operator, long left, long right) {
+		BigInteger a = BigInteger.valueOf(left);
+		BigInteger b = BigInteger.valueOf(right);
+		switch (operator) {
+		case SUM: return a.add(b);
+		case SUBSTRACTION: return a.subtract(b);
+		case PRODUCT: return a.multiply(b);
+		
+		// Both round towards zero, like the conversion of the javascript quotient and remainder
+		case DIVISION: return a.divide(b);
+		default: return a.remainder(b);
+		}
+	}
+	
+	private static double wrap(BigInteger exact, Type type) {
+		int low = exact.intValue();
+		if (type == PrimitiveTypes.INT8) {
+			return (byte) low;
+		} else if (type == PrimitiveTypes.INT16) {
+			return (short) low;
+		} else if (type == PrimitiveTypes.INT32) {
+			return low;
+		} else if (type == PrimitiveTypes.UINT8) {
+			return low & 0xFF;
+		} else if (type == PrimitiveTypes.UINT16) {
+			return low & 0xFFFF;
+		} else {
+			return low & 0xFFFFFFFFL;
+		}
+	}
+}
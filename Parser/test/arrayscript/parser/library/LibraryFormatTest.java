@@ -0,0 +1,350 @@
+package arrayscript.parser.library;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import arrayscript.lang.Modifier;
+import arrayscript.parser.ArrayScriptParser;
+import arrayscript.parser.ParserOptions;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.ImportBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.param.ParamsBuilder;
+import arrayscript.parser.builder.var.type.TypeBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.executable.ExecutableBuilder;
+import arrayscript.parser.source.SourceElement;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Parses a library, writes it with LibraryWriter (with and without bodies), loads it back with
+ * LibraryReader and compares the loaded elements with the parsed elements: their names, modifiers, types,
+ * parameters and (included) bodies, and whether they are marked incomplete. Then it checks that truncated
+ * libraries and libraries with huge counts are rejected with an IOException. Run the main method, it
+ * throws an AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class LibraryFormatTest {
+	
+	private static final String SOURCE = String.join("\n",
+			"namespace geo {",
+			"	import util.half;",
+			"	class Box {",
+			"		int32 width = 2;",
+			"		uint8 depth;",
+			"		getter width;",
+			"		getter depth {",
+			"			return this.depth;",
+			"		}",
+			"		setter width(newWidth) {",
+			"			this.width = newWidth;",
+			"		}",
+			"		constructor(int32 width) {} {",
+			"			this.width = width;",
+			"		}",
+			"		number scaled(number factor) {",
+			"			return this.width * factor;",
+			"		}",
+			"	}",
+			"	define class Point {",
+			"		number x = 0.5;",
+			"		number length() {",
+			"			return this.x;",
+			"		}",
+			"	}",
+			"	enum Direction { UP, DOWN, LEFT }",
+			"	const string NAME = \"geo \\\"lib\\\"\";",
+			"	int32 counter = 0;",
+			"	define int32 SIZE = 4 * 4;",
+			"	define number square(number x) {",
+			"		return x * x;",
+			"	}",
+			"	void reset() {",
+			"		counter = 0;",
+			"	}",
+			"	namespace inner {",
+			"		boolean enabled = true;",
+			"	}",
+			"}",
+			"namespace util {",
+			"	number half(number x) {",
+			"		return x / 2;",
+			"	}",
+			"}",
+			"");
+	
+	public static void main(String[] args) throws IOException, ParsingException {
+		File sources = Files.createTempDirectory("library-format-test").toFile();
+		File sourceFile = new File(sources, "geo.ars");
+		Files.write(sourceFile.toPath(), SOURCE.getBytes(StandardCharsets.UTF_8));
+		AppBuilder parsed;
+		try {
+			parsed = ArrayScriptParser.parseSources(sources, new ParserOptions());
+			parsed.materializeAll();
+		} finally {
+			sourceFile.delete();
+			sources.delete();
+		}
+		
+		int checked = 0;
+		byte[] withBodies = null;
+		for (boolean includeBodies : new boolean[] {true, false}) {
+			byte[] data = write(parsed, includeBodies);
+			AppBuilder loaded = new AppBuilder();
+			LibraryReader.load(ByteBuffer.wrap(data), loaded);
+			
+			List<String> expected = new ArrayList<String>();
+			describeNamespace(parsed.getGlobalNamespace(), null, includeBodies, expected);
+			List<String> actual = new ArrayList<String>();
+			describeNamespace(loaded.getGlobalNamespace(), loaded, true, actual);
+			for (int index = 0; index < Math.max(expected.size(), actual.size()); index++) {
+				String expectedLine = index < expected.size() ? expected.get(index) : "nothing";
+				String actualLine = index < actual.size() ? actual.get(index) : "nothing";
+				if (!expectedLine.equals(actualLine)) {
+					throw new AssertionError("Expected " + expectedLine + ", but got " + actualLine
+							+ " (includeBodies is " + includeBodies + ")");
+				}
+			}
+			checked += expected.size();
+			if (includeBodies) {
+				withBodies = data;
+			}
+		}
+		
+		// Every truncated library must be rejected
+		int rejected = 0;
+		for (int length = 0; length < withBodies.length; length++) {
+			try {
+				LibraryReader.load(ByteBuffer.wrap(withBodies, 0, length).slice(), new AppBuilder());
+			} catch (IOException ioex) {
+				rejected++;
+			}
+		}
+		if (rejected != withBodies.length) {
+			throw new AssertionError("Only " + rejected + " of the " + withBodies.length + " truncated libraries were rejected");
+		}
+		
+		// A string table that claims to have 2^31 - 1 strings
+		expectRejected(new byte[] {'A', 'R', 'S', 'L', 3, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 7, 0}, "string count");
+		
+		// A global namespace with a function that claims to have 2^28 parameters
+		expectRejected(new byte[] {'A', 'R', 'S', 'L', 3, 1, 1, 'f', 0, 1, LibraryFormat.ELEMENT_FUNCTION, 0, 0, 0,
+				(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1, 0, 0}, "parameter count");
+		System.out.println("Checked " + checked + " elements and " + (rejected + 2) + " corrupted libraries");
+	}
+	
+	private static byte[] write(AppBuilder app, boolean includeBodies) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		LibraryWriter.write(app, output, includeBodies);
+		return output.toByteArray();
+	}
+	
+	private static void expectRejected(byte[] data, String description) throws ParsingException {
+		if (!Arrays.equals(Arrays.copyOf(data, 4), LibraryFormat.MAGIC)) {
+			throw new Error("The test data should start with the magic bytes");
+		}
+		try {
+			LibraryReader.load(ByteBuffer.wrap(data), new AppBuilder());
+			throw new AssertionError("The library with an invalid " + description + " was not rejected");
+		} catch (IOException ioex) {
+			// This is expected
+		}
+	}
+	
+	/**
+	 * Adds a line that describes every element of the given namespace to the given list. If app is null, the
+	 * elements are the parsed elements and the description predicts what the loaded elements should look
+	 * like. Otherwise, the elements were loaded into app.
+	 */
+	private static void describeNamespace(NamespaceBuilder namespace, AppBuilder app, boolean includeBodies, List<String> lines) {
+		lines.add("imports " + describeImports(namespace.getImports()));
+		for (ElementBuilder element : namespace.getElements()) {
+			String prefix = element.getName() + " " + describeModifiers(getModifiers(element));
+			if (element instanceof NamespaceBuilder) {
+				lines.add("namespace " + prefix);
+				describeNamespace((NamespaceBuilder) element, app, includeBodies, lines);
+			} else if (element instanceof ClassBuilder) {
+				ClassBuilder classBuilder = (ClassBuilder) element;
+				lines.add("class " + prefix + " imports " + describeImports(classBuilder.getImports()));
+				boolean includeAll = includeBodies || classBuilder.getModifiers().contains(Modifier.DEFINE);
+				for (ElementBuilder member : classBuilder.getElements()) {
+					lines.add(describeMember(member, app, includeAll));
+				}
+			} else if (element instanceof EnumBuilder) {
+				StringBuilder constants = new StringBuilder();
+				for (EnumConstantBuilder constant : ((EnumBuilder) element).getConstants()) {
+					constants.append(constant.getName()).append(' ');
+				}
+				lines.add("enum " + prefix + " " + constants);
+			} else {
+				lines.add(describeMember(element, app, includeBodies));
+			}
+		}
+	}
+	
+	private static String describeMember(ElementBuilder element, AppBuilder app, boolean includeAll) {
+		Set<Modifier> modifiers = getModifiers(element);
+		boolean include = includeAll || modifiers.contains(Modifier.DEFINE);
+		String description;
+		List<SourceElement> source;
+		boolean hasSource;
+		if (element instanceof VariableBuilder) {
+			VariableBuilder variable = (VariableBuilder) element;
+			ValueBuilder value = variable.getInitialValue();
+			description = "variable " + describeType(variable.getType());
+			source = value != null ? value.getUnparsedValue() : null;
+			hasSource = true;
+		} else if (element instanceof PropertyBuilder) {
+			PropertyBuilder property = (PropertyBuilder) element;
+			description = "property " + describeType(property.getType());
+			source = property.hasDefaultValue() ? property.getDefaultValue().getUnparsedValue() : null;
+			hasSource = property.hasDefaultValue();
+		} else if (element instanceof FunctionBuilder) {
+			FunctionBuilder function = (FunctionBuilder) element;
+			description = "function " + describeType(function.hasReturnType() ? function.getReturnType() : null)
+					+ describeParams(function.getParameters());
+			source = getSource(function.getBody());
+			hasSource = true;
+		} else if (element instanceof MethodBuilder) {
+			MethodBuilder method = (MethodBuilder) element;
+			description = "method " + describeType(method.hasReturnType() ? method.getReturnType() : null)
+					+ describeParams(method.getParameters());
+			source = getSource(method.getBody());
+			hasSource = true;
+		} else if (element instanceof GetterBuilder) {
+			GetterBuilder getter = (GetterBuilder) element;
+			description = "getter " + getter.hasCustomBody();
+			source = getter.hasCustomBody() ? getSource(getter.getBody()) : null;
+			hasSource = getter.hasCustomBody();
+		} else if (element instanceof SetterBuilder) {
+			SetterBuilder setter = (SetterBuilder) element;
+			description = "setter " + setter.isCustom() + (setter.isCustom() ? " " + setter.getParamName() : "");
+			source = setter.isCustom() ? getSource(setter.getBody()) : null;
+			hasSource = setter.isCustom();
+		} else if (element instanceof ConstructorBuilder) {
+			ConstructorBuilder constructor = (ConstructorBuilder) element;
+			
+			// The head is stored like a body, but an excluded head is loaded as an empty head
+			List<SourceElement> head = constructor.getHead();
+			description = "constructor" + describeParams(constructor.getParameteters()) + " head "
+					+ (app != null || include ? describeSource(head) : "");
+			source = getSource(constructor.getBody());
+			hasSource = true;
+		} else {
+			throw new AssertionError("Unexpected element " + element);
+		}
+		
+		String name = element instanceof ConstructorBuilder ? "" : element.getName() + " ";
+		description = name + describeModifiers(modifiers) + description;
+		if (app != null) {
+			return description + " = " + describeSource(source) + (app.isIncomplete(element) ? " (incomplete)" : "");
+		}
+		if (include && source != null) {
+			return description + " = " + describeSource(source);
+		}
+		return description + " = none" + (hasSource ? " (incomplete)" : "");
+	}
+	
+	private static List<SourceElement> getSource(ExecutableBuilder body) {
+		return body.hasSource() ? body.getUnparsed() : null;
+	}
+	
+	private static Set<Modifier> getModifiers(ElementBuilder element) {
+		if (element instanceof NamespaceBuilder) {
+			return ((NamespaceBuilder) element).getModifiers();
+		} else if (element instanceof ClassBuilder) {
+			return ((ClassBuilder) element).getModifiers();
+		} else if (element instanceof EnumBuilder) {
+			return ((EnumBuilder) element).getModifiers();
+		} else if (element instanceof VariableBuilder) {
+			return ((VariableBuilder) element).getModifiers();
+		} else if (element instanceof PropertyBuilder) {
+			return ((PropertyBuilder) element).getModifiers();
+		} else if (element instanceof FunctionBuilder) {
+			return ((FunctionBuilder) element).getModifiers();
+		} else if (element instanceof MethodBuilder) {
+			return ((MethodBuilder) element).getModifiers();
+		} else if (element instanceof GetterBuilder) {
+			return ((GetterBuilder) element).getModifiers();
+		} else if (element instanceof SetterBuilder) {
+			return ((SetterBuilder) element).getModifiers();
+		} else if (element instanceof ConstructorBuilder) {
+			return ((ConstructorBuilder) element).getModifiers();
+		} else {
+			throw new AssertionError("Unexpected element " + element);
+		}
+	}
+	
+	private static String describeModifiers(Set<Modifier> modifiers) {
+		StringBuilder result = new StringBuilder();
+		for (Modifier modifier : Modifier.values()) {
+			if (modifiers.contains(modifier)) {
+				result.append(modifier.name().toLowerCase()).append(' ');
+			}
+		}
+		return result.toString();
+	}
+	
+	private static String describeImports(Iterable<ImportBuilder> imports) {
+		StringBuilder result = new StringBuilder();
+		for (ImportBuilder current : imports) {
+			result.append(String.join(".", current.getParts())).append(' ');
+		}
+		return result.toString();
+	}
+	
+	private static String describeType(TypeBuilder type) {
+		return type == null ? "void" : String.join(".", type.getTypeName());
+	}
+	
+	private static String describeParams(ParamsBuilder params) {
+		StringBuilder result = new StringBuilder("(");
+		for (ParamBuilder param : params.getParams()) {
+			result.append(describeType(param.getType())).append(' ').append(param.getName()).append(',');
+		}
+		return result.append(')').toString();
+	}
+	
+	private static String describeSource(List<SourceElement> source) {
+		if (source == null) {
+			return "none";
+		}
+		StringBuilder result = new StringBuilder();
+		for (SourceElement element : source) {
+			if (element.isWord()) {
+				result.append("word:").append(element.getWord());
+			} else if (element.isKeyword()) {
+				result.append("keyword:").append(element.getKeyword());
+			} else if (element.isString()) {
+				result.append("string:").append(element.getStringContent());
+			} else if (element.isNumber()) {
+				result.append("number:").append(element.getNumber());
+			} else if (element.isOperator()) {
+				result.append("operator:").append(element.getOperator());
+			}
+			result.append(' ');
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,74 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+
+/**
+ * The layout of the StorageMode ARRAY. Every instance is a javascript array with 1 element per property, and
+ * every property has a fixed index (slot) in that array. The slots are assigned in the order the properties
+ * were declared. Because all instances of a class are created with all their slots filled, they all have
+ * the same compact shape.
+ * @author knokko
+ *
+ */
+class ArrayLayout extends ClassLayout {
+	
+	private final Map<PropertyBuilder,Integer> slots;
+	
+	/**
+	 * @param classBuilder The class to determine the layout of
+	 */
+	ArrayLayout(ClassBuilder classBuilder) {
+		super(classBuilder);
+		List<PropertyBuilder> properties = getProperties();
+		slots = new IdentityHashMap<PropertyBuilder,Integer>();
+		for (int index = 0; index < properties.size(); index++) {
+			slots.put(properties.get(index), index);
+		}
+	}
+	
+	private int getSlot(PropertyBuilder property) throws IllegalArgumentException {
+		Integer slot = slots.get(property);
+		if (slot == null) {
+			throw new IllegalArgumentException(property + " is not a part of this layout");
+		}
+		return slot;
+	}
+	
+	@Override
+	String getPrefix(PropertyBuilder property, boolean read) {
+		return "";
+	}
+	
+	@Override
+	String getSuffix(PropertyBuilder property) throws IllegalArgumentException {
+		return "[" + getSlot(property) + "]";
+	}
+	
+	@Override
+	int getInstancePrecedence(PropertyBuilder property) {
+		return BodyEmitter.MEMBER;
+	}
+	
+	@Override
+	int getReadPrecedence(PropertyBuilder property) {
+		return BodyEmitter.MEMBER;
+	}
+	
+	@Override
+	void allocate(CodeWriter out, List<String> values) throws IOException {
+		out.write("const " + JSNames.SELF + " = [");
+		for (int index = 0; index < values.size(); index++) {
+			if (index > 0) {
+				out.write(", ");
+			}
+			out.write(values.get(index));
+		}
+		out.line("];");
+	}
+}
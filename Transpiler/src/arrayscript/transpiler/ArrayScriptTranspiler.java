@@ -0,0 +1,236 @@
+package arrayscript.transpiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import arrayscript.parser.ArrayScriptParser;
+import arrayscript.parser.ParserOptions;
+import arrayscript.parser.executable.CheckResult;
+import arrayscript.parser.util.ParsingException;
+import arrayscript.util.Checks;
+
+/**
+ * Transpiles ArrayScript applications to javascript. By default, the instances of ArrayScript classes become
+ * javascript arrays with a fixed index for every property, so property accesses become array accesses with
+ * a constant index and all instances of a class have the same shape. The TranspilerOptions can select
+ * another StorageMode.
+ * 
+ * The code is written while it is generated: the output is never held in memory as a whole. Output files
+ * are written through a ChannelWriter, which encodes the code into 1 reusable buffer.
+ * 
+ * If the code is minified, the name map of the Minifier is written to a file next to the output file. Its
+ * name is the name of the output file followed by ".names.json".
+ * 
+ * If code splitting is enabled, the chunk files are written to the directory of the output file. Their
+ * names consist of the name of the output file without its extension, a '.', the qualified name of their
+ * namespace and ".js". The manifest of the chunks is written next to the output file as well. Its name is
+ * the name of the output file followed by ".chunks.json".
+ * 
+ * The options can enable gzip variants and content hashes for all these files (see OutputDirectory). With
+ * content hashing, the map from the original names to the hashed names is written next to the output file.
+ * Its name is the name of the output file followed by ".files.json", without a hash, so it is the only file
+ * whose name doesn't change when the content changes.
+ * @author knokko
+ *
+ */
+public class ArrayScriptTranspiler {
+	
+	private static final String HTML_START = "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n</head>\n<body>\n<script>\n";
+	private static final String HTML_END = "</script>\n</body>\n</html>\n";
+	
+	/**
+	 * Parses the source files in the given directory and writes the javascript code of the application to
+	 * the given output file. If the application has multiple mains, the main to transpile must be selected
+	 * with ParserOptions.setMainName.
+	 * @param sourcesDirectory The directory where all source files should be in
+	 * @param output The file to write the javascript code to
+	 * @param options The parser options, including the library path and the selected main
+	 * @throws ParsingException If the parsing failed or the output file couldn't be written
+	 */
+	public static void transpile(File sourcesDirectory, File output, ParserOptions options) throws ParsingException {
+		transpile(sourcesDirectory, output, options, new TranspilerOptions());
+	}
+	
+	/**
+	 * Parses the source files in the given directory and writes the javascript code of the application to
+	 * the given output file. If the application has multiple mains, the main to transpile must be selected
+	 * with ParserOptions.setMainName.
+	 * @param sourcesDirectory The directory where all source files should be in
+	 * @param output The file to write the javascript code (or html page) to
+	 * @param options The parser options, including the library path and the selected main
+	 * @param transpilerOptions The options that determine what javascript code is generated
+	 * @throws ParsingException If the parsing failed or the output file couldn't be written
+	 */
+	public static void transpile(File sourcesDirectory, File output, ParserOptions options, 
+			TranspilerOptions transpilerOptions) throws ParsingException {
+		Checks.notNull(transpilerOptions, "transpilerOptions");
+		CheckResult program = ArrayScriptParser.compile(sourcesDirectory, options);
+		String name = output.getName();
+		String baseName = name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name;
+		ProgramEmitter emitter = new ProgramEmitter(program, transpilerOptions, baseName);
+		ChunkPlan plan = emitter.getChunkPlan();
+		List<ChunkPlan.Chunk> chunks = plan != null ? plan.getChunks() : Collections.<ChunkPlan.Chunk>emptyList();
+		OutputDirectory directory = new OutputDirectory(output.getAbsoluteFile().getParentFile(), 
+				transpilerOptions.isCompress(), transpilerOptions.isContentHashing());
+		try {
+			Minifier minifier = transpilerOptions.isMinify() ? minify(emitter, chunks) : null;
+			
+			// The chunk files come first, because the main file needs their final names
+			for (ChunkPlan.Chunk chunk : chunks) {
+				Writer writer = directory.open(chunk.getFile());
+				try {
+					emitter.emitChunk(new CodeWriter(minifier != null ? minifier.getWriter(writer, false) : writer), chunk);
+				} finally {
+					writer.close();
+				}
+				chunk.setFile(directory.getName(chunk.getFile()));
+			}
+			Writer writer = directory.open(name);
+			try {
+				emitMain(emitter, transpilerOptions, minifier, writer);
+			} finally {
+				writer.close();
+			}
+			
+			if (!chunks.isEmpty()) {
+				Writer manifest = directory.open(name + ".chunks.json");
+				try {
+					plan.writeManifest(manifest, directory.getName(name));
+				} finally {
+					manifest.close();
+				}
+			}
+			if (minifier != null) {
+				Writer nameMap = directory.open(name + ".names.json");
+				try {
+					minifier.writeNameMap(nameMap);
+				} finally {
+					nameMap.close();
+				}
+			}
+			if (transpilerOptions.isContentHashing()) {
+				
+				// The file map is the entry point to the hashed names, so its own name can't be hashed
+				Writer fileMap = directory.open(name + ".files.json", false);
+				try {
+					writeFileMap(fileMap, directory.getNames());
+				} finally {
+					fileMap.close();
+				}
+			}
+		} catch (IOException ioex) {
+			throw new ParsingException("Couldn't write " + output, ioex);
+		} finally {
+			directory.close();
+		}
+	}
+	
+	/**
+	 * Writes the javascript code of the given compiled program to the given writer.
+	 * @param program The compiled program, as returned by ArrayScriptParser.compile
+	 * @param output The writer to write the javascript code to. It will be flushed, but not closed.
+	 * @throws ParsingException If the program has multiple mains
+	 * @throws IOException If the writer throws an IOException
+	 */
+	public static void transpile(CheckResult program, Writer output) throws ParsingException, IOException {
+		transpile(program, new TranspilerOptions(), output);
+	}
+	
+	/**
+	 * Writes the javascript code of the given compiled program to the given writer.
+	 * @param program The compiled program, as returned by ArrayScriptParser.compile
+	 * @param options The options that determine what javascript code is generated
+	 * @param output The writer to write the javascript code to. It will be flushed, but not closed.
+	 * @throws ParsingException If the program has multiple mains
+	 * @throws IOException If the writer throws an IOException
+	 */
+	public static void transpile(CheckResult program, TranspilerOptions options, Writer output) throws ParsingException, IOException {
+		transpile(program, options, output, null);
+	}
+	
+	/**
+	 * Writes the javascript code of the given compiled program to the given writer. If the options enable
+	 * minification, the name map of the minified code is written to the given name map writer.
+	 * @param program The compiled program, as returned by ArrayScriptParser.compile
+	 * @param options The options that determine what javascript code is generated
+	 * @param output The writer to write the javascript code to. It will be flushed, but not closed.
+	 * @param nameMap The writer to write the name map to, or null if it is not needed. It will be flushed,
+	 * but not closed.
+	 * @throws ParsingException If the program has multiple mains
+	 * @throws IOException If a writer throws an IOException
+	 */
+	public static void transpile(CheckResult program, TranspilerOptions options, Writer output, Writer nameMap) throws ParsingException, IOException {
+		Checks.notNull(options, "options");
+		ProgramEmitter emitter = new ProgramEmitter(program, options);
+		Minifier minifier = options.isMinify() ? minify(emitter, Collections.<ChunkPlan.Chunk>emptyList()) : null;
+		emitMain(emitter, options, minifier, output);
+		if (minifier != null && nameMap != null) {
+			minifier.writeNameMap(nameMap);
+		}
+	}
+	
+	/**
+	 * Writes the code of the given chunks and the main file to the counters of a new Minifier and chooses
+	 * the short names. The minified code must be written in the same order: the chunks first.
+	 */
+	private static Minifier minify(ProgramEmitter emitter, List<ChunkPlan.Chunk> chunks) throws ParsingException, IOException {
+		Minifier minifier = new Minifier();
+		for (ChunkPlan.Chunk chunk : chunks) {
+			emitter.emitChunk(new CodeWriter(minifier.getCounter(false)), chunk);
+		}
+		emitter.emit(new CodeWriter(minifier.getCounter(true)));
+		minifier.chooseNames();
+		return minifier;
+	}
+	
+	/**
+	 * Writes the main code of the given emitter to the given writer, wrapped in a html page if the options
+	 * select the HTML format
+	 * @param minifier The minifier of the code, or null if the code is not minified
+	 */
+	private static void emitMain(ProgramEmitter emitter, TranspilerOptions options, Minifier minifier, Writer output) 
+			throws ParsingException, IOException {
+		Writer code = minifier != null ? minifier.getWriter(output, true) : output;
+		if (options.getOutputFormat() == OutputFormat.HTML) {
+			output.write(HTML_START);
+			emitter.emit(new CodeWriter(code));
+			output.write(HTML_END);
+			output.flush();
+		} else {
+			emitter.emit(new CodeWriter(code));
+		}
+	}
+	
+	/**
+	 * Writes the map from the original names of the files with code to their hashed names as JSON
+	 */
+	private static void writeFileMap(Writer output, Map<String,String> names) throws IOException {
+		output.write("{");
+		boolean first = true;
+		for (Map.Entry<String,String> entry : names.entrySet()) {
+			output.write(first ? "\n" : ",\n");
+			first = false;
+			output.write("\t" + ChunkPlan.jsonString(entry.getKey()) + ": " + ChunkPlan.jsonString(entry.getValue()));
+		}
+		output.write(first ? "}\n" : "\n}\n");
+		output.flush();
+	}
+	
+	/**
+	 * Writes the javascript code of the given compiled program to the given channel, encoded as UTF-8. The
+	 * code is written in chunks of ChannelWriter.BUFFER_SIZE bytes.
+	 * @param program The compiled program, as returned by ArrayScriptParser.compile
+	 * @param options The options that determine what javascript code is generated
+	 * @param output The channel to write the javascript code to. It will not be closed.
+	 * @throws ParsingException If the program has multiple mains
+	 * @throws IOException If the channel throws an IOException
+	 */
+	public static void transpile(CheckResult program, TranspilerOptions options, WritableByteChannel output) throws ParsingException, IOException {
+		transpile(program, options, new ChannelWriter(output));
+	}
+}
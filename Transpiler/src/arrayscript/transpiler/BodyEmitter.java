@@ -0,0 +1,1115 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.List;
+
+import arrayscript.js.JSLiterals;
+import arrayscript.lang.Operator;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.executable.BodyUnit;
+import arrayscript.parser.executable.LocalVariable;
+
+/**
+ * Converts the checked syntax trees of the bodies of a single javascript function to javascript code. Every
+ * instance is used for only 1 function, because it keeps track of the temporary variables of the function.
+ *
+ * Properties are accessed as determined by the layout of their class, methods, getters and setters are
+ * called directly with the instance as first argument and the implicit constructor conversions of the body checker become
+ * explicit constructor calls. Arithmetic on the sized numeric types and the values that are stored in
+ * variables of sized types are converted as described in NumericLowering, unless the ValueRange of the
+ * value proves that the conversion is not needed. The expressions are only put between brackets when the
+ * precedence of the
+ * javascript operators requires it. When the instances are handles, the instances that the EscapeAnalysis
+ * allows are released at the end of the block that declares them.
+ * @author knokko
+ *
+ */
+class BodyEmitter {
+	
+	// The precedence levels of the javascript operators that are used
+	static final int NONE = 0;
+	static final int ASSIGN = 2;
+	static final int OR = 3;
+	static final int AND = 4;
+	static final int BITWISE_OR = 5;
+	static final int BITWISE_AND = 7;
+	static final int EQUALITY = 8;
+	static final int RELATIONAL = 9;
+	static final int SHIFT = 10;
+	static final int ADDITIVE = 11;
+	static final int MULTIPLICATIVE = 12;
+	static final int UNARY = 14;
+	static final int POSTFIX = 15;
+	static final int MEMBER = 17;
+	static final int PRIMARY = 20;
+	
+	private final ProgramEmitter program;
+	private final JSNames names;
+	private final CodeWriter out;
+	private final boolean isConstructor;
+	
+	private int temporaryCount;
+	private int nextTemporary;
+	
+	private BodyUnit unit;
+	private SyntaxTree tree;
+	
+	/**
+	 * @param program The emitter of the program the function belongs to
+	 * @param out The writer to write the code to
+	 * @param isConstructor true if the function is the constructor of a class that is not a define class, so
+	 * return statements must return the instance
+	 */
+	BodyEmitter(ProgramEmitter program, CodeWriter out, boolean isConstructor) {
+		this.program = program;
+		this.names = program.getNames();
+		this.out = out;
+		this.isConstructor = isConstructor;
+	}
+	
+	/**
+	 * Reserves the temporary variables that the given body will need. This must be called for all bodies of
+	 * the function before declareTemporaries is called.
+	 */
+	void prepare(BodyUnit unit) {
+		use(unit);
+		temporaryCount += countTemporaries(tree.getRoot(), SyntaxTree.NONE);
+	}
+	
+	/**
+	 * Writes the declaration of the temporary variables of the prepared bodies, if they need any
+	 */
+	void declareTemporaries() throws IOException {
+		if (temporaryCount == 0) {
+			return;
+		}
+		out.write("let ");
+		for (int index = 0; index < temporaryCount; index++) {
+			if (index > 0) {
+				out.write(", ");
+			}
+			out.write(JSNames.TEMPORARY + index);
+		}
+		out.line(";");
+	}
+	
+	/**
+	 * Writes the statements of the given body, without the brackets around them
+	 */
+	void statements(BodyUnit unit) throws IOException {
+		use(unit);
+		for (int child = tree.getFirstChild(tree.getRoot()); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			statement(child);
+		}
+		release(tree.getRoot());
+	}
+	
+	/**
+	 * Writes the given body as block statement, unless it is empty
+	 */
+	void block(BodyUnit unit) throws IOException {
+		use(unit);
+		if (tree.getFirstChild(tree.getRoot()) != SyntaxTree.NONE) {
+			statement(tree.getRoot());
+		}
+	}
+	
+	/**
+	 * Writes the value of the given expression body (the initial value of a variable or property)
+	 */
+	void value(BodyUnit unit) throws IOException {
+		use(unit);
+		convert(tree.getRoot(), unit.getReturnType());
+	}
+	
+	private void use(BodyUnit unit) {
+		this.unit = unit;
+		this.tree = unit.getSyntax();
+	}
+	
+	/**
+	 * Counts the temporary variables that are needed for the given node and its children. Assignments to
+	 * custom setters need 2 temporary variables (the instance and the value), unless they are an assignment
+	 * statement. Converted updates of sized properties need 1 for the instance if the instance is not a
+	 * name, and converted postfix increments and decrements need 1 for the old value unless they are a
+	 * statement.
+	 */
+	private int countTemporaries(int node, int parent) {
+		int result = 0;
+		if (needsTemporaries(tree, node, parent)) {
+			result += 2;
+		}
+		if (isLoweredUpdate(node)) {
+			if (needsInstanceTemporary(tree.getFirstChild(node))) {
+				result++;
+			}
+			if (tree.getType(node) == NodeType.POSTFIX && (parent == SyntaxTree.NONE || tree.getType(parent) != NodeType.EXPRESSION)) {
+				result++;
+			}
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			result += countTemporaries(child, node);
+		}
+		return result;
+	}
+	
+	private static boolean needsTemporaries(SyntaxTree tree, int node, int parent) {
+		NodeType type = tree.getType(node);
+		if (type != NodeType.ASSIGN && type != NodeType.PREFIX && type != NodeType.POSTFIX) {
+			return false;
+		}
+		if (!(tree.getSymbol(tree.getFirstChild(node)) instanceof SetterBuilder)) {
+			return false;
+		}
+		return !isSetterStatement(tree, node, parent);
+	}
+	
+	private static boolean isSetterStatement(SyntaxTree tree, int node, int parent) {
+		return tree.getType(node) == NodeType.ASSIGN && tree.getOperator(node) == Operator.ASSIGNMENT
+				&& parent != SyntaxTree.NONE && tree.getType(parent) == NodeType.EXPRESSION;
+	}
+	
+	/*
+	 * Statements
+	 */
+	
+	private void statement(int node) throws IOException {
+		NodeType type = tree.getType(node);
+		switch (type) {
+		case BLOCK:
+			out.openBlock();
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				statement(child);
+			}
+			release(node);
+			out.closeBlock();
+			out.newLine();
+			break;
+		case EMPTY:
+			out.line(";");
+			break;
+		case EXPRESSION:
+			expressionStatement(node);
+			out.line(";");
+			break;
+		case DECLARATION:
+			declaration(node);
+			out.line(";");
+			break;
+		case IF: {
+			int condition = tree.getFirstChild(node);
+			int then = tree.getNextSibling(condition);
+			int otherwise = tree.getNextSibling(then);
+			out.write("if (");
+			expression(condition, NONE);
+			out.write(") ");
+			body(then);
+			if (otherwise != SyntaxTree.NONE) {
+				out.write(" else ");
+				if (tree.getType(otherwise) == NodeType.IF) {
+					statement(otherwise);
+					return;
+				}
+				body(otherwise);
+			}
+			out.newLine();
+			break;
+		}
+		case WHILE: {
+			int condition = tree.getFirstChild(node);
+			out.write("while (");
+			expression(condition, NONE);
+			out.write(") ");
+			body(tree.getNextSibling(condition));
+			out.newLine();
+			break;
+		}
+		case FOR: {
+			int initializer = tree.getFirstChild(node);
+			int condition = tree.getNextSibling(initializer);
+			int update = tree.getNextSibling(condition);
+			out.write("for (");
+			if (tree.getType(initializer) == NodeType.DECLARATION) {
+				declaration(initializer);
+			} else if (tree.getType(initializer) == NodeType.EXPRESSION) {
+				expressionStatement(initializer);
+			} else if (tree.getType(initializer) != NodeType.EMPTY) {
+				throw new Error("Unexpected initializer of for loop: " + tree.getType(initializer));
+			}
+			out.write("; ");
+			if (tree.getType(condition) != NodeType.EMPTY) {
+				expression(condition, NONE);
+			}
+			out.write("; ");
+			if (tree.getType(update) != NodeType.EMPTY) {
+				expressionStatement(update);
+			}
+			out.write(") ");
+			body(tree.getNextSibling(update));
+			out.newLine();
+			break;
+		}
+		case RETURN: {
+			int returned = tree.getFirstChild(node);
+			if (returned != SyntaxTree.NONE) {
+				out.write("return ");
+				convert(returned, unit.getReturnType());
+				out.line(";");
+			} else if (isConstructor) {
+				out.line("return " + JSNames.SELF + ";");
+			} else {
+				out.line("return;");
+			}
+			break;
+		}
+		default: throw new Error("Unexpected statement type " + type);
+		}
+	}
+	
+	/**
+	 * Writes the body of an if statement or loop as block, without ending the line
+	 */
+	private void body(int node) throws IOException {
+		out.openBlock();
+		if (tree.getType(node) == NodeType.BLOCK) {
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				statement(child);
+			}
+			release(node);
+		} else if (tree.getType(node) != NodeType.EMPTY) {
+			statement(node);
+		}
+		out.closeBlock();
+	}
+	
+	/**
+	 * Releases the instances of the local variables of the given block that can't be used after the block,
+	 * in the opposite order of their declarations
+	 */
+	private void release(int block) throws IOException {
+		EscapeAnalysis escapeAnalysis = program.getEscapeAnalysis();
+		if (escapeAnalysis == null) {
+			return;
+		}
+		List<LocalVariable> locals = escapeAnalysis.getReleasable(tree, block);
+		if (locals != null) {
+			for (int index = locals.size() - 1; index >= 0; index--) {
+				LocalVariable local = locals.get(index);
+				String free = program.getLayout(program.getProgram().getClass(local.getType())).getFree();
+				out.line(free + "(" + JSNames.local(local.getName()) + ");");
+			}
+		}
+	}
+	
+	private void declaration(int node) throws IOException {
+		int typeNode = tree.getFirstChild(node);
+		int initial = tree.getNextSibling(typeNode);
+		out.write("let " + JSNames.local(tree.getString(node)));
+		if (initial != SyntaxTree.NONE) {
+			out.write(" = ");
+			convert(initial, tree.getValueType(typeNode));
+		}
+	}
+	
+	/**
+	 * Writes the expression of the given EXPRESSION node, without semicolon
+	 */
+	private void expressionStatement(int node) throws IOException {
+		int expression = tree.getFirstChild(node);
+		if (isSetterStatement(tree, expression, node) && tree.getSymbol(tree.getFirstChild(expression)) instanceof SetterBuilder) {
+			int target = tree.getFirstChild(expression);
+			SetterBuilder setter = (SetterBuilder) tree.getSymbol(target);
+			int receiver = tree.getFirstChild(target);
+			ClassBuilder owner = program.getProgram().getClass(tree.getValueType(receiver));
+			out.write(names.get(setter) + "(");
+			expression(receiver, ASSIGN);
+			out.write(", ");
+			convert(tree.getNextSibling(target), owner.getProperty(setter.getPropertyName()).getType().getType());
+			out.write(")");
+		} else if (tree.getType(expression) == NodeType.POSTFIX && isLoweredUpdate(expression)) {
+			
+			// The old value is not used, so it doesn't need a temporary variable
+			increment(expression, true);
+		} else {
+			expression(expression, NONE);
+		}
+	}
+	
+	/*
+	 * Expressions
+	 */
+	
+	/**
+	 * Writes the given expression, converted to the given type if the body checker allowed an implicit
+	 * constructor conversion or if the type is a sized type that doesn't contain all values of the expression
+	 */
+	private void convert(int node, Type target) throws IOException {
+		ConstructorBuilder conversion = target == null ? null : program.getConversion(target, tree.getValueType(node));
+		if (conversion != null) {
+			out.write(names.get(conversion) + "(");
+			expression(node, ASSIGN);
+			out.write(")");
+		} else if (target != null && NumericLowering.isSized(target) && !range(node).fits(target)) {
+			int first = tree.getFirstChild(node);
+			if (tree.getType(node) == NodeType.NUMBER) {
+				out.write(program.constant(JSLiterals.toLiteral(new ConstDoubleValue(NumericLowering.convert(target, tree.getNumber(node))))));
+			} else if (tree.getType(node) == NodeType.BINARY && isIntegerProduct(target, tree.getOperator(node), range(first), range(tree.getNextSibling(first)))) {
+				imul(first, tree.getNextSibling(first), target);
+			} else {
+				out.write(NumericLowering.getPrefix(target));
+				expression(node, NumericLowering.getOperandPrecedence(target));
+				out.write(NumericLowering.getSuffix(target));
+			}
+		} else {
+			expression(node, ASSIGN);
+		}
+	}
+	
+	/*
+	 * Numeric lowering
+	 */
+	
+	/**
+	 * Determines the range of the values of the given node. The values of expressions of sized types are
+	 * always in the range of their type, because the emitter converts them when that is needed.
+	 */
+	private ValueRange range(int node) {
+		Type type = tree.getValueType(node);
+		NodeType nodeType = tree.getType(node);
+		if (nodeType == NodeType.NUMBER) {
+			return ValueRange.constant(tree.getNumber(node));
+		}
+		if ((nodeType == NodeType.BINARY || nodeType == NodeType.UNARY) && PrimitiveTypes.isNumeric(type)) {
+			ValueRange exact = exactRange(node);
+			if (!NumericLowering.isSized(type) || exact.fits(type)) {
+				return exact;
+			}
+		}
+		return ValueRange.of(type);
+	}
+	
+	/**
+	 * @return The range of the result of the given numeric BINARY or UNARY node, before it is converted
+	 */
+	private ValueRange exactRange(int node) {
+		int first = tree.getFirstChild(node);
+		Operator operator = tree.getOperator(node);
+		if (tree.getType(node) == NodeType.UNARY) {
+			return operator == Operator.SUBSTRACTION ? range(first).negate() : range(first);
+		}
+		return ValueRange.combine(operator, range(first), range(tree.getNextSibling(first)));
+	}
+	
+	/**
+	 * @return true if the result of the given BINARY or UNARY node needs to be converted to its type
+	 */
+	private boolean needsConversion(int node) {
+		Type type = tree.getValueType(node);
+		return NumericLowering.isSized(type) && !exactRange(node).fits(type);
+	}
+	
+	/**
+	 * @return true if the given int32 or uint32 product should use Math.imul
+	 */
+	private boolean isIntegerProduct(Type type, Operator operator, ValueRange left, ValueRange right) {
+		return operator == Operator.PRODUCT && (type == PrimitiveTypes.INT32 || type == PrimitiveTypes.UINT32)
+				&& left.isInteger() && right.isInteger();
+	}
+	
+	/**
+	 * @return The precedence of a BINARY or UNARY node that needs to be converted
+	 */
+	private int convertedPrecedence(int node) {
+		Type type = tree.getValueType(node);
+		int first = tree.getFirstChild(node);
+		if (tree.getType(node) == NodeType.BINARY && isIntegerProduct(type, tree.getOperator(node), range(first), range(tree.getNextSibling(first)))) {
+			return type == PrimitiveTypes.UINT32 ? SHIFT : MEMBER;
+		}
+		return NumericLowering.getPrecedence(type);
+	}
+	
+	/**
+	 * Checks whether the given node is an assignment, increment or decrement of a target of a sized type (that
+	 * is not a custom setter) whose new value needs to be converted. Such updates become an assignment of the
+	 * converted new value.
+	 */
+	private boolean isLoweredUpdate(int node) {
+		NodeType nodeType = tree.getType(node);
+		if (nodeType != NodeType.ASSIGN && nodeType != NodeType.PREFIX && nodeType != NodeType.POSTFIX) {
+			return false;
+		}
+		int target = tree.getFirstChild(node);
+		Type type = tree.getValueType(node);
+		if (tree.getSymbol(target) instanceof SetterBuilder || !NumericLowering.isSized(type)) {
+			return false;
+		}
+		if (nodeType == NodeType.ASSIGN) {
+			Operator operator = tree.getOperator(node);
+			if (operator == Operator.ASSIGNMENT) {
+				return false;
+			}
+			return !ValueRange.combine(binaryOperator(operator), ValueRange.of(type), range(tree.getNextSibling(target))).fits(type);
+		}
+		
+		// Incrementing the largest value (or decrementing the smallest) always needs to wrap
+		return true;
+	}
+	
+	/**
+	 * @return true if the instance of the given target must be stored in a temporary variable because it
+	 * is used twice by a lowered update
+	 */
+	private boolean needsInstanceTemporary(int target) {
+		if (tree.getType(target) != NodeType.PROPERTY || !(tree.getSymbol(target) instanceof PropertyBuilder)) {
+			return false;
+		}
+		NodeType receiverType = tree.getType(tree.getFirstChild(target));
+		return receiverType != NodeType.NAME && receiverType != NodeType.THIS;
+	}
+	
+	/**
+	 * Writes a read of the given target of an update
+	 * @param instance The temporary variable that holds the instance, or null if the target can be read
+	 * directly
+	 * @param precedence The minimum precedence of the read
+	 */
+	private void readTarget(int target, String instance, int precedence) throws IOException {
+		if (instance == null) {
+			expression(target, precedence);
+			return;
+		}
+		Object symbol = tree.getSymbol(target);
+		if (symbol instanceof SetterBuilder) {
+			readProperty(getOwner(tree.getFirstChild(target)), ((SetterBuilder) symbol).getPropertyName(), instance);
+		} else {
+			access((PropertyBuilder) symbol, instance, true);
+		}
+	}
+	
+	/**
+	 * Writes the new value of an update of a target of the given type: the current value of the target,
+	 * combined with the value by the given operator, converted to the type if needed
+	 * @param instance The temporary variable that holds the instance, or null if the target can be read
+	 * directly
+	 * @param value The node of the value, or NONE to use 1 (for increments and decrements)
+	 */
+	private void updatedValue(int target, String instance, Operator operator, int value, Type type) throws IOException {
+		ValueRange left = ValueRange.of(type);
+		ValueRange right = value == SyntaxTree.NONE ? ValueRange.constant(1) : range(value);
+		boolean convert = NumericLowering.isSized(type) && !ValueRange.combine(operator, left, right).fits(type);
+		if (convert && isIntegerProduct(type, operator, left, right)) {
+			out.write("Math.imul(");
+			readTarget(target, instance, ASSIGN);
+			out.write(", ");
+			expression(value, ASSIGN);
+			out.write(type == PrimitiveTypes.UINT32 ? ") >>> 0" : ")");
+			return;
+		}
+		if (convert) {
+			out.write(NumericLowering.getPrefix(type));
+		}
+		int precedence = precedence(operator);
+		readTarget(target, instance, precedence);
+		out.write(" " + binaryTokens(operator) + " ");
+		if (value == SyntaxTree.NONE) {
+			out.write("1");
+		} else {
+			expression(value, precedence + 1);
+		}
+		if (convert) {
+			out.write(NumericLowering.getSuffix(type));
+		}
+	}
+	
+	/**
+	 * Writes the start of a lowered update that needs a temporary variable for its instance: an opening
+	 * bracket and the assignment of the instance to a new temporary variable
+	 * @return The temporary variable, or null if the target doesn't need one
+	 */
+	private String updateInstance(int target) throws IOException {
+		if (!needsInstanceTemporary(target)) {
+			return null;
+		}
+		String instance = JSNames.TEMPORARY + nextTemporary++;
+		out.write("(" + instance + " = ");
+		expression(tree.getFirstChild(target), ASSIGN);
+		out.write(", ");
+		return instance;
+	}
+	
+	/**
+	 * Writes the given target of an update as assignment target
+	 * @param instance The temporary variable that holds the instance, or null if the target can be written
+	 * directly
+	 */
+	private void writeTarget(int target, String instance) throws IOException {
+		if (instance == null) {
+			target(target);
+		} else {
+			access((PropertyBuilder) tree.getSymbol(target), instance, false);
+		}
+	}
+	
+	/**
+	 * Writes the given expression and puts it between brackets if its precedence is lower than the given
+	 * precedence
+	 */
+	private void expression(int node, int precedence) throws IOException {
+		boolean brackets = precedence(node) < precedence;
+		if (brackets) {
+			out.write('(');
+		}
+		writeExpression(node);
+		if (brackets) {
+			out.write(')');
+		}
+	}
+	
+	private int precedence(int node) {
+		switch (tree.getType(node)) {
+		case UNARY:
+			return needsConversion(node) ? convertedPrecedence(node) : UNARY;
+		case BINARY:
+			return needsConversion(node) ? convertedPrecedence(node) : precedence(tree.getOperator(node));
+		case ASSIGN:
+		case PREFIX:
+		case POSTFIX:
+			if (tree.getSymbol(tree.getFirstChild(node)) instanceof SetterBuilder) {
+				
+				// These become a comma expression between brackets
+				return PRIMARY;
+			}
+			if (isLoweredUpdate(node)) {
+				if (needsInstanceTemporary(tree.getFirstChild(node)) || tree.getType(node) == NodeType.POSTFIX) {
+					return PRIMARY;
+				}
+				return ASSIGN;
+			}
+			if (tree.getType(node) == NodeType.ASSIGN) {
+				return ASSIGN;
+			}
+			return tree.getType(node) == NodeType.PREFIX ? UNARY : POSTFIX;
+		case CALL:
+			if (isDefaultSetter(tree.getSymbol(node))) {
+				return ASSIGN;
+			}
+			return readPrecedence(node);
+		case NAME:
+		case PROPERTY:
+			return readPrecedence(node);
+		case NUMBER:
+		case STRING:
+		case BOOLEAN:
+		case THIS:
+		case ARRAY:
+			return PRIMARY;
+		default:
+			return MEMBER;
+		}
+	}
+	
+	/**
+	 * @return The precedence of the given NAME, PROPERTY or CALL node, which depends on the
+	 * layout if the node reads a property directly
+	 */
+	private int readPrecedence(int node) {
+		Object symbol = tree.getSymbol(node);
+		PropertyBuilder property = null;
+		if (symbol instanceof PropertyBuilder) {
+			property = (PropertyBuilder) symbol;
+		} else if (symbol instanceof GetterBuilder && !((GetterBuilder) symbol).hasCustomBody()) {
+			int receiver = SyntaxTree.NONE;
+			if (tree.getType(node) == NodeType.PROPERTY) {
+				receiver = tree.getFirstChild(node);
+			} else if (tree.getType(tree.getFirstChild(node)) == NodeType.PROPERTY) {
+				receiver = tree.getFirstChild(tree.getFirstChild(node));
+			}
+			property = getOwner(receiver).getProperty(((GetterBuilder) symbol).getPropertyName());
+		}
+		if (property != null) {
+			return program.getLayout(property).getReadPrecedence(property);
+		}
+		return MEMBER;
+	}
+	
+	private static int precedence(Operator operator) {
+		switch (operator) {
+		case OR: return OR;
+		case AND: return AND;
+		case EQUALS:
+		case NOT_EQUALS: return EQUALITY;
+		case LESS:
+		case GREATER:
+		case LESS_EQUAL:
+		case GREATER_EQUAL: return RELATIONAL;
+		case SUM:
+		case SUBSTRACTION: return ADDITIVE;
+		case PRODUCT:
+		case DIVISION:
+		case REMAINDER: return MULTIPLICATIVE;
+		default: throw new Error("Unexpected binary operator " + operator);
+		}
+	}
+	
+	private static String binaryTokens(Operator operator) {
+		if (operator == Operator.EQUALS) {
+			return "===";
+		} else if (operator == Operator.NOT_EQUALS) {
+			return "!==";
+		} else {
+			return operator.getTokens();
+		}
+	}
+	
+	private void writeExpression(int node) throws IOException {
+		NodeType type = tree.getType(node);
+		switch (type) {
+		case NUMBER:
+			out.write(program.constant(JSLiterals.toLiteral(new ConstDoubleValue(tree.getNumber(node)))));
+			break;
+		case STRING:
+			out.write(program.constant(JSLiterals.quote(tree.getString(node))));
+			break;
+		case BOOLEAN:
+			out.write(tree.getData(node) == 1 ? "true" : "false");
+			break;
+		case THIS:
+			out.write(JSNames.SELF);
+			break;
+		case NAME:
+			name(node, true);
+			break;
+		case PROPERTY:
+			property(node, true);
+			break;
+		case UNARY:
+		case BINARY:
+			if (needsConversion(node)) {
+				convertedOperation(node);
+			} else {
+				operation(node);
+			}
+			break;
+		case ASSIGN:
+			assignment(node);
+			break;
+		case PREFIX:
+		case POSTFIX:
+			increment(node, false);
+			break;
+		case INDEX: {
+			int array = tree.getFirstChild(node);
+			expression(array, MEMBER);
+			out.write('[');
+			expression(tree.getNextSibling(array), NONE);
+			out.write(']');
+			break;
+		}
+		case CALL:
+			call(node);
+			break;
+		case NEW: {
+			Object symbol = tree.getSymbol(node);
+			out.write(names.get(symbol));
+			if (symbol instanceof ConstructorBuilder) {
+				arguments(tree.getFirstChild(node), ((ConstructorBuilder) symbol).getParameteters().getParams());
+			} else {
+				out.write("()");
+			}
+			break;
+		}
+		case ARRAY:
+			out.write('[');
+			for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+				if (child != tree.getFirstChild(node)) {
+					out.write(", ");
+				}
+				expression(child, ASSIGN);
+			}
+			out.write(']');
+			break;
+		default: throw new Error("Unexpected expression type " + type);
+		}
+	}
+	
+	/**
+	 * Writes an access of the given property of the instance of the given node
+	 * @param instance The node of the instance, or NONE for the instance of the function itself
+	 * @param read true if the property is read, false if it is the target of an assignment
+	 */
+	private void access(PropertyBuilder property, int instance, boolean read) throws IOException {
+		ClassLayout layout = program.getLayout(property);
+		out.write(layout.getPrefix(property, read));
+		writeReceiver(instance, layout.getInstancePrecedence(property));
+		out.write(layout.getSuffix(property));
+	}
+	
+	/**
+	 * Writes an access of the given property of the instance that is stored in the given variable
+	 */
+	private void access(PropertyBuilder property, String instance, boolean read) throws IOException {
+		ClassLayout layout = program.getLayout(property);
+		out.write(layout.getPrefix(property, read) + instance + layout.getSuffix(property));
+	}
+	
+	/**
+	 * Writes the target of an assignment, increment or decrement
+	 */
+	private void target(int node) throws IOException {
+		if (tree.getType(node) == NodeType.NAME) {
+			name(node, false);
+		} else if (tree.getType(node) == NodeType.PROPERTY) {
+			property(node, false);
+		} else {
+			expression(node, MEMBER);
+		}
+	}
+	
+	/**
+	 * Writes a UNARY or BINARY node without conversion
+	 */
+	private void operation(int node) throws IOException {
+		Operator operator = tree.getOperator(node);
+		int first = tree.getFirstChild(node);
+		if (tree.getType(node) == NodeType.UNARY) {
+			out.write(operator.getTokens());
+			
+			// Brackets prevent '- -x' from becoming '--x'
+			expression(first, UNARY + 1);
+		} else {
+			int precedence = precedence(operator);
+			expression(first, precedence);
+			out.write(" " + binaryTokens(operator) + " ");
+			expression(tree.getNextSibling(first), precedence + 1);
+		}
+	}
+	
+	/**
+	 * Writes a UNARY or BINARY node of a sized type whose result needs to be converted to its type
+	 */
+	private void convertedOperation(int node) throws IOException {
+		Type type = tree.getValueType(node);
+		int first = tree.getFirstChild(node);
+		if (tree.getType(node) == NodeType.BINARY) {
+			int second = tree.getNextSibling(first);
+			if (isIntegerProduct(type, tree.getOperator(node), range(first), range(second))) {
+				imul(first, second, type);
+				return;
+			}
+		}
+		
+		// The precedence of all arithmetic operators is higher than the precedence of the conversions
+		out.write(NumericLowering.getPrefix(type));
+		operation(node);
+		out.write(NumericLowering.getSuffix(type));
+	}
+	
+	/**
+	 * Writes the product of 2 integer expressions as a product of the given type (INT32 or UINT32). Unlike a
+	 * converted multiplication, Math.imul doesn't lose the low bits of products that are larger than 2^53.
+	 */
+	private void imul(int first, int second, Type type) throws IOException {
+		out.write("Math.imul(");
+		expression(first, ASSIGN);
+		out.write(", ");
+		expression(second, ASSIGN);
+		out.write(type == PrimitiveTypes.UINT32 ? ") >>> 0" : ")");
+	}
+	
+	private void name(int node, boolean read) throws IOException {
+		Object symbol = tree.getSymbol(node);
+		if (symbol instanceof LocalVariable) {
+			out.write(JSNames.local(((LocalVariable) symbol).getName()));
+		} else if (symbol instanceof PropertyBuilder) {
+			access((PropertyBuilder) symbol, SyntaxTree.NONE, read);
+		} else if (symbol instanceof VariableBuilder || symbol instanceof FunctionBuilder) {
+			out.write(names.get(symbol));
+		} else {
+			throw new Error("Unexpected symbol " + symbol + " of name " + tree.getString(node));
+		}
+	}
+	
+	private void property(int node, boolean read) throws IOException {
+		Object symbol = tree.getSymbol(node);
+		int target = tree.getFirstChild(node);
+		if (symbol instanceof PropertyBuilder) {
+			access((PropertyBuilder) symbol, target, read);
+		} else if (symbol instanceof VariableBuilder || symbol instanceof FunctionBuilder || symbol instanceof EnumConstantBuilder) {
+			out.write(names.get(symbol));
+		} else if (symbol instanceof GetterBuilder) {
+			memberCall((GetterBuilder) symbol, target, SyntaxTree.NONE);
+		} else if (symbol == null) {
+			
+			// A property of a value without type information
+			expression(target, tree.getType(target) == NodeType.NUMBER ? PRIMARY + 1 : MEMBER);
+			out.write("." + tree.getString(node));
+		} else {
+			throw new Error("Unexpected symbol " + symbol + " of property " + tree.getString(node));
+		}
+	}
+	
+	private void assignment(int node) throws IOException {
+		int target = tree.getFirstChild(node);
+		int value = tree.getNextSibling(target);
+		Operator operator = tree.getOperator(node);
+		Object symbol = tree.getSymbol(target);
+		if (symbol instanceof SetterBuilder) {
+			String instance = JSNames.TEMPORARY + nextTemporary++;
+			String result = JSNames.TEMPORARY + nextTemporary++;
+			SetterBuilder setter = (SetterBuilder) symbol;
+			ClassBuilder owner = setterTarget(target, instance);
+			Type type = owner.getProperty(setter.getPropertyName()).getType().getType();
+			out.write(result + " = ");
+			if (operator == Operator.ASSIGNMENT) {
+				convert(value, type);
+			} else {
+				updatedValue(target, instance, binaryOperator(operator), value, type);
+			}
+			out.write(", " + names.get(setter) + "(" + instance + ", " + result + "), " + result + ")");
+			return;
+		}
+		if (isLoweredUpdate(node)) {
+			String instance = updateInstance(target);
+			writeTarget(target, instance);
+			out.write(" = ");
+			updatedValue(target, instance, binaryOperator(operator), value, tree.getValueType(node));
+			if (instance != null) {
+				out.write(")");
+			}
+			return;
+		}
+		target(target);
+		out.write(" " + operator.getTokens() + " ");
+		if (operator == Operator.ASSIGNMENT) {
+			convert(value, tree.getValueType(node));
+		} else {
+			expression(value, ASSIGN);
+		}
+	}
+	
+	private static Operator binaryOperator(Operator assignment) {
+		switch (assignment) {
+		case INCREASE: return Operator.SUM;
+		case DECREASE: return Operator.SUBSTRACTION;
+		case MULTIPLY: return Operator.PRODUCT;
+		case DIVIDE: return Operator.DIVISION;
+		case MOD: return Operator.REMAINDER;
+		default: throw new Error("Unexpected assignment operator " + assignment);
+		}
+	}
+	
+	/**
+	 * Writes an increment or decrement
+	 * @param isStatement true if the value of the increment or decrement is not used
+	 */
+	private void increment(int node, boolean isStatement) throws IOException {
+		int target = tree.getFirstChild(node);
+		Operator operator = tree.getOperator(node);
+		Operator binary = operator == Operator.INCREASE_1 ? Operator.SUM : Operator.SUBSTRACTION;
+		Object symbol = tree.getSymbol(target);
+		if (symbol instanceof SetterBuilder) {
+			String instance = JSNames.TEMPORARY + nextTemporary++;
+			String result = JSNames.TEMPORARY + nextTemporary++;
+			SetterBuilder setter = (SetterBuilder) symbol;
+			ClassBuilder owner = setterTarget(target, instance);
+			Type type = owner.getProperty(setter.getPropertyName()).getType().getType();
+			out.write(result + " = ");
+			if (tree.getType(node) == NodeType.PREFIX) {
+				updatedValue(target, instance, binary, SyntaxTree.NONE, type);
+				out.write(", " + names.get(setter) + "(" + instance + ", " + result + "), " + result + ")");
+			} else {
+				readProperty(owner, setter.getPropertyName(), instance);
+				out.write(", " + names.get(setter) + "(" + instance + ", " + converted(type, result + " " + binary.getTokens() + " 1") + "), " + result + ")");
+			}
+			return;
+		}
+		if (isLoweredUpdate(node)) {
+			String instance = updateInstance(target);
+			if (tree.getType(node) == NodeType.POSTFIX && !isStatement) {
+				String old = JSNames.TEMPORARY + nextTemporary++;
+				out.write(instance == null ? "(" : "");
+				out.write(old + " = ");
+				readTarget(target, instance, ASSIGN);
+				out.write(", ");
+				writeTarget(target, instance);
+				out.write(" = " + converted(tree.getValueType(node), old + " " + binary.getTokens() + " 1") + ", " + old + ")");
+			} else {
+				writeTarget(target, instance);
+				out.write(" = ");
+				updatedValue(target, instance, binary, SyntaxTree.NONE, tree.getValueType(node));
+				if (instance != null) {
+					out.write(")");
+				}
+			}
+			return;
+		}
+		if (tree.getType(node) == NodeType.PREFIX) {
+			out.write(operator.getTokens());
+			target(target);
+		} else {
+			target(target);
+			out.write(operator.getTokens());
+		}
+	}
+	
+	/**
+	 * @param type The type the value should be converted to
+	 * @param value The javascript code of a value, with at least the precedence of an addition
+	 * @return The javascript code of the value, converted to the given type if the type is sized
+	 */
+	private static String converted(Type type, String value) {
+		if (NumericLowering.isSized(type)) {
+			return NumericLowering.getPrefix(type) + value + NumericLowering.getSuffix(type);
+		}
+		return value;
+	}
+	
+	/**
+	 * Writes the start of an assignment to a custom setter: an opening bracket and the assignment of the
+	 * instance to the given temporary variable.
+	 * @return The class of the instance
+	 */
+	private ClassBuilder setterTarget(int target, String instance) throws IOException {
+		int receiver = tree.getFirstChild(target);
+		out.write("(" + instance + " = ");
+		expression(receiver, ASSIGN);
+		out.write(", ");
+		return program.getProgram().getClass(tree.getValueType(receiver));
+	}
+	
+	/**
+	 * Writes a read of the given property of the instance in the given temporary variable, through its
+	 * implicit getter if it has one
+	 */
+	private void readProperty(ClassBuilder owner, String propertyName, String instance) throws IOException {
+		GetterBuilder getter = owner.getGetter(propertyName);
+		if (getter != null && getter.isImplicit() && getter.hasCustomBody()) {
+			out.write(names.get(getter) + "(" + instance + ")");
+		} else {
+			PropertyBuilder property = owner.getProperty(propertyName);
+			ClassLayout layout = program.getLayout(property);
+			out.write(layout.getPrefix(property, true) + instance + layout.getSuffix(property));
+		}
+	}
+	
+	private void call(int node) throws IOException {
+		Object symbol = tree.getSymbol(node);
+		int callee = tree.getFirstChild(node);
+		int firstArgument = tree.getNextSibling(callee);
+		if (symbol instanceof FunctionBuilder) {
+			out.write(names.get(symbol));
+			arguments(firstArgument, ((FunctionBuilder) symbol).getParameters().getParams());
+		} else if (symbol instanceof MethodBuilder || symbol instanceof GetterBuilder || symbol instanceof SetterBuilder) {
+			int receiver = tree.getType(callee) == NodeType.PROPERTY ? tree.getFirstChild(callee) : SyntaxTree.NONE;
+			memberCall((ElementBuilder) symbol, receiver, firstArgument);
+		} else if (symbol instanceof EnumBuilder) {
+			if (tree.getString(callee).equals("ordinal")) {
+				expression(tree.getFirstChild(callee), MEMBER);
+				out.write("[0]");
+			} else {
+				out.write(names.get(symbol) + ".slice()");
+			}
+		} else if (tree.getType(callee) == NodeType.PROPERTY && tree.getSymbol(callee) == null) {
+			
+			// A function of a value without type information
+			property(callee, true);
+			arguments(firstArgument, null);
+		} else {
+			expression(callee, MEMBER);
+			arguments(firstArgument, null);
+		}
+	}
+	
+	/**
+	 * Writes a call of a method, getter or setter.
+	 * @param member The method, getter or setter
+	 * @param receiver The node of the instance, or NONE to call it on the instance of the function itself
+	 * @param firstArgument The node of the first argument, or NONE if there are no arguments
+	 */
+	private void memberCall(ElementBuilder member, int receiver, int firstArgument) throws IOException {
+		ClassBuilder owner = getOwner(receiver);
+		if (member instanceof GetterBuilder && !((GetterBuilder) member).hasCustomBody()) {
+			access(owner.getProperty(((GetterBuilder) member).getPropertyName()), receiver, true);
+			return;
+		}
+		if (isDefaultSetter(member)) {
+			PropertyBuilder property = owner.getProperty(((SetterBuilder) member).getPropertyName());
+			access(property, receiver, false);
+			out.write(" = ");
+			convert(firstArgument, property.getType().getType());
+			return;
+		}
+		out.write(names.get(member) + "(");
+		writeReceiver(receiver, ASSIGN);
+		ParamBuilder[] params = member instanceof MethodBuilder ? ((MethodBuilder) member).getParameters().getParams() : null;
+		int index = 0;
+		for (int argument = firstArgument; argument != SyntaxTree.NONE; argument = tree.getNextSibling(argument)) {
+			out.write(", ");
+			if (params != null) {
+				convert(argument, params[index++].getType().getType());
+			} else if (member instanceof SetterBuilder) {
+				convert(argument, owner.getProperty(((SetterBuilder) member).getPropertyName()).getType().getType());
+			} else {
+				expression(argument, ASSIGN);
+			}
+		}
+		out.write(")");
+	}
+	
+	/**
+	 * @param receiver The node of an instance, or NONE for the instance of the function itself
+	 * @return The class of the instance
+	 */
+	private ClassBuilder getOwner(int receiver) {
+		return receiver == SyntaxTree.NONE ? unit.getClassBuilder() : program.getProgram().getClass(tree.getValueType(receiver));
+	}
+	
+	private static boolean isDefaultSetter(Object symbol) {
+		return symbol instanceof SetterBuilder && ((SetterBuilder) symbol).isDefault();
+	}
+	
+	private void writeReceiver(int receiver, int precedence) throws IOException {
+		if (receiver == SyntaxTree.NONE) {
+			out.write(JSNames.SELF);
+		} else {
+			expression(receiver, precedence);
+		}
+	}
+	
+	/**
+	 * Writes the arguments of a call, between brackets.
+	 * @param firstArgument The first argument node, or NONE if there are no arguments
+	 * @param params The parameters of the called element, or null if they are unknown
+	 */
+	private void arguments(int firstArgument, ParamBuilder[] params) throws IOException {
+		out.write('(');
+		int index = 0;
+		for (int argument = firstArgument; argument != SyntaxTree.NONE; argument = tree.getNextSibling(argument)) {
+			if (argument != firstArgument) {
+				out.write(", ");
+			}
+			if (params != null) {
+				convert(argument, params[index++].getType().getType());
+			} else {
+				expression(argument, ASSIGN);
+			}
+		}
+		out.write(')');
+	}
+}
@@ -0,0 +1,154 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A Writer that encodes the characters as UTF-8 into a ByteBuffer and writes the buffer to a channel every
+ * time it is full. The same buffer is reused for the entire output, so the memory usage doesn't depend on
+ * the size of the output. Unpaired surrogates are encoded as '?', like OutputStreamWriter does.
+ * @author knokko
+ *
+ */
+class ChannelWriter extends Writer {
+	
+	/**
+	 * The default size of the buffer, in bytes
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+	
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	
+	/**
+	 * The high surrogate of the last character that was written, or 0 if the last character was not a high
+	 * surrogate
+	 */
+	private char highSurrogate;
+	
+	/**
+	 * @param channel The channel to write the bytes to
+	 * @param bufferSize The size of the buffer, at least 4
+	 * @throws IllegalArgumentException If bufferSize is smaller than 4
+	 */
+	ChannelWriter(WritableByteChannel channel, int bufferSize) throws IllegalArgumentException {
+		if (bufferSize < 4) {
+			throw new IllegalArgumentException("The buffer size must be at least 4, but got " + bufferSize);
+		}
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(bufferSize);
+	}
+	
+	/**
+	 * Creates a ChannelWriter with a buffer of BUFFER_SIZE bytes
+	 * @param channel The channel to write the bytes to
+	 */
+	ChannelWriter(WritableByteChannel channel) {
+		this(channel, BUFFER_SIZE);
+	}
+	
+	private void encode(char c) throws IOException {
+		// Every character needs at most 4 bytes
+		if (buffer.remaining() < 4) {
+			drain();
+		}
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int codePoint = Character.toCodePoint(high, c);
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+				return;
+			}
+			buffer.put((byte) '?');
+			encode(c);
+			return;
+		}
+		if (c < 0x80) {
+			buffer.put((byte) c);
+		} else if (c < 0x800) {
+			buffer.put((byte) (0xC0 | (c >> 6)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			buffer.put((byte) '?');
+		} else {
+			buffer.put((byte) (0xE0 | (c >> 12)));
+			buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		}
+	}
+	
+	/**
+	 * Writes all bytes in the buffer to the channel and clears the buffer
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Writes the given bytes, which must already be encoded as UTF-8
+	 */
+	void writeBytes(byte[] bytes) throws IOException {
+		if (bytes.length <= buffer.remaining()) {
+			buffer.put(bytes);
+		} else {
+			drain();
+			ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+			while (wrapped.hasRemaining()) {
+				channel.write(wrapped);
+			}
+		}
+	}
+	
+	@Override
+	public void write(int c) throws IOException {
+		encode((char) c);
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int index = off; index < off + len; index++) {
+			encode(cbuf[index]);
+		}
+	}
+	
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int index = off; index < off + len; index++) {
+			encode(str.charAt(index));
+		}
+	}
+	
+	/**
+	 * Writes all buffered bytes to the channel. A high surrogate at the end stays buffered, because its low
+	 * surrogate can still be written.
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+	
+	/**
+	 * Writes all buffered bytes to the channel and closes the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		if (highSurrogate != 0) {
+			highSurrogate = 0;
+			encode('?');
+		}
+		drain();
+		channel.close();
+	}
+}
@@ -0,0 +1,303 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.InitBuilder;
+import arrayscript.parser.builder.MainBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.executable.BodyUnit;
+import arrayscript.parser.executable.CallGraph;
+import arrayscript.parser.executable.CheckResult;
+
+/**
+ * Decides which namespaces are emitted in separate files when code splitting is enabled. Every namespace
+ * (except the global namespace) is a candidate chunk that contains the functions and classes that are
+ * declared directly in it.
+ *
+ * A namespace is hot if it contains an element that can be reached from the inits and mains in at most
+ * the hot call depth calls, according to the CallGraph. The elements that are referenced by the initial
+ * values of variables are considered 1 call away from the inits and mains, because they are evaluated at
+ * startup as well. Hot namespaces stay in the main file. All other namespaces with functions or classes
+ * become chunks.
+ *
+ * The dependencies of a chunk are the chunks that its elements can call directly or indirectly, in the
+ * order of the chunks. They are the chunks a page could preload together with the chunk.
+ * @author knokko
+ *
+ */
+class ChunkPlan {
+	
+	private final List<Chunk> chunks;
+	private final Map<NamespaceBuilder,Chunk> namespaceChunks;
+	private final Map<ElementBuilder,Chunk> elementChunks;
+	
+	/**
+	 * @param result The checked program
+	 * @param baseName The name of the main output file without its extension. The names of the chunk files
+	 * are the base name, followed by a '.', the qualified name of their namespace and ".js".
+	 * @param hotCallDepth The maximum number of calls from the inits and mains to a hot element
+	 */
+	ChunkPlan(CheckResult result, String baseName, int hotCallDepth) {
+		AppBuilder app = result.getProgram().getApp();
+		CallGraph graph = CallGraph.build(result);
+		
+		Map<ElementBuilder,NamespaceBuilder> namespaces = new IdentityHashMap<ElementBuilder,NamespaceBuilder>();
+		List<NamespaceBuilder> candidates = new ArrayList<NamespaceBuilder>();
+		collect(app.getGlobalNamespace(), namespaces, candidates);
+		
+		int[] distances = new int[graph.getElementCount()];
+		Arrays.fill(distances, Integer.MAX_VALUE);
+		Deque<Integer> toVisit = new ArrayDeque<Integer>();
+		for (InitBuilder init : app.getInits()) {
+			reach(graph.getId(init), 0, distances, toVisit);
+		}
+		for (MainBuilder main : app.getMains()) {
+			reach(graph.getId(main), 0, distances, toVisit);
+		}
+		
+		Set<NamespaceBuilder> hot = Collections.newSetFromMap(new IdentityHashMap<NamespaceBuilder,Boolean>());
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.getOwner() instanceof VariableBuilder && 1 <= hotCallDepth) {
+				for (ElementBuilder reference : unit.getReferences()) {
+					if (!(reference instanceof VariableBuilder)) {
+						hot.add(namespaces.get(reference));
+						reach(graph.getId(reference), 1, distances, toVisit);
+					}
+				}
+			}
+		}
+		while (!toVisit.isEmpty()) {
+			int id = toVisit.poll();
+			if (distances[id] < hotCallDepth) {
+				for (int index = 0; index < graph.getCalleeCount(id); index++) {
+					reach(graph.getCallee(id, index), distances[id] + 1, distances, toVisit);
+				}
+			}
+		}
+		for (int id = 0; id < distances.length; id++) {
+			if (distances[id] <= hotCallDepth) {
+				hot.add(namespaces.get(graph.getElement(id)));
+			}
+		}
+		
+		this.chunks = new ArrayList<Chunk>();
+		this.namespaceChunks = new IdentityHashMap<NamespaceBuilder,Chunk>();
+		this.elementChunks = new IdentityHashMap<ElementBuilder,Chunk>();
+		for (NamespaceBuilder namespace : candidates) {
+			if (hot.contains(namespace)) {
+				continue;
+			}
+			Chunk chunk = new Chunk(chunks.size(), namespace, baseName + "." + namespace.getQualifiedName() + ".js");
+			for (ElementBuilder element : namespace.getElements()) {
+				if (element instanceof ClassBuilder || element instanceof FunctionBuilder) {
+					chunk.elements.add(element);
+					elementChunks.put(element, chunk);
+				}
+			}
+			if (!chunk.elements.isEmpty()) {
+				chunks.add(chunk);
+				namespaceChunks.put(namespace, chunk);
+			}
+		}
+		
+		for (Chunk chunk : chunks) {
+			List<Integer> chunkIds = new ArrayList<Integer>();
+			for (int id = 0; id < graph.getElementCount(); id++) {
+				if (chunkOf(graph.getElement(id), namespaces) == chunk) {
+					chunkIds.add(id);
+				}
+			}
+			Set<Integer> dependencies = new TreeSet<Integer>();
+			boolean[] visited = new boolean[graph.getElementCount()];
+			Deque<Integer> calls = new ArrayDeque<Integer>(chunkIds);
+			while (!calls.isEmpty()) {
+				int id = calls.poll();
+				if (visited[id]) {
+					continue;
+				}
+				visited[id] = true;
+				Chunk callee = chunkOf(graph.getElement(id), namespaces);
+				if (callee != null && callee != chunk) {
+					dependencies.add(callee.index);
+				}
+				for (int index = 0; index < graph.getCalleeCount(id); index++) {
+					calls.add(graph.getCallee(id, index));
+				}
+			}
+			for (int dependency : dependencies) {
+				chunk.dependencies.add(chunks.get(dependency));
+			}
+		}
+	}
+	
+	private static void reach(int id, int distance, int[] distances, Deque<Integer> toVisit) {
+		if (id != -1 && distance < distances[id]) {
+			distances[id] = distance;
+			toVisit.add(id);
+		}
+	}
+	
+	/**
+	 * Maps the elements of the given namespace, its nested namespaces and its classes to the namespace that
+	 * declares them (or the class) and adds the nested namespaces to the candidates, in the order of the
+	 * elements
+	 */
+	private static void collect(NamespaceBuilder namespace, Map<ElementBuilder,NamespaceBuilder> namespaces,
+			List<NamespaceBuilder> candidates) {
+		if (!namespace.isGlobal()) {
+			candidates.add(namespace);
+		}
+		for (ElementBuilder element : namespace.getElements()) {
+			namespaces.put(element, namespace);
+			if (element instanceof NamespaceBuilder) {
+				collect((NamespaceBuilder) element, namespaces, candidates);
+			} else if (element instanceof ClassBuilder) {
+				for (ElementBuilder member : ((ClassBuilder) element).getElements()) {
+					namespaces.put(member, namespace);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return The chunk whose file declares the given element (or the class of the given member), or null
+	 * if the element is declared in the main file
+	 */
+	private Chunk chunkOf(ElementBuilder element, Map<ElementBuilder,NamespaceBuilder> namespaces) {
+		return namespaceChunks.get(namespaces.get(element));
+	}
+	
+	/**
+	 * @return An unmodifiable view of the chunks, in the order of their namespaces
+	 */
+	List<Chunk> getChunks() {
+		return Collections.unmodifiableList(chunks);
+	}
+	
+	/**
+	 * @param element A function or class that is declared directly in a namespace
+	 * @return The chunk of the given element, or null if the element is declared in the main file
+	 */
+	Chunk getChunk(ElementBuilder element) {
+		return elementChunks.get(element);
+	}
+	
+	/**
+	 * Writes the manifest of the chunks as JSON. The manifest has the property "main", which is the name of
+	 * the main file, and the property "chunks", which is an array with the namespace, the file and the files
+	 * of the dependencies of every chunk.
+	 * @param output The writer to write the manifest to. It will be flushed, but not closed.
+	 * @param mainFile The name of the main file
+	 */
+	void writeManifest(Writer output, String mainFile) throws IOException {
+		output.write("{\n\t\"main\": " + jsonString(mainFile) + ",\n\t\"chunks\": [");
+		for (Chunk chunk : chunks) {
+			output.write(chunk.index == 0 ? "\n" : ",\n");
+			output.write("\t\t{\n\t\t\t\"namespace\": " + jsonString(chunk.namespace.getQualifiedName()) + ",\n");
+			output.write("\t\t\t\"file\": " + jsonString(chunk.file) + ",\n");
+			output.write("\t\t\t\"dependencies\": [");
+			for (int index = 0; index < chunk.dependencies.size(); index++) {
+				output.write((index == 0 ? "" : ", ") + jsonString(chunk.dependencies.get(index).file));
+			}
+			output.write("]\n\t\t}");
+		}
+		output.write(chunks.isEmpty() ? "]\n}\n" : "\n\t]\n}\n");
+		output.flush();
+	}
+	
+	/**
+	 * @return The given string as JSON string literal
+	 */
+	static String jsonString(String value) {
+		StringBuilder result = new StringBuilder(value.length() + 2);
+		result.append('"');
+		for (int index = 0; index < value.length(); index++) {
+			char c = value.charAt(index);
+			if (c == '"' || c == '\\') {
+				result.append('\\').append(c);
+			} else if (c < ' ') {
+				result.append(String.format("\\u%04x", (int) c));
+			} else {
+				result.append(c);
+			}
+		}
+		return result.append('"').toString();
+	}
+	
+	/**
+	 * A namespace that is emitted in a separate file
+	 */
+	static class Chunk {
+		
+		private final int index;
+		private final NamespaceBuilder namespace;
+		private String file;
+		private final List<ElementBuilder> elements;
+		private final List<Chunk> dependencies;
+		
+		private Chunk(int index, NamespaceBuilder namespace, String file) {
+			this.index = index;
+			this.namespace = namespace;
+			this.file = file;
+			this.elements = new ArrayList<ElementBuilder>();
+			this.dependencies = new ArrayList<Chunk>();
+		}
+		
+		/**
+		 * @return The index of this chunk in the list of chunks
+		 */
+		int getIndex() {
+			return index;
+		}
+		
+		NamespaceBuilder getNamespace() {
+			return namespace;
+		}
+		
+		/**
+		 * @return The name of the file of this chunk
+		 */
+		String getFile() {
+			return file;
+		}
+		
+		/**
+		 * Changes the name of the file of this chunk, for instance to the name with the content hash. This
+		 * must happen before the main file and the manifest are written.
+		 */
+		void setFile(String file) {
+			this.file = file;
+		}
+		
+		/**
+		 * @return An unmodifiable view of the functions and classes in this chunk, in the order of their namespace
+		 */
+		List<ElementBuilder> getElements() {
+			return Collections.unmodifiableList(elements);
+		}
+		
+		/**
+		 * @return An unmodifiable view of the chunks that the elements of this chunk can call, directly or
+		 * indirectly
+		 */
+		List<Chunk> getDependencies() {
+			return Collections.unmodifiableList(dependencies);
+		}
+	}
+}
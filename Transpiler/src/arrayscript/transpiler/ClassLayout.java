@@ -0,0 +1,91 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+
+/**
+ * The layout of the instances of a class in javascript. The layout determines how an instance is created
+ * and how the properties of an instance are accessed. An access of a property is written as the prefix of
+ * the property, followed by the instance, followed by the suffix of the property.
+ * @author knokko
+ *
+ */
+abstract class ClassLayout {
+	
+	private final List<PropertyBuilder> properties;
+	
+	/**
+	 * @param classBuilder The class to determine the layout of
+	 */
+	ClassLayout(ClassBuilder classBuilder) {
+		properties = new ArrayList<PropertyBuilder>(classBuilder.getProperties());
+	}
+	
+	/**
+	 * @return The number of properties of every instance
+	 */
+	int getSize() {
+		return properties.size();
+	}
+	
+	/**
+	 * @return An unmodifiable view of the properties of the class, in the order they were declared
+	 */
+	List<PropertyBuilder> getProperties(){
+		return Collections.unmodifiableList(properties);
+	}
+	
+	/**
+	 * @param property A property of the class
+	 * @param read true if the property is read, false if it is the target of an assignment
+	 * @return The code that should be written before the instance when the given property is accessed
+	 * @throws IllegalArgumentException If the property is not a property of the class
+	 */
+	abstract String getPrefix(PropertyBuilder property, boolean read) throws IllegalArgumentException;
+	
+	/**
+	 * @param property A property of the class
+	 * @return The code that should be written after the instance when the given property is accessed
+	 * @throws IllegalArgumentException If the property is not a property of the class
+	 */
+	abstract String getSuffix(PropertyBuilder property) throws IllegalArgumentException;
+	
+	/**
+	 * @param property A property of the class
+	 * @return The minimum precedence the expression of the instance must have to be written between the
+	 * prefix and suffix of the given property without brackets
+	 */
+	abstract int getInstancePrecedence(PropertyBuilder property);
+	
+	/**
+	 * @param property A property of the class
+	 * @return The precedence of an access that reads the given property
+	 */
+	abstract int getReadPrecedence(PropertyBuilder property);
+	
+	/**
+	 * Writes the statements that create a new instance and store it in the constant JSNames.SELF.
+	 * @param out The writer to write the code to
+	 * @param values The javascript code of the initial values of the properties, in the order of
+	 * getProperties
+	 */
+	abstract void allocate(CodeWriter out, List<String> values) throws IOException;
+	
+	/**
+	 * @return The name of the function that releases an instance, or null if the instances can't be released
+	 * explicitly
+	 */
+	String getFree() {
+		return null;
+	}
+	
+	/**
+	 * Writes the declarations that this layout needs before any instance of the class is created
+	 */
+	void writeRuntime(CodeWriter out) throws IOException {}
+}
@@ -0,0 +1,123 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes javascript code to a Writer and keeps track of the indentation. Every line is indented with 1 tab
+ * per open block.
+ * @author knokko
+ *
+ */
+class CodeWriter {
+	
+	private final Writer output;
+	
+	private int indentation;
+	private boolean lineStart;
+	
+	/**
+	 * @param output The writer to write the code to
+	 */
+	CodeWriter(Writer output) {
+		this(output, 0);
+	}
+	
+	/**
+	 * @param output The writer to write the code to
+	 * @param indentation The number of open blocks at the start of the code
+	 */
+	CodeWriter(Writer output, int indentation) {
+		this.output = output;
+		this.indentation = indentation;
+		this.lineStart = true;
+	}
+	
+	/**
+	 * @return The number of open blocks
+	 */
+	int getIndentation() {
+		return indentation;
+	}
+	
+	private void startLine() throws IOException {
+		if (lineStart) {
+			for (int counter = 0; counter < indentation; counter++) {
+				output.write('\t');
+			}
+			lineStart = false;
+		}
+	}
+	
+	/**
+	 * Writes the given code to the current line
+	 */
+	void write(String code) throws IOException {
+		startLine();
+		output.write(code);
+	}
+	
+	/**
+	 * Writes the given character to the current line
+	 */
+	void write(char code) throws IOException {
+		startLine();
+		output.write(code);
+	}
+	
+	/**
+	 * Ends the current line
+	 */
+	void newLine() throws IOException {
+		output.write('\n');
+		lineStart = true;
+	}
+	
+	/**
+	 * Writes the given code and ends the line
+	 */
+	void line(String code) throws IOException {
+		write(code);
+		newLine();
+	}
+	
+	/**
+	 * Writes a '{' and ends the line. The next lines will be indented 1 more level.
+	 */
+	void openBlock() throws IOException {
+		write('{');
+		newLine();
+		indentation++;
+	}
+	
+	/**
+	 * Writes a '}' on a new line that is indented 1 level less than the previous line. This doesn't end the
+	 * line, so an 'else' or ';' can still be written after it.
+	 */
+	void closeBlock() throws IOException {
+		indentation--;
+		write('}');
+	}
+	
+	/**
+	 * Writes a chunk of code that was written by another CodeWriter to a ChannelWriter. The chunk must
+	 * consist of complete lines and must have been written with the indentation of this writer. If the
+	 * output of this writer is a ChannelWriter as well, the bytes are copied without decoding them.
+	 * @param chunk The UTF-8 bytes of the code
+	 */
+	void writeChunk(byte[] chunk) throws IOException {
+		if (output instanceof ChannelWriter) {
+			((ChannelWriter) output).writeBytes(chunk);
+		} else {
+			output.write(new String(chunk, StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * Writes everything that has been buffered to the underlying writer
+	 */
+	void flush() throws IOException {
+		output.flush();
+	}
+}
@@ -0,0 +1,127 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+
+/**
+ * The layout of the StorageMode COLUMNS. Every class has its own array (column) per property and every
+ * instance is an integer handle that indexes all columns of its class. The handles of every class are
+ * allocated by its own HandleAllocator.
+ *
+ * Properties of the sized numeric types are stored in the typed array of that type (an int8 in an
+ * Int8Array, a float32 in a Float32Array and so on) and properties of type number in a Float64Array.
+ * Booleans are stored as 0 or 1 in a Uint8Array, so reads of boolean properties are converted back to
+ * booleans with '!!'. All other properties are stored in plain arrays.
+ * @author knokko
+ *
+ */
+class ColumnLayout extends ClassLayout {
+	
+	private final Map<PropertyBuilder,String> columns;
+	private final HandleAllocator allocator;
+	
+	/**
+	 * @param classBuilder The class to determine the layout of
+	 * @param names The names of the program, which must contain the names of the columns (the properties)
+	 * @param initialCapacity The number of instances the columns get room for when they are first needed
+	 */
+	ColumnLayout(ClassBuilder classBuilder, JSNames names, int initialCapacity) {
+		super(classBuilder);
+		this.columns = new IdentityHashMap<PropertyBuilder,String>();
+		this.allocator = new HandleAllocator(JSNames.internal(classBuilder.getQualifiedName()), initialCapacity);
+		for (PropertyBuilder property : getProperties()) {
+			String column = names.get(property);
+			Type type = property.getType().getType();
+			String arrayClass = getArrayClass(type);
+			if (arrayClass != null) {
+				allocator.addTypedArray(column, arrayClass, 1);
+			} else {
+				allocator.addArray(column, type == PrimitiveTypes.STRING ? "\"\"" : "null", 1);
+			}
+			columns.put(property, column);
+		}
+	}
+	
+	/**
+	 * @param type The type of a property
+	 * @return The name of the typed array class that can store the values of the given type, or null if
+	 * they need a plain array
+	 */
+	static String getArrayClass(Type type) {
+		if (type == PrimitiveTypes.INT8) {
+			return "Int8Array";
+		} else if (type == PrimitiveTypes.INT16) {
+			return "Int16Array";
+		} else if (type == PrimitiveTypes.INT32) {
+			return "Int32Array";
+		} else if (type == PrimitiveTypes.UINT8 || type == PrimitiveTypes.BOOLEAN) {
+			return "Uint8Array";
+		} else if (type == PrimitiveTypes.UINT16) {
+			return "Uint16Array";
+		} else if (type == PrimitiveTypes.UINT32) {
+			return "Uint32Array";
+		} else if (type == PrimitiveTypes.FLOAT32) {
+			return "Float32Array";
+		} else if (type == PrimitiveTypes.FLOAT64 || type == PrimitiveTypes.NUMBER) {
+			return "Float64Array";
+		} else {
+			return null;
+		}
+	}
+	
+	private String getColumn(PropertyBuilder property) throws IllegalArgumentException {
+		String column = columns.get(property);
+		if (column == null) {
+			throw new IllegalArgumentException(property + " is not a part of this layout");
+		}
+		return column;
+	}
+	
+	@Override
+	String getPrefix(PropertyBuilder property, boolean read) throws IllegalArgumentException {
+		String column = getColumn(property);
+		return (read && property.getType().getType() == PrimitiveTypes.BOOLEAN ? "!!" : "") + column + "[";
+	}
+	
+	@Override
+	String getSuffix(PropertyBuilder property) throws IllegalArgumentException {
+		getColumn(property);
+		return "]";
+	}
+	
+	@Override
+	int getInstancePrecedence(PropertyBuilder property) {
+		return BodyEmitter.NONE;
+	}
+	
+	@Override
+	int getReadPrecedence(PropertyBuilder property) {
+		return property.getType().getType() == PrimitiveTypes.BOOLEAN ? BodyEmitter.UNARY : BodyEmitter.MEMBER;
+	}
+	
+	@Override
+	String getFree() {
+		return allocator.getFree();
+	}
+	
+	@Override
+	void allocate(CodeWriter out, List<String> values) throws IOException {
+		out.line("const " + JSNames.SELF + " = " + allocator.getAllocate() + "();");
+		List<PropertyBuilder> properties = getProperties();
+		for (int index = 0; index < properties.size(); index++) {
+			out.line(getColumn(properties.get(index)) + "[" + JSNames.SELF + "] = " + values.get(index) + ";");
+		}
+	}
+	
+	@Override
+	void writeRuntime(CodeWriter out) throws IOException {
+		allocator.write(out);
+	}
+}
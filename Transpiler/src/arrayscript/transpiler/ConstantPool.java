@@ -0,0 +1,103 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dedupes the string literals and the long number literals of a program. The ProgramEmitter counts the
+ * literals before any code is emitted. Every literal that makes the code shorter when it is declared once
+ * gets a binding in the pool: a variable whose name is JSNames.CONSTANT followed by the index of the
+ * literal. The pool is declared before all functions, so every function (including the functions in chunk
+ * files) can refer to it.
+ *
+ * A literal is pooled if it has at least MIN_LENGTH characters and its declaration plus the uses of its
+ * binding are shorter than the uses of the literal itself. The bindings start with '$', so the Minifier
+ * gives them short names. The size heuristic assumes that those names have BINDING_LENGTH characters.
+ *
+ * Array literals are never pooled, because javascript arrays are mutable and every evaluation of an array
+ * literal must create a new array.
+ * @author knokko
+ *
+ */
+class ConstantPool {
+	
+	/**
+	 * The minimum length of a pooled literal, including the quotes of strings. Shorter literals are never
+	 * pooled, because their bindings wouldn't be much shorter.
+	 */
+	static final int MIN_LENGTH = 6;
+	
+	/**
+	 * The expected length of the minified name of a binding
+	 */
+	private static final int BINDING_LENGTH = 2;
+	
+	/**
+	 * The length of the declaration of a binding without its name and literal: "var =;"
+	 */
+	private static final int DECLARATION_LENGTH = 6;
+	
+	/**
+	 * The number of uses of every literal, in the order of their first use
+	 */
+	private final Map<String,int[]> counts;
+	
+	/**
+	 * The names of the bindings of the pooled literals
+	 */
+	private final Map<String,String> bindings;
+	
+	ConstantPool() {
+		counts = new LinkedHashMap<String,int[]>();
+		bindings = new LinkedHashMap<String,String>();
+	}
+	
+	/**
+	 * Counts a use of the given literal. This must happen before choose is called.
+	 * @param literal The javascript literal
+	 */
+	void count(String literal) {
+		if (literal.length() < MIN_LENGTH) {
+			return;
+		}
+		int[] count = counts.get(literal);
+		if (count == null) {
+			count = new int[1];
+			counts.put(literal, count);
+		}
+		count[0]++;
+	}
+	
+	/**
+	 * Chooses the literals that are pooled, based on the counted uses
+	 */
+	void choose() {
+		for (Map.Entry<String,int[]> entry : counts.entrySet()) {
+			int length = entry.getKey().length();
+			int uses = entry.getValue()[0];
+			if (uses * length > length + DECLARATION_LENGTH + (uses + 1) * BINDING_LENGTH) {
+				bindings.put(entry.getKey(), JSNames.CONSTANT + bindings.size());
+			}
+		}
+		counts.clear();
+	}
+	
+	/**
+	 * @param literal A javascript literal
+	 * @return The name of the binding of the given literal if it is pooled, or the literal itself if not
+	 */
+	String get(String literal) {
+		String binding = bindings.get(literal);
+		return binding != null ? binding : literal;
+	}
+	
+	/**
+	 * Writes the declarations of the bindings
+	 */
+	void write(CodeWriter out) throws IOException {
+		for (Map.Entry<String,String> entry : bindings.entrySet()) {
+			out.line("var " + entry.getValue() + " = " + entry.getKey() + ";");
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package arrayscript.transpiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import arrayscript.lang.Modifier;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.executable.BodyUnit;
+import arrayscript.parser.executable.LocalVariable;
+
+/**
+ * Finds the local variables whose instance can be released at the end of the block that declares them, for
+ * the StorageMode HEAP. ArrayScript has no way to release an instance, so the transpiler can only release
+ * the instances that it can prove to be unreachable after the block. That is the case for a local variable
+ * if:
+ *
+ * It is declared directly in a block and its initial value is a new instance (of a class that is not a
+ * define class).
+ *
+ * It is never assigned and it is only used to access properties of the instance (directly, so not through
+ * getters, setters or methods).
+ *
+ * The constructor doesn't let the instance escape either: it only uses 'this' to access properties.
+ *
+ * No return statement follows the declaration in the block, so the end of the block is the only way to
+ * leave it.
+ * @author knokko
+ *
+ */
+class EscapeAnalysis {
+	
+	private final ProgramEmitter program;
+	
+	/**
+	 * The results of isLocalConstructor. This map is synchronized because the bodies can be emitted by
+	 * multiple threads. If 2 threads check the same constructor at the same time, both compute the same result.
+	 */
+	private final Map<Object,Boolean> constructors;
+	
+	/**
+	 * @param program The emitter of the program
+	 */
+	EscapeAnalysis(ProgramEmitter program) {
+		this.program = program;
+		this.constructors = Collections.synchronizedMap(new IdentityHashMap<Object,Boolean>());
+	}
+	
+	/**
+	 * @param tree The syntax tree of a body
+	 * @param block A BLOCK node of the tree
+	 * @return The local variables declared directly in the block whose instance can be released at the end
+	 * of the block, in the order they were declared
+	 */
+	List<LocalVariable> getReleasable(SyntaxTree tree, int block) {
+		List<LocalVariable> result = null;
+		for (int child = tree.getFirstChild(block); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			if (tree.getType(child) != NodeType.DECLARATION) {
+				continue;
+			}
+			int initial = tree.getNextSibling(tree.getFirstChild(child));
+			if (initial == SyntaxTree.NONE || tree.getType(initial) != NodeType.NEW) {
+				continue;
+			}
+			LocalVariable local = (LocalVariable) tree.getSymbol(child);
+			if (isLocal(tree, tree.getRoot(), SyntaxTree.NONE, local) && !followedByReturn(tree, child)
+					&& isLocalConstructor(tree, initial)) {
+				if (result == null) {
+					result = new ArrayList<LocalVariable>(2);
+				}
+				result.add(local);
+			}
+		}
+		return result;
+	}
+	
+	private static boolean followedByReturn(SyntaxTree tree, int declaration) {
+		for (int next = tree.getNextSibling(declaration); next != SyntaxTree.NONE; next = tree.getNextSibling(next)) {
+			if (containsReturn(tree, next)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean containsReturn(SyntaxTree tree, int node) {
+		if (tree.getType(node) == NodeType.RETURN) {
+			return true;
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			if (containsReturn(tree, child)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the given node is only used as the instance of a property access
+	 */
+	private static boolean isPropertyInstance(SyntaxTree tree, int node, int parent) {
+		return parent != SyntaxTree.NONE && tree.getType(parent) == NodeType.PROPERTY && tree.getFirstChild(parent) == node
+				&& tree.getSymbol(parent) instanceof PropertyBuilder;
+	}
+	
+	/**
+	 * Checks whether all uses of the given local variable in the subtree of node are property accesses
+	 */
+	private static boolean isLocal(SyntaxTree tree, int node, int parent, LocalVariable local) {
+		if (tree.getType(node) == NodeType.NAME && tree.getSymbol(node) == local && !isPropertyInstance(tree, node, parent)) {
+			return false;
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			if (!isLocal(tree, child, node, local)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether 'this' is only used to access properties in the subtree of node
+	 */
+	private static boolean isLocalThis(SyntaxTree tree, int node, int parent) {
+		NodeType type = tree.getType(node);
+		if (type == NodeType.THIS && !isPropertyInstance(tree, node, parent)) {
+			return false;
+		}
+		if (type == NodeType.CALL) {
+			Object symbol = tree.getSymbol(node);
+			if ((symbol instanceof MethodBuilder || symbol instanceof GetterBuilder || symbol instanceof SetterBuilder)
+					&& tree.getType(tree.getFirstChild(node)) != NodeType.PROPERTY) {
+				
+				// A call of a member of the instance itself
+				return false;
+			}
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			if (!isLocalThis(tree, child, node)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static boolean isLocalThis(BodyUnit unit) {
+		if (unit == null) {
+			return true;
+		}
+		SyntaxTree tree = unit.getSyntax();
+		return isLocalThis(tree, tree.getRoot(), SyntaxTree.NONE);
+	}
+	
+	/**
+	 * Checks whether the constructor of the given NEW node doesn't let the new instance escape
+	 */
+	private boolean isLocalConstructor(SyntaxTree tree, int node) {
+		Object constructor = tree.getSymbol(node);
+		ClassBuilder classBuilder = program.getProgram().getClass(tree.getValueType(node));
+		if (classBuilder == null || classBuilder.getModifiers().contains(Modifier.DEFINE)) {
+			return false;
+		}
+		Boolean cached = constructors.get(constructor);
+		if (cached != null) {
+			return cached;
+		}
+		boolean result = true;
+		if (constructor instanceof ElementBuilder) {
+			ElementBuilder element = (ElementBuilder) constructor;
+			result = isLocalThis(program.findHead(element)) && isLocalThis(program.findBody(element));
+		}
+		for (PropertyBuilder property : classBuilder.getProperties()) {
+			result &= isLocalThis(program.findBody(property));
+		}
+		constructors.put(constructor, result);
+		return result;
+	}
+}
@@ -0,0 +1,176 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the javascript code that allocates integer handles for a group of arrays. Every handle owns a fixed
+ * number of consecutive elements (the stride) in each of the arrays. The code consists of the declarations
+ * of the arrays and the state of the allocator, and the functions alloc, free and grow, whose names start
+ * with the prefix of the allocator.
+ *
+ * The released handles form a free list that is stored in an Int32Array: a released handle points to the
+ * handle that was released before it. When there are no released handles left, a new handle is taken from
+ * the end of the arrays and all arrays are doubled in size when they are full.
+ * @author knokko
+ *
+ */
+class HandleAllocator {
+	
+	private final String prefix;
+	private final int initialCapacity;
+	
+	private final List<String> names;
+	private final List<String> arrayClasses;
+	private final List<String> emptyValues;
+	private final List<Integer> strides;
+	
+	/**
+	 * @param prefix The prefix of the names of the functions and the state of the allocator
+	 * @param initialCapacity The number of handles the arrays get room for when they are first needed
+	 */
+	HandleAllocator(String prefix, int initialCapacity) {
+		this.prefix = prefix;
+		this.initialCapacity = initialCapacity;
+		this.names = new ArrayList<String>();
+		this.arrayClasses = new ArrayList<String>();
+		this.emptyValues = new ArrayList<String>();
+		this.strides = new ArrayList<Integer>();
+	}
+	
+	/**
+	 * Adds a typed array (like a Float64Array) to the arrays of this allocator
+	 * @param name The name of the array
+	 * @param arrayClass The name of the javascript class of the array
+	 * @param stride The number of elements every handle owns
+	 */
+	void addTypedArray(String name, String arrayClass, int stride) {
+		names.add(name);
+		arrayClasses.add(arrayClass);
+		emptyValues.add(null);
+		strides.add(stride);
+	}
+	
+	/**
+	 * Adds a plain javascript array to the arrays of this allocator. When a handle is released, its elements
+	 * are reset to the given empty value, so the values it referred to can be garbage collected.
+	 * @param name The name of the array
+	 * @param emptyValue The javascript code of the value of unused elements
+	 * @param stride The number of elements every handle owns
+	 */
+	void addArray(String name, String emptyValue, int stride) {
+		names.add(name);
+		arrayClasses.add(null);
+		emptyValues.add(emptyValue);
+		strides.add(stride);
+	}
+	
+	/**
+	 * @return The name of the function that allocates a new handle
+	 */
+	String getAllocate() {
+		return prefix + "alloc";
+	}
+	
+	/**
+	 * @return The name of the function that releases a handle, so it can be allocated again
+	 */
+	String getFree() {
+		return prefix + "free";
+	}
+	
+	/**
+	 * Writes the declarations of the arrays and the functions that allocate, release and grow them. This must
+	 * be written before any handle is allocated.
+	 */
+	void write(CodeWriter out) throws IOException {
+		String links = prefix + "links";
+		String capacity = prefix + "capacity";
+		String size = prefix + "size";
+		String freeHandle = prefix + "freeHandle";
+		String grow = prefix + "grow";
+		
+		for (int index = 0; index < names.size(); index++) {
+			String arrayClass = arrayClasses.get(index);
+			out.line("var " + names.get(index) + " = " + (arrayClass != null ? "new " + arrayClass + "(0)" : "[]") + ";");
+		}
+		out.line("var " + links + " = new Int32Array(0);");
+		out.line("var " + capacity + " = 0;");
+		out.line("var " + size + " = 0;");
+		out.line("var " + freeHandle + " = -1;");
+		
+		out.write("function " + getAllocate() + "() ");
+		out.openBlock();
+		out.line("const handle = " + freeHandle + ";");
+		out.write("if (handle !== -1) ");
+		out.openBlock();
+		out.line(freeHandle + " = " + links + "[handle];");
+		out.line("return handle;");
+		out.closeBlock();
+		out.newLine();
+		out.write("if (" + size + " === " + capacity + ") ");
+		out.openBlock();
+		out.line(grow + "();");
+		out.closeBlock();
+		out.newLine();
+		out.line("return " + size + "++;");
+		out.closeBlock();
+		out.newLine();
+		
+		out.write("function " + getFree() + "(handle) ");
+		out.openBlock();
+		for (int index = 0; index < names.size(); index++) {
+			String emptyValue = emptyValues.get(index);
+			if (emptyValue != null) {
+				int stride = strides.get(index);
+				if (stride == 1) {
+					out.line(names.get(index) + "[handle] = " + emptyValue + ";");
+				} else {
+					out.write("for (let index = handle * " + stride + "; index < handle * " + stride + " + " + stride + "; index++) ");
+					out.openBlock();
+					out.line(names.get(index) + "[index] = " + emptyValue + ";");
+					out.closeBlock();
+					out.newLine();
+				}
+			}
+		}
+		out.line(links + "[handle] = " + freeHandle + ";");
+		out.line(freeHandle + " = handle;");
+		out.closeBlock();
+		out.newLine();
+		
+		out.write("function " + grow + "() ");
+		out.openBlock();
+		out.line("const capacity = " + capacity + " === 0 ? " + initialCapacity + " : " + capacity + " * 2;");
+		grow(out, links, "Int32Array", 1);
+		for (int index = 0; index < names.size(); index++) {
+			String name = names.get(index);
+			int stride = strides.get(index);
+			if (arrayClasses.get(index) != null) {
+				grow(out, name, arrayClasses.get(index), stride);
+			} else {
+				out.write("while (" + name + ".length < capacity" + (stride == 1 ? "" : " * " + stride) + ") ");
+				out.openBlock();
+				out.line(name + ".push(" + emptyValues.get(index) + ");");
+				out.closeBlock();
+				out.newLine();
+			}
+		}
+		out.line(capacity + " = capacity;");
+		out.closeBlock();
+		out.newLine();
+	}
+	
+	/**
+	 * Writes the code that replaces a typed array by a larger copy
+	 */
+	private static void grow(CodeWriter out, String name, String arrayClass, int stride) throws IOException {
+		out.openBlock();
+		out.line("const larger = new " + arrayClass + "(capacity" + (stride == 1 ? "" : " * " + stride) + ");");
+		out.line("larger.set(" + name + ");");
+		out.line(name + " = larger;");
+		out.closeBlock();
+		out.newLine();
+	}
+}
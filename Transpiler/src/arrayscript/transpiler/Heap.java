@@ -0,0 +1,113 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import arrayscript.js.JSType;
+import arrayscript.lang.var.type.Type;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+
+/**
+ * The global heap of the StorageMode HEAP. The properties of all instances are stored in 1 large array per
+ * javascript type: booleans in a Uint8Array, numbers in a Float64Array and strings and all other values in
+ * plain arrays. An instance is an integer handle. Every handle owns a fixed number of consecutive elements
+ * (the stride) in every heap array, so property k of the numbers of instance h is at index h * stride + k.
+ * The stride of a heap array is the largest number of properties of its type that a class has. The handles
+ * are allocated by a HandleAllocator.
+ * @author knokko
+ *
+ */
+class Heap {
+	
+	/**
+	 * The name of the function that allocates a new handle
+	 */
+	static final String ALLOCATE = "$$alloc";
+	
+	/**
+	 * The name of the function that releases a handle, so it can be allocated again
+	 */
+	static final String FREE = "$$free";
+	
+	private static final JSType[] TYPES = { JSType.BOOLEAN, JSType.NUMBER, JSType.STRING, JSType.OBJECT };
+	
+	private final int[] strides;
+	private final int initialCapacity;
+	
+	/**
+	 * @param classes All classes of the program
+	 * @param initialCapacity The number of handles the heap arrays get room for when they are first needed
+	 */
+	Heap(Collection<ClassBuilder> classes, int initialCapacity) {
+		this.strides = new int[JSType.values().length];
+		this.initialCapacity = initialCapacity;
+		for (ClassBuilder classBuilder : classes) {
+			int[] counts = new int[strides.length];
+			for (PropertyBuilder property : classBuilder.getProperties()) {
+				counts[getType(property.getType().getType()).ordinal()]++;
+			}
+			for (int index = 0; index < strides.length; index++) {
+				strides[index] = Math.max(strides[index], counts[index]);
+			}
+		}
+	}
+	
+	/**
+	 * @param type The type of a property
+	 * @return The type of the heap array the property is stored in
+	 */
+	static JSType getType(Type type) {
+		JSType jsType = JSType.of(type);
+		return jsType == JSType.ARRAY ? JSType.OBJECT : jsType;
+	}
+	
+	/**
+	 * @return The name of the heap array of the given type
+	 */
+	static String getName(JSType type) {
+		switch (type) {
+		case BOOLEAN: return "$$booleans";
+		case NUMBER: return "$$numbers";
+		case STRING: return "$$strings";
+		default: return "$$objects";
+		}
+	}
+	
+	/**
+	 * @return The number of elements of the heap array of the given type that every handle owns
+	 */
+	int getStride(JSType type) {
+		return strides[(type == JSType.ARRAY ? JSType.OBJECT : type).ordinal()];
+	}
+	
+	private static String getArrayClass(JSType type) {
+		if (type == JSType.BOOLEAN) {
+			return "Uint8Array";
+		} else if (type == JSType.NUMBER) {
+			return "Float64Array";
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the declarations of the heap arrays and the functions that allocate, release and grow them. This
+	 * must be written before any instance is created.
+	 */
+	void writeRuntime(CodeWriter out) throws IOException {
+		HandleAllocator allocator = new HandleAllocator("$$", initialCapacity);
+		for (JSType type : TYPES) {
+			int stride = getStride(type);
+			if (stride > 0) {
+				String arrayClass = getArrayClass(type);
+				if (arrayClass != null) {
+					allocator.addTypedArray(getName(type), arrayClass, stride);
+				} else {
+					allocator.addArray(getName(type), type == JSType.STRING ? "\"\"" : "null", stride);
+				}
+			}
+		}
+		allocator.write(out);
+	}
+}
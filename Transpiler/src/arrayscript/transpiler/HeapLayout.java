@@ -0,0 +1,97 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import arrayscript.js.JSType;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+
+/**
+ * The layout of the StorageMode HEAP. Every instance is a handle in the global Heap and every property has
+ * a fixed slot among the properties of its javascript type. The slots of every type are assigned in the
+ * order the properties were declared.
+ *
+ * Booleans are stored as 0 or 1 in a Uint8Array, so reads of boolean properties are converted back to
+ * booleans with '!!'.
+ * @author knokko
+ *
+ */
+class HeapLayout extends ClassLayout {
+	
+	private final Heap heap;
+	private final Map<PropertyBuilder,JSType> types;
+	private final Map<PropertyBuilder,Integer> slots;
+	
+	/**
+	 * @param classBuilder The class to determine the layout of
+	 * @param heap The heap that stores the properties of the instances
+	 */
+	HeapLayout(ClassBuilder classBuilder, Heap heap) {
+		super(classBuilder);
+		this.heap = heap;
+		this.types = new IdentityHashMap<PropertyBuilder,JSType>();
+		this.slots = new IdentityHashMap<PropertyBuilder,Integer>();
+		int[] counts = new int[JSType.values().length];
+		for (PropertyBuilder property : getProperties()) {
+			JSType type = Heap.getType(property.getType().getType());
+			types.put(property, type);
+			slots.put(property, counts[type.ordinal()]++);
+		}
+	}
+	
+	private JSType getType(PropertyBuilder property) throws IllegalArgumentException {
+		JSType type = types.get(property);
+		if (type == null) {
+			throw new IllegalArgumentException(property + " is not a part of this layout");
+		}
+		return type;
+	}
+	
+	@Override
+	String getPrefix(PropertyBuilder property, boolean read) throws IllegalArgumentException {
+		JSType type = getType(property);
+		return (read && type == JSType.BOOLEAN ? "!!" : "") + Heap.getName(type) + "[";
+	}
+	
+	@Override
+	String getSuffix(PropertyBuilder property) throws IllegalArgumentException {
+		int stride = heap.getStride(getType(property));
+		int slot = slots.get(property);
+		String offset = slot == 0 ? "" : " + " + slot;
+		return (stride == 1 ? "" : " * " + stride) + offset + "]";
+	}
+	
+	@Override
+	int getInstancePrecedence(PropertyBuilder property) {
+		if (heap.getStride(getType(property)) > 1) {
+			return BodyEmitter.MULTIPLICATIVE;
+		} else if (slots.get(property) > 0) {
+			return BodyEmitter.ADDITIVE;
+		} else {
+			return BodyEmitter.NONE;
+		}
+	}
+	
+	@Override
+	int getReadPrecedence(PropertyBuilder property) {
+		return getType(property) == JSType.BOOLEAN ? BodyEmitter.UNARY : BodyEmitter.MEMBER;
+	}
+	
+	@Override
+	String getFree() {
+		return Heap.FREE;
+	}
+	
+	@Override
+	void allocate(CodeWriter out, List<String> values) throws IOException {
+		out.line("const " + JSNames.SELF + " = " + Heap.ALLOCATE + "();");
+		List<PropertyBuilder> properties = getProperties();
+		for (int index = 0; index < properties.size(); index++) {
+			PropertyBuilder property = properties.get(index);
+			out.line(getPrefix(property, false) + JSNames.SELF + getSuffix(property) + " = " + values.get(index) + ";");
+		}
+	}
+}
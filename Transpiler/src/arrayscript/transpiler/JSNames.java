@@ -0,0 +1,186 @@
+package arrayscript.transpiler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chooses the javascript names of the elements of a program and converts the names of local variables to
+ * javascript names. The names are chosen such that they can never clash with each other:
+ *
+ * The name of an element is a '$' followed by the parts of its qualified name, separated by '$'. A '$' in
+ * the name of an element is written as '$0', so a part of a qualified name never starts with a digit. If 2
+ * elements get the same name (overloaded functions for instance), the second one gets the suffix $2, the
+ * third one $3 and so on.
+ *
+ * The names that are created by the transpiler itself (like the name of the instance in a method) start with
+ * '$$', followed by a letter. The internal names that belong to an element (like the allocator of a class)
+ * consist of the name of the element, followed by '$$' and a letter. Because the parts of a qualified name
+ * can't be empty, a '$$' in the name of an element is always followed by '0'.
+ *
+ * Local variables keep their own name, unless that name starts with '$' or '_' or is reserved in javascript.
+ * Such names get an extra '_' in front of them. Thus the name of a local variable never starts with '$' and
+ * can't clash with the other names.
+ * @author knokko
+ *
+ */
+class JSNames {
+	
+	/**
+	 * The name of the instance in methods, getters, setters and constructors
+	 */
+	static final String SELF = "$$self";
+	
+	/**
+	 * The prefix of the temporary variables of a function
+	 */
+	static final String TEMPORARY = "$$t";
+	
+	/**
+	 * The prefix of the functions that load the chunk files, followed by the index of the chunk
+	 */
+	static final String CHUNK_LOADER = "$$chunk";
+	
+	/**
+	 * The name of the function that reads a chunk file
+	 */
+	static final String FETCH = "$$fetch";
+	
+	/**
+	 * The name of the function that loads all chunk files in the background
+	 */
+	static final String PRELOAD = "$$preload";
+	
+	/**
+	 * The name of the array with the states of the chunks: the AbortController of the request while a chunk
+	 * file is being loaded in the background and true when the chunk has been evaluated
+	 */
+	static final String REQUESTS = "$$requests";
+	
+	/**
+	 * The prefix of the bindings of the constant pool, followed by the index of the constant
+	 */
+	static final String CONSTANT = "$$c";
+	
+	private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(
+			"arguments", "await", "break", "case", "catch", "class", "const", "continue", "debugger", "default",
+			"delete", "do", "else", "enum", "eval", "export", "extends", "false", "finally", "for", "function",
+			"if", "implements", "import", "in", "instanceof", "interface", "let", "new", "null", "package",
+			"private", "protected", "public", "return", "static", "super", "switch", "this", "throw", "true",
+			"try", "typeof", "var", "void", "while", "with", "yield",
+			
+			// The globals that are used by the generated code must not be shadowed
+			"undefined", "NaN", "Infinity", "Math", "Array", "Object", "String", "Number"
+	));
+	
+	/**
+	 * The characters a short name can start with
+	 */
+	private static final String SHORT_START = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_";
+	
+	/**
+	 * The characters a short name can continue with
+	 */
+	private static final String SHORT_PART = SHORT_START + "0123456789";
+	
+	private final Map<Object,String> names;
+	private final Set<String> used;
+	
+	JSNames() {
+		names = new IdentityHashMap<Object,String>();
+		used = new HashSet<String>();
+	}
+	
+	/**
+	 * Chooses the name of the given element.
+	 * @param element The element (or another object that needs a global name)
+	 * @param qualifiedName The qualified name of the element, with its parts separated by dots
+	 * @return The chosen name
+	 */
+	String define(Object element, String qualifiedName) {
+		String base = convert(qualifiedName);
+		String name = base;
+		for (int suffix = 2; !used.add(name); suffix++) {
+			name = base + "$" + suffix;
+		}
+		names.put(element, name);
+		return name;
+	}
+	
+	private static String convert(String qualifiedName) {
+		StringBuilder result = new StringBuilder(qualifiedName.length() + 4);
+		result.append('$');
+		for (int index = 0; index < qualifiedName.length(); index++) {
+			char c = qualifiedName.charAt(index);
+			if (c == '.') {
+				result.append('$');
+			} else if (c == '$') {
+				result.append("$0");
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * @param qualifiedName The qualified name of an element, with its parts separated by dots
+	 * @return The prefix of the internal names that belong to the element
+	 */
+	static String internal(String qualifiedName) {
+		return convert(qualifiedName) + "$$";
+	}
+	
+	/**
+	 * @param element The element
+	 * @return The name that was chosen for the given element
+	 * @throws IllegalArgumentException If no name was chosen for the element
+	 */
+	String get(Object element) throws IllegalArgumentException {
+		String name = names.get(element);
+		if (name == null) {
+			throw new IllegalArgumentException("No name has been chosen for " + element);
+		}
+		return name;
+	}
+	
+	/**
+	 * Enumerates the names that can be used by the minifier, from short to long. Short names never start
+	 * with '$', so they can't clash with names that were not shortened. Some short names are reserved words,
+	 * so the minifier must check them with isReserved.
+	 * @param index The index of the name, at least 0
+	 * @return The index'th short name
+	 */
+	static String shortName(int index) {
+		StringBuilder result = new StringBuilder(4);
+		result.append(SHORT_START.charAt(index % SHORT_START.length()));
+		index /= SHORT_START.length();
+		while (index > 0) {
+			index--;
+			result.append(SHORT_PART.charAt(index % SHORT_PART.length()));
+			index /= SHORT_PART.length();
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * @return true if the given name is reserved in javascript or refers to a global that the generated code
+	 * uses
+	 */
+	static boolean isReserved(String name) {
+		return RESERVED.contains(name);
+	}
+	
+	/**
+	 * @param name The name of a local variable or parameter
+	 * @return The javascript name of the local variable
+	 */
+	static String local(String name) {
+		if (name.startsWith("$") || name.startsWith("_") || RESERVED.contains(name)) {
+			return "_" + name;
+		}
+		return name;
+	}
+}
@@ -0,0 +1,625 @@
+package arrayscript.transpiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minifies the javascript code of the ProgramEmitter. The code is emitted twice: the first time to the
+ * counter, which counts how often every name is used, and the second time to the writer of the minifier,
+ * which writes the minified code to the real output. Neither of them keeps the code in memory.
+ *
+ * The minifier drops all whitespace that is not needed and gives the most frequently used names the
+ * shortest names (see JSNames.shortName). The following names are shortened:
+ *
+ * The local variables and parameters of every function declaration. Every function declaration is a scope
+ * of its own, so the locals of different functions can get the same short names. They never get the short
+ * name of a global name that is used in the same function.
+ *
+ * The names of all elements and the internal names of the transpiler (like the allocator of a class). They
+ * are shortened in the entire program. The program is wrapped in a function, so none of these names can be
+ * used by other code. The name map (see writeNameMap) maps them back to their original names for debugging.
+ *
+ * Identifiers that are not declared by the generated code (like Math) and property names are never changed.
+ *
+ * The minifier relies on the shape of the generated code: it has no comments, regular expressions or
+ * object literals with generated names as keys, all strings use double quotes and all function
+ * declarations are directly in the function that wraps the program (or at the top level of a chunk file).
+ * The main file and the chunk files are minified together: all files are written to counters before the
+ * names are chosen, and then to writers in the same order.
+ * @author knokko
+ *
+ */
+class Minifier {
+	
+	private static final int NO_FUNCTION = -1;
+	
+	/**
+	 * The scope of the code outside the function declarations
+	 */
+	private final Scope topLevel;
+	
+	/**
+	 * The scopes of the function declarations, in the order they are emitted
+	 */
+	private final List<Scope> functions;
+	
+	/**
+	 * The short names of the global names that are shortened
+	 */
+	private final Map<String,String> globals;
+	
+	/**
+	 * The number of function declarations the writers have passed
+	 */
+	private int writtenFunctions;
+	
+	Minifier() {
+		this.topLevel = new Scope();
+		this.functions = new ArrayList<Scope>();
+		this.globals = new LinkedHashMap<String,String>();
+	}
+	
+	/**
+	 * @param wrapped true if the code is wrapped in a function, like the main file, or false if the function
+	 * declarations are at the top level, like in chunk files
+	 * @return A writer that counts the names in the code that is written to it. The code must be written to
+	 * this writer before chooseNames is called.
+	 */
+	Writer getCounter(boolean wrapped) {
+		return new Counter(wrapped);
+	}
+	
+	/**
+	 * Chooses the short names, based on the names that were written to the counter
+	 */
+	void chooseNames() {
+		Set<String> kept = new HashSet<String>();
+		Map<String,int[]> globalCounts = new LinkedHashMap<String,int[]>();
+		List<Scope> scopes = new ArrayList<Scope>(functions.size() + 1);
+		scopes.add(topLevel);
+		scopes.addAll(functions);
+		for (Scope scope : scopes) {
+			for (Map.Entry<String,int[]> entry : scope.counts.entrySet()) {
+				String name = entry.getKey();
+				if (scope.declared.contains(name)) {
+					continue;
+				}
+				if (name.startsWith("$")) {
+					int[] count = globalCounts.get(name);
+					if (count == null) {
+						count = new int[1];
+						globalCounts.put(name, count);
+					}
+					count[0] += entry.getValue()[0];
+				} else {
+					kept.add(name);
+				}
+			}
+		}
+		
+		int index = 0;
+		for (String name : sortByCount(globalCounts)) {
+			String shortName;
+			do {
+				shortName = JSNames.shortName(index++);
+			} while (JSNames.isReserved(shortName) || kept.contains(shortName));
+			globals.put(name, shortName);
+		}
+		
+		Map<String,Scope> declarations = new HashMap<String,Scope>();
+		for (Scope function : functions) {
+			Scope first = declarations.get(function.name);
+			if (first == null) {
+				declarations.put(function.name, function);
+			}
+			Set<String> usedGlobals = new HashSet<String>();
+			Map<String,int[]> localCounts = new LinkedHashMap<String,int[]>();
+			for (Map.Entry<String,int[]> entry : function.counts.entrySet()) {
+				if (function.declared.contains(entry.getKey())) {
+					localCounts.put(entry.getKey(), entry.getValue());
+				} else if (globals.containsKey(entry.getKey())) {
+					usedGlobals.add(globals.get(entry.getKey()));
+				}
+			}
+			
+			// Later declarations of the same function (like stubs) reuse the short names of the first one
+			Set<String> taken = new HashSet<String>(usedGlobals);
+			if (first != null) {
+				for (String name : localCounts.keySet()) {
+					String shortName = first.locals.get(name);
+					if (shortName != null && !taken.contains(shortName)) {
+						function.locals.put(name, shortName);
+						taken.add(shortName);
+					}
+				}
+			}
+			index = 0;
+			for (String name : sortByCount(localCounts)) {
+				if (function.locals.containsKey(name)) {
+					continue;
+				}
+				String shortName;
+				do {
+					shortName = JSNames.shortName(index++);
+				} while (JSNames.isReserved(shortName) || kept.contains(shortName) || taken.contains(shortName));
+				function.locals.put(name, shortName);
+				taken.add(shortName);
+			}
+		}
+	}
+	
+	/**
+	 * @return The names in the given map, from the highest count to the lowest count. Names with the same
+	 * count stay in the order of the map.
+	 */
+	private static List<String> sortByCount(final Map<String,int[]> counts) {
+		List<String> names = new ArrayList<String>(counts.keySet());
+		Collections.sort(names, new Comparator<String>() {
+			
+			@Override
+			public int compare(String a, String b) {
+				return counts.get(b)[0] - counts.get(a)[0];
+			}
+		});
+		return names;
+	}
+	
+	/**
+	 * @param output The writer to write the minified code to. It will be flushed when the returned writer is
+	 * flushed, but it will not be closed.
+	 * @param wrapped true if the code is wrapped in a function, like the main file, or false if the function
+	 * declarations are at the top level, like in chunk files
+	 * @return A writer that minifies the code that is written to it. The writers must get the same code as
+	 * the counters, in the same order.
+	 */
+	Writer getWriter(Writer output, boolean wrapped) {
+		return new Renamer(output, wrapped);
+	}
+	
+	/**
+	 * Writes the name map of the minified code as JSON. The name map has the property "globals", which maps
+	 * the short global names to the original names, and the property "locals", which maps the original name
+	 * of every function that has locals to a map from the short names of its locals to their original names.
+	 * If a function is declared multiple times (like the function in its chunk file and its stub), the first
+	 * declaration is used. The later declarations use the same short names wherever they can.
+	 */
+	void writeNameMap(Writer output) throws IOException {
+		output.write("{\n\t\"globals\": {");
+		writeNames(output, globals, "\t\t");
+		output.write("},\n\t\"locals\": {");
+		Map<String,Scope> declarations = new LinkedHashMap<String,Scope>();
+		for (Scope function : functions) {
+			if (!declarations.containsKey(function.name)) {
+				declarations.put(function.name, function);
+			}
+		}
+		boolean first = true;
+		for (Scope function : declarations.values()) {
+			if (function.locals.isEmpty()) {
+				continue;
+			}
+			output.write(first ? "\n" : ",\n");
+			first = false;
+			output.write("\t\t\"" + function.name + "\": {");
+			writeNames(output, function.locals, "\t\t\t");
+			output.write("}");
+		}
+		output.write(first ? "}\n}\n" : "\n\t}\n}\n");
+		output.flush();
+	}
+	
+	/**
+	 * Writes the entries of the given map from original names to short names as JSON properties from short
+	 * names to original names. Javascript names don't contain characters that need to be escaped in JSON.
+	 */
+	private static void writeNames(Writer output, Map<String,String> names, String indentation) throws IOException {
+		boolean first = true;
+		for (Map.Entry<String,String> entry : names.entrySet()) {
+			output.write(first ? "\n" : ",\n");
+			first = false;
+			output.write(indentation + "\"" + entry.getValue() + "\": \"" + entry.getKey() + "\"");
+		}
+		if (!first) {
+			output.write("\n" + indentation.substring(1));
+		}
+	}
+	
+	/**
+	 * The names that are used in a function declaration or in the top-level code
+	 */
+	private static class Scope {
+		
+		/**
+		 * The original name of the function, or null for the top-level code
+		 */
+		private String name;
+		
+		/**
+		 * The number of uses of every name in the scope, in the order of their first use
+		 */
+		private final Map<String,int[]> counts = new LinkedHashMap<String,int[]>();
+		
+		/**
+		 * The parameters and variables that are declared in the scope
+		 */
+		private final Set<String> declared = new HashSet<String>();
+		
+		/**
+		 * The short names of the declared names
+		 */
+		private final Map<String,String> locals = new LinkedHashMap<String,String>();
+	}
+	
+	/**
+	 * Splits the code that is written to it into tokens and keeps track of the function declaration and
+	 * the declarations of locals the tokens are in.
+	 */
+	private abstract static class Pass extends Writer {
+		
+		private static final int NONE = 0;
+		private static final int IDENTIFIER = 1;
+		private static final int NUMBER = 2;
+		private static final int STRING = 3;
+		
+		/**
+		 * The depth of the function declarations
+		 */
+		private final int functionDepth;
+		
+		private final StringBuilder token = new StringBuilder();
+		private int state;
+		private boolean escape;
+		
+		/**
+		 * true if there was whitespace after the last token
+		 */
+		private boolean afterSpace;
+		
+		/**
+		 * true if the last token was a '.', so the next identifier is a property name
+		 */
+		private boolean afterDot;
+		
+		/**
+		 * The number of open braces
+		 */
+		private int depth;
+		
+		/**
+		 * The number of open brackets and square brackets
+		 */
+		private int nesting;
+		
+		/**
+		 * The index of the function declaration the tokens are in, or NO_FUNCTION
+		 */
+		int function = NO_FUNCTION;
+		private boolean expectFunctionName;
+		private boolean expectParameters;
+		private boolean inParameters;
+		
+		/**
+		 * true if the tokens are in a let, const or var declaration in a function
+		 */
+		private boolean declaring;
+		private int declarationNesting;
+		private boolean expectDeclaration;
+		
+		/**
+		 * @param wrapped true if the function declarations are in the function that wraps the program
+		 */
+		Pass(boolean wrapped) {
+			this.functionDepth = wrapped ? 1 : 0;
+		}
+		
+		/**
+		 * @return The index of the next function declaration, counted over all files
+		 */
+		abstract int nextFunction();
+		
+		/**
+		 * Called for every identifier that is not a property name or a keyword that starts a declaration
+		 * @param isDeclaration true if the identifier is declared as local by this token
+		 */
+		abstract void identifier(String name, boolean isDeclaration) throws IOException;
+		
+		/**
+		 * Called after the name of a function declaration was passed to identifier
+		 */
+		void functionName(String name) {}
+		
+		/**
+		 * Called for keywords that start a declaration, property names and numbers
+		 */
+		abstract void word(String word) throws IOException;
+		
+		/**
+		 * Called for every character of the punctuation
+		 * @param afterSpace true if there was whitespace between the previous token and this one
+		 */
+		abstract void punctuator(char c, boolean afterSpace) throws IOException;
+		
+		/**
+		 * Called for every character of a string literal, including the quotes
+		 */
+		abstract void string(char c) throws IOException;
+		
+		private void process(char c) throws IOException {
+			if (state == STRING) {
+				string(c);
+				if (escape) {
+					escape = false;
+				} else if (c == '\\') {
+					escape = true;
+				} else if (c == '"') {
+					state = NONE;
+					afterDot = false;
+				}
+				return;
+			}
+			if (state == IDENTIFIER) {
+				if (Character.isJavaIdentifierPart(c)) {
+					token.append(c);
+					return;
+				}
+				endIdentifier();
+			} else if (state == NUMBER) {
+				char last = token.charAt(token.length() - 1);
+				if (Character.isLetterOrDigit(c) || c == '.' || ((c == '+' || c == '-') && (last == 'e' || last == 'E'))) {
+					token.append(c);
+					return;
+				}
+				word(token.toString());
+				token.setLength(0);
+				state = NONE;
+				afterDot = false;
+				afterSpace = false;
+			}
+			
+			if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				afterSpace = true;
+			} else if (Character.isJavaIdentifierStart(c)) {
+				state = IDENTIFIER;
+				token.append(c);
+			} else if (c >= '0' && c <= '9') {
+				state = NUMBER;
+				token.append(c);
+			} else if (c == '"') {
+				state = STRING;
+				string(c);
+				afterSpace = false;
+			} else {
+				punctuation(c);
+				punctuator(c, afterSpace);
+				afterSpace = false;
+			}
+		}
+		
+		private void endIdentifier() throws IOException {
+			String name = token.toString();
+			token.setLength(0);
+			state = NONE;
+			if (afterDot) {
+				afterDot = false;
+				word(name);
+			} else if (name.equals("function") && depth == functionDepth) {
+				function = nextFunction();
+				expectFunctionName = true;
+				word(name);
+			} else if ((name.equals("let") || name.equals("const") || name.equals("var")) && function != NO_FUNCTION) {
+				declaring = true;
+				declarationNesting = nesting;
+				expectDeclaration = true;
+				word(name);
+			} else if (expectFunctionName) {
+				expectFunctionName = false;
+				expectParameters = true;
+				identifier(name, false);
+				functionName(name);
+			} else {
+				boolean isDeclaration = inParameters || (declaring && expectDeclaration);
+				expectDeclaration = false;
+				identifier(name, isDeclaration);
+			}
+			afterSpace = false;
+		}
+		
+		/**
+		 * Keeps track of the braces, brackets and declarations
+		 */
+		private void punctuation(char c) {
+			afterDot = c == '.';
+			if (c == '(' || c == '[') {
+				nesting++;
+				if (expectParameters) {
+					expectParameters = false;
+					inParameters = true;
+				}
+			} else if (c == ')' || c == ']') {
+				nesting--;
+				inParameters = false;
+				if (nesting < declarationNesting) {
+					declaring = false;
+				}
+			} else if (c == '{') {
+				depth++;
+				declaring = false;
+			} else if (c == '}') {
+				depth--;
+				declaring = false;
+				if (depth == functionDepth) {
+					function = NO_FUNCTION;
+				}
+			} else if (c == ';' && nesting == declarationNesting) {
+				declaring = false;
+			} else if (c == ',' && declaring && nesting == declarationNesting) {
+				expectDeclaration = true;
+			}
+		}
+		
+		@Override
+		public void write(int c) throws IOException {
+			process((char) c);
+		}
+		
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			for (int index = off; index < off + len; index++) {
+				process(cbuf[index]);
+			}
+		}
+		
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			for (int index = off; index < off + len; index++) {
+				process(str.charAt(index));
+			}
+		}
+		
+		/**
+		 * Finishes the last token. The code is emitted in complete lines, so the last token is always
+		 * complete when the code is flushed.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (state == IDENTIFIER) {
+				endIdentifier();
+			} else if (state == NUMBER) {
+				word(token.toString());
+				token.setLength(0);
+				state = NONE;
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+	
+	/**
+	 * Counts the uses of the names in every scope
+	 */
+	private class Counter extends Pass {
+		
+		Counter(boolean wrapped) {
+			super(wrapped);
+		}
+		
+		@Override
+		int nextFunction() {
+			functions.add(new Scope());
+			return functions.size() - 1;
+		}
+		
+		private Scope getScope() {
+			return function == NO_FUNCTION ? topLevel : functions.get(function);
+		}
+		
+		@Override
+		void identifier(String name, boolean isDeclaration) {
+			Scope scope = getScope();
+			int[] count = scope.counts.get(name);
+			if (count == null) {
+				count = new int[1];
+				scope.counts.put(name, count);
+			}
+			count[0]++;
+			if (isDeclaration) {
+				scope.declared.add(name);
+			}
+		}
+		
+		@Override
+		void functionName(String name) {
+			getScope().name = name;
+		}
+		
+		@Override
+		void word(String word) {}
+		
+		@Override
+		void punctuator(char c, boolean afterSpace) {}
+		
+		@Override
+		void string(char c) {}
+	}
+	
+	/**
+	 * Writes the tokens with their short names and without unneeded whitespace
+	 */
+	private class Renamer extends Pass {
+		
+		private final Writer output;
+		
+		/**
+		 * The last character that was written, or 0 if nothing was written yet
+		 */
+		private char last;
+		
+		Renamer(Writer output, boolean wrapped) {
+			super(wrapped);
+			this.output = output;
+		}
+		
+		@Override
+		int nextFunction() {
+			return writtenFunctions++;
+		}
+		
+		@Override
+		void identifier(String name, boolean isDeclaration) throws IOException {
+			String shortName = null;
+			if (function != NO_FUNCTION) {
+				shortName = functions.get(function).locals.get(name);
+			}
+			if (shortName == null) {
+				shortName = globals.get(name);
+			}
+			word(shortName != null ? shortName : name);
+		}
+		
+		@Override
+		void word(String word) throws IOException {
+			
+			// 2 words need a space between them
+			if (last != 0 && Character.isJavaIdentifierPart(last)) {
+				output.write(' ');
+			}
+			output.write(word);
+			last = word.charAt(word.length() - 1);
+		}
+		
+		@Override
+		void punctuator(char c, boolean afterSpace) throws IOException {
+			
+			// Don't turn a + +b into a++b
+			if (afterSpace && (c == '+' || c == '-') && last == c) {
+				output.write(' ');
+			}
+			output.write(c);
+			last = c;
+		}
+		
+		@Override
+		void string(char c) throws IOException {
+			output.write(c);
+			last = c;
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			super.flush();
+			output.flush();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package arrayscript.transpiler;
+
+import arrayscript.js.JSLiterals;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.lang.var.value.NumberValue;
+import arrayscript.lang.var.value.Value;
+
+/**
+ * The javascript code that converts numbers to the sized numeric types. All javascript numbers are doubles,
+ * so the results of arithmetic on the sized types must be converted explicitly to wrap like the sized types:
+ *
+ * int32 uses 'x | 0', uint32 'x >>> 0', int16 and int8 'x << 16 >> 16' and 'x << 24 >> 24', uint16 and uint8
+ * 'x & 65535' and 'x & 255' and float32 'Math.fround(x)'. These conversions truncate fractions, wrap the
+ * numbers that are out of range and convert NaN to 0, just like storing a number in the typed array of the
+ * type would. A conversion is written as the prefix, followed by the number, followed by the suffix.
+ *
+ * The conversions keep the values in the small integer representation of javascript engines, so they are
+ * almost free. The BodyEmitter still leaves them out when the ValueRange of a number proves that they are
+ * not needed.
+ * @author knokko
+ *
+ */
+class NumericLowering {
+	
+	/**
+	 * @return true if numbers need to be converted to be values of the given type
+	 */
+	static boolean isSized(Type type) {
+		return type == PrimitiveTypes.INT8 || type == PrimitiveTypes.INT16 || type == PrimitiveTypes.INT32 || type == PrimitiveTypes.UINT8
+				|| type == PrimitiveTypes.UINT16 || type == PrimitiveTypes.UINT32 || type == PrimitiveTypes.FLOAT32;
+	}
+	
+	/**
+	 * @param type A sized type
+	 * @return The code that should be written before the number that is converted to the given type
+	 */
+	static String getPrefix(Type type) {
+		return type == PrimitiveTypes.FLOAT32 ? "Math.fround(" : "";
+	}
+	
+	/**
+	 * @param type A sized type
+	 * @return The code that should be written after the number that is converted to the given type
+	 */
+	static String getSuffix(Type type) {
+		if (type == PrimitiveTypes.INT8) {
+			return " << 24 >> 24";
+		} else if (type == PrimitiveTypes.INT16) {
+			return " << 16 >> 16";
+		} else if (type == PrimitiveTypes.INT32) {
+			return " | 0";
+		} else if (type == PrimitiveTypes.UINT8) {
+			return " & 255";
+		} else if (type == PrimitiveTypes.UINT16) {
+			return " & 65535";
+		} else if (type == PrimitiveTypes.UINT32) {
+			return " >>> 0";
+		} else if (type == PrimitiveTypes.FLOAT32) {
+			return ")";
+		} else {
+			throw new IllegalArgumentException("No conversion to " + type.getName() + " is needed");
+		}
+	}
+	
+	/**
+	 * @param type A sized type
+	 * @return The minimum precedence the number must have to be written between the prefix and suffix of the
+	 * conversion to the given type without brackets
+	 */
+	static int getOperandPrecedence(Type type) {
+		if (type == PrimitiveTypes.FLOAT32) {
+			return BodyEmitter.ASSIGN;
+		}
+		return getPrecedence(type);
+	}
+	
+	/**
+	 * @param type A sized type
+	 * @return The precedence of the conversion to the given type
+	 */
+	static int getPrecedence(Type type) {
+		if (type == PrimitiveTypes.INT32) {
+			return BodyEmitter.BITWISE_OR;
+		} else if (type == PrimitiveTypes.UINT8 || type == PrimitiveTypes.UINT16) {
+			return BodyEmitter.BITWISE_AND;
+		} else if (type == PrimitiveTypes.FLOAT32) {
+			return BodyEmitter.MEMBER;
+		} else {
+			return BodyEmitter.SHIFT;
+		}
+	}
+	
+	/**
+	 * Converts the given number to the given type at compile time, the same way the conversion code would do
+	 * it at runtime
+	 * @param type A sized type
+	 * @param value The number to convert
+	 * @return The converted number
+	 */
+	static double convert(Type type, double value) {
+		if (type == PrimitiveTypes.FLOAT32) {
+			return (float) value;
+		}
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return 0;
+		}
+		
+		// The remainder is exact and smaller than 2^32, so it fits in a long
+		int int32 = (int) (long) (value % 4294967296.0);
+		if (type == PrimitiveTypes.INT8) {
+			return (byte) int32;
+		} else if (type == PrimitiveTypes.INT16) {
+			return (short) int32;
+		} else if (type == PrimitiveTypes.UINT8) {
+			return int32 & 0xFF;
+		} else if (type == PrimitiveTypes.UINT16) {
+			return int32 & 0xFFFF;
+		} else if (type == PrimitiveTypes.UINT32) {
+			return int32 & 0xFFFFFFFFL;
+		} else {
+			return int32;
+		}
+	}
+	
+	/**
+	 * @param value A constant value
+	 * @param type The type of the variable or property that gets the value
+	 * @return The javascript literal of the given value, converted to the given type if it is sized
+	 */
+	static String toLiteral(Value value, Type type) {
+		if (isSized(type) && value instanceof NumberValue) {
+			return JSLiterals.toLiteral(new ConstDoubleValue(convert(type, ((NumberValue) value).getDoubleValue())));
+		}
+		return JSLiterals.toLiteral(value);
+	}
+}
@@ -0,0 +1,285 @@
+package arrayscript.transpiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the files with the code of a program to a directory. If compression is enabled, every file gets a
+ * gzip variant, whose name is the name of the file followed by ".gz". The bytes are compressed on a
+ * separate thread while the file is being written, so the compression doesn't slow the emitter down. At
+ * most MAX_PENDING buffers wait for the compressor, so the memory usage stays bounded.
+ *
+ * If content hashing is enabled, the name of every file gets the first HASH_LENGTH hexadecimal digits of
+ * the SHA-256 hash of its content before its extension: "app.js" becomes "app.0123456789abcdef.js" for
+ * instance. The hash is computed while the file is written and the file is renamed when it is closed.
+ * The gzip variants get the same hashed name, followed by ".gz". The names of files with the same content
+ * don't change between builds, so they can be cached forever.
+ * @author knokko
+ *
+ */
+class OutputDirectory {
+	
+	/**
+	 * The number of hexadecimal digits of the content hash in the file names
+	 */
+	static final int HASH_LENGTH = 16;
+	
+	/**
+	 * The maximum number of buffers that can wait for the compressor
+	 */
+	private static final int MAX_PENDING = 16;
+	
+	private static final String HEX_DIGITS = "0123456789abcdef";
+	
+	private final File directory;
+	private final boolean hashNames;
+	private final ExecutorService compressor;
+	private final Map<String,String> names;
+	
+	/**
+	 * @param directory The directory to write the files to
+	 * @param compress true to write a gzip variant of every file
+	 * @param hashNames true to put the content hash in the name of every file
+	 */
+	OutputDirectory(File directory, boolean compress, boolean hashNames) {
+		this.directory = directory;
+		this.hashNames = hashNames;
+		this.compressor = compress ? Executors.newSingleThreadExecutor() : null;
+		this.names = new LinkedHashMap<String,String>();
+	}
+	
+	/**
+	 * Creates a file in this directory. The file gets its final name when the returned writer is closed.
+	 * @param name The logical name of the file
+	 * @return A writer that writes the file (and its gzip variant)
+	 * @throws IOException If the file can't be created
+	 */
+	Writer open(String name) throws IOException {
+		return open(name, hashNames);
+	}
+	
+	/**
+	 * Creates a file in this directory. The file gets its final name when the returned writer is closed.
+	 * @param name The logical name of the file
+	 * @param hashName true to put the content hash in the name of the file, which only happens if content
+	 * hashing is enabled
+	 * @return A writer that writes the file (and its gzip variant)
+	 * @throws IOException If the file can't be created
+	 */
+	Writer open(String name, boolean hashName) throws IOException {
+		return new ChannelWriter(new OutputFile(name, hashName && hashNames));
+	}
+	
+	/**
+	 * @param name The logical name of a file that was written and closed
+	 * @return The final name of the file, which contains the content hash if content hashing is enabled
+	 * @throws IllegalArgumentException If the file has not been closed yet
+	 */
+	String getName(String name) throws IllegalArgumentException {
+		String finalName = names.get(name);
+		if (finalName == null) {
+			throw new IllegalArgumentException("The file " + name + " has not been written");
+		}
+		return finalName;
+	}
+	
+	/**
+	 * @return An unmodifiable view of the logical names of the files that were written, mapped to their final
+	 * names, in the order the files were closed
+	 */
+	Map<String,String> getNames() {
+		return Collections.unmodifiableMap(names);
+	}
+	
+	/**
+	 * Stops the compressor thread. All files must have been closed before this method is called.
+	 */
+	void close() {
+		if (compressor != null) {
+			compressor.shutdown();
+		}
+	}
+	
+	/**
+	 * @return The given name with the given hash before its extension
+	 */
+	private static String hashedName(String name, byte[] hash) {
+		StringBuilder digits = new StringBuilder(HASH_LENGTH);
+		for (int index = 0; index < HASH_LENGTH / 2; index++) {
+			digits.append(HEX_DIGITS.charAt((hash[index] >> 4) & 15));
+			digits.append(HEX_DIGITS.charAt(hash[index] & 15));
+		}
+		int extension = name.lastIndexOf('.');
+		if (extension <= 0) {
+			return name + "." + digits;
+		}
+		return name.substring(0, extension) + "." + digits + name.substring(extension);
+	}
+	
+	/**
+	 * A file in this directory. The bytes that are written to it are written to the file channel on the
+	 * thread of the writer and to the gzip stream on the compressor thread. The compressor thread runs
+	 * the tasks in the order they were submitted, so the gzip stream gets the bytes in the right order.
+	 */
+	private class OutputFile implements WritableByteChannel {
+		
+		private final String name;
+		private final File file;
+		private final FileChannel channel;
+		private final MessageDigest digest;
+		
+		private final File gzipFile;
+		private final OutputStream gzip;
+		private final Semaphore pending;
+		
+		/**
+		 * The first exception of the compressor, or null if compression didn't fail (yet)
+		 */
+		private volatile IOException compressionFailure;
+		
+		OutputFile(String name, boolean hashName) throws IOException {
+			this.name = name;
+			this.file = new File(directory, name);
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			if (hashName) {
+				try {
+					this.digest = MessageDigest.getInstance("SHA-256");
+				} catch (NoSuchAlgorithmException nsa) {
+					throw new Error("Every java platform must support SHA-256", nsa);
+				}
+			} else {
+				this.digest = null;
+			}
+			if (compressor != null) {
+				this.gzipFile = new File(directory, name + ".gz");
+				this.gzip = new GZIPOutputStream(new FileOutputStream(gzipFile), ChannelWriter.BUFFER_SIZE);
+				this.pending = new Semaphore(MAX_PENDING);
+			} else {
+				this.gzipFile = null;
+				this.gzip = null;
+				this.pending = null;
+			}
+		}
+		
+		@Override
+		public int write(ByteBuffer source) throws IOException {
+			int length = source.remaining();
+			if (digest != null || gzip != null) {
+				final byte[] bytes = new byte[length];
+				source.duplicate().get(bytes);
+				if (digest != null) {
+					digest.update(bytes);
+				}
+				if (gzip != null) {
+					submit(new Runnable() {
+						
+						@Override
+						public void run() {
+							try {
+								gzip.write(bytes);
+							} catch (IOException ioex) {
+								compressionFailure = ioex;
+							}
+						}
+					});
+				}
+			}
+			while (source.hasRemaining()) {
+				channel.write(source);
+			}
+			return length;
+		}
+		
+		/**
+		 * Lets the compressor run the given task, unless the compression already failed. Waits while
+		 * MAX_PENDING tasks are waiting.
+		 */
+		private void submit(final Runnable task) {
+			if (compressionFailure != null) {
+				return;
+			}
+			pending.acquireUninterruptibly();
+			compressor.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						if (compressionFailure == null) {
+							task.run();
+						}
+					} finally {
+						pending.release();
+					}
+				}
+			});
+		}
+		
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+		
+		/**
+		 * Closes the file and waits until the gzip variant is complete. Then the files are renamed if
+		 * content hashing is enabled.
+		 */
+		@Override
+		public void close() throws IOException {
+			channel.close();
+			if (gzip != null) {
+				submit(new Runnable() {
+					
+					@Override
+					public void run() {
+						try {
+							gzip.close();
+						} catch (IOException ioex) {
+							compressionFailure = ioex;
+						}
+					}
+				});
+				
+				// All tasks are done when all permits are back
+				pending.acquireUninterruptibly(MAX_PENDING);
+				pending.release(MAX_PENDING);
+				if (compressionFailure != null) {
+					try {
+						gzip.close();
+					} catch (IOException ioex) {
+						// The first failure is the interesting one
+					}
+					throw new IOException("Couldn't compress " + file, compressionFailure);
+				}
+			}
+			String finalName = name;
+			if (digest != null) {
+				finalName = hashedName(name, digest.digest());
+				Files.move(file.toPath(), new File(directory, finalName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				if (gzipFile != null) {
+					Files.move(gzipFile.toPath(), new File(directory, finalName + ".gz").toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			names.put(name, finalName);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package arrayscript.transpiler;
+
+/**
+ * The formats of the files the transpiler can create.
+ * @author knokko
+ *
+ */
+public enum OutputFormat {
+	
+	/**
+	 * A plain javascript file
+	 */
+	JAVASCRIPT,
+	
+	/**
+	 * An html page with the javascript code in 1 script tag. The code is streamed into the page like in the
+	 * JAVASCRIPT format. This is safe because the generated code never contains the text that would close
+	 * the script tag: the '<' in string literals is always escaped.
+	 */
+	HTML;
+}
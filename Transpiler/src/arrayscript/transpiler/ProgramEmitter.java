@@ -0,0 +1,917 @@
+package arrayscript.transpiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import arrayscript.js.JSLiterals;
+import arrayscript.lang.Modifier;
+import arrayscript.lang.executable.NodeType;
+import arrayscript.lang.executable.SyntaxTree;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+import arrayscript.lang.var.value.ConstDoubleValue;
+import arrayscript.parser.builder.AppBuilder;
+import arrayscript.parser.builder.ClassBuilder;
+import arrayscript.parser.builder.ConstructorBuilder;
+import arrayscript.parser.builder.ElementBuilder;
+import arrayscript.parser.builder.EnumBuilder;
+import arrayscript.parser.builder.EnumConstantBuilder;
+import arrayscript.parser.builder.FunctionBuilder;
+import arrayscript.parser.builder.GetterBuilder;
+import arrayscript.parser.builder.InitBuilder;
+import arrayscript.parser.builder.MainBuilder;
+import arrayscript.parser.builder.MethodBuilder;
+import arrayscript.parser.builder.NamespaceBuilder;
+import arrayscript.parser.builder.PropertyBuilder;
+import arrayscript.parser.builder.SetterBuilder;
+import arrayscript.parser.builder.VariableBuilder;
+import arrayscript.parser.builder.param.ParamBuilder;
+import arrayscript.parser.builder.var.value.ValueBuilder;
+import arrayscript.parser.executable.BodyUnit;
+import arrayscript.parser.executable.CheckResult;
+import arrayscript.parser.resolve.Program;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Emits the javascript code of an entire program. The program is wrapped in a function, so none of its
+ * names leak into the global scope. The code consists of the following parts (in this order):
+ *
+ * The declarations of the functions, methods, getters, setters, constructors, inits and mains and the enum
+ * constants, in the order of the elements of the namespaces. Methods, getters and setters become functions
+ * whose first parameter is the instance. Constructors become functions that create a new instance array and
+ * return it.
+ *
+ * The variables and class variables with their initial values, in the order of the elements of the
+ * namespaces.
+ *
+ * The calls of the inits (in the order they were registered) and the main.
+ *
+ * The bindings of the constant pool come before the declarations, so all functions can use them. In the
+ * StorageMode HEAP, the declarations of the heap arrays and the allocator come before all other
+ * parts. In the StorageMode COLUMNS, the declarations of the columns and the allocator of a class come
+ * before the declarations of the class.
+ *
+ * Elements that were loaded from a library are emitted like the elements of the application (the TreeShaker
+ * has removed the ones that are not used). That is only possible if the library contains their bodies, so
+ * the emitter refuses incomplete library elements.
+ * 
+ * The declarations are split into chunks: every class is 1 chunk and every run of other elements in a
+ * namespace (up to the next class or nested namespace) is 1 chunk. If multiple emit threads are allowed,
+ * the chunks are emitted concurrently on a ForkJoinPool and written in their original order, so the output
+ * is the same for any number of threads.
+ * 
+ * If code splitting is enabled, the functions and classes of the cold namespaces (see ChunkPlan) are
+ * written to chunk files. The main file keeps stubs with the same names that load the chunk file on their
+ * first call, as well as the runtimes of the classes, the enums and the variables.
+ * @author knokko
+ *
+ */
+class ProgramEmitter {
+	
+	private final Program program;
+	private final AppBuilder app;
+	
+	private final JSNames names;
+	private final StorageMode storageMode;
+	private final int emitThreads;
+	private final Heap heap;
+	private final EscapeAnalysis escapeAnalysis;
+	private final Map<ClassBuilder,ClassLayout> classLayouts;
+	private final Map<PropertyBuilder,ClassLayout> layouts;
+	private final Map<ElementBuilder,BodyUnit> bodies;
+	private final Map<ElementBuilder,BodyUnit> heads;
+	private final List<VariableBuilder> variables;
+	private final ChunkPlan chunkPlan;
+	private final ConstantPool constantPool;
+	
+	/**
+	 * @param result The result of the body phase, after all passes have been applied
+	 * @param options The options of the transpiler
+	 */
+	ProgramEmitter(CheckResult result, TranspilerOptions options) {
+		this(result, options, null);
+	}
+	
+	/**
+	 * @param result The result of the body phase, after all passes have been applied
+	 * @param options The options of the transpiler
+	 * @param chunkBaseName The name of the main file without its extension, or null if the code is not
+	 * written to a file. The code is only split if this is not null and code splitting is enabled in the
+	 * options.
+	 */
+	ProgramEmitter(CheckResult result, TranspilerOptions options, String chunkBaseName) {
+		this.program = result.getProgram();
+		this.app = program.getApp();
+		this.names = new JSNames();
+		this.storageMode = options.getStorageMode();
+		this.emitThreads = options.getEmitThreads();
+		this.heap = storageMode == StorageMode.HEAP ? new Heap(program.getClasses().values(), options.getInitialCapacity()) : null;
+		this.escapeAnalysis = storageMode != StorageMode.ARRAY ? new EscapeAnalysis(this) : null;
+		this.classLayouts = new IdentityHashMap<ClassBuilder,ClassLayout>();
+		this.layouts = new IdentityHashMap<PropertyBuilder,ClassLayout>();
+		this.bodies = new IdentityHashMap<ElementBuilder,BodyUnit>();
+		this.heads = new IdentityHashMap<ElementBuilder,BodyUnit>();
+		this.variables = new ArrayList<VariableBuilder>();
+		this.constantPool = options.isConstantPooling() ? new ConstantPool() : null;
+		this.chunkPlan = chunkBaseName != null && options.isCodeSplitting() ? new ChunkPlan(result, chunkBaseName, options.getHotCallDepth()) : null;
+		chooseNames(app.getGlobalNamespace());
+		for (ClassBuilder classBuilder : program.getClasses().values()) {
+			ClassLayout layout;
+			if (storageMode == StorageMode.HEAP) {
+				layout = new HeapLayout(classBuilder, heap);
+			} else if (storageMode == StorageMode.COLUMNS) {
+				layout = new ColumnLayout(classBuilder, names, options.getInitialCapacity());
+			} else {
+				layout = new ArrayLayout(classBuilder);
+			}
+			classLayouts.put(classBuilder, layout);
+			for (PropertyBuilder property : layout.getProperties()) {
+				layouts.put(property, layout);
+			}
+		}
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.getKind() == BodyUnit.Kind.CONSTRUCTOR_HEAD) {
+				heads.put(unit.getOwner(), unit);
+			} else {
+				bodies.put(unit.getOwner(), unit);
+			}
+		}
+		if (constantPool != null) {
+			countConstants(result);
+			constantPool.choose();
+		}
+	}
+	
+	/**
+	 * Counts the literals of the emitted bodies and the parsed initial values for the constant pool
+	 */
+	private void countConstants(CheckResult result) {
+		for (BodyUnit unit : result.getCheckedUnits()) {
+			if (unit.getValue() == null || !unit.getValue().isParsed()) {
+				SyntaxTree tree = unit.getSyntax();
+				if (tree.getRoot() != SyntaxTree.NONE) {
+					countConstants(tree, tree.getRoot());
+				}
+			}
+		}
+		for (VariableBuilder variable : variables) {
+			if (variable.getInitialValue().isParsed()) {
+				constantPool.count(NumericLowering.toLiteral(variable.getInitialValue().getValue(), variable.getType().getType()));
+			}
+		}
+		for (ClassBuilder classBuilder : program.getClasses().values()) {
+			for (PropertyBuilder property : classLayouts.get(classBuilder).getProperties()) {
+				if (property.hasDefaultValue() && property.getDefaultValue().isParsed()) {
+					constantPool.count(NumericLowering.toLiteral(property.getDefaultValue().getValue(), property.getType().getType()));
+				}
+			}
+		}
+	}
+	
+	private void countConstants(SyntaxTree tree, int node) {
+		NodeType type = tree.getType(node);
+		if (type == NodeType.STRING) {
+			constantPool.count(JSLiterals.quote(tree.getString(node)));
+		} else if (type == NodeType.NUMBER) {
+			constantPool.count(JSLiterals.toLiteral(new ConstDoubleValue(tree.getNumber(node))));
+		}
+		for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+			countConstants(tree, child);
+		}
+	}
+	
+	/**
+	 * @param literal A javascript literal
+	 * @return The binding of the given literal in the constant pool, or the literal itself if it isn't pooled
+	 */
+	String constant(String literal) {
+		return constantPool != null ? constantPool.get(literal) : literal;
+	}
+	
+	/**
+	 * @return The chunk plan of the program, or null if the code is not split
+	 */
+	ChunkPlan getChunkPlan() {
+		return chunkPlan;
+	}
+	
+	Program getProgram() {
+		return program;
+	}
+	
+	JSNames getNames() {
+		return names;
+	}
+	
+	/**
+	 * @return The layout of the class of the given property
+	 */
+	ClassLayout getLayout(PropertyBuilder property) {
+		return layouts.get(property);
+	}
+	
+	/**
+	 * @return The layout of the given class
+	 */
+	ClassLayout getLayout(ClassBuilder classBuilder) {
+		return classLayouts.get(classBuilder);
+	}
+	
+	/**
+	 * @return The escape analysis that determines which instances can be released, or null if instances are
+	 * never released explicitly
+	 */
+	EscapeAnalysis getEscapeAnalysis() {
+		return escapeAnalysis;
+	}
+	
+	/**
+	 * @return The checked body of the given element, or null if it doesn't have one
+	 */
+	BodyUnit findBody(ElementBuilder element) {
+		return bodies.get(element);
+	}
+	
+	/**
+	 * @return The checked head of the given constructor, or null if it doesn't have one
+	 */
+	BodyUnit findHead(ElementBuilder constructor) {
+		return heads.get(constructor);
+	}
+	
+	/**
+	 * Finds the implicit constructor that the body checker used to convert a value of type value to type
+	 * target.
+	 * @return The implicit constructor, or null if no conversion is needed
+	 */
+	ConstructorBuilder getConversion(Type target, Type value) {
+		ClassBuilder targetClass = program.getClass(target);
+		if (targetClass == null || value == null || isCompatible(target, value)) {
+			return null;
+		}
+		for (ConstructorBuilder constructor : targetClass.getConstructors()) {
+			ParamBuilder[] params = constructor.getParameteters().getParams();
+			if (constructor.getModifiers().contains(Modifier.IMPLICIT) && params.length == 1
+					&& isCompatible(params[0].getType().getType(), value)) {
+				return constructor;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * The same compatibility rule as the body checker uses
+	 */
+	private static boolean isCompatible(Type target, Type value) {
+		if (target == PrimitiveTypes.ANY || value == PrimitiveTypes.ANY) {
+			return true;
+		}
+		if (PrimitiveTypes.isNumeric(target) && PrimitiveTypes.isNumeric(value)) {
+			return true;
+		}
+		return target.equals(value);
+	}
+	
+	private static String qualify(NamespaceBuilder namespace, String name) {
+		return namespace.isGlobal() ? name : namespace.getQualifiedName() + "." + name;
+	}
+	
+	/**
+	 * Adds the names of the incomplete library elements in the given namespace (and its nested namespaces) to
+	 * the given list. Their bodies or initial values are missing, so they can't be emitted.
+	 */
+	private void findIncomplete(NamespaceBuilder namespace, List<String> incomplete) {
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof NamespaceBuilder) {
+				findIncomplete((NamespaceBuilder) element, incomplete);
+			} else if (element instanceof ClassBuilder) {
+				ClassBuilder classBuilder = (ClassBuilder) element;
+				for (ElementBuilder member : classBuilder.getElements()) {
+					if (!app.isIncomplete(member)) {
+						continue;
+					}
+					if (member instanceof ConstructorBuilder) {
+						incomplete.add("constructor " + classBuilder.getQualifiedName() + "(" + ((ConstructorBuilder) member).getParameteters() + ")");
+					} else if (member instanceof GetterBuilder) {
+						incomplete.add(classBuilder.getQualifiedName() + "." + ((GetterBuilder) member).getMethodName());
+					} else if (member instanceof SetterBuilder) {
+						incomplete.add(classBuilder.getQualifiedName() + "." + ((SetterBuilder) member).getMethodName());
+					} else {
+						incomplete.add(classBuilder.getQualifiedName() + "." + member.getName());
+					}
+				}
+			} else if (app.isIncomplete(element)) {
+				incomplete.add(qualify(namespace, element.getName()));
+			}
+		}
+	}
+	
+	/**
+	 * Chooses the names of all elements before any code is emitted, because the code can refer to elements
+	 * that are declared later
+	 */
+	private void chooseNames(NamespaceBuilder namespace) {
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof NamespaceBuilder) {
+				chooseNames((NamespaceBuilder) element);
+			} else if (element instanceof ClassBuilder) {
+				chooseNames((ClassBuilder) element);
+			} else if (element instanceof EnumBuilder) {
+				EnumBuilder enumBuilder = (EnumBuilder) element;
+				String qualifiedName = enumBuilder.getQualifiedName();
+				names.define(enumBuilder, qualifiedName);
+				for (EnumConstantBuilder constant : enumBuilder.getConstants()) {
+					names.define(constant, qualifiedName + "." + constant.getName());
+				}
+			} else {
+				if (element instanceof VariableBuilder) {
+					variables.add((VariableBuilder) element);
+				}
+				names.define(element, qualify(namespace, element.getName()));
+			}
+		}
+	}
+	
+	private void chooseNames(ClassBuilder classBuilder) {
+		String prefix = classBuilder.getQualifiedName() + ".";
+		if (classBuilder.getConstructors().isEmpty()) {
+			
+			// The class itself represents its default constructor
+			names.define(classBuilder, prefix + "new");
+		}
+		for (ElementBuilder element : classBuilder.getElements()) {
+			if (element instanceof ConstructorBuilder) {
+				names.define(element, prefix + "new");
+			} else if (element instanceof GetterBuilder) {
+				names.define(element, prefix + ((GetterBuilder) element).getMethodName());
+			} else if (element instanceof SetterBuilder) {
+				names.define(element, prefix + ((SetterBuilder) element).getMethodName());
+			} else if (element instanceof PropertyBuilder) {
+				if (storageMode == StorageMode.COLUMNS) {
+					
+					// The name of the column of the property
+					names.define(element, prefix + element.getName());
+				}
+			} else {
+				if (element instanceof VariableBuilder) {
+					variables.add((VariableBuilder) element);
+				}
+				names.define(element, prefix + element.getName());
+			}
+		}
+	}
+	
+	/**
+	 * Writes the code of the entire program
+	 * @param out The writer to write the code to
+	 * @throws ParsingException If the program has multiple mains
+	 * @throws IOException If the writer throws an IOException
+	 */
+	void emit(CodeWriter out) throws ParsingException, IOException {
+		Collection<MainBuilder> mains = app.getMains();
+		if (mains.size() > 1) {
+			throw new ParsingException("The application has " + mains.size() + " mains, so the main to transpile must be selected");
+		}
+		List<String> incomplete = new ArrayList<String>();
+		findIncomplete(app.getGlobalNamespace(), incomplete);
+		if (!incomplete.isEmpty()) {
+			throw new ParsingException("The application uses " + incomplete + ", but their library doesn't contain their bodies. "
+					+ "Compile the library with its bodies to transpile this application.");
+		}
+		out.write("(function() ");
+		out.openBlock();
+		out.line("\"use strict\";");
+		if (heap != null) {
+			heap.writeRuntime(out);
+		}
+		if (constantPool != null) {
+			constantPool.write(out);
+		}
+		declarations(out);
+		if (chunkPlan != null && !chunkPlan.getChunks().isEmpty()) {
+			loaders(out);
+		}
+		for (VariableBuilder variable : variables) {
+			out.write("var " + names.get(variable) + " = ");
+			initialValue(out, variable);
+			out.line(";");
+		}
+		for (InitBuilder init : app.getInits()) {
+			out.line(names.get(init) + "();");
+		}
+		for (MainBuilder main : mains) {
+			out.line(names.get(main) + "();");
+		}
+		if (chunkPlan != null && !chunkPlan.getChunks().isEmpty()) {
+			preload(out);
+		}
+		out.closeBlock();
+		out.line(")();");
+		out.flush();
+	}
+	
+	/**
+	 * Writes the functions that read the chunk files and the loaders of the chunk files. A loader evaluates
+	 * the code of its chunk file and replaces the stubs of the chunk with the functions it declares. The
+	 * eval is a direct eval, so the chunk file can use all names of the program.
+	 * 
+	 * In browsers, all chunk files are fetched in the background as soon as the mains have returned (see
+	 * preload), so startup only costs the hot code. A chunk file is evaluated when it arrives, which is a safe
+	 * point because no other code of the program is running. A stub must return the result of the real
+	 * function, so a stub that is called before its chunk file arrived can't wait for it: it cancels the
+	 * background request and reads the file with a synchronous request instead, so the file is never
+	 * downloaded twice. In node, the stubs read the chunk files from the directory of the main file. A
+	 * failed synchronous request throws an Error.
+	 */
+	private void loaders(CodeWriter out) throws IOException {
+		out.line("var " + JSNames.REQUESTS + " = [];");
+		out.write("function " + JSNames.FETCH + "(file) ");
+		out.openBlock();
+		out.write("if (typeof XMLHttpRequest !== \"undefined\") ");
+		out.openBlock();
+		out.line("const request = new XMLHttpRequest();");
+		out.line("request.open(\"GET\", file, false);");
+		out.line("request.send(null);");
+		out.write("if (request.status < 200 || request.status >= 300) ");
+		out.openBlock();
+		out.line("throw new Error(\"Couldn't load \" + file + \" (status \" + request.status + \")\");");
+		out.closeBlock();
+		out.newLine();
+		out.line("return request.responseText;");
+		out.closeBlock();
+		out.newLine();
+		out.line("return require(\"fs\").readFileSync(require(\"path\").join(__dirname, file), \"utf8\");");
+		out.closeBlock();
+		out.newLine();
+		for (ChunkPlan.Chunk chunk : chunkPlan.getChunks()) {
+			String request = JSNames.REQUESTS + "[" + chunk.getIndex() + "]";
+			
+			// The source is passed through arguments, because the minifier would give a parameter a short name
+			// that could hide a name of the chunk file
+			out.write("function " + JSNames.CHUNK_LOADER + chunk.getIndex() + "() ");
+			out.openBlock();
+			out.write("if (" + request + " === true) ");
+			out.openBlock();
+			out.line("return;");
+			out.closeBlock();
+			out.newLine();
+			out.write("if (" + request + " !== undefined) ");
+			out.openBlock();
+			out.line(request + ".abort();");
+			out.closeBlock();
+			out.newLine();
+			out.line(request + " = true;");
+			out.line("[" + functionNames(chunk) + "] = eval(arguments.length !== 0 ? arguments[0] : " + JSNames.FETCH + "("
+					+ JSLiterals.quote(chunk.getFile()) + "));");
+			out.closeBlock();
+			out.newLine();
+		}
+		
+		// Node reads the files quickly enough, so only browsers load them in the background
+		out.write("function " + JSNames.PRELOAD + "(loaders, files) ");
+		out.openBlock();
+		out.write("if (typeof XMLHttpRequest === \"undefined\" || typeof fetch !== \"function\" || typeof AbortController !== \"function\") ");
+		out.openBlock();
+		out.line("return;");
+		out.closeBlock();
+		out.newLine();
+		out.write("for (let index = 0; index < files.length; index++) ");
+		out.openBlock();
+		out.write("if (" + JSNames.REQUESTS + "[index] === true) ");
+		out.openBlock();
+		out.line("continue;");
+		out.closeBlock();
+		out.newLine();
+		out.line("const controller = new AbortController();");
+		out.line(JSNames.REQUESTS + "[index] = controller;");
+		out.write("fetch(files[index], {signal: controller.signal}).then(function(response) ");
+		out.openBlock();
+		out.line("return response.ok ? response.text() : undefined;");
+		out.closeBlock();
+		out.write(").then(function(source) ");
+		out.openBlock();
+		out.write("if (" + JSNames.REQUESTS + "[index] === controller) ");
+		out.openBlock();
+		
+		// Without source, the loader reads the file synchronously, which reports the status
+		out.line(JSNames.REQUESTS + "[index] = undefined;");
+		out.write("if (source !== undefined) ");
+		out.openBlock();
+		out.line("loaders[index](source);");
+		out.closeBlock();
+		out.newLine();
+		out.closeBlock();
+		out.newLine();
+		out.closeBlock();
+		
+		// A failed or cancelled request leaves the chunk to its stubs
+		out.write(", function() ");
+		out.openBlock();
+		out.write("if (" + JSNames.REQUESTS + "[index] === controller) ");
+		out.openBlock();
+		out.line(JSNames.REQUESTS + "[index] = undefined;");
+		out.closeBlock();
+		out.newLine();
+		out.closeBlock();
+		out.line(");");
+		out.closeBlock();
+		out.newLine();
+		out.closeBlock();
+		out.newLine();
+	}
+	
+	/**
+	 * Writes the call that starts to load all chunk files in the background
+	 */
+	private void preload(CodeWriter out) throws IOException {
+		StringBuilder loaders = new StringBuilder();
+		StringBuilder files = new StringBuilder();
+		for (ChunkPlan.Chunk chunk : chunkPlan.getChunks()) {
+			if (loaders.length() > 0) {
+				loaders.append(", ");
+				files.append(", ");
+			}
+			loaders.append(JSNames.CHUNK_LOADER + chunk.getIndex());
+			files.append(JSLiterals.quote(chunk.getFile()));
+		}
+		out.line(JSNames.PRELOAD + "([" + loaders + "], [" + files + "]);");
+	}
+	
+	/**
+	 * @return The names of the functions that are declared in the file of the given chunk, separated by
+	 * commas
+	 */
+	private String functionNames(ChunkPlan.Chunk chunk) {
+		StringBuilder result = new StringBuilder();
+		for (ElementBuilder element : chunk.getElements()) {
+			List<ElementBuilder> functions = element instanceof ClassBuilder ? getFunctions((ClassBuilder) element) 
+					: Collections.singletonList(element);
+			for (ElementBuilder function : functions) {
+				if (result.length() > 0) {
+					result.append(", ");
+				}
+				result.append(names.get(function));
+			}
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * Writes the code of a chunk file: the declarations of the functions of the chunk, followed by an array
+	 * of those functions, which is the value of the code when the loader evaluates it. The runtimes of the
+	 * classes stay in the main file.
+	 * @param out The writer to write the code to
+	 * @param chunk A chunk of the chunk plan of this emitter
+	 * @throws IOException If the writer throws an IOException
+	 */
+	void emitChunk(CodeWriter out, ChunkPlan.Chunk chunk) throws IOException {
+		for (ElementBuilder element : chunk.getElements()) {
+			if (element instanceof ClassBuilder) {
+				functions(out, (ClassBuilder) element, null);
+			} else {
+				function(out, element, false);
+			}
+		}
+		out.line("[" + functionNames(chunk) + "];");
+		out.flush();
+	}
+	
+	/**
+	 * Writes the declarations of all namespaces, chunk by chunk. If more than 1 emit thread is allowed, the
+	 * next chunks are emitted concurrently while the finished chunks are written. At most 4 chunks per
+	 * thread are emitted ahead, so the memory usage stays bounded.
+	 */
+	private void declarations(CodeWriter out) throws IOException {
+		List<List<ElementBuilder>> chunks = new ArrayList<List<ElementBuilder>>();
+		chunks(app.getGlobalNamespace(), chunks);
+		if (emitThreads == 1) {
+			for (List<ElementBuilder> chunk : chunks) {
+				declarations(out, chunk);
+			}
+			return;
+		}
+		
+		List<EmitChunk> tasks = new ArrayList<EmitChunk>(chunks.size());
+		for (List<ElementBuilder> chunk : chunks) {
+			tasks.add(new EmitChunk(chunk, out.getIndentation()));
+		}
+		int window = 4 * emitThreads;
+		ForkJoinPool pool = new ForkJoinPool(emitThreads);
+		try {
+			for (int index = 0; index < tasks.size() && index < window; index++) {
+				pool.execute(tasks.get(index));
+			}
+			for (int index = 0; index < tasks.size(); index++) {
+				if (index + window < tasks.size()) {
+					pool.execute(tasks.get(index + window));
+				}
+				out.writeChunk(tasks.get(index).join());
+				
+				// Let the garbage collector take the chunk
+				tasks.set(index, null);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Adds the chunks of the given namespace and its nested namespaces to the given list, in the order of
+	 * their elements
+	 */
+	private void chunks(NamespaceBuilder namespace, List<List<ElementBuilder>> chunks) {
+		List<ElementBuilder> current = null;
+		for (ElementBuilder element : namespace.getElements()) {
+			if (element instanceof NamespaceBuilder) {
+				current = null;
+				chunks((NamespaceBuilder) element, chunks);
+			} else if (element instanceof ClassBuilder) {
+				current = null;
+				chunks.add(Collections.singletonList(element));
+			} else if (element instanceof EnumBuilder || element instanceof FunctionBuilder 
+					|| element instanceof InitBuilder || element instanceof MainBuilder) {
+				if (current == null) {
+					current = new ArrayList<ElementBuilder>();
+					chunks.add(current);
+				}
+				current.add(element);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the declarations of the elements of a chunk
+	 */
+	private void declarations(CodeWriter out, List<ElementBuilder> elements) throws IOException {
+		for (ElementBuilder element : elements) {
+			ChunkPlan.Chunk chunk = chunkPlan != null ? chunkPlan.getChunk(element) : null;
+			if (element instanceof ClassBuilder) {
+				declarations(out, (ClassBuilder) element, chunk);
+			} else if (element instanceof EnumBuilder) {
+				EnumBuilder enumBuilder = (EnumBuilder) element;
+				StringBuilder values = new StringBuilder();
+				for (EnumConstantBuilder constant : enumBuilder.getConstants()) {
+					out.line("var " + names.get(constant) + " = [" + constant.getOrdinal() + ", " + JSLiterals.quote(constant.getName()) + "];");
+					if (values.length() > 0) {
+						values.append(", ");
+					}
+					values.append(names.get(constant));
+				}
+				out.line("var " + names.get(enumBuilder) + " = [" + values + "];");
+			} else if (chunk != null) {
+				stub(out, element, false, chunk);
+			} else {
+				function(out, element, false);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the runtime of the given class and its functions
+	 * @param stubs The chunk file of the class, or null if the functions of the class are written in this file
+	 */
+	private void declarations(CodeWriter out, ClassBuilder classBuilder, ChunkPlan.Chunk stubs) throws IOException {
+		if (!classBuilder.getModifiers().contains(Modifier.DEFINE)) {
+			classLayouts.get(classBuilder).writeRuntime(out);
+		}
+		functions(out, classBuilder, stubs);
+	}
+	
+	/**
+	 * @return The elements of the given class that are emitted as functions, in the order they are emitted.
+	 * This is the class itself for its default constructor.
+	 */
+	private List<ElementBuilder> getFunctions(ClassBuilder classBuilder) {
+		List<ElementBuilder> functions = new ArrayList<ElementBuilder>();
+		if (classBuilder.getConstructors().isEmpty() && !classBuilder.getModifiers().contains(Modifier.DEFINE)) {
+			functions.add(classBuilder);
+		}
+		for (ElementBuilder element : classBuilder.getElements()) {
+			if (element instanceof FunctionBuilder || element instanceof MethodBuilder || element instanceof ConstructorBuilder
+					|| (element instanceof GetterBuilder && ((GetterBuilder) element).hasCustomBody())
+					|| (element instanceof SetterBuilder && ((SetterBuilder) element).isCustom())) {
+				functions.add(element);
+			}
+		}
+		return functions;
+	}
+	
+	/**
+	 * Writes the functions of the given class, or stubs that load them from a chunk file
+	 * @param stubs The chunk file of the class, or null to write the functions themselves
+	 */
+	private void functions(CodeWriter out, ClassBuilder classBuilder, ChunkPlan.Chunk stubs) throws IOException {
+		boolean isDefine = classBuilder.getModifiers().contains(Modifier.DEFINE);
+		for (ElementBuilder element : getFunctions(classBuilder)) {
+			boolean hasInstance = element instanceof MethodBuilder || element instanceof GetterBuilder || element instanceof SetterBuilder;
+			if (stubs != null) {
+				stub(out, element, hasInstance, stubs);
+			} else if ((element instanceof ConstructorBuilder || element == classBuilder) && !isDefine) {
+				constructor(out, classBuilder, element);
+			} else {
+				
+				// The ClassUnboxer turned the constructors of define classes into functions that return the value
+				function(out, element, hasInstance);
+			}
+		}
+	}
+	
+	/**
+	 * Writes a stub of a function that is declared in a chunk file. The stub loads the chunk file, which
+	 * replaces the stubs of all its functions, and then calls the loaded function with the same arguments.
+	 * @param hasInstance true if the function gets the instance as first parameter
+	 */
+	private void stub(CodeWriter out, ElementBuilder element, boolean hasInstance, ChunkPlan.Chunk chunk) throws IOException {
+		String name = names.get(element);
+		StringBuilder arguments = new StringBuilder();
+		if (element instanceof ClassBuilder) {
+			out.write("function " + name + "() ");
+			out.openBlock();
+		} else {
+			BodyUnit unit = getBody(element);
+			functionHead(out, name, unit, hasInstance);
+			if (hasInstance) {
+				arguments.append(JSNames.SELF);
+			}
+			for (int index = 0; index < unit.getParamCount(); index++) {
+				if (arguments.length() > 0) {
+					arguments.append(", ");
+				}
+				arguments.append(JSNames.local(unit.getParamName(index)));
+			}
+		}
+		out.line(JSNames.CHUNK_LOADER + chunk.getIndex() + "();");
+		out.line("return " + name + "(" + arguments + ");");
+		out.closeBlock();
+		out.newLine();
+	}
+	
+	private BodyUnit getBody(ElementBuilder element) {
+		BodyUnit unit = bodies.get(element);
+		if (unit == null) {
+			throw new IllegalStateException("The body of " + element + " has not been checked");
+		}
+		return unit;
+	}
+	
+	/**
+	 * Writes the start of a function declaration, up to and including the '{'
+	 */
+	private void functionHead(CodeWriter out, String name, BodyUnit unit, boolean hasInstance) throws IOException {
+		out.write("function " + name + "(");
+		if (hasInstance) {
+			out.write(JSNames.SELF);
+		}
+		for (int index = 0; index < unit.getParamCount(); index++) {
+			if (index > 0 || hasInstance) {
+				out.write(", ");
+			}
+			out.write(JSNames.local(unit.getParamName(index)));
+		}
+		out.write(") ");
+		out.openBlock();
+	}
+	
+	/**
+	 * Writes a function, method, getter, setter, init or main (or the constructor of a define class)
+	 * @param hasInstance true if the function gets the instance as first parameter
+	 */
+	private void function(CodeWriter out, ElementBuilder element, boolean hasInstance) throws IOException {
+		BodyUnit unit = getBody(element);
+		functionHead(out, names.get(element), unit, hasInstance);
+		BodyEmitter emitter = new BodyEmitter(this, out, false);
+		emitter.prepare(unit);
+		emitter.declareTemporaries();
+		emitter.statements(unit);
+		out.closeBlock();
+		out.newLine();
+	}
+	
+	/**
+	 * Writes a constructor of a class that is not a define class. The constructor creates the instance
+	 * according to the layout of the class, computes the default values of the properties and then runs the
+	 * head and the body of the constructor.
+	 * @param constructor The constructor, or the class itself for its default constructor
+	 */
+	private void constructor(CodeWriter out, ClassBuilder classBuilder, ElementBuilder constructor) throws IOException {
+		BodyUnit head = heads.get(constructor);
+		BodyUnit body = constructor instanceof ConstructorBuilder ? getBody(constructor) : null;
+		if (body != null) {
+			functionHead(out, names.get(constructor), body, false);
+		} else {
+			out.write("function " + names.get(constructor) + "() ");
+			out.openBlock();
+		}
+		
+		BodyEmitter emitter = new BodyEmitter(this, out, true);
+		List<BodyUnit> defaultValues = new ArrayList<BodyUnit>();
+		List<String> values = new ArrayList<String>();
+		ClassLayout layout = classLayouts.get(classBuilder);
+		for (PropertyBuilder property : layout.getProperties()) {
+			ValueBuilder defaultValue = property.hasDefaultValue() ? property.getDefaultValue() : null;
+			if (defaultValue != null && defaultValue.isParsed()) {
+				values.add(constant(NumericLowering.toLiteral(defaultValue.getValue(), property.getType().getType())));
+			} else {
+				values.add(defaultValue(property.getType().getType()));
+				if (defaultValue != null) {
+					BodyUnit unit = getBody(property);
+					emitter.prepare(unit);
+					defaultValues.add(unit);
+				}
+			}
+		}
+		layout.allocate(out, values);
+		if (head != null) {
+			emitter.prepare(head);
+		}
+		if (body != null) {
+			emitter.prepare(body);
+		}
+		emitter.declareTemporaries();
+		
+		for (BodyUnit unit : defaultValues) {
+			PropertyBuilder property = (PropertyBuilder) unit.getOwner();
+			out.write(layout.getPrefix(property, false) + JSNames.SELF + layout.getSuffix(property) + " = ");
+			emitter.value(unit);
+			out.line(";");
+		}
+		if (head != null) {
+			emitter.block(head);
+		}
+		if (body != null) {
+			emitter.block(body);
+		}
+		out.line("return " + JSNames.SELF + ";");
+		out.closeBlock();
+		out.newLine();
+	}
+	
+	/**
+	 * @return The javascript literal of the value that a property of the given type has before it is
+	 * assigned
+	 */
+	static String defaultValue(Type type) {
+		if (type == PrimitiveTypes.BOOLEAN) {
+			return "false";
+		} else if (type == PrimitiveTypes.STRING) {
+			return "\"\"";
+		} else if (PrimitiveTypes.isNumeric(type)) {
+			return "0";
+		} else {
+			return "null";
+		}
+	}
+	
+	private void initialValue(CodeWriter out, VariableBuilder variable) throws IOException {
+		ValueBuilder value = variable.getInitialValue();
+		if (value.isParsed()) {
+			out.write(constant(NumericLowering.toLiteral(value.getValue(), variable.getType().getType())));
+		} else {
+			new BodyEmitter(this, out, false).value(getBody(variable));
+		}
+	}
+	
+	/**
+	 * Emits the declarations of a chunk into memory, as UTF-8 bytes
+	 */
+	private class EmitChunk extends RecursiveTask<byte[]> {
+		
+		private static final long serialVersionUID = -4728016853174416521L;
+		
+		/**
+		 * The size of the buffer of the ChannelWriter of a chunk. Most chunks are small, so this is smaller
+		 * than the buffer for files.
+		 */
+		private static final int BUFFER_SIZE = 1 << 12;
+		
+		private final List<ElementBuilder> chunk;
+		private final int indentation;
+		
+		EmitChunk(List<ElementBuilder> chunk, int indentation) {
+			this.chunk = chunk;
+			this.indentation = indentation;
+		}
+		
+		@Override
+		protected byte[] compute() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			CodeWriter out = new CodeWriter(new ChannelWriter(Channels.newChannel(bytes), BUFFER_SIZE), indentation);
+			try {
+				declarations(out, chunk);
+				out.flush();
+			} catch (IOException ioex) {
+				throw new Error("Writing to memory shouldn't fail", ioex);
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
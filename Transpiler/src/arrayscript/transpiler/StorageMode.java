@@ -0,0 +1,34 @@
+package arrayscript.transpiler;
+
+/**
+ * The ways the transpiler can store the instances of ArrayScript classes in javascript.
+ * @author knokko
+ *
+ */
+public enum StorageMode {
+	
+	/**
+	 * Every instance is a javascript array with 1 element per property. The instances are garbage collected
+	 * by the javascript engine like any other value.
+	 */
+	ARRAY,
+	
+	/**
+	 * The properties of all instances are stored in 1 large array per javascript type: a Float64Array for
+	 * numbers, a Uint8Array for booleans and plain arrays for strings and all other values. Every instance
+	 * is an integer handle that indexes those arrays. The handles are allocated from a free list, so
+	 * creating an instance doesn't allocate javascript objects, but the instances are not garbage collected.
+	 */
+	HEAP,
+	
+	/**
+	 * Every class has 1 array per property (a structure of arrays) and every instance is an integer handle
+	 * that indexes the arrays of its class. Properties of numeric types are stored in the matching typed
+	 * array (like an Int8Array for int8 properties and a Float32Array for float32 properties), booleans in
+	 * a Uint8Array and all other properties in plain arrays. Values are converted to the element type of
+	 * the typed array when they are stored, so an int8 property that is assigned 200 will be -56. Like in
+	 * the HEAP mode, the handles of every class are allocated from a free list and the instances are not
+	 * garbage collected.
+	 */
+	COLUMNS;
+}
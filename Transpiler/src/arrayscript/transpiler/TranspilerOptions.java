@@ -0,0 +1,218 @@
+package arrayscript.transpiler;
+
+import arrayscript.util.Checks;
+
+/**
+ * The options that can be given to the ArrayScriptTranspiler. A new instance will have the default options,
+ * which can be changed with the setters.
+ * @author knokko
+ *
+ */
+public class TranspilerOptions {
+	
+	private StorageMode storageMode;
+	private int initialCapacity;
+	private OutputFormat outputFormat;
+	private int emitThreads;
+	private boolean minify;
+	private boolean codeSplitting;
+	private int hotCallDepth;
+	private boolean compress;
+	private boolean contentHashing;
+	private boolean constantPooling;
+	
+	public TranspilerOptions() {
+		storageMode = StorageMode.ARRAY;
+		initialCapacity = 1024;
+		outputFormat = OutputFormat.JAVASCRIPT;
+		emitThreads = Runtime.getRuntime().availableProcessors();
+		hotCallDepth = 1;
+		constantPooling = true;
+	}
+	
+	/**
+	 * Sets the way the instances of classes will be stored in javascript. The default mode is ARRAY.
+	 * @param mode The storage mode
+	 */
+	public void setStorageMode(StorageMode mode) {
+		Checks.notNull(mode, "mode");
+		this.storageMode = mode;
+	}
+	
+	/**
+	 * @return The way the instances of classes will be stored in javascript
+	 */
+	public StorageMode getStorageMode() {
+		return storageMode;
+	}
+	
+	/**
+	 * Sets the number of instances the arrays of the HEAP and COLUMNS storage modes will have room for when
+	 * the first instance is created. The capacity will be doubled every time the arrays are full. In the
+	 * COLUMNS mode, every class has its own capacity. The default value is 1024.
+	 * @param capacity The initial number of handles, at least 1
+	 * @throws IllegalArgumentException If capacity is smaller than 1
+	 */
+	public void setInitialCapacity(int capacity) throws IllegalArgumentException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1, but got " + capacity);
+		}
+		this.initialCapacity = capacity;
+	}
+	
+	/**
+	 * @return The number of instances the arrays will have room for when the first instance is created
+	 */
+	public int getInitialCapacity() {
+		return initialCapacity;
+	}
+	
+	/**
+	 * Sets the format of the output of the transpiler. The default format is JAVASCRIPT.
+	 * @param format The output format
+	 */
+	public void setOutputFormat(OutputFormat format) {
+		Checks.notNull(format, "format");
+		this.outputFormat = format;
+	}
+	
+	/**
+	 * @return The format of the output of the transpiler
+	 */
+	public OutputFormat getOutputFormat() {
+		return outputFormat;
+	}
+	
+	/**
+	 * Sets the number of threads that will generate the code of the namespaces and classes. The code of
+	 * every class and every namespace is generated by a separate task on a work-stealing pool, but the
+	 * results are always written in the order of the elements of the namespaces, so the output doesn't
+	 * depend on the number of threads. The default value is the number of available processors.
+	 * @param threads The number of emit threads, at least 1
+	 * @throws IllegalArgumentException If threads is smaller than 1
+	 */
+	public void setEmitThreads(int threads) throws IllegalArgumentException {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least 1 thread is needed, but got " + threads);
+		}
+		this.emitThreads = threads;
+	}
+	
+	/**
+	 * @return The number of threads that will generate code
+	 */
+	public int getEmitThreads() {
+		return emitThreads;
+	}
+	
+	/**
+	 * Enables or disables minification. When enabled, the whitespace is dropped and the locals, elements and
+	 * internal names of the transpiler get short names. Minification emits the code twice: once to count the
+	 * names and once to write it. The default value is false.
+	 * @param minify true to minify the code, false to write readable code
+	 */
+	public void setMinify(boolean minify) {
+		this.minify = minify;
+	}
+	
+	/**
+	 * @return true if the code will be minified, false if not
+	 */
+	public boolean isMinify() {
+		return minify;
+	}
+	
+	/**
+	 * Enables or disables code splitting. When enabled, the functions and classes of the namespaces that
+	 * are not needed at startup are written to separate chunk files next to the output file, which are
+	 * loaded in the background when the mains have returned. A function that is called before its chunk
+	 * file arrived loads the file synchronously. The chunk files are evaluated with a direct eval, so the
+	 * content security policy of the page must allow 'unsafe-eval'. A manifest with the chunk files and their
+	 * dependencies is written as well. Code splitting only applies when the output is written to a file. The
+	 * default value is false.
+	 * @param codeSplitting true to split the code into chunk files, false to write a single file
+	 */
+	public void setCodeSplitting(boolean codeSplitting) {
+		this.codeSplitting = codeSplitting;
+	}
+	
+	/**
+	 * @return true if the code will be split into chunk files, false if not
+	 */
+	public boolean isCodeSplitting() {
+		return codeSplitting;
+	}
+	
+	/**
+	 * Sets the maximum number of calls between the inits and mains and the functions that stay in the main
+	 * file when code splitting is enabled. The namespaces of those functions are never split. The default
+	 * value is 1, which keeps the namespaces of the functions that the inits and mains call directly.
+	 * @param depth The maximum call depth of the main file, at least 0
+	 * @throws IllegalArgumentException If depth is negative
+	 */
+	public void setHotCallDepth(int depth) throws IllegalArgumentException {
+		if (depth < 0) {
+			throw new IllegalArgumentException("The depth can't be negative, but got " + depth);
+		}
+		this.hotCallDepth = depth;
+	}
+	
+	/**
+	 * @return The maximum number of calls between the inits and mains and the functions in the main file
+	 */
+	public int getHotCallDepth() {
+		return hotCallDepth;
+	}
+	
+	/**
+	 * Enables or disables the gzip variants of the output files. When enabled, every output file (including
+	 * the json manifests) gets a gzip variant with the same name followed by ".gz", which is compressed on a
+	 * separate thread while the file is written. This only applies when the output is written to a file. The default value is false.
+	 * @param compress true to write gzip variants, false to write only the files themselves
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+	
+	/**
+	 * @return true if the output files get gzip variants, false if not
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+	
+	/**
+	 * Enables or disables content hashing. When enabled, the names of the output files (the output file, the
+	 * chunk files and their json manifests) get a hash of their content before their extension, so they can
+	 * be cached forever. A file map that maps the original names to the hashed names is written next to the
+	 * output file. Its own name doesn't get a hash. This only applies when the output is written to a file. The default value is false.
+	 * @param contentHashing true to put content hashes in the file names, false to keep the names
+	 */
+	public void setContentHashing(boolean contentHashing) {
+		this.contentHashing = contentHashing;
+	}
+	
+	/**
+	 * @return true if the names of the output files will contain a content hash, false if not
+	 */
+	public boolean isContentHashing() {
+		return contentHashing;
+	}
+	
+	/**
+	 * Enables or disables the constant pool. When enabled, string literals and long number literals that
+	 * occur multiple times are declared once and referred to by a binding, if that makes the code shorter
+	 * (see ConstantPool). The default value is true.
+	 * @param constantPooling true to pool the literals, false to write every literal where it is used
+	 */
+	public void setConstantPooling(boolean constantPooling) {
+		this.constantPooling = constantPooling;
+	}
+	
+	/**
+	 * @return true if repeated literals will be pooled, false if not
+	 */
+	public boolean isConstantPooling() {
+		return constantPooling;
+	}
+}
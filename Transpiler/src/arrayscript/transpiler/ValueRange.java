@@ -0,0 +1,158 @@
+package arrayscript.transpiler;
+
+import arrayscript.lang.Operator;
+import arrayscript.lang.var.type.PrimitiveTypes;
+import arrayscript.lang.var.type.Type;
+
+/**
+ * The set of values that a numeric expression can have, as far as the transpiler knows. A range consists of
+ * the smallest and largest possible value and whether all values are known to be integers and whether all
+ * values are known to be exactly representable as float32. NaN is only possible if the range is unknown
+ * (from minus infinity to infinity) and not integer.
+ * @author knokko
+ *
+ */
+class ValueRange {
+	
+	/**
+	 * The largest number up to which all integers can be represented exactly by a double
+	 */
+	private static final double EXACT_INTEGERS = 9007199254740992.0;
+	
+	/**
+	 * The largest number up to which all integers can be represented exactly by a float32
+	 */
+	private static final double EXACT_FLOAT32_INTEGERS = 16777216.0;
+	
+	static final ValueRange UNKNOWN = new ValueRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false, false);
+	
+	private static final ValueRange FLOAT32 = new ValueRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false, true);
+	
+	private final double min;
+	private final double max;
+	private final boolean integer;
+	private final boolean float32;
+	
+	private ValueRange(double min, double max, boolean integer, boolean float32) {
+		this.min = min;
+		this.max = max;
+		this.integer = integer;
+		this.float32 = float32;
+	}
+	
+	/**
+	 * Creates a range from the given bounds, or returns UNKNOWN if the bounds are NaN
+	 */
+	private static ValueRange create(double min, double max, boolean integer) {
+		if (Double.isNaN(min) || Double.isNaN(max)) {
+			return UNKNOWN;
+		}
+		integer &= min >= -EXACT_INTEGERS && max <= EXACT_INTEGERS;
+		boolean float32 = integer && min >= -EXACT_FLOAT32_INTEGERS && max <= EXACT_FLOAT32_INTEGERS;
+		return new ValueRange(min, max, integer, float32);
+	}
+	
+	/**
+	 * @return The range of the given constant number
+	 */
+	static ValueRange constant(double value) {
+		if (Double.isNaN(value)) {
+			return UNKNOWN;
+		}
+		return new ValueRange(value, value, value == Math.rint(value) && Math.abs(value) <= EXACT_INTEGERS, (float) value == value);
+	}
+	
+	/**
+	 * @return The range of the values of the given type. This is UNKNOWN for number and all types that are
+	 * not numeric.
+	 */
+	static ValueRange of(Type type) {
+		if (type == PrimitiveTypes.INT8) {
+			return create(-128, 127, true);
+		} else if (type == PrimitiveTypes.INT16) {
+			return create(-32768, 32767, true);
+		} else if (type == PrimitiveTypes.INT32) {
+			return create(-2147483648.0, 2147483647.0, true);
+		} else if (type == PrimitiveTypes.UINT8) {
+			return create(0, 255, true);
+		} else if (type == PrimitiveTypes.UINT16) {
+			return create(0, 65535, true);
+		} else if (type == PrimitiveTypes.UINT32) {
+			return create(0, 4294967295.0, true);
+		} else if (type == PrimitiveTypes.FLOAT32) {
+			return FLOAT32;
+		} else {
+			return UNKNOWN;
+		}
+	}
+	
+	/**
+	 * @return true if all values in this range are integers (and not NaN)
+	 */
+	boolean isInteger() {
+		return integer;
+	}
+	
+	/**
+	 * Checks whether all values in this range are values of the given type, so they don't need to be
+	 * converted when they are stored in a variable of that type
+	 */
+	boolean fits(Type type) {
+		if (type == PrimitiveTypes.FLOAT32) {
+			return float32;
+		}
+		ValueRange range = of(type);
+		if (range == UNKNOWN) {
+			return true;
+		}
+		return integer && min >= range.min && max <= range.max;
+	}
+	
+	/**
+	 * @param operator An arithmetic binary operator
+	 * @param left The range of the left operand
+	 * @param right The range of the right operand
+	 * @return The range of the result of the operator, before it is converted to any sized type
+	 */
+	static ValueRange combine(Operator operator, ValueRange left, ValueRange right) {
+		switch (operator) {
+		case SUM: return left.add(right);
+		case SUBSTRACTION: return left.subtract(right);
+		case PRODUCT: return left.multiply(right);
+		case REMAINDER: return left.remainder(right);
+		default: return UNKNOWN;
+		}
+	}
+	
+	ValueRange add(ValueRange other) {
+		return create(min + other.min, max + other.max, integer && other.integer);
+	}
+	
+	ValueRange subtract(ValueRange other) {
+		return create(min - other.max, max - other.min, integer && other.integer);
+	}
+	
+	ValueRange negate() {
+		return new ValueRange(-max, -min, integer, float32);
+	}
+	
+	ValueRange multiply(ValueRange other) {
+		double a = min * other.min;
+		double b = min * other.max;
+		double c = max * other.min;
+		double d = max * other.max;
+		return create(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)), integer && other.integer);
+	}
+	
+	ValueRange remainder(ValueRange other) {
+		if (other.min <= 0 && other.max >= 0) {
+			
+			// The remainder of a division by 0 is NaN
+			return UNKNOWN;
+		}
+		double divisor = Math.max(Math.abs(other.min), Math.abs(other.max));
+		double low = min >= 0 ? 0 : Math.max(min, -divisor);
+		double high = max <= 0 ? 0 : Math.min(max, divisor);
+		return create(low, high, integer && other.integer);
+	}
+}
@@ -0,0 +1,190 @@
+package arrayscript.transpiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import arrayscript.parser.ParserOptions;
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Transpiles a program with code splitting and checks that the files fit together: the manifest lists
+ * exactly the chunk files that were written, every chunk file ends with the list of the functions it
+ * defines, the main file has a stub for each of those functions and a loader that assigns the same list,
+ * the loaders are preloaded, and the dependencies of every chunk include all chunks whose functions it
+ * calls. Run the main method, it throws an AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class CodeSplittingTest {
+	
+	static final String SOURCE = String.join("\n",
+			"namespace hot {",
+			"	number start(number x) {",
+			"		return util.deep(x) + 1;",
+			"	}",
+			"}",
+			"namespace util {",
+			"	number deep(number x) {",
+			"		shapes.Box b = new shapes.Box(x);",
+			"		return b.area() + shapes.inner.twice(x);",
+			"	}",
+			"}",
+			"namespace shapes {",
+			"	class Box {",
+			"		int32 w;",
+			"		constructor(int32 w) {} {",
+			"			this.w = w;",
+			"		}",
+			"		number area() {",
+			"			return this.w * this.w;",
+			"		}",
+			"	}",
+			"	namespace inner {",
+			"		number twice(number x) {",
+			"			return x * 2;",
+			"		}",
+			"	}",
+			"}",
+			"namespace conf {",
+			"	number seed() {",
+			"		return 7;",
+			"	}",
+			"	number value = seed();",
+			"}",
+			"namespace out {",
+			"	string log = \"\";",
+			"}",
+			"main m {",
+			"	out.log = \"\" + hot.start(conf.value) + \",\" + hot.start(2);",
+			"}",
+			"");
+	
+	private static final Pattern MANIFEST_CHUNK = Pattern.compile(
+			"\"namespace\": \"([^\"]*)\",\\s*\"file\": \"([^\"]*)\",\\s*\"dependencies\": \\[([^\\]]*)\\]");
+	private static final Pattern LOADER = Pattern.compile("\\[([^\\]]*)\\] = eval\\([^;]*\\$\\$fetch\\(\"([^\"]*)\"\\)\\)");
+	private static final Pattern DECLARATION = Pattern.compile("^function (\\$[\\w$]*)\\(", Pattern.MULTILINE);
+	
+	public static void main(String[] args) throws IOException, ParsingException {
+		File directory = Files.createTempDirectory("code-splitting-test").toFile();
+		try {
+			TranspilerOptions options = new TranspilerOptions();
+			options.setCodeSplitting(true);
+			options.setHotCallDepth(0);
+			transpile(SOURCE, new File(directory, "app.js"), options);
+			
+			String main = read(new File(directory, "app.js"));
+			String manifest = read(new File(directory, "app.js.chunks.json"));
+			if (!manifest.contains("\"main\": \"app.js\"")) {
+				throw new AssertionError("The manifest doesn't refer to the main file: " + manifest);
+			}
+			
+			// Collect the chunks of the manifest and the functions they define
+			List<String> files = new ArrayList<String>();
+			Map<String,String> dependencies = new HashMap<String,String>();
+			Map<String,String> owners = new HashMap<String,String>();
+			Matcher chunk = MANIFEST_CHUNK.matcher(manifest);
+			while (chunk.find()) {
+				String file = chunk.group(2);
+				if (!file.equals("app." + chunk.group(1) + ".js")) {
+					throw new AssertionError("Chunk " + chunk.group(1) + " has file name " + file);
+				}
+				files.add(file);
+				dependencies.put(file, chunk.group(3));
+				String content = read(new File(directory, file));
+				List<String> defined = new ArrayList<String>();
+				Matcher declaration = DECLARATION.matcher(content);
+				while (declaration.find()) {
+					defined.add(declaration.group(1));
+					owners.put(declaration.group(1), file);
+				}
+				String list = String.join(", ", defined);
+				if (defined.isEmpty() || !content.endsWith("[" + list + "];\n")) {
+					throw new AssertionError(file + " should end with [" + list + "], but is " + content);
+				}
+				for (String function : defined) {
+					if (!main.contains("function " + function + "(")) {
+						throw new AssertionError("The main file doesn't have a stub for " + function);
+					}
+				}
+			}
+			if (files.size() != 5) {
+				throw new AssertionError("Expected 5 chunks, but the manifest has " + files);
+			}
+			String[] written = directory.list();
+			if (written.length != files.size() + 2) {
+				throw new AssertionError("Expected only the main file, the manifest and " + files + ", but found " + String.join(", ", written));
+			}
+			
+			// Every loader must assign the functions of its chunk, in the same order
+			int loaders = 0;
+			Matcher loader = LOADER.matcher(main);
+			while (loader.find()) {
+				String file = loader.group(2);
+				String content = read(new File(directory, file));
+				if (!content.endsWith("[" + loader.group(1) + "];\n")) {
+					throw new AssertionError("The loader of " + file + " assigns [" + loader.group(1) + "]");
+				}
+				loaders++;
+			}
+			if (loaders != files.size()) {
+				throw new AssertionError("Expected " + files.size() + " loaders, but found " + loaders);
+			}
+			StringBuilder preload = new StringBuilder();
+			for (String file : files) {
+				preload.append(preload.length() == 0 ? "" : ", ").append('"').append(file).append('"');
+			}
+			if (!main.contains("$$preload([$$chunk0, $$chunk1, $$chunk2, $$chunk3, $$chunk4], [" + preload + "]);")) {
+				throw new AssertionError("The main file doesn't preload the chunks in the order of the manifest");
+			}
+			
+			// A chunk must depend on every other chunk whose functions it calls
+			for (String file : files) {
+				String content = read(new File(directory, file));
+				for (Map.Entry<String,String> owner : owners.entrySet()) {
+					if (!owner.getValue().equals(file) && content.contains(owner.getKey() + "(")
+							&& !dependencies.get(file).contains("\"" + owner.getValue() + "\"")) {
+						throw new AssertionError(file + " calls " + owner.getKey() + ", but doesn't depend on " + owner.getValue());
+					}
+				}
+			}
+			System.out.println("Checked " + files.size() + " chunks and " + owners.size() + " split functions");
+		} finally {
+			delete(directory);
+		}
+	}
+	
+	/**
+	 * Writes the given source code to a new source directory and transpiles it to the given output file
+	 */
+	static void transpile(String source, File output, TranspilerOptions options) throws IOException, ParsingException {
+		File sources = Files.createTempDirectory("sources").toFile();
+		try {
+			Files.write(new File(sources, "app.ars").toPath(), source.getBytes(StandardCharsets.UTF_8));
+			ArrayScriptTranspiler.transpile(sources, output, new ParserOptions(), options);
+		} finally {
+			delete(sources);
+		}
+	}
+	
+	static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+	
+	static void delete(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+}
@@ -0,0 +1,126 @@
+package arrayscript.transpiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Transpiles a program with methods, a custom getter and a custom setter in every storage mode and checks
+ * that every member is emitted as a plain function that takes the receiver as first parameter, and that
+ * every member call (with an explicit receiver or an implicit 'this') is a direct call of that function
+ * with the receiver as first argument. The generated code must not contain any form of dynamic dispatch.
+ * Run the main method, it throws an AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class MemberCallTest {
+	
+	private static final String SOURCE = String.join("\n",
+			"namespace geo {",
+			"	class Box {",
+			"		int32 width = 2;",
+			"		int32 depth = 3;",
+			"		getter depth {",
+			"			return this.depth + 1;",
+			"		}",
+			"		setter width(newWidth) {",
+			"			this.width = newWidth * 2;",
+			"		}",
+			"		constructor(int32 width) {} {",
+			"			this.width = width;",
+			"		}",
+			"		number area() {",
+			"			return this.width * getDepth();",
+			"		}",
+			"		number volume(number height) {",
+			"			return area() * height + this.area();",
+			"		}",
+			"	}",
+			"	class Stack {",
+			"		Box top;",
+			"		constructor(Box top) {} {",
+			"			this.top = top;",
+			"		}",
+			"		number total() {",
+			"			this.top.setWidth(4);",
+			"			return this.top.volume(2) + this.top.getDepth();",
+			"		}",
+			"	}",
+			"}",
+			"namespace out {",
+			"	string log = \"\";",
+			"}",
+			"main m {",
+			"	geo.Box box = new geo.Box(5);",
+			"	geo.Stack stack = new geo.Stack(box);",
+			"	out.log = \"\" + stack.total() + \",\" + box.area();",
+			"}",
+			"");
+	
+	private static final Set<String> MEMBERS = new HashSet<String>(Arrays.asList(
+			"$geo$Box$getDepth", "$geo$Box$setWidth", "$geo$Box$area", "$geo$Box$volume", "$geo$Stack$total"));
+	
+	private static final Pattern DECLARATION = Pattern.compile("function (\\$geo\\$\\w+\\$\\w+)\\(([^)]*)\\)");
+	private static final Pattern CALL = Pattern.compile("(?<!function )(\\$geo\\$\\w+\\$\\w+)\\((.)");
+	private static final Pattern DISPATCH = Pattern.compile("\\bthis\\b|\\.call\\(|\\.apply\\(|\\.bind\\(|\\bprototype\\b|\\]\\s*\\(");
+	
+	public static void main(String[] args) throws IOException, ParsingException {
+		File directory = Files.createTempDirectory("member-call-test").toFile();
+		try {
+			int calls = 0;
+			for (StorageMode mode : StorageMode.values()) {
+				TranspilerOptions options = new TranspilerOptions();
+				options.setStorageMode(mode);
+				File output = new File(directory, mode + ".js");
+				CodeSplittingTest.transpile(SOURCE, output, options);
+				String code = CodeSplittingTest.read(output);
+				
+				Set<String> declared = new HashSet<String>();
+				Matcher declaration = DECLARATION.matcher(code);
+				while (declaration.find()) {
+					String name = declaration.group(1);
+					if (MEMBERS.contains(name)) {
+						if (!declaration.group(2).startsWith("$$self")) {
+							throw new AssertionError(mode + ": " + name + " doesn't take the receiver as first parameter: " + declaration.group());
+						}
+						declared.add(name);
+					}
+				}
+				if (!declared.equals(MEMBERS)) {
+					throw new AssertionError(mode + ": expected the member functions " + MEMBERS + ", but found " + declared);
+				}
+				
+				// The custom getter is inlined in area, but the other calls must remain as direct calls
+				Set<String> called = new HashSet<String>();
+				Matcher call = CALL.matcher(code);
+				while (call.find()) {
+					String name = call.group(1);
+					if (MEMBERS.contains(name)) {
+						if (call.group(2).equals(")")) {
+							throw new AssertionError(mode + ": " + name + " is called without receiver");
+						}
+						called.add(name);
+						calls++;
+					}
+				}
+				if (!called.equals(MEMBERS)) {
+					throw new AssertionError(mode + ": expected direct calls of " + MEMBERS + ", but found " + called);
+				}
+				Matcher dispatch = DISPATCH.matcher(code);
+				if (dispatch.find()) {
+					throw new AssertionError(mode + ": the generated code contains " + dispatch.group());
+				}
+			}
+			System.out.println("Checked " + calls + " direct member calls in " + StorageMode.values().length + " storage modes");
+		} finally {
+			CodeSplittingTest.delete(directory);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package arrayscript.transpiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Transpiles the program of CodeSplittingTest with and without minification and compares the tokens of
+ * every output file. The tokens must be equal, except that the minified code may use short names, and
+ * every short name must be mapped back to the original name by the name map: by the locals of the
+ * function it is used in, or else by the globals. The renaming must be consistent within each function,
+ * and no name that starts with a '$' may survive minification. Run the main method, it throws an
+ * AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class MinifierTest {
+	
+	public static void main(String[] args) throws IOException, ParsingException {
+		File plainDirectory = Files.createTempDirectory("minifier-test-plain").toFile();
+		File minifiedDirectory = Files.createTempDirectory("minifier-test-minified").toFile();
+		try {
+			TranspilerOptions options = new TranspilerOptions();
+			options.setCodeSplitting(true);
+			options.setHotCallDepth(0);
+			CodeSplittingTest.transpile(CodeSplittingTest.SOURCE, new File(plainDirectory, "app.js"), options);
+			options.setMinify(true);
+			CodeSplittingTest.transpile(CodeSplittingTest.SOURCE, new File(minifiedDirectory, "app.js"), options);
+			
+			if (new File(plainDirectory, "app.js.names.json").exists()) {
+				throw new AssertionError("A name map was written without minification");
+			}
+			Map<String,Object> nameMap = new JsonReader(CodeSplittingTest.read(new File(minifiedDirectory, "app.js.names.json"))).readObject();
+			@SuppressWarnings("unchecked")
+			Map<String,Object> globals = (Map<String,Object>) nameMap.get("globals");
+			@SuppressWarnings("unchecked")
+			Map<String,Object> locals = (Map<String,Object>) nameMap.get("locals");
+			if (globals == null || locals == null || globals.isEmpty()) {
+				throw new AssertionError("The name map doesn't have globals and locals: " + nameMap.keySet());
+			}
+			
+			int files = 0;
+			int renamed = 0;
+			for (String name : plainDirectory.list()) {
+				if (!name.endsWith(".js")) {
+					continue;
+				}
+				List<String> plain = tokenize(CodeSplittingTest.read(new File(plainDirectory, name)));
+				List<String> minified = tokenize(CodeSplittingTest.read(new File(minifiedDirectory, name)));
+				if (plain.size() != minified.size()) {
+					throw new AssertionError(name + " has " + minified.size() + " tokens after minification instead of " + plain.size());
+				}
+				renamed += compare(name, plain, minified, globals, locals);
+				files++;
+			}
+			if (files != 6) {
+				throw new AssertionError("Expected 6 javascript files, but found " + files);
+			}
+			System.out.println("Checked " + renamed + " renamed names in " + files + " files");
+		} finally {
+			CodeSplittingTest.delete(plainDirectory);
+			CodeSplittingTest.delete(minifiedDirectory);
+		}
+	}
+	
+	/**
+	 * Compares the tokens of the plain and minified version of the same file and returns the number of
+	 * renamed tokens
+	 */
+	private static int compare(String file, List<String> plain, List<String> minified, Map<String,Object> globals, Map<String,Object> locals) {
+		int renamed = 0;
+		
+		// The names of the functions that are currently open, and the brace depth at which they were opened
+		List<String> functions = new ArrayList<String>();
+		List<Integer> functionDepths = new ArrayList<Integer>();
+		List<Map<String,String>> renames = new ArrayList<Map<String,String>>();
+		Map<String,String> globalRenames = new HashMap<String,String>();
+		int depth = 0;
+		for (int index = 0; index < plain.size(); index++) {
+			String original = plain.get(index);
+			String shortName = minified.get(index);
+			if (original.equals("{")) {
+				depth++;
+			} else if (original.equals("}")) {
+				if (!functionDepths.isEmpty() && functionDepths.get(functionDepths.size() - 1) == depth) {
+					functions.remove(functions.size() - 1);
+					functionDepths.remove(functionDepths.size() - 1);
+					renames.remove(renames.size() - 1);
+				}
+				depth--;
+			}
+			if (!original.equals(shortName)) {
+				if (!isIdentifier(original) || !isIdentifier(shortName)) {
+					throw new AssertionError(file + " has token " + shortName + " instead of " + original);
+				}
+				
+				// Look the short name up in the locals of the innermost function, and in the globals otherwise
+				String scope = functions.isEmpty() ? null : functions.get(functions.size() - 1);
+				@SuppressWarnings("unchecked")
+				Map<String,Object> scopeLocals = scope == null ? null : (Map<String,Object>) locals.get(scope);
+				Object mapped = scopeLocals != null && scopeLocals.containsKey(shortName) ? scopeLocals.get(shortName) : globals.get(shortName);
+				if (!original.equals(mapped)) {
+					throw new AssertionError(file + " renamed " + original + " to " + shortName + ", but the name map maps it to " + mapped
+							+ (scope == null ? "" : " in " + scope));
+				}
+				Map<String,String> scopeRenames = renames.isEmpty() ? globalRenames : renames.get(renames.size() - 1);
+				String previous = scopeRenames.put(original, shortName);
+				if (previous != null && !previous.equals(shortName)) {
+					throw new AssertionError(file + " renamed " + original + " to both " + previous + " and " + shortName);
+				}
+				renamed++;
+			} else if (original.startsWith("$")) {
+				throw new AssertionError(file + " still contains " + original + " after minification");
+			}
+			
+			// The parameters and the body of a named function belong to its scope, its name doesn't
+			if (index > 0 && plain.get(index - 1).equals("function") && isIdentifier(original)) {
+				functions.add(original);
+				functionDepths.add(depth + 1);
+				renames.add(new HashMap<String,String>());
+			}
+		}
+		if (depth != 0 || !functions.isEmpty()) {
+			throw new AssertionError(file + " has unbalanced braces");
+		}
+		return renamed;
+	}
+	
+	private static boolean isIdentifier(String token) {
+		return Character.isJavaIdentifierStart(token.charAt(0));
+	}
+	
+	/**
+	 * Splits javascript code into identifiers, numbers, string literals and single punctuation characters.
+	 * Whitespace is dropped.
+	 */
+	static List<String> tokenize(String code) {
+		List<String> tokens = new ArrayList<String>();
+		int index = 0;
+		while (index < code.length()) {
+			char current = code.charAt(index);
+			int start = index;
+			if (Character.isWhitespace(current)) {
+				index++;
+				continue;
+			}
+			if (Character.isJavaIdentifierPart(current)) {
+				while (index < code.length() && Character.isJavaIdentifierPart(code.charAt(index))) {
+					index++;
+				}
+			} else if (current == '"' || current == '\'') {
+				index++;
+				while (code.charAt(index) != current) {
+					index += code.charAt(index) == '\\' ? 2 : 1;
+				}
+				index++;
+			} else {
+				index++;
+			}
+			tokens.add(code.substring(start, index));
+		}
+		return tokens;
+	}
+	
+	/**
+	 * Reads the JSON objects with string values that the transpiler writes
+	 */
+	static class JsonReader {
+		
+		private final String json;
+		private int index;
+		
+		JsonReader(String json) {
+			this.json = json;
+		}
+		
+		Map<String,Object> readObject() {
+			Map<String,Object> result = new HashMap<String,Object>();
+			expect('{');
+			if (peek() == '}') {
+				index++;
+				return result;
+			}
+			do {
+				String key = readString();
+				expect(':');
+				result.put(key, peek() == '{' ? readObject() : readString());
+			} while (next() == ',');
+			index--;
+			expect('}');
+			return result;
+		}
+		
+		String readString() {
+			expect('"');
+			StringBuilder result = new StringBuilder();
+			while (json.charAt(index) != '"') {
+				char current = json.charAt(index++);
+				if (current == '\\') {
+					char escaped = json.charAt(index++);
+					if (escaped == 'u') {
+						result.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+						index += 4;
+					} else {
+						result.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped == 'r' ? '\r' : escaped);
+					}
+				} else {
+					result.append(current);
+				}
+			}
+			index++;
+			return result.toString();
+		}
+		
+		private char peek() {
+			while (Character.isWhitespace(json.charAt(index))) {
+				index++;
+			}
+			return json.charAt(index);
+		}
+		
+		private char next() {
+			char result = peek();
+			index++;
+			return result;
+		}
+		
+		private void expect(char expected) {
+			char actual = next();
+			if (actual != expected) {
+				throw new AssertionError("Expected " + expected + " at index " + (index - 1) + " of " + json + ", but found " + actual);
+			}
+		}
+	}
+}
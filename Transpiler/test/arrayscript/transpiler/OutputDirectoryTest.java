@@ -0,0 +1,137 @@
+package arrayscript.transpiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import arrayscript.parser.util.ParsingException;
+
+/**
+ * Transpiles the program of CodeSplittingTest with code splitting, minification, compression and content
+ * hashing, and checks the output directory: every file in the file map has the SHA-256 hash of its content
+ * in its name and a gzip variant with the same content, the file map itself keeps its name, no other files
+ * are written, and the main file and the chunk manifest refer to the hashed names. Transpiling the program
+ * again must give the same names. Run the main method, it throws an AssertionError at the first mismatch.
+ * @author knokko
+ *
+ */
+public class OutputDirectoryTest {
+	
+	public static void main(String[] args) throws IOException, ParsingException, NoSuchAlgorithmException {
+		File directory = Files.createTempDirectory("output-directory-test").toFile();
+		File again = Files.createTempDirectory("output-directory-test-again").toFile();
+		try {
+			TranspilerOptions options = new TranspilerOptions();
+			options.setCodeSplitting(true);
+			options.setHotCallDepth(0);
+			options.setMinify(true);
+			options.setCompress(true);
+			options.setContentHashing(true);
+			CodeSplittingTest.transpile(CodeSplittingTest.SOURCE, new File(directory, "app.js"), options);
+			
+			String fileMap = CodeSplittingTest.read(new File(directory, "app.js.files.json"));
+			Map<String,Object> names = new MinifierTest.JsonReader(fileMap).readObject();
+			Set<String> expectedFiles = new HashSet<String>();
+			expectedFiles.add("app.js.files.json");
+			for (Map.Entry<String,Object> entry : names.entrySet()) {
+				String name = entry.getKey();
+				String hashedName = (String) entry.getValue();
+				byte[] content = Files.readAllBytes(new File(directory, hashedName).toPath());
+				String hash = hex(MessageDigest.getInstance("SHA-256").digest(content)).substring(0, 16);
+				int extension = name.lastIndexOf('.');
+				String expectedName = name.substring(0, extension) + "." + hash + name.substring(extension);
+				if (!hashedName.equals(expectedName)) {
+					throw new AssertionError("The hashed name of " + name + " is " + hashedName + " instead of " + expectedName);
+				}
+				expectedFiles.add(hashedName);
+			}
+			for (String name : new String[] {"app.js", "app.js.chunks.json", "app.js.names.json", "app.util.js"}) {
+				if (!names.containsKey(name)) {
+					throw new AssertionError("The file map doesn't contain " + name + ": " + fileMap);
+				}
+			}
+			
+			// Every file needs a gzip variant with the same content, and nothing else may be written
+			Set<String> gzipFiles = new HashSet<String>();
+			for (String name : expectedFiles) {
+				byte[] content = Files.readAllBytes(new File(directory, name).toPath());
+				if (!Arrays.equals(content, decompress(new File(directory, name + ".gz")))) {
+					throw new AssertionError("The gzip variant of " + name + " has different content");
+				}
+				gzipFiles.add(name + ".gz");
+			}
+			expectedFiles.addAll(gzipFiles);
+			Set<String> writtenFiles = new HashSet<String>(Arrays.asList(directory.list()));
+			if (!writtenFiles.equals(expectedFiles)) {
+				throw new AssertionError("Expected the files " + expectedFiles + ", but found " + writtenFiles);
+			}
+			
+			// The main file and the manifest must refer to the hashed names
+			String main = CodeSplittingTest.read(new File(directory, (String) names.get("app.js")));
+			String manifest = CodeSplittingTest.read(new File(directory, (String) names.get("app.js.chunks.json")));
+			if (!manifest.contains("\"main\": \"" + names.get("app.js") + "\"")) {
+				throw new AssertionError("The manifest doesn't refer to the hashed main file: " + manifest);
+			}
+			int chunks = 0;
+			for (Map.Entry<String,Object> entry : names.entrySet()) {
+				if (entry.getKey().equals("app.js") || !entry.getKey().endsWith(".js")) {
+					continue;
+				}
+				String quoted = "\"" + entry.getValue() + "\"";
+				if (!main.contains(quoted) || !manifest.contains("\"file\": " + quoted)) {
+					throw new AssertionError("The main file or the manifest doesn't refer to " + entry.getValue());
+				}
+				if (main.contains("\"" + entry.getKey() + "\"") || manifest.contains("\"" + entry.getKey() + "\"")) {
+					throw new AssertionError("The main file or the manifest still refers to " + entry.getKey());
+				}
+				chunks++;
+			}
+			if (chunks != 5) {
+				throw new AssertionError("Expected 5 hashed chunk files, but found " + chunks);
+			}
+			
+			CodeSplittingTest.transpile(CodeSplittingTest.SOURCE, new File(again, "app.js"), options);
+			if (!fileMap.equals(CodeSplittingTest.read(new File(again, "app.js.files.json")))) {
+				throw new AssertionError("Transpiling the same program twice gave different file names");
+			}
+			System.out.println("Checked " + names.size() + " hashed files and their gzip variants");
+		} finally {
+			CodeSplittingTest.delete(directory);
+			CodeSplittingTest.delete(again);
+		}
+	}
+	
+	private static String hex(byte[] bytes) {
+		StringBuilder result = new StringBuilder(2 * bytes.length);
+		for (byte value : bytes) {
+			result.append(Character.forDigit((value >> 4) & 15, 16));
+			result.append(Character.forDigit(value & 15, 16));
+		}
+		return result.toString();
+	}
+	
+	private static byte[] decompress(File file) throws IOException {
+		InputStream input = new GZIPInputStream(new FileInputStream(file));
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+			}
+			return output.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+}